@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.benchmark;
+
+import de.betterform.xml.events.DOMEventNames;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures user interactions including the complete update cycle they trigger.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class ActionBenchmark {
+
+    private int counter;
+
+    @Benchmark
+    public XFormsProcessorImpl setControlValue(FormState state) throws Exception {
+        state.processor.setControlValue("first-amount", String.valueOf(this.counter++ % 10));
+        return state.processor;
+    }
+
+    /**
+     * inserts an item into the repeat and deletes it again, keeping the repeat size stable.
+     */
+    @Benchmark
+    public XFormsProcessorImpl insertAndDelete(FormState state) throws Exception {
+        state.processor.dispatch("insert", DOMEventNames.ACTIVATE);
+        state.processor.dispatch("delete", DOMEventNames.ACTIVATE);
+        return state.processor;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.benchmark;
+
+/**
+ * Generates the forms used by the benchmarks. The forms contain a repeat over a configurable number of
+ * items with typed, required, constrained and calculated values, a relevance condition and insert and delete
+ * triggers, so that all phases of the update cycle have work to do.
+ *
+ * @version $Id$
+ */
+public final class BenchmarkForms {
+
+    private BenchmarkForms() {
+    }
+
+    /**
+     * creates an order form.
+     *
+     * @param items the number of order items.
+     * @return the form as XHTML.
+     */
+    public static String createOrderForm(int items) {
+        StringBuffer form = new StringBuffer(1024 + items * 128);
+        form.append("<html xmlns=\"http://www.w3.org/1999/xhtml\" xmlns:xf=\"http://www.w3.org/2002/xforms\"");
+        form.append(" xmlns:ev=\"http://www.w3.org/2001/xml-events\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">");
+        form.append("<head><title>order</title><xf:model id=\"model-1\"><xf:instance id=\"default\" xmlns=\"\">");
+        form.append("<data><items>");
+        for (int index = 1; index <= items; index++) {
+            form.append("<item><name>item ").append(index).append("</name>");
+            form.append("<amount>").append(index % 10).append("</amount>");
+            form.append("<price>").append(index % 7).append(".5</price><total/></item>");
+        }
+        form.append("</items><sum/><discount>false</discount>");
+        form.append("<template><item><name/><amount>0</amount><price>0</price><total/></item></template>");
+        form.append("</data></xf:instance>");
+
+        form.append("<xf:bind nodeset=\"items/item\">");
+        form.append("<xf:bind nodeset=\"name\" required=\"true()\"/>");
+        form.append("<xf:bind nodeset=\"amount\" type=\"xsd:integer\" constraint=\". &gt;= 0\"/>");
+        form.append("<xf:bind nodeset=\"price\" type=\"xsd:decimal\" readonly=\"../../../discount = 'true'\"/>");
+        form.append("<xf:bind nodeset=\"total\" calculate=\"../amount * ../price\"/>");
+        form.append("</xf:bind>");
+        form.append("<xf:bind nodeset=\"sum\" calculate=\"sum(../items/item/total)\"/>");
+        form.append("<xf:bind nodeset=\"template\" relevant=\"false()\"/>");
+        form.append("</xf:model></head><body>");
+
+        form.append("<xf:repeat id=\"items\" nodeset=\"items/item\">");
+        form.append("<xf:input ref=\"name\"><xf:label>Name</xf:label></xf:input>");
+        form.append("<xf:input ref=\"amount\"><xf:label>Amount</xf:label><xf:alert>not a number</xf:alert></xf:input>");
+        form.append("<xf:input ref=\"price\"><xf:label>Price</xf:label></xf:input>");
+        form.append("<xf:output ref=\"total\"><xf:label>Total</xf:label></xf:output>");
+        form.append("</xf:repeat>");
+        form.append("<xf:input id=\"first-amount\" ref=\"items/item[1]/amount\"><xf:label>First amount</xf:label></xf:input>");
+        form.append("<xf:input id=\"discount\" ref=\"discount\"><xf:label>Discount</xf:label></xf:input>");
+        form.append("<xf:output id=\"sum\" ref=\"sum\"><xf:label>Sum</xf:label></xf:output>");
+        form.append("<xf:trigger id=\"insert\"><xf:label>Insert</xf:label>");
+        form.append("<xf:insert ev:event=\"DOMActivate\" nodeset=\"items/item\" at=\"index('items')\" position=\"after\" origin=\"template/item\"/>");
+        form.append("</xf:trigger>");
+        form.append("<xf:trigger id=\"delete\"><xf:label>Delete</xf:label>");
+        form.append("<xf:delete ev:event=\"DOMActivate\" nodeset=\"items/item\" at=\"index('items')\"/>");
+        form.append("</xf:trigger>");
+        form.append("</body></html>");
+        return form.toString();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.benchmark;
+
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xforms.exception.XFormsException;
+import de.betterform.xml.xforms.model.Instance;
+import de.betterform.xml.xforms.model.Model;
+import de.betterform.xml.xforms.model.ModelItem;
+import de.betterform.xml.xforms.model.bind.impl.StateChangeViewImpl;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An initialized processor per benchmark thread.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+public class FormState {
+
+    /**
+     * number of repeat items of the form.
+     */
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    public byte[] form;
+    public XFormsProcessorImpl processor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.form = BenchmarkForms.createOrderForm(this.items).getBytes("UTF-8");
+        this.processor = createProcessor(this.form);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.processor.shutdown();
+    }
+
+    /**
+     * marks all model items as if their values had been changed. The model only revalidates and resets
+     * the model items changed since the last refresh, without this an update phase measures a no-op
+     * after its first invocation.
+     */
+    public void markAllChanged() throws XFormsException {
+        Model model = getModel();
+        List instances = model.getInstances();
+        for (int index = 0; index < instances.size(); index++) {
+            Iterator iterator = ((Instance) instances.get(index)).iterateModelItems();
+            while (iterator.hasNext()) {
+                ModelItem modelItem = (ModelItem) iterator.next();
+                ((StateChangeViewImpl) modelItem.getStateChangeView()).setValueChanged();
+                modelItem.getRefreshView().setValueChangedMarker();
+                model.addChangedItem(modelItem, false);
+            }
+        }
+    }
+
+    public Model getModel() throws XFormsException {
+        return this.processor.getContainer().getDefaultModel();
+    }
+
+    public Instance getInstance() throws XFormsException {
+        return getModel().getDefaultInstance();
+    }
+
+    static XFormsProcessorImpl createProcessor(byte[] form) throws XFormsException {
+        XFormsProcessorImpl processor = new XFormsProcessorImpl();
+        processor.setBaseURI(new File(System.getProperty("java.io.tmpdir")).toURI().toString());
+        processor.setXForms(new ByteArrayInputStream(form));
+        processor.init();
+        return processor;
+    }
+}
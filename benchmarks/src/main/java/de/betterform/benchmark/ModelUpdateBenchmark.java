@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.benchmark;
+
+import de.betterform.xml.xforms.model.Model;
+import de.betterform.xml.xpath.impl.saxon.XPathUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Node;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the phases of the XForms update cycle on an initialized form.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+public class ModelUpdateBenchmark {
+
+    @Benchmark
+    public Model rebuild(FormState state) throws Exception {
+        Model model = state.getModel();
+        model.rebuild();
+        return model;
+    }
+
+    /**
+     * recalculates the dependents of a single changed value.
+     */
+    @Benchmark
+    public Model recalculate(FormState state) throws Exception {
+        Model model = state.getModel();
+        Node amount = XPathUtil.evaluateAsSingleNode(state.getInstance().getInstanceDocument(), "/data/items/item[1]/amount");
+        model.addChanged(amount);
+        model.recalculate();
+        return model;
+    }
+
+    /**
+     * state of the revalidate and refresh benchmarks: all model items are marked changed before each
+     * invocation, so each invocation revalidates and refreshes all of them.
+     */
+    @State(Scope.Thread)
+    public static class ChangedFormState extends FormState {
+
+        @Setup(Level.Invocation)
+        public void markChanged() throws Exception {
+            markAllChanged();
+        }
+    }
+
+    @Benchmark
+    public Model revalidate(ChangedFormState state) throws Exception {
+        Model model = state.getModel();
+        model.revalidate();
+        return model;
+    }
+
+    @Benchmark
+    public Model refresh(ChangedFormState state) throws Exception {
+        Model model = state.getModel();
+        model.refresh();
+        return model;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.benchmark;
+
+import de.betterform.xml.xpath.impl.saxon.XPathCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the evaluation of cached XPath expressions against an instance.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class XPathBenchmark {
+
+    @Param({"/data/items/item[1]/amount", "/data/items/item[amount > 5]", "sum(/data/items/item/total)", "count(//item)"})
+    public String expression;
+
+    private List nodeset;
+
+    @Setup
+    public void setUp(FormState state) throws Exception {
+        this.nodeset = state.getInstance().getInstanceNodeset();
+    }
+
+    @Benchmark
+    public List evaluate() throws Exception {
+        return XPathCache.getInstance().evaluate(this.nodeset, 1, this.expression, Collections.EMPTY_MAP, null);
+    }
+}
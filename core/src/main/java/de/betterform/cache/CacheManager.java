@@ -10,6 +10,7 @@ import net.sf.ehcache.Element;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 import java.io.File;
 import java.io.InputStream;
@@ -20,10 +21,12 @@ import java.io.InputStream;
 public class CacheManager {
     private static final Log LOGGER = LogFactory.getLog(CacheManager.class);
     private static Cache xfFileCache;
+    private static Cache xfTemplateCache;
 
     static {
         net.sf.ehcache.CacheManager.create();
         xfFileCache = net.sf.ehcache.CacheManager.getInstance().getCache("xfFileCache");
+        xfTemplateCache = net.sf.ehcache.CacheManager.getInstance().getCache("xfTemplateCache");
     }
 
     /**
@@ -36,12 +39,60 @@ public class CacheManager {
         Element elem = getElementFromFileCache(file);
         if (elem == null) { return null; }
 
-        Document cachedDoc = (Document) elem.getObjectValue();
-        org.w3c.dom.Element elment = cachedDoc.getDocumentElement();
-        Document document = DOMResource.newDocument();
-        //document.appendChild(document.adoptNode(elment.cloneNode(true)));
-        document.appendChild(document.importNode(elment,true));
-        return document;
+        return copy((Document) elem.getObjectValue());
+    }
+
+    /**
+     * returns a private copy of a parsed form. The cached template is never handed out, as
+     * form processing modifies the host document.
+     *
+     * @param key cache key, the resolved form URI
+     * @return copy of the cached form or <code>null</code> if the form is not cached
+     * @throws XFormsException
+     */
+    public static Document getTemplate(String key) throws XFormsException {
+        if (xfTemplateCache == null) {
+            return null;
+        }
+
+        Element elem = xfTemplateCache.get(key);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug((elem == null ? "no template found for key " : "found template for key ") + key);
+        }
+        if (elem == null) {
+            return null;
+        }
+        return copy((Document) elem.getObjectValue());
+    }
+
+    /**
+     * caches a copy of a parsed form.
+     *
+     * @param key cache key, the resolved form URI
+     * @param document the parsed form before its initialization
+     */
+    public static void putTemplate(String key, Document document) throws XFormsException {
+        if (xfTemplateCache != null) {
+            xfTemplateCache.put(new Element(key, copy(document)));
+        }
+    }
+
+    /**
+     * copies a document with a single deep clone. The source document is locked during the
+     * copy, since traversing a DOM may update its internal caches.
+     */
+    private static Document copy(Document source) throws XFormsException {
+        synchronized (source) {
+            Node copy = source.cloneNode(true);
+            if (copy != null) {
+                return (Document) copy;
+            }
+
+            // DOM implementations are not required to clone documents
+            Document document = DOMResource.newDocument();
+            document.appendChild(document.importNode(source.getDocumentElement(), true));
+            return document;
+        }
     }
 
     public static InputStream getInputStream(File file) throws XFormsException {
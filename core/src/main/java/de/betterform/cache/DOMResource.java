@@ -7,6 +7,7 @@ package de.betterform.cache;
 
 
 import de.betterform.connector.file.FileURIResolver;
+import de.betterform.xml.dom.DOMUtil;
 import de.betterform.xml.xforms.exception.XFormsException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -28,7 +29,6 @@ import java.net.URI;
 public class DOMResource {
     private FileURIResolver fileURIResolver;
     private static final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    private static DocumentBuilder documentBuilder;
 
     static {
         factory.setNamespaceAware(true);
@@ -42,17 +42,12 @@ public class DOMResource {
      * @return
      * @throws XFormsException
      */
-   public static synchronized Document newDocument() throws XFormsException {
-        if (documentBuilder == null) {
-            try {
-                factory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", Boolean.FALSE);
-                factory.setExpandEntityReferences(false);
-                documentBuilder = factory.newDocumentBuilder();
-            } catch (ParserConfigurationException e) {
-                throw new XFormsException(e);
-            }
+   public static Document newDocument() throws XFormsException {
+        try {
+            return DOMUtil.getDocumentBuilder(true, false).newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new XFormsException(e);
         }
-        return documentBuilder.newDocument();
     }
 
     /**
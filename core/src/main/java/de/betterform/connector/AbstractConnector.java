@@ -14,7 +14,9 @@ import de.betterform.xml.xforms.model.Model;
 import de.betterform.xml.xforms.model.submission.Submission;
 import org.w3c.dom.Node;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -47,6 +49,12 @@ public class AbstractConnector implements Connector {
      */
     private Map context;
 
+    /**
+     * The submission options and serialized instance data resolved by <code>prepare()</code>,
+     * <code>null</code> if the connector has not been prepared.
+     */
+    private PreparedSubmission prepared;
+
     /**
      * Sets the URI the connector is associated to.
      *
@@ -154,7 +162,89 @@ public class AbstractConnector implements Connector {
         return URIUtil.getURIWithoutFragment(this.uri);
     }
 
+    /**
+     * Checks whether this connector can submit on a thread other than the one processing the
+     * container once it has been prepared, i.e. whether it reads nothing but its URI, its context,
+     * the prepared submission options and the serialized instance data while submitting.
+     *
+     * @return <code>false</code>, connectors supporting asynchronous submissions override this.
+     */
+    public boolean isAsynchronousSupported() {
+        return false;
+    }
+
+    /**
+     * Resolves the submission options and serializes the instance data in advance on the thread
+     * processing the container. Afterwards <code>serialize()</code> writes the buffered data and
+     * the <code>getMethod()</code>, <code>getMediatype()</code> and <code>getEncoding()</code>
+     * accessors return the resolved options, so the submission may be run on another thread. A
+     * serialization error is reported when the data is serialized during submission.
+     *
+     * @param submission the submission issuing the request.
+     * @param instance the instance data to be serialized and submitted.
+     * @throws XFormsException if the submission options can not be resolved.
+     */
+    public void prepare(Submission submission, Node instance) throws XFormsException {
+        PreparedSubmission preparing = new PreparedSubmission(submission.getMethod(), submission.getMediatype(), submission.getEncoding());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        SerializerRequestWrapper wrapper = new SerializerRequestWrapper(stream);
+        try {
+            serialize(submission, instance, wrapper);
+            preparing.data = stream.toByteArray();
+            preparing.headers = new HashMap<String, String>(wrapper.getHeaders());
+        }
+        catch (Exception e) {
+            preparing.error = e;
+        }
+        this.prepared = preparing;
+    }
+
+    /**
+     * Returns the <code>method</code> submission option, as resolved by <code>prepare()</code> if the
+     * connector has been prepared.
+     */
+    protected String getMethod(Submission submission) throws XFormsException {
+        return this.prepared != null ? this.prepared.method : submission.getMethod();
+    }
+
+    /**
+     * Returns the <code>mediatype</code> submission option, as resolved by <code>prepare()</code> if
+     * the connector has been prepared.
+     */
+    protected String getMediatype(Submission submission) {
+        return this.prepared != null ? this.prepared.mediatype : submission.getMediatype();
+    }
+
+    /**
+     * Returns the <code>encoding</code> submission option, as resolved by <code>prepare()</code> if
+     * the connector has been prepared.
+     */
+    protected String getEncoding(Submission submission) {
+        return this.prepared != null ? this.prepared.encoding : submission.getEncoding();
+    }
+
+    /**
+     * Returns a header set by the serializer of the instance data serialized by
+     * <code>prepare()</code>.
+     *
+     * @return the header value or <code>null</code> if the connector has not been prepared.
+     */
+    protected String getPreparedHeader(String key) {
+        return this.prepared != null && this.prepared.headers != null ? this.prepared.headers.get(key) : null;
+    }
+
     protected final void serialize(Submission submission, Node instance, SerializerRequestWrapper wrapper) throws Exception {
+        if (this.prepared != null) {
+            if (this.prepared.error != null) {
+                throw this.prepared.error;
+            }
+            for (Map.Entry<String, String> header : this.prepared.headers.entrySet()) {
+                wrapper.addHeader(header.getKey(), header.getValue());
+            }
+            wrapper.getBodyStream().write(this.prepared.data);
+            return;
+        }
+
         if(submission.getSerialization() != null && submission.getSerialization().equalsIgnoreCase("none")){
             return;
         }
@@ -195,6 +285,21 @@ public class AbstractConnector implements Connector {
         return validator.validateSchema(model, instance);
     }
 
+    private static class PreparedSubmission {
+        private final String method;
+        private final String mediatype;
+        private final String encoding;
+        private byte[] data;
+        private Map<String, String> headers;
+        private Exception error;
+
+        private PreparedSubmission(String method, String mediatype, String encoding) {
+            this.method = method;
+            this.mediatype = mediatype;
+            this.encoding = encoding;
+        }
+    }
+
 }
 
 // end of class
@@ -6,6 +6,7 @@
 package de.betterform.connector;
 
 
+import de.betterform.connector.http.PooledConnectionManager;
 import de.betterform.xml.base.XMLBaseResolver;
 import de.betterform.xml.config.Config;
 import de.betterform.xml.config.XFormsConfigException;
@@ -25,6 +26,8 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
@@ -35,6 +38,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 
 
@@ -308,7 +313,43 @@ public abstract class ConnectorFactory {
         return null;
     }
 
-    public DefaultHttpClient getHttpClient(HttpParams httpParams) {
-          return new DefaultHttpClient(httpParams);
+    /**
+     * Returns a HTTP client for a single request. Unless pooling is switched off in betterform-config all
+     * clients share the connections of the {@link PooledConnectionManager} so that connections to back-end
+     * servers are kept alive between requests. Callers must consume or close the response entity to return
+     * the connection to the pool.
+     *
+     * @param httpParams the parameters of the client.
+     * @return a HTTP client for a single request.
+     * @throws XFormsConfigException if the configuration could not be loaded.
+     */
+    public DefaultHttpClient getHttpClient(HttpParams httpParams) throws XFormsConfigException {
+        PooledConnectionManager connectionManager = PooledConnectionManager.getInstance();
+        if (connectionManager == null) {
+            return new DefaultHttpClient(httpParams);
+        }
+
+        if (httpParams.getParameter(PooledConnectionManager.CONN_MANAGER_TIMEOUT) == null) {
+            httpParams.setLongParameter(PooledConnectionManager.CONN_MANAGER_TIMEOUT, connectionManager.getLeaseTimeout());
+        }
+        return new DefaultHttpClient(connectionManager, httpParams);
+    }
+
+    /**
+     * Returns a HTTP client for a single request using custom schemes, e.g. HTTPS with the SSL context of
+     * a key store. The client gets a connection manager of its own and never uses the shared pool: schemes
+     * registered with the pool would apply to the requests of all other forms and sessions.
+     *
+     * @param httpParams the parameters of the client.
+     * @param schemes the schemes to register with the connection manager of the client.
+     * @return a HTTP client for a single request.
+     */
+    public DefaultHttpClient getHttpClient(HttpParams httpParams, Collection<Scheme> schemes) {
+        DefaultHttpClient client = new DefaultHttpClient(httpParams);
+        SchemeRegistry schemeRegistry = client.getConnectionManager().getSchemeRegistry();
+        for (Iterator<Scheme> iterator = schemes.iterator(); iterator.hasNext();) {
+            schemeRegistry.register(iterator.next());
+        }
+        return client;
     }
 }
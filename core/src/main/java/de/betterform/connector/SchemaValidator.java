@@ -11,12 +11,17 @@ import de.betterform.xml.ns.NamespaceConstants;
 import de.betterform.xml.ns.NamespaceResolver;
 import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.model.Model;
+import de.betterform.xml.xforms.model.SchemaCache;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
@@ -44,6 +49,8 @@ public class SchemaValidator {
      */
     private static Log LOGGER = LogFactory.getLog(SchemaValidator.class);
 
+    private static final String GRAMMAR_POOL_PROPERTY = "http://apache.org/xml/properties/internal/grammar-pool";
+
     public SchemaValidator() {
     }
 
@@ -151,6 +158,14 @@ public class SchemaValidator {
                 parserFact.setNamespaceAware(true);
                 SAXParser parser = parserFact.newSAXParser();
                 XMLReader reader = parser.getXMLReader();
+                try {
+                    // reuse the grammars parsed for previous validations against the same schemas
+                    reader.setProperty(GRAMMAR_POOL_PROPERTY, getGrammarPool(schemas));
+                } catch (SAXNotRecognizedException e) {
+                    LOGGER.debug("grammar pool not recognized by " + reader.getClass().getName());
+                } catch (SAXNotSupportedException e) {
+                    LOGGER.debug("grammar pool not supported by " + reader.getClass().getName());
+                }
 
                 //validation activated
                 reader.setFeature("http://xml.org/sax/features/validation", true);
@@ -191,7 +206,46 @@ public class SchemaValidator {
      * @param uri the URI of the schema
      * @return the targetNamespace of the schema, or null of none was found
      */
-    private String getSchemaNamespace(URI uri) throws Exception {
+    private String getSchemaNamespace(final URI uri) throws Exception {
+        File[] files = {new File(uri)};
+        String ns = (String) SchemaCache.getInstance().get("namespace:" + uri, files, new SchemaCache.Loader() {
+            public Object load() throws Exception {
+                String ns = loadSchemaNamespace(uri);
+                return ns != null ? ns : "";
+            }
+        });
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("SchemaValidator.getSchemaNamespace for schema " + uri.toString() + ": " + ns);
+
+        return ns;
+    }
+
+    /**
+     * returns the grammar pool shared by all validations against the given schemas. The pool is
+     * dropped when one of the schema files is modified.
+     *
+     * @param schemas the schema URIs as given in the schema attribute of the model.
+     * @return the grammar pool
+     */
+    private XMLGrammarPool getGrammarPool(String schemas) throws XFormsException {
+        StringTokenizer tokenizer = new StringTokenizer(schemas, " ", false);
+        String[] uris = new String[tokenizer.countTokens()];
+        for (int index = 0; index < uris.length; index++) {
+            uris[index] = tokenizer.nextToken();
+        }
+
+        return (XMLGrammarPool) SchemaCache.getInstance().get("grammars:" + schemas, SchemaCache.toFiles(uris), new SchemaCache.Loader() {
+            public Object load() {
+                return new XMLGrammarPoolImpl();
+            }
+        });
+    }
+
+    /**
+     * parses the schema at the given URI and reads its target namespace.
+     */
+    private String loadSchemaNamespace(URI uri) throws Exception {
         String ns = null;
 
         //load schema
@@ -205,9 +259,6 @@ public class SchemaValidator {
         } else
             LOGGER.warn("Schema " + uri.toString() + " could not be parsed");
 
-        if (LOGGER.isDebugEnabled())
-            LOGGER.debug("SchemaValidator.getSchemaNamespace for schema " + uri.toString() + ": " + ns);
-
         return ns;
     }
 
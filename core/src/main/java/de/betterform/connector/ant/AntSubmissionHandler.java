@@ -23,7 +23,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -121,10 +120,7 @@ public class AntSubmissionHandler extends AbstractConnector implements Submissio
                     LOGGER.debug("AntSubmissionHandler.runTarget() BuildFile: " + buildFile.getAbsolutePath() + " with Target:" + target);
                     runTarget(buildFile, target, outputStream, errorStream);
 
-                    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                    factory.setNamespaceAware(true);
-                    factory.setValidating(false);
-                    Document document = factory.newDocumentBuilder().newDocument();
+                    Document document = DOMUtil.getDocumentBuilder(true, false).newDocument();
                     document.appendChild(document.createElementNS(null, "ant"));
 
                     Element rootElement = document.getDocumentElement();
@@ -51,4 +51,13 @@ public class EchoSubmissionHandler extends AbstractConnector implements Submissi
             throw new XFormsException(e);
         }
     }
+
+    /**
+     * Runs asynchronously once prepared, it echoes the serialized instance data only.
+     *
+     * @return <code>true</code>.
+     */
+    public boolean isAsynchronousSupported() {
+        return true;
+    }
 }
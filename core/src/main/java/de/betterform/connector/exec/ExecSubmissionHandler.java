@@ -16,7 +16,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -61,10 +60,7 @@ public class ExecSubmissionHandler extends AbstractConnector implements Submissi
             }
 
             // create response document
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            factory.setValidating(false);
-            Document document = factory.newDocumentBuilder().newDocument();
+            Document document = DOMUtil.getDocumentBuilder(true, false).newDocument();
             document.appendChild(document.createElementNS(null, "exec"));
 
             //todo: rewrite this part
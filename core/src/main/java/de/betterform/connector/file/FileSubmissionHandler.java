@@ -53,7 +53,7 @@ public class FileSubmissionHandler extends AbstractConnector implements Submissi
      * @throws XFormsException if any error occurred during submission.
      */
     public Map submit(Submission submission, Node instance) throws XFormsException {
-        if (submission.getMethod().equalsIgnoreCase("get")) {
+        if (getMethod(submission).equalsIgnoreCase("get")) {
             try {
                 // create uri
                 URI uri = new URI(getURI());
@@ -92,7 +92,7 @@ public class FileSubmissionHandler extends AbstractConnector implements Submissi
             }
         }
 
-        if (submission.getMethod().equalsIgnoreCase("put")) {
+        if (getMethod(submission).equalsIgnoreCase("put")) {
             if (!submission.getReplace().equals("none")) {
                 throw new XFormsException("submission mode '" + submission.getReplace() + "' not supported");
             }
@@ -107,11 +107,15 @@ public class FileSubmissionHandler extends AbstractConnector implements Submissi
                     LOGGER.debug("putting file '" + fileName + "'");
                 }
 
-                // create output steam and serialize instance data
-                FileOutputStream stream = new FileOutputStream(new File(fileName));
-                SerializerRequestWrapper wrapper = new SerializerRequestWrapper(stream);
-                serialize(submission, instance, wrapper);
-                wrapper.getBodyStream().close();
+                // create output steam and serialize instance data straight into the file
+                OutputStream stream = new BufferedOutputStream(new FileOutputStream(new File(fileName)));
+                try {
+                    SerializerRequestWrapper wrapper = new SerializerRequestWrapper(stream);
+                    serialize(submission, instance, wrapper);
+                }
+                finally {
+                    stream.close();
+                }
             }
             catch (Exception e) {
                 throw new XFormsException(e);
@@ -120,7 +124,7 @@ public class FileSubmissionHandler extends AbstractConnector implements Submissi
             return new HashMap();
         }
         
-        if(submission.getMethod().equalsIgnoreCase("delete")) {
+        if(getMethod(submission).equalsIgnoreCase("delete")) {
         	try {
         		// create uri
                 URI uri = new URI(getURI());
@@ -142,7 +146,17 @@ public class FileSubmissionHandler extends AbstractConnector implements Submissi
             return new HashMap();
         }
 
-        throw new XFormsException("submission method '" + submission.getMethod() + "' not supported");
+        throw new XFormsException("submission method '" + getMethod(submission) + "' not supported");
+    }
+
+    /**
+     * Runs asynchronously once prepared, it reads the resolved options and the serialized instance
+     * data only.
+     *
+     * @return <code>true</code>.
+     */
+    public boolean isAsynchronousSupported() {
+        return true;
     }
 }
 
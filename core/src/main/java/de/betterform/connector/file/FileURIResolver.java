@@ -14,7 +14,6 @@ import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.net.URI;
 
@@ -64,10 +63,7 @@ public class FileURIResolver extends AbstractConnector implements URIResolver {
             }
 
             // parse file
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            factory.setValidating(false);
-            Document document = factory.newDocumentBuilder().parse(file);
+            Document document = DOMUtil.parseXmlFile(file, true, false);
 
 
 /*
@@ -180,6 +180,28 @@ public class AbstractHTTPConnector extends AbstractConnector {
         }
     }
 
+    /**
+     * Performs a HTTP POST request with a request entity. The entity carries the content type
+     * and may write the body straight into the connection.
+     *
+     * @param uri    the request uri.
+     * @param entity the request entity.
+     * @throws XFormsException if any error occurred during the request.
+     */
+    protected void post(String uri, HttpEntity entity) throws XFormsException {
+        HttpEntityEnclosingRequestBase httpMethod = new HttpPost(uri);
+        try {
+            httpMethod.setEntity(entity);
+
+            execute(httpMethod);
+
+        } catch (XFormsException e) {
+        	throw e;
+        } catch (Exception e) {
+            throw new XFormsException(e);
+        }
+    }
+
     /**
      * Performs a HTTP PUT request.
      * <p/>
@@ -217,6 +239,28 @@ public class AbstractHTTPConnector extends AbstractConnector {
         }
     }
 
+    /**
+     * Performs a HTTP PUT request with a request entity. The entity carries the content type
+     * and may write the body straight into the connection.
+     *
+     * @param uri    the request uri.
+     * @param entity the request entity.
+     * @throws XFormsException if any error occurred during the request.
+     */
+    protected void put(String uri, HttpEntity entity) throws XFormsException {
+        HttpEntityEnclosingRequestBase httpMethod = new HttpPut(uri);
+        try {
+            httpMethod.setEntity(entity);
+
+            execute(httpMethod);
+
+        } catch (XFormsException e) {
+        	throw e;
+        } catch (Exception e) {
+            throw new XFormsException(e);
+        }
+    }
+
     /**
      * Performs a HTTP PUT request.
      *
@@ -241,11 +285,6 @@ public class AbstractHTTPConnector extends AbstractConnector {
         //HttpClient client = new HttpClient();
          HttpParams httpParams = new BasicHttpParams();
 
-
-         DefaultHttpClient client = ConnectorFactory.getFactory().getHttpClient(httpParams);
-
-
-
         if (! getContext().containsKey(AbstractHTTPConnector.SSL_CUSTOM_SCHEME)) {
             LOGGER.debug("SSL_CUSTOM_SCHEME");
             LOGGER.debug("SSL_CUSTOM_SCHEME: Factory: " + Config.getInstance().getProperty(AbstractHTTPConnector.HTTPCLIENT_SSL_CONTEXT));
@@ -255,6 +294,15 @@ public class AbstractHTTPConnector extends AbstractConnector {
             }
         }
 
+        DefaultHttpClient client;
+        if (getContext().containsKey(AbstractHTTPConnector.SSL_CUSTOM_SCHEME)) {
+            // custom SSL schemes get a connection manager of their own, never the shared pool
+            LOGGER.debug("Using customSSL-Protocol-Handler");
+            client = ConnectorFactory.getFactory().getHttpClient(httpParams, (Vector<Scheme>) getContext().get(AbstractHTTPConnector.SSL_CUSTOM_SCHEME));
+        } else {
+            client = ConnectorFactory.getFactory().getHttpClient(httpParams);
+        }
+
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("context params>>>");
             Map map = getContext();
@@ -384,15 +432,6 @@ public class AbstractHTTPConnector extends AbstractConnector {
             }
         }
 
-        if (getContext().containsKey(AbstractHTTPConnector.SSL_CUSTOM_SCHEME)) {
-            LOGGER.debug("Using customSSL-Protocol-Handler");
-            Iterator<Scheme> schemes = ((Vector<Scheme>) getContext().get(AbstractHTTPConnector.SSL_CUSTOM_SCHEME)).iterator();
-
-            while (schemes.hasNext()) {
-                client.getConnectionManager().getSchemeRegistry().register(schemes.next());
-            }
-        }
-
         if(httpRequestBase.getURI().isAbsolute()){
             httpRequestBase.setHeader("host", httpRequestBase.getURI().getHost());
         }
@@ -6,6 +6,7 @@
 package de.betterform.connector.http;
 
 import de.betterform.connector.SubmissionHandler;
+import de.betterform.connector.serializer.FormDataSerializer;
 import de.betterform.connector.serializer.SerializerRequestWrapper;
 import de.betterform.connector.util.URIUtil;
 import de.betterform.xml.xforms.XFormsConstants;
@@ -14,9 +15,15 @@ import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.model.submission.Submission;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.protocol.HTTP;
 import org.w3c.dom.Node;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.StringTokenizer;
 
@@ -47,61 +54,47 @@ public class HTTPSubmissionHandler extends AbstractHTTPConnector implements Subm
      */
     public Map submit(Submission submission, Node instance) throws XFormsException {
         try {
-            String method = submission.getMethod();
+            String method = getMethod(submission);
 
             String mediatype = "application/xml";
-            if (submission.getMediatype() != null) {
-                mediatype = submission.getMediatype();
+            if (getMediatype(submission) != null) {
+                mediatype = getMediatype(submission);
             }
 
-            String encoding = submission.getEncoding();
-            if (submission.getEncoding() == null) {
+            String encoding = getEncoding(submission);
+            if (encoding == null) {
                 encoding = getDefaultEncoding();
             }
 
-            SerializerRequestWrapper wrapper = new SerializerRequestWrapper(new ByteArrayOutputStream());
-            serialize(submission, instance, wrapper);
-            ByteArrayOutputStream stream = (ByteArrayOutputStream) wrapper.getBodyStream();
-
             /*
              * Some extension mechanism here could be handy 
              */
-             boolean streamNotEmpty = !("".equals(stream.toString()));
             // HTTP POST
             if (method.equals("post")) {
-                if(streamNotEmpty){
-                    post(getURI(), stream.toString(encoding), mediatype, encoding);
-                }
-                else {
-                     post(getURI(), mediatype, encoding);
-                }
+                post(getURI(), new InstanceEntity(submission, instance, mediatype, encoding, null));
             }
 
             // HTTP GET
             else if (method.equals("get")) {
-                if(URIUtil.getURIWithoutFragment(getURI()).indexOf("?") == -1 && streamNotEmpty){
-                    get(URIUtil.getURIWithoutFragment(getURI()) + "?" + stream.toString(encoding));
-                }else if(streamNotEmpty){
-                    get(URIUtil.getURIWithoutFragment(getURI()) + "&" + stream.toString(encoding));
+                String query = serializeToString(submission, instance, encoding);
+                if(URIUtil.getURIWithoutFragment(getURI()).indexOf("?") == -1 && query.length() > 0){
+                    get(URIUtil.getURIWithoutFragment(getURI()) + "?" + query);
+                }else if(query.length() > 0){
+                    get(URIUtil.getURIWithoutFragment(getURI()) + "&" + query);
                 }else{
                     get(URIUtil.getURIWithoutFragment(getURI()));
                 }
             }
             // HTTP PUT
             else if (method.equals("put")) {
-                if(streamNotEmpty){
-                    put(getURI(), stream.toString(encoding), mediatype, encoding);
-                }
-                else {
-                    put(getURI(), mediatype, encoding);
-                }
+                put(getURI(), new InstanceEntity(submission, instance, mediatype, encoding, null));
             }
             // HTTP  MULTIPART-POST
             else if (method.equals("multipart-post")) {
                 
                 // body comes with header
-                if(streamNotEmpty){
-                    String data = stream.toString(encoding);
+                String data = serializeToString(submission, instance, encoding);
+                if(data.length() > 0){
                     int i = data.indexOf("\n\n");
                     if (i == -1) {
                         i = data.indexOf("\r\n\r\n");
@@ -137,31 +130,24 @@ public class HTTPSubmissionHandler extends AbstractHTTPConnector implements Subm
             }
             // HTTP  FORM-DATA-POST            
             else if (method.equals("form-data-post")) {
-                if(streamNotEmpty){
-                    String type = "multipart/form-data";
-                    String boundary = wrapper.getHeader("internal-boundary-mark");
-                    if (! "".equals(boundary)) {
-                        type = type + "; boundary=" + boundary;
-                    }
-                    post(getURI(), stream.toString(encoding), type, encoding);
-                }else {
-                    post(getURI(), "multipart/form-data", encoding);
+                // the boundary goes into the content type before the body is written
+                String boundary = getPreparedHeader(FormDataSerializer.BOUNDARY_HEADER);
+                if (boundary == null) {
+                    boundary = FormDataSerializer.createBoundary();
                 }
+                post(getURI(), new InstanceEntity(submission, instance, "multipart/form-data; boundary=" + boundary, encoding, boundary));
             }
             // HTTP URLENCODED-POST
             else if (method.equals("urlencoded-post")) {
-                if(streamNotEmpty){
-                    post(getURI(), stream.toString(encoding), "application/x-www-form-urlencoded", encoding);
-                }else {
-                    post(getURI(), "application/x-www-form-urlencoded", encoding);
-                }
+                post(getURI(), new InstanceEntity(submission, instance, "application/x-www-form-urlencoded", encoding, null));
             }
             // HTTP DELETE            
             else if (method.equals("delete")) {
-            	if(getURI().indexOf("?") == -1 && streamNotEmpty){
-                    delete(getURI() + "?" + stream.toString(encoding));
-                }else if(streamNotEmpty){
-                	delete(getURI() + "&" + stream.toString(encoding));
+                String query = serializeToString(submission, instance, encoding);
+            	if(getURI().indexOf("?") == -1 && query.length() > 0){
+                    delete(getURI() + "?" + query);
+                }else if(query.length() > 0){
+                	delete(getURI() + "&" + query);
                 }else {
                     delete(getURI());
                 }
@@ -169,12 +155,7 @@ public class HTTPSubmissionHandler extends AbstractHTTPConnector implements Subm
             else {
                 // Note: user has to provide mediatype in submission element otherwise this will
                 // be probably wrong type (application/xml) ...
-                if(streamNotEmpty){
-                    post(getURI(), stream.toString(encoding), mediatype, encoding);
-                } else {
-                    post(getURI(), mediatype, encoding);
-                }
-
+                post(getURI(), new InstanceEntity(submission, instance, mediatype, encoding, null));
             }
 
             Map response = getResponseHeader();
@@ -189,6 +170,84 @@ public class HTTPSubmissionHandler extends AbstractHTTPConnector implements Subm
         }
     }
 
+    /**
+     * Runs asynchronously once prepared, it reads the resolved options, its context and the
+     * serialized instance data only.
+     *
+     * @return <code>true</code>.
+     */
+    public boolean isAsynchronousSupported() {
+        return true;
+    }
+
+    /**
+     * Serializes the instance data into a string. Used for methods which need the complete data
+     * before the request is sent, i.e. as query string or for splitting off a header.
+     */
+    private String serializeToString(Submission submission, Node instance, String encoding) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        serialize(submission, instance, new SerializerRequestWrapper(stream));
+        return stream.toString(encoding);
+    }
+
+    /**
+     * Request entity which serializes the instance data straight into the connection instead of
+     * buffering it in memory first. The body is sent with chunked transfer encoding. The entity
+     * is repeatable, it serializes the instance again when the request has to be retried,
+     * e.g. after an authentication challenge.
+     */
+    private class InstanceEntity extends AbstractHttpEntity {
+        private final Submission submission;
+        private final Node instance;
+        private final String boundary;
+
+        InstanceEntity(Submission submission, Node instance, String type, String encoding, String boundary) {
+            this.submission = submission;
+            this.instance = instance;
+            this.boundary = boundary;
+            setContentType(type + HTTP.CHARSET_PARAM + encoding);
+            setChunked(true);
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public long getContentLength() {
+            return -1;
+        }
+
+        public boolean isStreaming() {
+            return false;
+        }
+
+        public InputStream getContent() throws IOException {
+            // not used for sending, only for inspection of the entity
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            writeTo(stream);
+            return new ByteArrayInputStream(stream.toByteArray());
+        }
+
+        public void writeTo(OutputStream outputStream) throws IOException {
+            SerializerRequestWrapper wrapper = new SerializerRequestWrapper(outputStream);
+            if (this.boundary != null) {
+                wrapper.addHeader(FormDataSerializer.BOUNDARY_HEADER, this.boundary);
+            }
+
+            try {
+                serialize(this.submission, this.instance, wrapper);
+            }
+            catch (IOException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                IOException exception = new IOException("instance serialization failed: " + e.getMessage());
+                exception.initCause(e);
+                throw exception;
+            }
+            outputStream.flush();
+        }
+    }
 
 }
 
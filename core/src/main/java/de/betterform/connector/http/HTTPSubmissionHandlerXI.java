@@ -37,6 +37,15 @@ public class HTTPSubmissionHandlerXI extends HTTPSubmissionHandler {
      */
     private static Log LOGGER = LogFactory.getLog(HTTPSubmissionHandlerXI.class);
 
+    /**
+     * Runs synchronously, the response processing reads the document of the container.
+     *
+     * @return <code>false</code>.
+     */
+    public boolean isAsynchronousSupported() {
+        return false;
+    }
+
     /**
      * Serializes and submits the specified instance data over the <code>http</code> protocol.
      *
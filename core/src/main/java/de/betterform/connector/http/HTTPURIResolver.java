@@ -66,24 +66,39 @@ public class HTTPURIResolver extends AbstractHTTPConnector implements URIResolve
         String         contentType = (String) header.get("Content-Type");
                        contentType = parseContentType(contentType);
 
-        if ("text/plain".equalsIgnoreCase(contentType) || "text/html".equalsIgnoreCase(contentType)) {
-            try {
-                return inputStreamToString(responseStream);
-            } catch (IOException e) {
-                throw new XFormsException(e);
+        try {
+            if ("text/plain".equalsIgnoreCase(contentType) || "text/html".equalsIgnoreCase(contentType)) {
+                try {
+                    return inputStreamToString(responseStream);
+                } catch (IOException e) {
+                    throw new XFormsException(e);
+                }
+            } else if ("application/xml".equalsIgnoreCase(contentType) || "text/xml".equalsIgnoreCase(contentType) || "application/xhtml+xml".equalsIgnoreCase(contentType) ||  "application/xml+xslt".equalsIgnoreCase(contentType)) {
+                try {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("converting response stream to XML");
+                    }
+                    return buildDocument(uri, responseStream);
+                } catch (Exception e) {
+                    throw new XFormsException(e);
+                }
+            }else{
+                LOGGER.warn("WARN WARN WARN WARN WARN WARN WARN: Contenttype of response can not be handled. contentype:" + contentType);
+                return null;
             }
-        } else if ("application/xml".equalsIgnoreCase(contentType) || "text/xml".equalsIgnoreCase(contentType) || "application/xhtml+xml".equalsIgnoreCase(contentType) ||  "application/xml+xslt".equalsIgnoreCase(contentType)) {
+        } finally {
+            // closing the response stream returns the connection to the pool
+            closeResponseStream(responseStream);
+        }
+    }
+
+    private void closeResponseStream(InputStream responseStream) {
+        if (responseStream != null) {
             try {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("converting response stream to XML");
-                }
-                return buildDocument(uri, responseStream);
-            } catch (Exception e) {
-                throw new XFormsException(e);
+                responseStream.close();
+            } catch (IOException e) {
+                LOGGER.warn("could not close response stream: " + e.getMessage());
             }
-        }else{
-            LOGGER.warn("WARN WARN WARN WARN WARN WARN WARN: Contenttype of response can not be handled. contentype:" + contentType);
-            return null;
         }
     }
 
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.connector.http;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.config.XFormsConfigException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide pool of HTTP connections shared by all HTTP connectors (submission handlers and
+ * URI resolvers) so that connections to back-end servers are kept alive and reused between requests.
+ * <p/>
+ * The pool is sized with the properties 'httpclient.pool.maxTotal' and 'httpclient.pool.maxPerRoute'
+ * of betterform-config. Connections idle for longer than 'httpclient.pool.idleTimeout' milliseconds
+ * are closed by a background thread. Leases, releases and the time spent waiting for a free connection
+ * are published through JMX under the name {@link #OBJECT_NAME}.
+ *
+ * @version $Id$
+ */
+public class PooledConnectionManager extends ThreadSafeClientConnManager implements PooledConnectionManagerMBean {
+
+    private static final Log LOGGER = LogFactory.getLog(PooledConnectionManager.class);
+
+    public static final String POOL_ENABLED_PROPERTY = "httpclient.pool.enabled";
+    public static final String MAX_TOTAL_PROPERTY = "httpclient.pool.maxTotal";
+    public static final String MAX_PER_ROUTE_PROPERTY = "httpclient.pool.maxPerRoute";
+    public static final String IDLE_TIMEOUT_PROPERTY = "httpclient.pool.idleTimeout";
+    public static final String LEASE_TIMEOUT_PROPERTY = "httpclient.pool.leaseTimeout";
+
+    public static final int DEFAULT_MAX_TOTAL = 100;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+    public static final long DEFAULT_LEASE_TIMEOUT = 30000;
+
+    /**
+     * parameter holding the maximum time in milliseconds to wait for a pooled connection, the same as
+     * <code>ClientPNames.CONN_MANAGER_TIMEOUT</code> of httpclient 4.2.
+     */
+    public static final String CONN_MANAGER_TIMEOUT = "http.conn-manager.timeout";
+
+    public static final String OBJECT_NAME = "de.betterform:type=HttpConnectionPool";
+
+    /**
+     * a lease taking longer than this is counted as having waited for a free connection.
+     */
+    private static final long WAIT_THRESHOLD_NANOS = 1000000L;
+
+    private static PooledConnectionManager fgInstance = null;
+
+    private final long idleTimeout;
+    private final long leaseTimeout;
+    private final ScheduledExecutorService evictor;
+
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong releases = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    /**
+     * Returns the shared connection manager, creating it from betterform-config on first use.
+     *
+     * @return the shared connection manager or null if pooling is disabled in betterform-config.
+     * @throws XFormsConfigException if the configuration could not be loaded.
+     */
+    public static synchronized PooledConnectionManager getInstance() throws XFormsConfigException {
+        if (fgInstance == null) {
+            Config config = Config.getInstance();
+            if (!Boolean.valueOf(config.getProperty(POOL_ENABLED_PROPERTY, "true")).booleanValue()) {
+                return null;
+            }
+
+            fgInstance = new PooledConnectionManager(
+                    getIntProperty(config, MAX_TOTAL_PROPERTY, DEFAULT_MAX_TOTAL),
+                    getIntProperty(config, MAX_PER_ROUTE_PROPERTY, DEFAULT_MAX_PER_ROUTE),
+                    getIntProperty(config, IDLE_TIMEOUT_PROPERTY, (int) DEFAULT_IDLE_TIMEOUT),
+                    getIntProperty(config, LEASE_TIMEOUT_PROPERTY, (int) DEFAULT_LEASE_TIMEOUT));
+            register(fgInstance);
+        }
+        return fgInstance;
+    }
+
+    /**
+     * Closes all pooled connections and stops the idle connection evictor. The next call to
+     * {@link #getInstance()} creates a new pool.
+     */
+    public static synchronized void shutdownInstance() {
+        if (fgInstance != null) {
+            fgInstance.shutdown();
+            unregister();
+            fgInstance = null;
+        }
+    }
+
+    protected PooledConnectionManager(int maxTotal, int maxPerRoute, long idleTimeout, long leaseTimeout) {
+        super(SchemeRegistryFactory.createDefault());
+        setMaxTotal(maxTotal);
+        setDefaultMaxPerRoute(maxPerRoute);
+        this.idleTimeout = idleTimeout;
+        this.leaseTimeout = leaseTimeout;
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("HTTP connection pool created: maxTotal=" + maxTotal + ", maxPerRoute=" + maxPerRoute + ", idleTimeout=" + idleTimeout);
+        }
+
+        if (idleTimeout > 0) {
+            this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "betterFORM HTTP connection evictor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            long period = Math.max(idleTimeout / 2, 1000);
+            this.evictor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    closeExpiredConnections();
+                    closeIdleConnections();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.evictor = null;
+        }
+    }
+
+    /**
+     * @return the time in milliseconds a request waits for a free connection before failing.
+     */
+    public long getLeaseTimeout() {
+        return this.leaseTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ClientConnectionRequest request = super.requestConnection(route, state);
+
+        return new ClientConnectionRequest() {
+            public ManagedClientConnection getConnection(long timeout, TimeUnit unit) throws InterruptedException, ConnectionPoolTimeoutException {
+                // httpclient 4.1 passes the connect timeout here, the lease is bounded by the lease timeout
+                if (leaseTimeout > 0) {
+                    timeout = leaseTimeout;
+                    unit = TimeUnit.MILLISECONDS;
+                }
+                long start = System.nanoTime();
+                try {
+                    ManagedClientConnection connection = request.getConnection(timeout, unit);
+                    leased.incrementAndGet();
+                    leases.incrementAndGet();
+                    return connection;
+                } catch (ConnectionPoolTimeoutException e) {
+                    timeouts.incrementAndGet();
+                    throw e;
+                } finally {
+                    recordWait(System.nanoTime() - start);
+                }
+            }
+
+            public void abortRequest() {
+                request.abortRequest();
+            }
+        };
+    }
+
+    public void releaseConnection(ManagedClientConnection connection, long validDuration, TimeUnit timeUnit) {
+        try {
+            super.releaseConnection(connection, validDuration, timeUnit);
+        } finally {
+            leased.decrementAndGet();
+            releases.incrementAndGet();
+        }
+    }
+
+    public void shutdown() {
+        if (this.evictor != null) {
+            this.evictor.shutdownNow();
+        }
+        super.shutdown();
+    }
+
+    private void recordWait(long nanos) {
+        if (nanos < WAIT_THRESHOLD_NANOS) {
+            return;
+        }
+        long millis = nanos / 1000000L;
+        waits.incrementAndGet();
+        totalWaitTime.addAndGet(millis);
+
+        long max = maxWaitTime.get();
+        while (millis > max && !maxWaitTime.compareAndSet(max, millis)) {
+            max = maxWaitTime.get();
+        }
+    }
+
+    // ********************* MBean methods ********************************
+
+    public void closeIdleConnections() {
+        closeIdleConnections(this.idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    public int getLeased() {
+        return leased.get();
+    }
+
+    public long getLeases() {
+        return leases.get();
+    }
+
+    public long getReleases() {
+        return releases.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getTotalWaitTime() {
+        return totalWaitTime.get();
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    public void resetStatistics() {
+        leases.set(0);
+        releases.set(0);
+        waits.set(0);
+        timeouts.set(0);
+        totalWaitTime.set(0);
+        maxWaitTime.set(0);
+    }
+
+    // ********************* helper ***************************************
+
+    private static int getIntProperty(Config config, String name, int defaultValue) {
+        String value = config.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn(name + " is not parsable as a number. Check your settings in betterform-config.xml!");
+            return defaultValue;
+        }
+    }
+
+    private static void register(PooledConnectionManager manager) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(manager, name);
+        } catch (Exception e) {
+            LOGGER.warn("HTTP connection pool could not be registered as MBean: " + e.getMessage());
+        }
+    }
+
+    private static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("HTTP connection pool could not be unregistered as MBean: " + e.getMessage());
+        }
+    }
+}
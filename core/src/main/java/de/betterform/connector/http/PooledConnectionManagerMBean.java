@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.connector.http;
+
+/**
+ * JMX management interface of the {@link PooledConnectionManager}.
+ *
+ * @version $Id$
+ */
+public interface PooledConnectionManagerMBean {
+
+    /**
+     * @return maximum number of connections held by the pool
+     */
+    int getMaxTotal();
+
+    void setMaxTotal(int maxTotal);
+
+    /**
+     * @return maximum number of connections held per route (target host)
+     */
+    int getDefaultMaxPerRoute();
+
+    void setDefaultMaxPerRoute(int maxPerRoute);
+
+    /**
+     * @return number of connections currently held by the pool, leased and idle
+     */
+    int getConnectionsInPool();
+
+    /**
+     * @return number of connections currently leased to a request
+     */
+    int getLeased();
+
+    long getLeases();
+
+    long getReleases();
+
+    /**
+     * @return number of leases that had to wait for a free connection
+     */
+    long getWaits();
+
+    /**
+     * @return number of requests that gave up waiting for a free connection
+     */
+    long getTimeouts();
+
+    /**
+     * @return milliseconds spent waiting for free connections
+     */
+    long getTotalWaitTime();
+
+    long getMaxWaitTime();
+
+    long getIdleTimeout();
+
+    long getLeaseTimeout();
+
+    /**
+     * closes all connections idle for longer than the idle timeout.
+     */
+    void closeIdleConnections();
+
+    void resetStatistics();
+}
@@ -23,6 +23,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
 import org.w3c.dom.Node;
 
 import java.util.Map;
@@ -62,6 +63,8 @@ public class RedirectingHTTPSubmissionHandler extends HTTPSubmissionHandler {
         HttpResponse response = client.execute(httpMethod);
 
         if (response.getStatusLine().getStatusCode() >= 400) {
+            // release the pooled connection
+            EntityUtils.consume(response.getEntity());
             throw new XFormsException("HTTP status "
                     + response.getStatusLine().getStatusCode()
                     + ": "
@@ -34,6 +34,12 @@ import java.util.Random;
  */
 public class FormDataSerializer implements InstanceSerializer {
 
+    /**
+     * Wrapper header holding the boundary. A boundary preset by the caller is used as is, so the
+     * content type can be sent before the body is serialized.
+     */
+    public static final String BOUNDARY_HEADER = "internal-boundary-mark";
+
     /**
      * Serialize instance into multipart/form-data stream as defined in
      * http://www.w3.org/TR/xforms/slice11.html#serialize-form-data
@@ -68,13 +74,14 @@ public class FormDataSerializer implements InstanceSerializer {
             encoding = submission.getEncoding();
         }
 
-        // generate boundary
-        Random rnd = new Random(System.currentTimeMillis());
-        String boundary = DigestUtils.md5Hex(getClass().getName() + rnd.nextLong());
+        // use the boundary preset by the caller or generate one
+        String boundary = wrapper.getHeader(BOUNDARY_HEADER);
+        if (boundary == null) {
+            boundary = createBoundary();
+        }
 
-        // serialize the instance
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(bos, encoding)));
+        // serialize the instance straight into the body stream
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(wrapper.getBodyStream(), encoding)));
         if (instance.getNodeType() == Node.ELEMENT_NODE) {
         	serializeElement(writer, (Element) instance, boundary, encoding);
         }
@@ -83,8 +90,17 @@ public class FormDataSerializer implements InstanceSerializer {
         }
         writer.print("\r\n--" + boundary + "--");
         writer.flush();
-        bos.writeTo(wrapper.getBodyStream());
-        wrapper.addHeader("internal-boundary-mark", boundary);
+        wrapper.addHeader(BOUNDARY_HEADER, boundary);
+    }
+
+    /**
+     * Generates a random boundary.
+     *
+     * @return the boundary.
+     */
+    public static String createBoundary() {
+        Random rnd = new Random(System.currentTimeMillis());
+        return DigestUtils.md5Hex(FormDataSerializer.class.getName() + rnd.nextLong());
     }
 
     protected void serializeElement(PrintWriter writer, Element element,
@@ -196,8 +212,6 @@ public class FormDataSerializer implements InstanceSerializer {
             writer.print("\r\nContent-Transfer-Encoding: " + encoding);
             writer.print("\r\n\r\n" + nodeValue);
         }
-
-        writer.flush();
     }
 }
 
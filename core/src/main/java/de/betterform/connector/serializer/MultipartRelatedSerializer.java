@@ -19,6 +19,7 @@ import javax.activation.DataHandler;
 import javax.activation.DataSource;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
 import java.io.*;
 import java.net.URL;
 import java.util.HashMap;
@@ -46,8 +47,9 @@ public class MultipartRelatedSerializer implements InstanceSerializer {
         }
 
         if (node.getNodeType() == Node.ELEMENT_NODE || node.getNodeType() == Node.DOCUMENT_NODE) {
-        	part.setText(new String(serializeXML(multipart, cache,
-                submission, node, encoding), encoding), encoding);
+            // the serialized bytes are attached as they are, without decoding them to a string
+            part.setDataHandler(new DataHandler(new ByteArrayDataSource(serializeXML(multipart, cache,
+                submission, node, encoding), "application/xml")));
         }
         else {
         	part.setText(node.getTextContent());
@@ -16,6 +16,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Node;
 
+import javax.activation.DataHandler;
 import javax.mail.Authenticator;
 import javax.mail.Message.RecipientType;
 import javax.mail.PasswordAuthentication;
@@ -25,6 +26,9 @@ import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.Date;
@@ -96,27 +100,22 @@ public class SMTPSubmissionHandler extends AbstractConnector implements Submissi
                 encoding = submission.getEncoding();
             }
 
-            SerializerRequestWrapper wrapper = new SerializerRequestWrapper(new ByteArrayOutputStream());
-            serialize(submission, instance, wrapper);
-            ByteArrayOutputStream stream = (ByteArrayOutputStream) wrapper.getBodyStream();
-
-
             /*
              * Some extension mechanism here could be handy
              */
             String method = submission.getMethod();
             if (method.equals("post")) {
-                send(getURI(), stream.toByteArray(), encoding, mediatype);
+                send(getURI(), submission, instance, encoding, mediatype);
             } else if (method.equals("multipart-post")) {
-                send(getURI(), stream.toByteArray(), encoding, "multipart/related");
+                send(getURI(), submission, instance, encoding, "multipart/related");
             } else if (method.equals("form-data-post")) {
-                send(getURI(), stream.toByteArray(), encoding, "multipart/form-data");
+                send(getURI(), submission, instance, encoding, "multipart/form-data");
             } else if (method.equals("urlencoded-post")) {
-                send(getURI(), stream.toByteArray(), encoding, "application/x-www-form-urlencoded");
+                send(getURI(), submission, instance, encoding, "application/x-www-form-urlencoded");
             } else {
                 // Note: user has to provide mediatype in submission element otherwise this will
                 // be probably wrong type (application/xml) ...
-                send(getURI(), stream.toByteArray(), encoding, mediatype);
+                send(getURI(), submission, instance, encoding, mediatype);
             }
         } catch (Exception e) {
             throw new XFormsException(e);
@@ -125,7 +124,7 @@ public class SMTPSubmissionHandler extends AbstractConnector implements Submissi
         return null;
     }
 
-    private void send(String uri, byte[] data, String encoding, String mediatype) throws Exception {
+    private void send(String uri, Submission submission, Node instance, String encoding, String mediatype) throws Exception {
         URL url = new URL(uri);
         String recipient = url.getPath();
 
@@ -207,14 +206,19 @@ public class SMTPSubmissionHandler extends AbstractConnector implements Submissi
 
         MimeMessage message = null;
         if (mediatype.startsWith("multipart/")) {
-            message = new MimeMessage(session, new ByteArrayInputStream(data));
+            // multipart serializers write the mime headers, the message has to be parsed from them
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            serialize(submission, instance, new SerializerRequestWrapper(stream));
+            message = new MimeMessage(session, new ByteArrayInputStream(stream.toByteArray()));
         } else {
             message = new MimeMessage(session);
+            message.setDataHandler(new InstanceDataHandler(submission, instance, mediatype));
             if (mediatype.toLowerCase().indexOf("charset=") == -1) {
                 mediatype += "; charset=\"" + encoding + "\"";
             }
-            message.setText(new String(data, encoding), encoding);
             message.setHeader("Content-Type", mediatype);
+            // set explicitly, otherwise the body would be serialized once more to choose an encoding
+            message.setHeader("Content-Transfer-Encoding", "quoted-printable");
         }
 
         message.setRecipient(RecipientType.TO, new InternetAddress(recipient));
@@ -224,6 +228,42 @@ public class SMTPSubmissionHandler extends AbstractConnector implements Submissi
         Transport.send(message);
     }
 
+    /**
+     * Data handler serializing the instance straight into the mail output while the message
+     * is sent, so the body is not kept in memory.
+     */
+    private class InstanceDataHandler extends DataHandler {
+        private final Submission submission;
+        private final Node instance;
+
+        InstanceDataHandler(Submission submission, Node instance, String mediatype) {
+            super(instance, mediatype);
+            this.submission = submission;
+            this.instance = instance;
+        }
+
+        public void writeTo(OutputStream outputStream) throws IOException {
+            try {
+                serialize(this.submission, this.instance, new SerializerRequestWrapper(outputStream));
+            }
+            catch (IOException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                IOException exception = new IOException("instance serialization failed: " + e.getMessage());
+                exception.initCause(e);
+                throw exception;
+            }
+        }
+
+        public InputStream getInputStream() throws IOException {
+            // not used for sending, only for inspection of the message
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            writeTo(stream);
+            return new ByteArrayInputStream(stream.toByteArray());
+        }
+    }
+
     private class SMTPAuthenticator extends Authenticator {
         private PasswordAuthentication authentication = null;
 
@@ -5,10 +5,10 @@
 
 package de.betterform.connector.xmlrpc;
 
+import de.betterform.xml.dom.DOMUtil;
 import org.w3c.dom.Document;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -162,13 +162,7 @@ public class DocTransformer {
 
     private DocumentBuilder getDocumentBuilder() throws DocTransformerException {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(namespaceAware);
-            factory.setValidating(validating);
-//            factory.setAttribute("http://apache.org/xml/properties/dom/document-class-name",
-//                                    "de.betterform.xml.xforms.XFormsDocument");
-            
-            return factory.newDocumentBuilder();
+            return DOMUtil.getDocumentBuilder(namespaceAware, validating);
         } catch (Exception e) {
             throw new DocTransformerException("Cannot get DocumentBuilder: " + e.getMessage(), e);
         }
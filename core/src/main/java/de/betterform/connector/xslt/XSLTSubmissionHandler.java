@@ -18,10 +18,12 @@ import de.betterform.xml.xslt.impl.FileResourceResolver;
 import de.betterform.xml.xslt.impl.HttpResourceResolver;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayInputStream;
@@ -138,8 +140,6 @@ public class XSLTSubmissionHandler extends AbstractConnector implements Submissi
                 }
             }
 
-            // transform instance to byte array
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             long start = System.currentTimeMillis();
 
             DOMSource domSource;
@@ -155,17 +155,27 @@ public class XSLTSubmissionHandler extends AbstractConnector implements Submissi
                 domSource = new DOMSource(instance);
             }
 
-            transformer.transform(domSource, new StreamResult(outputStream));
+            Map response = new HashMap();
+            if (submission.getReplace().equals("instance")) {
+                // transform instance to a document, there is no need to serialize and parse the result
+                Document document = DOMUtil.newDocument(true, false);
+                transformer.transform(domSource, new DOMResult(document));
+                response.put(XFormsProcessor.SUBMISSION_RESPONSE_DOCUMENT, document);
+            }
+            else {
+                // transform instance to byte array
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                transformer.transform(domSource, new StreamResult(outputStream));
+
+                // create input stream from result
+                InputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
+                response.put(XFormsProcessor.SUBMISSION_RESPONSE_STREAM, inputStream);
+            }
             long end = System.currentTimeMillis();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("transformation time: " + (end - start) + " ms");
             }
 
-            // create input stream from result
-            InputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
-            Map response = new HashMap();
-            response.put(XFormsProcessor.SUBMISSION_RESPONSE_STREAM, inputStream);
-
             return response;
         }
         catch (Exception e) {
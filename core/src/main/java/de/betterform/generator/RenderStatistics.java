@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.generator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Collects the time to first byte and the duration of UI generations written to a stream by the
+ * {@link XSLTGenerator}. The statistics can be monitored via JMX ('de.betterform:type=RenderStatistics').
+ *
+ * @version $Id$
+ */
+public class RenderStatistics implements RenderStatisticsMBean {
+
+    private static final Log LOGGER = LogFactory.getLog(RenderStatistics.class);
+
+    public static final String OBJECT_NAME = "de.betterform:type=RenderStatistics";
+
+    private static final RenderStatistics fgRenderStatistics = new RenderStatistics();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(fgRenderStatistics, name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("RenderStatistics could not be registered as MBean: " + e.getMessage());
+        }
+    }
+
+    private long renders = 0;
+    private long bytes = 0;
+    private long timeToFirstByte = 0;
+    private long maxTimeToFirstByte = 0;
+    private long time = 0;
+
+    public static RenderStatistics getInstance() {
+        return fgRenderStatistics;
+    }
+
+    private RenderStatistics() {
+    }
+
+    /**
+     * Records a UI generation.
+     *
+     * @param timeToFirstByte ms from the start of the transformation to the first output byte.
+     * @param time ms from the start to the end of the transformation.
+     * @param bytes the number of bytes written.
+     */
+    public synchronized void record(long timeToFirstByte, long time, long bytes) {
+        this.renders++;
+        this.bytes += bytes;
+        this.timeToFirstByte += timeToFirstByte;
+        this.time += time;
+        if (timeToFirstByte > this.maxTimeToFirstByte) {
+            this.maxTimeToFirstByte = timeToFirstByte;
+        }
+    }
+
+    public synchronized long getRenders() {
+        return this.renders;
+    }
+
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    public synchronized double getAverageTimeToFirstByte() {
+        return this.renders == 0 ? 0 : (double) this.timeToFirstByte / this.renders;
+    }
+
+    public synchronized long getMaxTimeToFirstByte() {
+        return this.maxTimeToFirstByte;
+    }
+
+    public synchronized double getAverageTime() {
+        return this.renders == 0 ? 0 : (double) this.time / this.renders;
+    }
+
+    public synchronized void resetStatistics() {
+        this.renders = 0;
+        this.bytes = 0;
+        this.timeToFirstByte = 0;
+        this.maxTimeToFirstByte = 0;
+        this.time = 0;
+    }
+}
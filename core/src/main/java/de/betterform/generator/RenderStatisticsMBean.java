@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.generator;
+
+/**
+ * JMX management interface of the {@link RenderStatistics}.
+ *
+ * @version $Id$
+ */
+public interface RenderStatisticsMBean {
+
+    /**
+     * @return number of UI generations written to a stream
+     */
+    long getRenders();
+
+    /**
+     * @return number of bytes written by all UI generations
+     */
+    long getBytes();
+
+    /**
+     * @return average time in ms from the start of a transformation to its first output byte
+     */
+    double getAverageTimeToFirstByte();
+
+    /**
+     * @return longest time in ms from the start of a transformation to its first output byte
+     */
+    long getMaxTimeToFirstByte();
+
+    /**
+     * @return average duration of a transformation in ms
+     */
+    double getAverageTime();
+
+    void resetStatistics();
+}
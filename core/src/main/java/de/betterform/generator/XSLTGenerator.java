@@ -25,8 +25,10 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.*;
 import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 /**
  * An XSLT-based UI generator implementation.
@@ -109,6 +111,19 @@ public class XSLTGenerator implements UIGenerator {
         this.parameters.put(name, value);
     }
 
+    /**
+     * Returns all generator parameters.
+     *
+     * @return the parameters by name.
+     */
+    public Map getParameters() {
+        if (this.parameters == null) {
+            return Collections.EMPTY_MAP;
+        }
+
+        return Collections.unmodifiableMap(this.parameters);
+    }
+
     /**
      * Generates a client-specific representation of the XForms container
      * document by applying an XSLT transformation to BetterForm's internal DOM.
@@ -128,14 +143,25 @@ public class XSLTGenerator implements UIGenerator {
             Transformer transformer = this.transformerService.getTransformer(this.stylesheetURI);
             prepareTransformer(transformer);
 
-            long start = 0l;
-            if (LOGGER.isDebugEnabled()) {
-                start = System.currentTimeMillis();
+            long start = System.currentTimeMillis();
+            MeteredOutputStream meter = null;
+            if (this.result instanceof StreamResult && ((StreamResult) this.result).getOutputStream() instanceof MeteredOutputStream) {
+                meter = (MeteredOutputStream) ((StreamResult) this.result).getOutputStream();
+                meter.reset();
             }
 
             transformer.transform(this.source, this.result);
+
+            long time = System.currentTimeMillis() - start;
+            if (meter != null) {
+                long timeToFirstByte = meter.getFirstByteTime() > 0 ? meter.getFirstByteTime() - start : time;
+                RenderStatistics.getInstance().record(timeToFirstByte, time, meter.getCount());
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("generate: first byte after " + timeToFirstByte + " ms, " + meter.getCount() + " bytes written");
+                }
+            }
             if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("generate: transformation needed " + (System.currentTimeMillis() - start) + " ms");
+                LOGGER.debug("generate: transformation needed " + time + " ms");
             }
         }
         catch (Exception e) {
@@ -347,7 +373,8 @@ public class XSLTGenerator implements UIGenerator {
 
         // Stream
         if (output instanceof OutputStream) {
-            return new StreamResult((OutputStream) output);
+            // the serializer writes straight through, the stream is only metered
+            return new StreamResult(new MeteredOutputStream((OutputStream) output));
         }
         if (output instanceof Writer) {
             return new StreamResult((Writer) output);
@@ -358,4 +385,46 @@ public class XSLTGenerator implements UIGenerator {
 
         throw new IllegalArgumentException(output.getClass().getName() + " not supported as output");
     }
+
+    /**
+     * Counts the bytes written to the output stream and notes the time of the first write.
+     */
+    private static class MeteredOutputStream extends FilterOutputStream {
+        private long count = 0;
+        private long firstByteTime = 0;
+
+        private MeteredOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            mark(1);
+            this.out.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            mark(len);
+            this.out.write(b, off, len);
+        }
+
+        private void mark(int length) {
+            if (this.firstByteTime == 0 && length > 0) {
+                this.firstByteTime = System.currentTimeMillis();
+            }
+            this.count += length;
+        }
+
+        private void reset() {
+            this.count = 0;
+            this.firstByteTime = 0;
+        }
+
+        private long getCount() {
+            return this.count;
+        }
+
+        private long getFirstByteTime() {
+            return this.firstByteTime;
+        }
+    }
 }
@@ -0,0 +1,552 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.session;
+
+import de.betterform.xml.dom.DOMUtil;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Writes a DOM Document in a compact binary format and reads it back.
+ * <p/>
+ * Element and attribute names, namespace URIs and processing instruction targets are written once
+ * and referenced by their index afterwards. Lengths and indexes are written as variable-length
+ * integers, character data as length-prefixed UTF-8 so there is no limit on the document size.
+ * The encoded document is written in length-prefixed chunks which are optionally deflated. The
+ * chunk framing ensures that reading never consumes bytes beyond the document, so the format can be
+ * embedded into object streams that contain further data.
+ *
+ * @version $Id$
+ */
+public class BinaryDocumentSerializer {
+
+    /**
+     * 'bfDX'
+     */
+    public static final int MAGIC = 0x62664458;
+    public static final int VERSION = 1;
+
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int CHUNK_SIZE = 8192;
+
+    // node tokens
+    private static final int END = 0;
+    private static final int ELEMENT = 1;
+    private static final int TEXT = 2;
+    private static final int CDATA = 3;
+    private static final int COMMENT = 4;
+    private static final int PROCESSING_INSTRUCTION = 5;
+
+    private final boolean compress;
+
+    /**
+     * @param compress if <code>true</code> the encoded document is deflated.
+     */
+    public BinaryDocumentSerializer(boolean compress) {
+        this.compress = compress;
+    }
+
+    public boolean isCompressed() {
+        return this.compress;
+    }
+
+    /**
+     * Writes the document to an object output.
+     *
+     * @param document the document to write.
+     * @param objectOutput the output.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(Document document, ObjectOutput objectOutput) throws IOException {
+        write(document, new ObjectOutputAdapter(objectOutput));
+    }
+
+    /**
+     * Writes the document to a stream. The stream is flushed but not closed.
+     *
+     * @param document the document to write.
+     * @param out the output stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(Document document, OutputStream out) throws IOException {
+        writeInt(out, MAGIC);
+        out.write(VERSION);
+        out.write(this.compress ? FLAG_COMPRESSED : 0);
+
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+        if (this.compress) {
+            // the stream is not closed as that would close the output, so the deflater is ended here
+            Deflater deflater = new Deflater();
+            try {
+                // the encoder writes small pieces which are costly to deflate one at a time
+                DeflaterOutputStream deflating = new DeflaterOutputStream(chunked, deflater, CHUNK_SIZE);
+                BufferedOutputStream buffered = new BufferedOutputStream(deflating, CHUNK_SIZE);
+                new Encoder(buffered).writeChildren(document);
+                buffered.flush();
+                deflating.finish();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            new Encoder(chunked).writeChildren(document);
+        }
+        chunked.finish();
+        out.flush();
+    }
+
+    /**
+     * Reads a document from an object input.
+     *
+     * @param objectInput the input.
+     * @return the document.
+     * @throws IOException if an I/O error occurs or the input is not in the expected format.
+     */
+    public static Document read(ObjectInput objectInput) throws IOException {
+        return read(new ObjectInputAdapter(objectInput));
+    }
+
+    /**
+     * Reads a document from a stream. Exactly the bytes written by {@link #write(Document, OutputStream)}
+     * are consumed.
+     *
+     * @param in the input stream.
+     * @return the document.
+     * @throws IOException if an I/O error occurs or the input is not in the expected format.
+     */
+    public static Document read(InputStream in) throws IOException {
+        if (readInt(in) != MAGIC) {
+            throw new IOException("input is not a binary serialized document");
+        }
+        int version = readByte(in);
+        if (version != VERSION) {
+            throw new IOException("unsupported version " + version + " of binary serialized document");
+        }
+        int flags = readByte(in);
+
+        ChunkedInputStream chunked = new ChunkedInputStream(in);
+        // the stream is not closed as that would close the input, so the inflater is ended here
+        Inflater inflater = (flags & FLAG_COMPRESSED) != 0 ? new Inflater() : null;
+        try {
+            // buffering is safe as the chunked stream never reads beyond the document
+            InputStream source = inflater != null
+                    ? new InflaterInputStream(chunked, inflater, CHUNK_SIZE)
+                    : (InputStream) chunked;
+            source = new BufferedInputStream(source, CHUNK_SIZE);
+
+            Document document = DOMUtil.newDocument(true, false);
+            new Decoder(source, document).readChildren(document);
+            chunked.skipRemaining();
+            return document;
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    // ********************* encoding ********************************
+
+    private static class Encoder {
+        private final OutputStream out;
+        private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+        Encoder(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeChildren(Node parent) throws IOException {
+            writeNodes(parent);
+            out.write(END);
+        }
+
+        private void writeNodes(Node parent) throws IOException {
+            for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+                switch (child.getNodeType()) {
+                    case Node.ELEMENT_NODE:
+                        writeElement((Element) child);
+                        break;
+                    case Node.TEXT_NODE:
+                        out.write(TEXT);
+                        writeString(child.getNodeValue());
+                        break;
+                    case Node.CDATA_SECTION_NODE:
+                        out.write(CDATA);
+                        writeString(child.getNodeValue());
+                        break;
+                    case Node.COMMENT_NODE:
+                        out.write(COMMENT);
+                        writeString(child.getNodeValue());
+                        break;
+                    case Node.PROCESSING_INSTRUCTION_NODE:
+                        out.write(PROCESSING_INSTRUCTION);
+                        writeName(((ProcessingInstruction) child).getTarget());
+                        writeString(((ProcessingInstruction) child).getData());
+                        break;
+                    case Node.ENTITY_REFERENCE_NODE:
+                        writeNodes(child);
+                        break;
+                    default:
+                        // document types are not kept
+                        break;
+                }
+            }
+        }
+
+        private void writeElement(Element element) throws IOException {
+            out.write(ELEMENT);
+            writeName(element.getNamespaceURI());
+            writeName(element.getNodeName());
+
+            NamedNodeMap attributes = element.getAttributes();
+            int length = attributes.getLength();
+            writeInt(length);
+            for (int i = 0; i < length; i++) {
+                Attr attr = (Attr) attributes.item(i);
+                writeName(attr.getNamespaceURI());
+                writeName(attr.getNodeName());
+                writeString(attr.getValue());
+            }
+
+            writeChildren(element);
+        }
+
+        /**
+         * writes 0 for null, the index + 1 of a known name or the next index + 1 followed by the name.
+         */
+        private void writeName(String name) throws IOException {
+            if (name == null) {
+                writeInt(0);
+                return;
+            }
+            Integer index = names.get(name);
+            if (index != null) {
+                writeInt(index.intValue() + 1);
+            } else {
+                int next = names.size();
+                names.put(name, Integer.valueOf(next));
+                writeInt(next + 1);
+                writeString(name);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes("UTF-8");
+            writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeInt(int value) throws IOException {
+            writeVarInt(out, value);
+        }
+    }
+
+    // ********************* decoding ********************************
+
+    private static class Decoder {
+        private final InputStream in;
+        private final Document document;
+        private final List<String> names = new ArrayList<String>();
+        private byte[] buffer = new byte[256];
+
+        Decoder(InputStream in, Document document) {
+            this.in = in;
+            this.document = document;
+        }
+
+        void readChildren(Node parent) throws IOException {
+            int token;
+            while ((token = readByte(in)) != END) {
+                switch (token) {
+                    case ELEMENT:
+                        Element element = readElement();
+                        parent.appendChild(element);
+                        readChildren(element);
+                        break;
+                    case TEXT:
+                        parent.appendChild(document.createTextNode(readString()));
+                        break;
+                    case CDATA:
+                        parent.appendChild(document.createCDATASection(readString()));
+                        break;
+                    case COMMENT:
+                        parent.appendChild(document.createComment(readString()));
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        String target = readName();
+                        parent.appendChild(document.createProcessingInstruction(target, readString()));
+                        break;
+                    default:
+                        throw new IOException("unknown token " + token + " in binary serialized document");
+                }
+            }
+        }
+
+        private Element readElement() throws IOException {
+            String namespaceURI = readName();
+            String elementName = readName();
+            Element element;
+            if (namespaceURI == null && elementName.indexOf(':') != -1) {
+                // DOM level 1 name
+                element = document.createElement(elementName);
+            } else {
+                element = document.createElementNS(namespaceURI, elementName);
+            }
+
+            int length = readVarInt(in);
+            for (int i = 0; i < length; i++) {
+                String attributeNamespaceURI = readName();
+                String name = readName();
+                String value = readString();
+                if (attributeNamespaceURI == null && name.indexOf(':') != -1) {
+                    element.setAttribute(name, value);
+                } else {
+                    element.setAttributeNS(attributeNamespaceURI, name, value);
+                }
+            }
+            return element;
+        }
+
+        private String readName() throws IOException {
+            int reference = readVarInt(in);
+            if (reference == 0) {
+                return null;
+            }
+            if (reference <= names.size()) {
+                return names.get(reference - 1);
+            }
+            if (reference != names.size() + 1) {
+                throw new IOException("invalid name reference " + reference + " in binary serialized document");
+            }
+            String name = readString();
+            names.add(name);
+            return name;
+        }
+
+        private String readString() throws IOException {
+            int length = readVarInt(in);
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            readFully(in, buffer, 0, length);
+            return new String(buffer, 0, length, "UTF-8");
+        }
+    }
+
+    // ********************* primitives ********************************
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte(in);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed length in binary serialized document");
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write((value >>> 24) & 0xFF);
+        out.write((value >>> 16) & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+        out.write(value & 0xFF);
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        return (readByte(in) << 24) | (readByte(in) << 16) | (readByte(in) << 8) | readByte(in);
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("unexpected end of binary serialized document");
+        }
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = in.read(bytes, offset, length);
+            if (read < 0) {
+                throw new EOFException("unexpected end of binary serialized document");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    // ********************* framing ********************************
+
+    /**
+     * buffers written bytes and emits them as chunks of a varint length followed by the bytes.
+     * A chunk of length 0 terminates the stream.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count = 0;
+
+        ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        void finish() throws IOException {
+            flushChunk();
+            writeVarInt(out, 0);
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeVarInt(out, count);
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+    }
+
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private int remaining = 0;
+        private boolean finished = false;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            remaining--;
+            return readByte(in);
+        }
+
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = in.read(bytes, offset, Math.min(length, remaining));
+            if (read < 0) {
+                throw new EOFException("unexpected end of binary serialized document");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        /**
+         * consumes the rest of the stream up to the terminating chunk.
+         */
+        void skipRemaining() throws IOException {
+            byte[] skip = new byte[512];
+            while (read(skip, 0, skip.length) != -1) {
+                // discard
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (remaining == 0) {
+                if (finished) {
+                    return false;
+                }
+                remaining = readVarInt(in);
+                if (remaining == 0) {
+                    finished = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class ObjectOutputAdapter extends OutputStream {
+        private final ObjectOutput out;
+
+        ObjectOutputAdapter(ObjectOutput out) {
+            this.out = out;
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static class ObjectInputAdapter extends InputStream {
+        private final ObjectInput in;
+
+        ObjectInputAdapter(ObjectInput in) {
+            this.in = in;
+        }
+
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return in.read(bytes, offset, length);
+        }
+    }
+}
@@ -11,14 +11,16 @@ import de.betterform.xml.xforms.XFormsProcessorImpl;
 import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.model.Instance;
 import de.betterform.xml.xforms.model.Model;
+import de.betterform.xml.xpath.impl.saxon.DocumentWrapperFactory;
 import de.betterform.xml.xpath.impl.saxon.XPathCache;
 import de.betterform.xml.xpath.impl.saxon.XPathUtil;
 import de.betterform.xml.xslt.impl.CachingTransformerService;
+import de.betterform.xml.xslt.impl.ClassPathResource;
 import de.betterform.xml.xslt.impl.FileResourceResolver;
-import net.sf.saxon.dom.DocumentWrapper;
+import de.betterform.xml.xslt.impl.Resource;
+import de.betterform.xml.xslt.impl.ResourceResolver;
 import net.sf.saxon.dom.NodeWrapper;
 import net.sf.saxon.om.NodeInfo;
-import net.sf.saxon.sxpath.IndependentContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Document;
@@ -133,13 +135,22 @@ public class DefaultSerializer {
      */
     private void resetForm(Document in, Document out) throws TransformerException, URISyntaxException, XFormsException {
         CachingTransformerService transformerService = new CachingTransformerService(new FileResourceResolver());
-        String path = getClass().getResource("reset.xsl").getPath();
-        String xslFilePath = "file:" + path;
-        transformerService.getTransformer(new URI(xslFilePath));
+        // within a web application the stylesheet is loaded from the betterform-core jar
+        transformerService.addResourceResolver(new ResourceResolver() {
+            public Resource resolve(URI uri) throws XFormsException {
+                try {
+                    return new ClassPathResource(uri.toURL().openStream());
+                } catch (IOException e) {
+                    throw new XFormsException(e);
+                }
+            }
+        });
+        URI xslURI = getClass().getResource("reset.xsl").toURI();
+        transformerService.getTransformer(xslURI);
 
         XSLTGenerator generator = new XSLTGenerator();
         generator.setTransformerService(transformerService);
-        generator.setStylesheetURI(new URI(xslFilePath));
+        generator.setStylesheetURI(xslURI);
         generator.setInput(in);
         generator.setOutput(out);
         generator.generate();
@@ -150,6 +161,6 @@ public class DefaultSerializer {
      * @return
      */
      private static NodeWrapper getDocumentElementContext(Document document) {
-	return new DocumentWrapper(document, "configuration.xml", new IndependentContext().getConfiguration()).wrap(document.getDocumentElement());
+	return DocumentWrapperFactory.getSharedFactory().getDocumentWrapper(document, "configuration.xml").wrap(document.getDocumentElement());
      }
 }
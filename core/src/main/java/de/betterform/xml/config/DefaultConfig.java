@@ -8,12 +8,11 @@ package de.betterform.xml.config;
 import de.betterform.connector.InstanceSerializer;
 import de.betterform.connector.InstanceSerializerMap;
 import de.betterform.xml.xforms.exception.XFormsException;
+import de.betterform.xml.xpath.impl.saxon.DocumentWrapperFactory;
 import de.betterform.xml.xpath.impl.saxon.XPathCache;
 import de.betterform.xml.xpath.impl.saxon.XPathUtil;
-import net.sf.saxon.dom.DocumentWrapper;
 import net.sf.saxon.dom.NodeWrapper;
 import net.sf.saxon.om.NodeInfo;
-import net.sf.saxon.sxpath.IndependentContext;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -78,7 +77,7 @@ public class DefaultConfig extends Config {
 	 * @return
 	 */
 	private NodeWrapper getDocumentElementContext(Document document) {
-	    return new DocumentWrapper(document, "configuration.xml", new IndependentContext().getConfiguration()).wrap(document.getDocumentElement());
+	    return DocumentWrapperFactory.getSharedFactory().getDocumentWrapper(document, "configuration.xml").wrap(document.getDocumentElement());
 	}
 
 	/**
@@ -41,11 +41,23 @@ public class DOMUtil {
 	
 	private static Log LOGGER = LogFactory.getLog(DOMUtil.class);
 
+    /**
+     * factories of the pooled DocumentBuilders, indexed by their settings. Configured once and only
+     * used for creating builders afterwards.
+     */
+    private static final DocumentBuilderFactory[] DOCUMENT_BUILDER_FACTORIES = new DocumentBuilderFactory[8];
+
+    /**
+     * DocumentBuilders of the current thread, indexed like the factories.
+     */
+    private static final ThreadLocal DOCUMENT_BUILDERS = new ThreadLocal() {
+        protected Object initialValue() {
+            return new DocumentBuilder[8];
+        }
+    };
+
 
     public static Node getFragment(URI uri, InputStream xmlStream) throws XFormsException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
         Document document = null;
         try {
             document = parseInputStream(xmlStream, true, false);
@@ -928,26 +940,8 @@ public class DOMUtil {
      * @return __UNDOCUMENTED__
      */
     public static Document newDocument(boolean isNamespaceAware, boolean isValidating) {
-        // !!! workaround to enable betterForm to run within WebLogic Server
-        // Force JAXP to use xerces as the default JAXP parser doesn't work with BetterForm
-        //
-        //        String oldFactory = System.getProperty("javax.xml.parsers.DocumentBuilderFactory");
-        //        System.setProperty("javax.xml.parsers.DocumentBuilderFactory","org.apache.xerces.jaxp.DocumentBuilderFactoryImpl");
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-        // restore to original factory
-        //
-        //        System.setProperty("javax.xml.parsers.DocumentBuilderFactory",oldFactory);
-        // !!! end workaround
-        factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(isNamespaceAware);
-        factory.setValidating(isValidating);
-
         try {
-            // Create builder.
-            DocumentBuilder builder = factory.newDocumentBuilder();
-
-            return builder.newDocument();
+            return getDocumentBuilder(isNamespaceAware, isValidating).newDocument();
         } catch (ParserConfigurationException pce) {
             System.err.println(pce.toString());
         }
@@ -968,9 +962,7 @@ public class DOMUtil {
      */
     public static Document parseInputStream(InputStream in, boolean namespaces, boolean validating)
             throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilder builder = createDocumentBuilder(namespaces, validating);
-
-        return builder.parse(in);
+        return getDocumentBuilder(namespaces, validating).parse(in);
     }
 
     /**
@@ -996,9 +988,7 @@ public class DOMUtil {
      */
     public static Document parseXmlFile(File file, boolean namespaces, boolean validating)
             throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilder builder = createDocumentBuilder(namespaces, validating);
-
-        return builder.parse(file);
+        return getDocumentBuilder(namespaces, validating).parse(file);
     }
 
     /**
@@ -1014,7 +1004,7 @@ public class DOMUtil {
      */
     public static Document parseString(String input, boolean namespaces, boolean validating)
             throws ParserConfigurationException, IOException, SAXException {
-        return createDocumentBuilder(true,false).parse(new InputSource(new StringReader(input)));
+        return getDocumentBuilder(true,false).parse(new InputSource(new StringReader(input)));
     }
 
 
@@ -1067,18 +1057,80 @@ public class DOMUtil {
         transformer.transform(new DOMSource(node), new StreamResult(stream));
     }
 
-    private static DocumentBuilder createDocumentBuilder(boolean namespaces, boolean validating)
+    /**
+     * Returns the DocumentBuilder of the current thread for the given settings.
+     * <p/>
+     * DocumentBuilders are not thread-safe but may be reused after a <code>reset()</code>, so every
+     * thread keeps one builder per combination of settings instead of looking up a factory and
+     * creating a builder for each document. The builder is reset before it is handed out, entity
+     * resolvers and error handlers set by a previous caller are dropped.
+     * <p/>
+     * The builder belongs to the calling thread and must only be used until the next call of this
+     * method on that thread. It must not be stored or passed to other threads.
+     *
+     * @param namespaces parser is namespace aware
+     * @param validating parser is validating
+     * @return the reset DocumentBuilder of the current thread.
+     * @throws ParserConfigurationException in case of misconfiguration
+     */
+    public static DocumentBuilder getDocumentBuilder(boolean namespaces, boolean validating)
             throws ParserConfigurationException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(namespaces);
-        factory.setValidating(validating);
+        return getDocumentBuilder(namespaces, validating, true);
+    }
 
-        //        factory.setAttribute("http://xml.org/sax/features/namespace-prefixes)",new Boolean(true));
-        DocumentBuilder builder = factory.newDocumentBuilder();
+    /**
+     * Returns the DocumentBuilder of the current thread for the given settings.
+     *
+     * @param namespaces parser is namespace aware
+     * @param validating parser is validating
+     * @param loadExternalDTD if <code>false</code>, a non-validating parser does not load the
+     * external DTD of a document.
+     * @return the reset DocumentBuilder of the current thread.
+     * @throws ParserConfigurationException in case of misconfiguration
+     * @see #getDocumentBuilder(boolean, boolean)
+     */
+    public static DocumentBuilder getDocumentBuilder(boolean namespaces, boolean validating, boolean loadExternalDTD)
+            throws ParserConfigurationException {
+        int key = (namespaces ? 1 : 0) | (validating ? 2 : 0) | (loadExternalDTD ? 0 : 4);
+        DocumentBuilder[] builders = (DocumentBuilder[]) DOCUMENT_BUILDERS.get();
+        DocumentBuilder builder = builders[key];
+        if (builder == null) {
+            builder = createDocumentBuilder(key);
+            builders[key] = builder;
+        } else {
+            builder.reset();
+        }
 
         return builder;
     }
 
+    /**
+     * Drops the DocumentBuilders of the current thread. To be called by threads leaving the
+     * application, e.g. by server threads at the end of each request, so that pooled threads of a
+     * servlet container do not keep the builders and their classes after undeployment.
+     */
+    public static void releaseDocumentBuilders() {
+        DOCUMENT_BUILDERS.remove();
+    }
+
+    private static DocumentBuilder createDocumentBuilder(int key) throws ParserConfigurationException {
+        synchronized (DOCUMENT_BUILDER_FACTORIES) {
+            DocumentBuilderFactory factory = DOCUMENT_BUILDER_FACTORIES[key];
+            if (factory == null) {
+                factory = DocumentBuilderFactory.newInstance();
+                factory.setNamespaceAware((key & 1) != 0);
+                factory.setValidating((key & 2) != 0);
+                if ((key & 4) != 0) {
+                    factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+                }
+                //        factory.setAttribute("http://xml.org/sax/features/namespace-prefixes)",new Boolean(true));
+                DOCUMENT_BUILDER_FACTORIES[key] = factory;
+            }
+
+            return factory.newDocumentBuilder();
+        }
+    }
+
 
     /**
      * returns a canonical XPath locationpath for a given Node. Each step in the path will contain the positional
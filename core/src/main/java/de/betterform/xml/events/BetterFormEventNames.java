@@ -87,6 +87,12 @@ public interface BetterFormEventNames {
      */
     String INDEX_CHANGED = "betterform-index-changed";
 
+    /**
+     * betterForm notification event constant. Sent to the client with the results of a request while
+     * asynchronous submissions of the session are running, asking it to poll for their results.
+     */
+    String PENDING_TASKS = "betterform-pending-tasks";
+
     /**
      * dispatched by a <code>toggle</code> Action as request to the useragent to switch to another case. This event
      * must be handled by a useragent to react on a toggle.
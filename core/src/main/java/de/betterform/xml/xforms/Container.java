@@ -22,6 +22,8 @@ import de.betterform.xml.xforms.ui.Group;
 import de.betterform.xml.xforms.ui.Repeat;
 import de.betterform.xml.xforms.ui.Switch;
 import de.betterform.xml.xpath.impl.saxon.BetterFormXPathContext;
+import de.betterform.xml.xpath.impl.saxon.DocumentWrapperFactory;
+import de.betterform.xml.xpath.impl.saxon.SaxonConfigurationFactory;
 import de.betterform.xml.xpath.impl.saxon.XPathCache;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.dom.DocumentWrapper;
@@ -35,6 +37,8 @@ import org.w3c.dom.events.EventTarget;
 import org.w3c.xforms.XFormsModelElement;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class represents a complete XForms document. It encapsulates the DOM
@@ -54,7 +58,8 @@ import java.util.*;
  */
 public class Container {
     private static final Log LOGGER = LogFactory.getLog(Container.class);
-    private final Configuration fConfiguration = new Configuration();
+    private Configuration fConfiguration;
+    private DocumentWrapperFactory fDocumentWrapperFactory;
     private BindingResolver bindingResolver;
     private XFormsProcessorImpl processor;
     private ConnectorFactory connectorFactory;
@@ -66,6 +71,7 @@ public class Container {
     private XFormsElementFactory elementFactory;
     private CustomElementFactory customElementFactory;
     private boolean modelConstructDone = false;
+    private boolean restoring = false;
     private int idCounter = 0;
     private List eventExceptions;
     public static final String XFORMS_1_0 = "1.0";
@@ -75,6 +81,8 @@ public class Container {
     private Stack<EventInfo> fEventInfoStack = new Stack<EventInfo>();
     private String focussedControlId=null;
     private String focussedContainerId=null;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger runningTasks = new AtomicInteger();
 
     /**
      * associates DocumentContainer with Processor.
@@ -265,7 +273,7 @@ public class Container {
 
 
     /**
-     * Triggers model destruction.
+     * Triggers model destruction and releases the Saxon Configuration of this container.
      *
      * @throws XFormsException
      */
@@ -278,6 +286,7 @@ public class Container {
                 dispatch(model.getTarget(), XFormsEventNames.MODEL_DESTRUCT, null);
             }
         }
+        SaxonConfigurationFactory.release(fConfiguration);
     }
 
     /**
@@ -544,6 +553,36 @@ public class Container {
         return id;
     }
 
+    /**
+     * @return the number of ids generated so far.
+     */
+    int getIdCounter() {
+        return this.idCounter;
+    }
+
+    /**
+     * Continues id generation after the given number of ids, e.g. those generated in a passivated session.
+     *
+     * @param idCounter the number of ids generated so far.
+     */
+    void setIdCounter(int idCounter) {
+        this.idCounter = idCounter;
+    }
+
+    /**
+     * Returns <code>true</code> while the form is initialized to continue a passivated session. Event
+     * handlers are not run then, they already ran when the session was initialized first.
+     *
+     * @return <code>true</code> while a passivated session is restored.
+     */
+    public boolean isRestoring() {
+        return this.restoring;
+    }
+
+    void setRestoring(boolean restoring) {
+        this.restoring = restoring;
+    }
+
     /**
      * Registers the specified XForms element with this <code>container</code>.
      * <p/>
@@ -799,7 +838,7 @@ public class Container {
     public BetterFormXPathContext getHostContext(String baseURI) {
         //lazy instanciation of BetterFormContext
         if (this.hostContext == null) {
-            List nodes = de.betterform.xml.xpath.impl.saxon.XPathUtil.getRootContext(document, baseURI);
+            List nodes = Collections.singletonList(getDocumentWrapperFactory().getDocumentWrapper(document, baseURI).wrap(document.getDocumentElement()));
             this.hostContext = new BetterFormXPathContext(nodes, 1, Collections.EMPTY_MAP, null);
         }
         return this.hostContext;
@@ -898,6 +937,58 @@ public class Container {
         }
     }
 
+    /**
+     * registers a task running asynchronously on another thread, e.g. an asynchronous submission.
+     * Must be called on the thread processing this container before the task is started.
+     */
+    public void beginAsyncTask() {
+        this.runningTasks.incrementAndGet();
+    }
+
+    /**
+     * finishes a task registered with <code>beginAsyncTask()</code>. The completion is not run
+     * immediately but by the next call of <code>runPendingTasks()</code> on the thread processing
+     * this container. May be called from any thread.
+     *
+     * @param completion the processing to be done on the thread processing this container,
+     * may be <code>null</code>.
+     */
+    public void endAsyncTask(Runnable completion) {
+        if (completion != null) {
+            this.pendingTasks.add(completion);
+        }
+        this.runningTasks.decrementAndGet();
+    }
+
+    /**
+     * @return <code>true</code> if asynchronous tasks are still running or their completions are
+     * waiting to be run.
+     */
+    public boolean hasPendingTasks() {
+        return !this.pendingTasks.isEmpty() || this.runningTasks.get() > 0;
+    }
+
+    /**
+     * runs the completions of finished asynchronous tasks. Must be called on the thread processing
+     * this container.
+     *
+     * @return <code>true</code> if any completion was run.
+     */
+    public boolean runPendingTasks() {
+        boolean result = false;
+        Runnable completion;
+        while ((completion = this.pendingTasks.poll()) != null) {
+            try {
+                completion.run();
+            }
+            catch (RuntimeException e) {
+                LOGGER.error("runPendingTasks: completion of asynchronous task failed", e);
+            }
+            result = true;
+        }
+        return result;
+    }
+
     /**
      * @return Returns the current event info if any
      */
@@ -908,7 +999,17 @@ public class Container {
     	return fEventInfoStack.peek();
     }
 
+    /**
+     * Returns the Saxon Configuration of this container. Depending on the property
+     * 'betterform.saxon.configuration' it is shared with other containers, see
+     * {@link SaxonConfigurationFactory}.
+     *
+     * @return the Saxon Configuration of this container.
+     */
 	public Configuration getConfiguration() {
+        if (fConfiguration == null) {
+            fConfiguration = SaxonConfigurationFactory.getConfiguration(this.processor != null ? this.processor.getBaseURI() : null);
+        }
 		return fConfiguration;
 	}
 
@@ -972,15 +1073,41 @@ public class Container {
 		}
     }
     
-    private Map<Document, DocumentWrapper> fgDocumentWrapperCache = new HashMap<Document, DocumentWrapper>();
+    /**
+     * Returns the Saxon wrapper of the document of a node. Wrappers are created with the
+     * Configuration of this container and reused as long as they are in use, documents no longer
+     * referenced (e.g. replaced instances) are released.
+     *
+     * @param n a document or a node within a document.
+     * @return the wrapper of the document.
+     */
     public DocumentWrapper getDocumentWrapper(Node n) {
-    	final Document ownerDocument = n.getOwnerDocument();
-		DocumentWrapper documentWrapper = fgDocumentWrapperCache.get(ownerDocument);
-		if (documentWrapper == null) {
-			documentWrapper = new DocumentWrapper(ownerDocument, getProcessor().getBaseURI(), getConfiguration());
-			fgDocumentWrapperCache.put(ownerDocument, documentWrapper);
-		}
-		
-		return documentWrapper;
+    	final Document ownerDocument = n.getNodeType() == Node.DOCUMENT_NODE ? (Document) n : n.getOwnerDocument();
+		return getDocumentWrapperFactory().getDocumentWrapper(ownerDocument, getProcessor().getBaseURI());
+    }
+
+    /**
+     * Returns the document element of a document wrapped with the Configuration of this
+     * container in a List with a single entry.
+     *
+     * @param document the DOM Document in context.
+     * @return the root context or an empty List if the document has no document element.
+     */
+    public List getRootContext(Document document) {
+        final Element documentElement = document.getDocumentElement();
+        if (documentElement == null) {
+            return Collections.EMPTY_LIST;
+        }
+        return Collections.singletonList(getDocumentWrapper(document).wrap(documentElement));
+    }
+
+    /**
+     * @return the factory wrapping documents with the Configuration of this container.
+     */
+    public synchronized DocumentWrapperFactory getDocumentWrapperFactory() {
+        if (fDocumentWrapperFactory == null) {
+            fDocumentWrapperFactory = new DocumentWrapperFactory(getConfiguration());
+        }
+        return fDocumentWrapperFactory;
     }
 }
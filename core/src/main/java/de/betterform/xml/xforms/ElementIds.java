@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms;
+
+import de.betterform.xml.ns.NamespaceConstants;
+import de.betterform.xml.xforms.action.AbstractAction;
+import de.betterform.xml.xforms.exception.XFormsException;
+import de.betterform.xml.xforms.ui.AbstractUIElement;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ids of the elements of a host document in document order together with the state of the id
+ * generator of its container.
+ * <p/>
+ * A passivated session is continued by initializing the form again from its reset host document. Elements
+ * created during initialization, like repeat items and their controls, get new ids then. Restoring the ids
+ * of the passivated session gives them the ids the client knows. Instance data is not part of the ids.
+ *
+ * @version $Id$
+ */
+public class ElementIds {
+    private static final Log LOGGER = LogFactory.getLog(ElementIds.class);
+
+    private final int idCounter;
+    private final List<String> names;
+    private final List<String> ids;
+
+    private ElementIds(int idCounter, List<String> names, List<String> ids) {
+        this.idCounter = idCounter;
+        this.names = names;
+        this.ids = ids;
+    }
+
+    /**
+     * Returns the ids of the host document of a container.
+     *
+     * @param container the container.
+     * @return the ids of the host document.
+     */
+    public static ElementIds of(Container container) {
+        List<Element> elements = new ArrayList<Element>();
+        collectElements(container.getDocument().getDocumentElement(), elements);
+
+        List<String> names = new ArrayList<String>(elements.size());
+        List<String> ids = new ArrayList<String>(elements.size());
+        for (int index = 0; index < elements.size(); index++) {
+            Element element = elements.get(index);
+            names.add(getName(element));
+            ids.add(element.getAttributeNS(null, "id"));
+        }
+        return new ElementIds(container.getIdCounter(), names, ids);
+    }
+
+    /**
+     * Reads ids written by {@link #write(java.io.ObjectOutput)}.
+     *
+     * @param in the input.
+     * @return the ids.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static ElementIds read(ObjectInput in) throws IOException {
+        int idCounter = in.readInt();
+        int size = in.readInt();
+        List<String> names = new ArrayList<String>(size);
+        List<String> ids = new ArrayList<String>(size);
+        for (int index = 0; index < size; index++) {
+            names.add(in.readUTF());
+            ids.add(in.readUTF());
+        }
+        return new ElementIds(idCounter, names, ids);
+    }
+
+    /**
+     * Writes the ids.
+     *
+     * @param out the output.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(ObjectOutput out) throws IOException {
+        out.writeInt(this.idCounter);
+        out.writeInt(this.names.size());
+        for (int index = 0; index < this.names.size(); index++) {
+            out.writeUTF(this.names.get(index));
+            out.writeUTF(this.ids.get(index));
+        }
+    }
+
+    /**
+     * Assigns the ids to the elements of the host document of an initialized container. Nothing is changed if
+     * the document does not have the structure of the document the ids were taken from.
+     *
+     * @param container the initialized container.
+     * @return <code>true</code> if the ids have been restored.
+     * @throws XFormsException if the id of a containing repeat item could not be changed.
+     */
+    public boolean restore(Container container) throws XFormsException {
+        List<Element> elements = new ArrayList<Element>();
+        collectElements(container.getDocument().getDocumentElement(), elements);
+        if (elements.size() != this.names.size()) {
+            LOGGER.warn("ids not restored: host document has " + elements.size() + " elements instead of " + this.names.size());
+            return false;
+        }
+        for (int index = 0; index < elements.size(); index++) {
+            if (!getName(elements.get(index)).equals(this.names.get(index))) {
+                LOGGER.warn("ids not restored: host document differs at element " + index + " (" + getName(elements.get(index)) + ")");
+                return false;
+            }
+        }
+
+        // deregister all elements before registering any new id, an old id may be the new id of another element
+        Map<String, String> changed = new HashMap<String, String>();
+        List<XFormsElement> renamed = new ArrayList<XFormsElement>();
+        List<String> renamedIds = new ArrayList<String>();
+        for (int index = 0; index < elements.size(); index++) {
+            Element element = elements.get(index);
+            String current = element.getAttributeNS(null, "id");
+            String id = this.ids.get(index);
+            if (id.length() == 0 || id.equals(current)) {
+                continue;
+            }
+
+            changed.put(current, id);
+            Object object = element.getUserData("");
+            if (object instanceof XFormsElement && current.equals(((XFormsElement) object).getId())) {
+                XFormsElement xformsElement = (XFormsElement) object;
+                container.deregister(xformsElement);
+                renamed.add(xformsElement);
+                renamedIds.add(id);
+            } else {
+                element.setAttributeNS(null, "id", id);
+            }
+        }
+        for (int index = 0; index < renamed.size(); index++) {
+            XFormsElement xformsElement = renamed.get(index);
+            xformsElement.id = renamedIds.get(index);
+            xformsElement.element.setAttributeNS(null, "id", xformsElement.id);
+            container.register(xformsElement);
+        }
+
+        // controls and actions refer to their repeat item by id
+        for (int index = 0; index < elements.size(); index++) {
+            Object object = elements.get(index).getUserData("");
+            if (object instanceof AbstractUIElement) {
+                AbstractUIElement uiElement = (AbstractUIElement) object;
+                if (uiElement.getRepeatItemId() != null && changed.containsKey(uiElement.getRepeatItemId())) {
+                    uiElement.setRepeatItemId(changed.get(uiElement.getRepeatItemId()));
+                }
+            } else if (object instanceof AbstractAction) {
+                AbstractAction action = (AbstractAction) object;
+                if (action.getRepeatItemId() != null && changed.containsKey(action.getRepeatItemId())) {
+                    action.setRepeatItemId(changed.get(action.getRepeatItemId()));
+                }
+            }
+        }
+
+        container.setIdCounter(Math.max(container.getIdCounter(), this.idCounter));
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("restored " + changed.size() + " ids");
+        }
+        return true;
+    }
+
+    // ********************* helper ***************************************
+
+    /**
+     * collects the elements in document order, skipping the content of instances which does not belong
+     * to the form.
+     */
+    private static void collectElements(Element element, List<Element> elements) {
+        elements.add(element);
+        if (NamespaceConstants.XFORMS_NS.equals(element.getNamespaceURI()) && XFormsConstants.INSTANCE.equals(element.getLocalName())) {
+            return;
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                collectElements((Element) child, elements);
+            }
+        }
+    }
+
+    private static String getName(Element element) {
+        return element.getLocalName() != null ? element.getLocalName() : element.getNodeName();
+    }
+}
@@ -16,6 +16,7 @@ import de.betterform.xml.xforms.model.submission.Header;
 import de.betterform.xml.xforms.model.submission.Submission;
 import de.betterform.xml.xforms.ui.AVTElement;
 import de.betterform.xml.xforms.ui.AbstractUIElement;
+import de.betterform.xml.xforms.ui.DirtyRefreshFilter;
 import de.betterform.xml.xpath.XPathReferenceFinder;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -303,6 +304,9 @@ public class Initializer {
 
     /**
      * Updates all ui children of the specified element. This is called during refresh.
+     * <p/>
+     * If the model restricts the current refresh to its dirty region, static form controls are
+     * skipped. The model refreshes those bound to changed nodes afterwards.
      *
      * @param element the element to start with.
      * @param model xforms model the element belongs to.
@@ -310,6 +314,7 @@ public class Initializer {
      */
     public static void updateUIElements(Element element, Model model) throws XFormsException {
         NodeList childNodes = element.getChildNodes();
+        DirtyRefreshFilter filter = model.getRefreshFilter();
 
         for (int index = 0; index < childNodes.getLength(); index++) {
             Node node = childNodes.item(index);
@@ -321,6 +326,9 @@ public class Initializer {
                 if ((userData != null) && userData instanceof AbstractUIElement) {
                     // only refresh UIElements for the given model
                     if(((AbstractUIElement) userData).getModel().getId().equals(model.getId())){
+                        if (filter != null && filter.canSkip((AbstractUIElement) userData)) {
+                            continue;
+                        }
                         ((AbstractUIElement) userData).refresh();
                     }else{
                         Initializer.updateUIElements(elementImpl,model);
@@ -82,6 +82,8 @@ public interface XFormsConstants {
     // core elements
     String MODEL = "model";
     String MODEL_ATTRIBUTE = "model";
+    String MODE_ATTRIBUTE = "mode";
+    String MODE_ASYNCHRONOUS = "asynchronous";
     String FUNCTIONS = "functions";
 
     // action attributes
@@ -5,7 +5,9 @@
 
 package de.betterform.xml.xforms;
 
+import de.betterform.cache.CacheManager;
 import de.betterform.connector.ConnectorFactory;
+import de.betterform.session.BinaryDocumentSerializer;
 import de.betterform.session.DefaultSerializer;
 import de.betterform.xml.config.Config;
 import de.betterform.xml.config.XFormsConfigException;
@@ -15,6 +17,7 @@ import de.betterform.xml.events.XMLEventService;
 import de.betterform.xml.events.impl.DefaultXMLEventInitializer;
 import de.betterform.xml.events.impl.DefaultXMLEventService;
 import de.betterform.xml.events.impl.XercesXMLEventFactory;
+import de.betterform.xml.xforms.action.UpdateHandler;
 import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.model.Model;
 import de.betterform.xml.xforms.ui.AbstractFormControl;
@@ -31,7 +34,6 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
@@ -52,11 +54,25 @@ import java.util.*;
 public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
     public static final String BETTERFORM_LOCALE = "betterform.locale";
     public static final String BETTERFORM_ENABLE_L10N = "enable.l10n";
+    /**
+     * property switching on the compression of serialized sessions
+     */
+    public static final String SESSION_COMPRESS_PROPERTY = "betterform.session.compress";
+    /**
+     * property selecting the forms cached as parsed templates: 'file' (file URIs, invalidated on
+     * modification), 'all' (any URI) or 'none'
+     */
+    public static final String TEMPLATE_CACHE_PROPERTY = "betterform.cache.templates";
     private static final Log LOGGER = LogFactory.getLog(XFormsProcessorImpl.class);
     private static String APP_INFO = null;
 
     private static final long serialVersionUID = 140;
 
+    /**
+     * written in place of the host document XML of former versions to mark the binary format.
+     */
+    private static final String BINARY_FORMAT_MARKER = "";
+
     /**
      * The document container object model.
      */
@@ -77,6 +93,17 @@ public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
      */
     private ArrayList eventList;
 
+    /**
+     * The update handlers installed by {@link #beginDeferredUpdate()}, <code>null</code> if updates
+     * are not deferred.
+     */
+    private transient List deferredUpdateHandlers = null;
+
+    /**
+     * The ids of a passivated session to be restored by {@link #init()}, see {@link #readElementIds(ObjectInput)}.
+     */
+    private transient ElementIds restoredIds = null;
+
     /**
      * returns a list of events used by the form author. This list is build during init process in
      * AbstractAction.addListener.
@@ -263,14 +290,42 @@ public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
 
         // todo: refactor / fix uri resolution in connector factory to work without an init'd processor
         String absoluteURI = resolve(uri);
-        ConnectorFactory connectorFactory = ConnectorFactory.getFactory();
-        connectorFactory.setContext(getContext());
-        Node node = (Node) connectorFactory.createURIResolver(absoluteURI, null).resolve();
-
-        Document document = toDocument(node);
+        String templateKey = getTemplateKey(absoluteURI);
+        Document document = templateKey != null ? CacheManager.getTemplate(templateKey) : null;
+        if (document == null) {
+            ConnectorFactory connectorFactory = ConnectorFactory.getFactory();
+            connectorFactory.setContext(getContext());
+            Node node = (Node) connectorFactory.createURIResolver(absoluteURI, null).resolve();
+
+            document = toDocument(node);
+            if (templateKey != null) {
+                CacheManager.putTemplate(templateKey, document);
+            }
+        }
         createContainer().setDocument(document);
     }
 
+    /**
+     * returns the key of the form template cache for a form URI.
+     *
+     * @param absoluteURI the resolved form URI.
+     * @return the cache key or <code>null</code> if the form must not be cached.
+     */
+    private String getTemplateKey(String absoluteURI) throws XFormsException {
+        String mode = Config.getInstance().getProperty(TEMPLATE_CACHE_PROPERTY, "file");
+        if (absoluteURI.startsWith("file:") && !"none".equals(mode)) {
+            try {
+                File file = new File(new URI(absoluteURI).getSchemeSpecificPart());
+                // directories are resolved to listings which change without notice
+                return file.isFile() ? absoluteURI + file.lastModified() : null;
+            }
+            catch (URISyntaxException e) {
+                return null;
+            }
+        }
+        return "all".equals(mode) ? absoluteURI : null;
+    }
+
     /**
      * Sets the containing document.
      * <p/>
@@ -390,7 +445,20 @@ public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
         if(!getContext().containsKey(BETTERFORM_LOCALE)){
             setLocale();
         }
-        this.container.init();
+        if (this.restoredIds == null) {
+            this.container.init();
+            return;
+        }
+
+        // continue a passivated session without running the handlers of the initialization events again
+        this.container.setRestoring(true);
+        try {
+            this.container.init();
+        } finally {
+            this.container.setRestoring(false);
+        }
+        this.restoredIds.restore(this.container);
+        this.restoredIds = null;
     }
 
     /**
@@ -438,6 +506,26 @@ public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
         return this.container.dispatch(targetId,eventType,info,bubbles,cancelable);
     }
 
+    /**
+     * runs the replace processing of finished asynchronous submissions. Must be called by the thread
+     * processing the requests of this processor, the resulting events are dispatched as usual.
+     *
+     * @return <code>true</code> if any asynchronous submission has been completed.
+     * @throws XFormsException if no document container is present.
+     */
+    public boolean runPendingTasks() throws XFormsException {
+        ensureContainerPresent();
+        return this.container.runPendingTasks();
+    }
+
+    /**
+     * @return <code>true</code> if asynchronous submissions are running or waiting for their
+     * replace processing.
+     */
+    public boolean hasPendingTasks() {
+        return this.container != null && this.container.hasPendingTasks();
+    }
+
     public XFormsElement lookup(String id) {
         return this.container.lookup(id);
     }
@@ -618,10 +706,72 @@ public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
 
         // update model dependencies and UI
         Model model = repeat.getModel();
-        this.container.dispatch(model.getTarget(), XFormsEventNames.REBUILD, null);
-        this.container.dispatch(model.getTarget(), XFormsEventNames.RECALCULATE, null);
-        this.container.dispatch(model.getTarget(), XFormsEventNames.REVALIDATE, null);
-        this.container.dispatch(model.getTarget(), XFormsEventNames.REFRESH, null);
+        UpdateHandler updateHandler = model.getUpdateHandler();
+        if (updateHandler == null) {
+            this.container.dispatch(model.getTarget(), XFormsEventNames.REBUILD, null);
+            this.container.dispatch(model.getTarget(), XFormsEventNames.RECALCULATE, null);
+            this.container.dispatch(model.getTarget(), XFormsEventNames.REVALIDATE, null);
+            this.container.dispatch(model.getTarget(), XFormsEventNames.REFRESH, null);
+        }
+        else {
+            updateHandler.doRebuild(true);
+            updateHandler.doRecalculate(true);
+            updateHandler.doRevalidate(true);
+            updateHandler.doRefresh(true);
+        }
+    }
+
+    /**
+     * Starts deferring the rebuild, recalculate, revalidate and refresh of all models, like an
+     * outermost <code>action</code> element does for its child actions. Value changes, index
+     * changes and actions performed afterwards only mark the models for update, the updates are
+     * performed once by {@link #endDeferredUpdate()}.
+     * <p/>
+     * Models with an update handler of their own (e.g. during action processing) are left alone.
+     *
+     * @throws XFormsException if no document container is present or updates are already deferred.
+     */
+    public void beginDeferredUpdate() throws XFormsException {
+        ensureContainerPresent();
+        ensureContainerInitialized();
+        if (this.deferredUpdateHandlers != null) {
+            throw new XFormsException("updates are already deferred");
+        }
+
+        List handlers = new ArrayList();
+        List models = this.container.getModels();
+        for (int index = 0; index < models.size(); index++) {
+            Model model = (Model) models.get(index);
+            if (model.getUpdateHandler() == null) {
+                UpdateHandler updateHandler = new UpdateHandler(model);
+                model.setUpdateHandler(updateHandler);
+                handlers.add(updateHandler);
+            }
+        }
+        this.deferredUpdateHandlers = handlers;
+    }
+
+    /**
+     * Performs the updates deferred since {@link #beginDeferredUpdate()} for every model once.
+     *
+     * @throws XFormsException if an error occurred during an update.
+     */
+    public void endDeferredUpdate() throws XFormsException {
+        List handlers = this.deferredUpdateHandlers;
+        if (handlers == null) {
+            return;
+        }
+        this.deferredUpdateHandlers = null;
+
+        // first, remove all update handlers - then, perform the updates which
+        // could need their own update handlers
+        for (int index = 0; index < handlers.size(); index++) {
+            UpdateHandler updateHandler = (UpdateHandler) handlers.get(index);
+            updateHandler.getModel().setUpdateHandler(null);
+        }
+        for (int index = 0; index < handlers.size(); index++) {
+            ((UpdateHandler) handlers.get(index)).doUpdate();
+        }
     }
 
     /**
@@ -715,15 +865,10 @@ public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
     private DocumentBuilder getDocumentBuilder() throws XFormsException {
         // ensure xerces dom
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            factory.setValidating(false);
-            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            // factory.setAttribute("http://apache.org/xml/properties/dom/document-class-name", "org.apache.xerces.dom.DocumentImpl");
-
-            DocumentBuilder db = factory.newDocumentBuilder();
-            // use an empty entity resolver to avoid that Xerces may try to
+            // do not load the external DTD to avoid that Xerces may try to
             // download the system DTD (can cause latency problems)
+            DocumentBuilder db = DOMUtil.getDocumentBuilder(true, false, false);
+            // use an empty entity resolver, the pooled builder is reset before its next use
             db.setEntityResolver(new EntityResolver (){
             	public InputSource resolveEntity(String publicId,String systemId)
             		throws SAXException,IOException { return null; };
@@ -772,31 +917,59 @@ public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
         }
     }
 
+    /**
+     * writes the host document reset to its initial state with the current instance data inlined
+     * (see {@link DefaultSerializer}) in the binary format of {@link BinaryDocumentSerializer}. The
+     * encoded document is deflated unless 'betterform.session.compress' is set to false.
+     * <p/>
+     * The binary document is preceded by an empty UTF string. Sessions written by former versions start
+     * with the host document as a non-empty UTF string instead and can still be read.
+     *
+     * @param objectOutput
+     * @throws IOException
+     */
     public void writeExternal(ObjectOutput objectOutput) throws IOException {
         DefaultSerializer serializer = new DefaultSerializer(this);
         Document serializedForm = serializer.serialize();
 
-        StringWriter stringWriter = new StringWriter();
-        Transformer transformer = null;
-        StreamResult result = new StreamResult(stringWriter);
+        boolean compress;
         try {
-            transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-            transformer.transform(new DOMSource(serializedForm), result);
-        } catch (TransformerConfigurationException e) {
-            throw new IOException("TransformerConfiguration invalid: " + e.getMessage());
-        } catch (TransformerException e) {
-            throw new IOException("Error during serialization transform: " + e.getMessage());
-        }
-        objectOutput.writeUTF(stringWriter.getBuffer().toString());
+            compress = Boolean.valueOf(Config.getInstance().getProperty(SESSION_COMPRESS_PROPERTY, "true")).booleanValue();
+        } catch (XFormsConfigException e) {
+            throw new IOException("Configuration could not be loaded: " + e.getMessage());
+        }
+        objectOutput.writeUTF(BINARY_FORMAT_MARKER);
+        new BinaryDocumentSerializer(compress).write(serializedForm, objectOutput);
         objectOutput.flush();
-        objectOutput.close();
+    }
+
+    /**
+     * writes the ids of the elements of the host document so that a session passivated with
+     * {@link #writeExternal(ObjectOutput)} keeps the ids known to the client when it is continued. Must be
+     * called before writeExternal().
+     *
+     * @param objectOutput
+     * @throws IOException
+     */
+    public void writeElementIds(ObjectOutput objectOutput) throws IOException {
+        ElementIds.of(this.container).write(objectOutput);
+    }
 
+    /**
+     * reads the ids written by {@link #writeElementIds(ObjectOutput)}. The next call to init() continues the
+     * passivated session: the handlers of the initialization events are not run again and the elements get
+     * the ids of the passivated session. Must be called before readExternal().
+     *
+     * @param objectInput
+     * @throws IOException
+     */
+    public void readElementIds(ObjectInput objectInput) throws IOException {
+        this.restoredIds = ElementIds.read(objectInput);
     }
 
     /**
-     * reads serialized host document from ObjectInputStream and parses the resulting String
-     * to a DOM Document. After that the host document is passed to the processor. init() is NOT yet
+     * reads serialized host document from ObjectInputStream and decodes it to a DOM Document. Both the
+     * binary format and the XML string written by former versions are accepted. After that the host document is passed to the processor. init() is NOT yet
      * called on the processor to allow an using application to do its own configuration work (like
      * setting of baseURI and passing of context params).
      *
@@ -809,15 +982,22 @@ public class XFormsProcessorImpl implements XFormsProcessor, Externalizable{
         if(LOGGER.isDebugEnabled()){
             LOGGER.debug("deserializing XForms host document");
         }
-        String read = objectInput.readUTF();
-        Document host=null;
+        Document host;
+        String xml = objectInput.readUTF();
+        if (BINARY_FORMAT_MARKER.equals(xml)) {
+            host = BinaryDocumentSerializer.read(objectInput);
+        } else {
+            // session serialized by a former version
+            try {
+                host = DOMUtil.parseString(xml, true, false);
+            } catch (ParserConfigurationException e) {
+                throw new IOException("Parser misconfigured: " + e.getMessage());
+            } catch (SAXException e) {
+                throw new IOException("Parsing failed: " + e.getMessage());
+            }
+        }
         try {
-            host = DOMUtil.parseString(read,true,false);
             setXForms(host.getDocumentElement());
-        } catch (ParserConfigurationException e) {
-            throw new IOException("Parser misconfigured: " + e.getMessage());
-        } catch (SAXException e) {
-            throw new IOException("Parsing failed: " + e.getMessage());
         } catch (XFormsException e) {
             throw new IOException("An XForms error occurred when passing the host document: " + e.getMessage());
         }
@@ -253,6 +253,10 @@ public abstract class AbstractAction extends XFormsElement implements EventListe
      *              event's flow and default action.
      */
     public final void handleEvent(Event event) {
+        if (this.container.isRestoring()) {
+            // the handlers of the initialization events ran when the session was initialized first
+            return;
+        }
         try {
             if (event.getType().equals(this.eventType)) {
                 boolean doPerform = false;
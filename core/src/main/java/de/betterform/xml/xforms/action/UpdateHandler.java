@@ -41,6 +41,15 @@ public class UpdateHandler {
         this.refresh = false;
     }
 
+    /**
+     * Returns the model to be updated.
+     *
+     * @return the model to be updated.
+     */
+    public Model getModel() {
+        return this.model;
+    }
+
     /**
      * Tells the handler wether to perform a rebuild or not.
      *
@@ -27,10 +27,11 @@ import org.w3c.dom.*;
 import org.w3c.dom.traversal.DocumentTraversal;
 import org.w3c.dom.traversal.NodeFilter;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.TransformerException;
 import java.io.ByteArrayOutputStream;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Implementation of XForms instance Element.
@@ -44,6 +45,12 @@ public class Instance extends XFormsElement {
     private BetterFormXPathContext xPathContext = null;
     private static String READONLY_INSTANCE="readonly";
     private boolean isReadonly=false;
+    private Map<String, InstanceIndex> indexes = null;
+
+    /**
+     * a namespace prefix in a path, not matching axis names
+     */
+    private static final Pattern PATH_PREFIX = Pattern.compile("([\\p{L}_][\\p{L}\\p{N}_.\\-]*):(?!:)");
 
     /**
      * Creates a new Instance object.
@@ -104,6 +111,7 @@ public class Instance extends XFormsElement {
 
         this.initialInstance = null;
         this.instanceDocument = null;
+        this.indexes = null;
     }
 
 
@@ -164,17 +172,7 @@ public class Instance extends XFormsElement {
      * @param nodeset from which the model items should be retrieved
      */
     public Iterator iterateModelItems(List nodeset, boolean deep) {
-        // create list, fill and iterate it
-        // todo: optimize with live iterator
-
-        final List list = new ArrayList();
-
-        for (int i = 0; i < nodeset.size(); ++i) {
-            Node node =  de.betterform.xml.xpath.impl.saxon.XPathUtil.getAsNode(nodeset, i + 1);
-            listModelItems(list, node, deep);
-        }
-
-        return list.iterator();
+        return new ModelItemIterator(nodeset, deep);
     }
 
     /**
@@ -262,6 +260,8 @@ public class Instance extends XFormsElement {
             //todo: think this is wrong cause we want to attach ourselves as child element to object denoted by 'path'
             Node imported = this.instanceDocument.importNode(node, true);
             ((Element) item.getNode()).appendChild(imported);
+            nodeInserted(imported);
+            this.model.requireFullRebuild();
 //            item.setNode(node);
             this.model.addChanged((Node)item.getNode());
         } else {
@@ -299,7 +299,8 @@ public class Instance extends XFormsElement {
 
         Node parentNode = (Node) ((NodeWrapper) nodeset.get(position - 1)).getUnderlyingNode();
         try {
-        	parentNode.appendChild(createElement(qname));
+        	nodeInserted(parentNode.appendChild(createElement(qname)));
+        	this.model.requireFullRebuild();
         }
         catch(DOMException e) {
         	throw new XFormsBindingException(e.getMessage(), this.target, null);
@@ -327,6 +328,7 @@ public class Instance extends XFormsElement {
         else {
         	insertedNode = parentNode.insertBefore(this.instanceDocument.importNode(originNode, true), beforeNode);
         }
+        nodeInserted(insertedNode);
         String canonPath = DOMUtil.getCanonicalPath(insertedNode);
 
         ModelItem insertedModelItem = getModelItem(insertedNode);
@@ -351,6 +353,8 @@ public class Instance extends XFormsElement {
         }
 
 
+        this.model.addInsertedNode(insertedNode);
+
         // dispatch internal betterform event (for instant repeat updating)
         HashMap map = new HashMap();
         map.put("nodeset", canonicalParts[0]);
@@ -440,12 +444,14 @@ public class Instance extends XFormsElement {
 
         Node canonNode = node;
 
+        nodeDeleted(node);
         if (node.getNodeType() != Node.ATTRIBUTE_NODE) {
             node.getParentNode().removeChild(node);
         } else {
             Attr attr = (Attr) node;
             attr.getOwnerElement().removeAttributeNode(attr);
         }
+        this.model.addDeletedNode(node);
 
         // dispatch internal betterform event (for instant repeat updating)
         String[] canonicalParts = XPathUtil.getNodesetAndPredicates(path);
@@ -468,8 +474,7 @@ public class Instance extends XFormsElement {
      * @return
      */
     public List getInstanceNodeset() {
-        String baseURI = container.getProcessor().getBaseURI();
-        return de.betterform.xml.xpath.impl.saxon.XPathUtil.getRootContext(instanceDocument,baseURI);
+        return container.getRootContext(instanceDocument);
     }
 
     /**
@@ -486,6 +491,8 @@ public class Instance extends XFormsElement {
             DOMUtil.prettyPrintDOM(document);
         }
         this.instanceDocument = document;
+        this.indexes = null;
+        this.model.requireFullRebuild();
 
         storeContainerRef();
         initXPathContext();
@@ -575,12 +582,101 @@ public class Instance extends XFormsElement {
 
         // recreate instance document
         this.instanceDocument = createInstanceDocument();
+        this.indexes = null;
+        this.model.requireFullRebuild();
         storeContainerRef();
         initXPathContext();
 
     }
 
 
+    /**
+     * Returns the index of the rows selected by a path by the keys selected by another path,
+     * creating it on first use. Indexes are dropped when the instance document is replaced.
+     *
+     * @param rowPath the path selecting the rows relative to the root element.
+     * @param keyPath the path selecting the keys relative to a row.
+     * @param prefixMapping the namespace prefixes of the paths.
+     * @return the index.
+     */
+    public synchronized InstanceIndex getIndex(String rowPath, String keyPath, Map prefixMapping) {
+        if (this.indexes == null) {
+            this.indexes = new HashMap<String, InstanceIndex>();
+        }
+
+        String name = rowPath + " " + keyPath + " " + getNamespaces(rowPath, keyPath, prefixMapping);
+        InstanceIndex index = this.indexes.get(name);
+        if (index == null) {
+            index = new InstanceIndex(this, rowPath, keyPath, prefixMapping);
+            this.indexes.put(name, index);
+        }
+        return index;
+    }
+
+    /**
+     * Marks all indexes of this instance for rebuilding. Must be called after the instance document
+     * has been changed by other means than the methods of this class, e.g. by a submission replacing
+     * a node.
+     */
+    public void invalidateIndexes() {
+        Map<String, InstanceIndex> indexes = this.indexes;
+        if (indexes != null) {
+            for (Iterator<InstanceIndex> iterator = indexes.values().iterator(); iterator.hasNext();) {
+                iterator.next().invalidate();
+            }
+        }
+    }
+
+    /**
+     * Reports a changed node value to the indexes of this instance.
+     *
+     * @param node the changed node.
+     */
+    void nodeChanged(Node node) {
+        Map<String, InstanceIndex> indexes = this.indexes;
+        if (indexes != null) {
+            for (Iterator<InstanceIndex> iterator = indexes.values().iterator(); iterator.hasNext();) {
+                iterator.next().nodeChanged(node);
+            }
+        }
+    }
+
+    private void nodeInserted(Node node) {
+        Map<String, InstanceIndex> indexes = this.indexes;
+        if (indexes != null) {
+            for (Iterator<InstanceIndex> iterator = indexes.values().iterator(); iterator.hasNext();) {
+                iterator.next().nodeInserted(node);
+            }
+        }
+    }
+
+    private void nodeDeleted(Node node) {
+        Map<String, InstanceIndex> indexes = this.indexes;
+        if (indexes != null) {
+            for (Iterator<InstanceIndex> iterator = indexes.values().iterator(); iterator.hasNext();) {
+                iterator.next().nodeDeleted(node);
+            }
+        }
+    }
+
+    /**
+     * returns the namespaces bound to the prefixes used in the given paths, so that paths using the
+     * same prefixes for different namespaces get different indexes.
+     */
+    private static String getNamespaces(String rowPath, String keyPath, Map prefixMapping) {
+        if (prefixMapping == null || prefixMapping.isEmpty()) {
+            return "";
+        }
+        Map<String, Object> namespaces = new TreeMap<String, Object>();
+        if (prefixMapping.containsKey("")) {
+            namespaces.put("", prefixMapping.get(""));
+        }
+        for (Matcher matcher = PATH_PREFIX.matcher(rowPath + " " + keyPath); matcher.find();) {
+            namespaces.put(matcher.group(1), prefixMapping.get(matcher.group(1)));
+        }
+        return namespaces.toString();
+    }
+
     // XXX remove when geteModelItem is rewritten
     private Node getNode(String xpath) throws XFormsException{
         NodeInfo nodeInfo = (NodeInfo) XPathCache.getInstance().evaluate(this.xPathContext,xpath).get(0); 
@@ -609,6 +705,7 @@ public class Instance extends XFormsElement {
         }
 
         this.instanceDocument.appendChild(createElement(qname));
+        this.model.requireFullRebuild();
     }
 
     /**
@@ -726,10 +823,7 @@ public class Instance extends XFormsElement {
      */
     private Document createInstanceDocument() throws XFormsException {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(false);
-            factory.setValidating(false);
-            Document document = factory.newDocumentBuilder().newDocument();
+            Document document = DOMUtil.getDocumentBuilder(false, false).newDocument();
 
             if (this.initialInstance != null) {
                 Node imported =document.importNode(this.initialInstance.cloneNode(true), true);
@@ -775,27 +869,61 @@ public class Instance extends XFormsElement {
         }
 
         node.setUserData("", modelItem,null);
+        addChangedItem(node, modelItem);
         return modelItem;
     }
 
-    private void listModelItems(List list, Node node, boolean deep) {
-        ModelItem modelItem = (ModelItem) node.getUserData("");
-        if (modelItem == null) {
-            modelItem = createModelItem(node);
+    /**
+     * Copies the model items of a node, its attributes and its descendants to a deep copy of the node,
+     * e.g. for data submitted on another thread. The copied model items keep the computed states of
+     * the originals and are not connected to a model, so later changes of either side do not affect
+     * the other.
+     *
+     * @param source the node.
+     * @param target the copy of the node.
+     */
+    public static void copyModelItems(Node source, Node target) {
+        Node targetParent = target.getNodeType() == Node.ATTRIBUTE_NODE ? ((Attr) target).getOwnerElement() : target.getParentNode();
+        copyModelItems(source, target, targetParent != null ? (ModelItem) targetParent.getUserData("") : null);
+    }
+
+    private static void copyModelItems(Node source, Node target, ModelItem parent) {
+        Object object = source.getUserData("");
+        ModelItem modelItem = null;
+        if (object instanceof XercesNodeImpl) {
+            modelItem = ((XercesNodeImpl) object).copy(target, parent);
+            target.setUserData("", modelItem, null);
+        }
+
+        NamedNodeMap sourceAttributes = source.getAttributes();
+        NamedNodeMap targetAttributes = target.getAttributes();
+        for (int index = 0; sourceAttributes != null && targetAttributes != null && index < sourceAttributes.getLength(); index++) {
+            Node sourceAttribute = sourceAttributes.item(index);
+            Node targetAttribute = targetAttributes.getNamedItem(sourceAttribute.getNodeName());
+            if (targetAttribute != null) {
+                copyModelItems(sourceAttribute, targetAttribute, modelItem);
+            }
         }
-        list.add(modelItem);
 
-        if (deep) {
-            NamedNodeMap attributes = node.getAttributes();
-            for (int index = 0; attributes != null && index < attributes.getLength(); index++) {
-                listModelItems(list, attributes.item(index), deep);
-            }
-            if(node.getNodeType() !=  Node.ATTRIBUTE_NODE){
-                NodeList children = node.getChildNodes();
-                for (int index = 0; index < children.getLength(); index++) {
-                    listModelItems(list, children.item(index), deep);
-                }
-            }            
+        Node sourceChild = source.getFirstChild();
+        Node targetChild = target.getFirstChild();
+        while (sourceChild != null && targetChild != null) {
+            copyModelItems(sourceChild, targetChild, modelItem);
+            sourceChild = sourceChild.getNextSibling();
+            targetChild = targetChild.getNextSibling();
+        }
+    }
+
+    /**
+     * registers a model item created after model initialization with its model, so that its
+     * state is taken over by the next refresh.
+     */
+    private static void addChangedItem(Node node, ModelItem modelItem) {
+        Document document = node.getNodeType() == Node.DOCUMENT_NODE ? (Document) node : node.getOwnerDocument();
+        Element root = document != null ? document.getDocumentElement() : null;
+        Instance instance = root != null ? (Instance) root.getUserData("instance") : null;
+        if (instance != null && instance.getModel() != null) {
+            instance.getModel().addChangedItem(modelItem, false);
         }
     }
 
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model;
+
+import de.betterform.xml.xforms.exception.XFormsException;
+import de.betterform.xml.xforms.xpath.saxon.function.XPathFunctionContext;
+import de.betterform.xml.xpath.impl.saxon.XPathCache;
+import net.sf.saxon.dom.NodeWrapper;
+import net.sf.saxon.om.Item;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.util.*;
+
+/**
+ * Hash index of the rows of an instance by a key, see the <code>bf:lookup()</code> function.
+ * <p/>
+ * The rows are the nodes selected by the row path relative to the root element of the instance,
+ * the keys of a row are the string values of the items selected by the key path relative to the
+ * row. Keys must only depend on the content of the row. The index is built on first lookup and
+ * kept up to date by the instance:
+ * <ul>
+ * <li>value changes and deletions within a row mark the row for re-keying on the next lookup,</li>
+ * <li>insertions within a row are handled the same way,</li>
+ * <li>any other structural change makes the next lookup select the rows again, only rows not
+ * indexed yet are keyed and rows no longer selected are dropped,</li>
+ * <li>changes bypassing the instance, like submissions replacing nodes, mark the whole index for
+ * rebuilding on the next lookup by {@link Instance#invalidateIndexes()}.</li>
+ * </ul>
+ *
+ * @version $Id$
+ */
+public class InstanceIndex {
+
+    private static final Log LOGGER = LogFactory.getLog(InstanceIndex.class);
+
+    private final Instance instance;
+    private final String rowPath;
+    private final String keyPath;
+    private final Map prefixMapping;
+
+    private final Map<Node, Row> rows = new IdentityHashMap<Node, Row>();
+    private final Map<String, List<Row>> keys = new HashMap<String, List<Row>>();
+    private final Map<Node, Row> dirty = new IdentityHashMap<Node, Row>();
+    private boolean stale = true;
+    private boolean rowsChanged = false;
+    private int builds = 0;
+
+    /**
+     * Creates a new index.
+     *
+     * @param instance the indexed instance.
+     * @param rowPath the path selecting the rows relative to the root element of the instance.
+     * @param keyPath the path selecting the keys relative to a row.
+     * @param prefixMapping the namespace prefixes of the paths.
+     */
+    public InstanceIndex(Instance instance, String rowPath, String keyPath, Map prefixMapping) {
+        this.instance = instance;
+        this.rowPath = rowPath;
+        this.keyPath = keyPath;
+        this.prefixMapping = prefixMapping;
+    }
+
+    /**
+     * Returns the rows having one of the given keys in document order.
+     *
+     * @param values the keys.
+     * @return the rows having one of the keys.
+     * @throws XFormsException if a path could not be evaluated.
+     */
+    public synchronized List<Node> lookup(Collection<String> values) throws XFormsException {
+        if (this.stale) {
+            build();
+        } else {
+            if (this.rowsChanged) {
+                updateRows();
+            }
+            if (!this.dirty.isEmpty()) {
+                update();
+            }
+        }
+
+        List<Row> found = null;
+        Map<Row, Boolean> distinct = null;
+        for (Iterator<String> iterator = values.iterator(); iterator.hasNext();) {
+            List<Row> matches = this.keys.get(iterator.next());
+            if (matches == null) {
+                continue;
+            }
+            if (found == null) {
+                found = matches;
+                continue;
+            }
+            if (distinct == null) {
+                distinct = new IdentityHashMap<Row, Boolean>();
+                for (int index = 0; index < found.size(); index++) {
+                    distinct.put(found.get(index), Boolean.TRUE);
+                }
+                found = new ArrayList<Row>(found);
+            }
+            for (int index = 0; index < matches.size(); index++) {
+                if (distinct.put(matches.get(index), Boolean.TRUE) == null) {
+                    found.add(matches.get(index));
+                }
+            }
+        }
+
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        if (distinct != null) {
+            Collections.sort(found);
+        }
+
+        List<Node> result = new ArrayList<Node>(found.size());
+        for (int index = 0; index < found.size(); index++) {
+            result.add(found.get(index).node);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of times the index has been built.
+     */
+    public synchronized int getBuildCount() {
+        return this.builds;
+    }
+
+    /**
+     * Called after a node value is changed.
+     *
+     * @param node the changed node.
+     */
+    synchronized void nodeChanged(Node node) {
+        if (!this.stale) {
+            markRow(node);
+        }
+    }
+
+    /**
+     * Called after a node is inserted.
+     *
+     * @param node the inserted node.
+     */
+    synchronized void nodeInserted(Node node) {
+        if (!this.stale && !markRow(getParent(node))) {
+            // the node may be a new row or contain new rows
+            this.rowsChanged = true;
+        }
+    }
+
+    /**
+     * Called before a node is deleted.
+     *
+     * @param node the node to be deleted.
+     */
+    synchronized void nodeDeleted(Node node) {
+        if (!this.stale && !markRow(node) && node.getNodeType() == Node.ELEMENT_NODE) {
+            // the node may contain rows
+            this.rowsChanged = true;
+        }
+    }
+
+    /**
+     * Called after the instance document has been changed without reporting the single changes.
+     */
+    synchronized void invalidate() {
+        this.stale = true;
+    }
+
+    // ********************* helper ***************************************
+
+    private void build() throws XFormsException {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("building index " + this.rowPath + " by " + this.keyPath + " of " + this.instance.getId());
+        }
+
+        this.rows.clear();
+        this.keys.clear();
+        this.dirty.clear();
+        this.builds++;
+
+        List<Node> nodes = selectRows();
+        for (int index = 0; index < nodes.size(); index++) {
+            Node node = nodes.get(index);
+            if (!this.rows.containsKey(node)) {
+                Row row = new Row(node, this.rows.size());
+                this.rows.put(node, row);
+                addKeys(row);
+            }
+        }
+        this.stale = false;
+        this.rowsChanged = false;
+    }
+
+    /**
+     * Selects the rows again after nodes have been inserted or deleted outside of rows. Rows still
+     * selected keep their keys and get their new position, new rows are keyed, rows no longer
+     * selected are dropped.
+     */
+    private void updateRows() throws XFormsException {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("updating rows of index " + this.rowPath + " by " + this.keyPath + " of " + this.instance.getId());
+        }
+
+        Map<Node, Row> previous = new IdentityHashMap<Node, Row>(this.rows);
+        List<Row> added = new ArrayList<Row>();
+        this.rows.clear();
+
+        List<Node> nodes = selectRows();
+        for (int index = 0; index < nodes.size(); index++) {
+            Node node = nodes.get(index);
+            if (this.rows.containsKey(node)) {
+                continue;
+            }
+            Row row = previous.remove(node);
+            if (row == null) {
+                row = new Row(node, this.rows.size());
+                added.add(row);
+            } else {
+                // the document order of remaining rows is unchanged, so are their key lists
+                row.position = this.rows.size();
+            }
+            this.rows.put(node, row);
+        }
+
+        for (Iterator<Row> iterator = previous.values().iterator(); iterator.hasNext();) {
+            Row row = iterator.next();
+            removeKeys(row);
+            this.dirty.remove(row.node);
+        }
+        for (int index = 0; index < added.size(); index++) {
+            addKeys(added.get(index));
+        }
+        this.rowsChanged = false;
+    }
+
+    private List<Node> selectRows() throws XFormsException {
+        List nodeset = this.instance.getInstanceNodeset();
+        if (nodeset.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List items = XPathCache.getInstance().evaluate(nodeset, 1, this.rowPath, this.prefixMapping, getFunctionContext());
+        List<Node> nodes = new ArrayList<Node>(items.size());
+        for (int index = 0; index < items.size(); index++) {
+            nodes.add((Node) ((NodeWrapper) items.get(index)).getUnderlyingNode());
+        }
+        return nodes;
+    }
+
+    private void update() throws XFormsException {
+        for (Iterator<Row> iterator = this.dirty.values().iterator(); iterator.hasNext();) {
+            Row row = iterator.next();
+            removeKeys(row);
+            if (isAttached(row.node)) {
+                addKeys(row);
+            } else {
+                this.rows.remove(row.node);
+            }
+        }
+        this.dirty.clear();
+    }
+
+    private void addKeys(Row row) throws XFormsException {
+        List context = Collections.singletonList(this.instance.getContainerObject().getDocumentWrapper(row.node).wrap(row.node));
+        List items = XPathCache.getInstance().evaluate(context, 1, this.keyPath, this.prefixMapping, getFunctionContext());
+
+        row.keys = new String[items.size()];
+        for (int index = 0; index < items.size(); index++) {
+            String key = ((Item) items.get(index)).getStringValue();
+            row.keys[index] = key;
+
+            List<Row> list = this.keys.get(key);
+            if (list == null) {
+                list = new ArrayList<Row>(1);
+                this.keys.put(key, list);
+            }
+            // keep document order, re-keyed rows are inserted at their position
+            int position = Collections.binarySearch(list, row);
+            if (position < 0) {
+                list.add(-position - 1, row);
+            }
+        }
+    }
+
+    private void removeKeys(Row row) {
+        for (int index = 0; index < row.keys.length; index++) {
+            List<Row> list = this.keys.get(row.keys[index]);
+            if (list != null) {
+                list.remove(row);
+                if (list.isEmpty()) {
+                    this.keys.remove(row.keys[index]);
+                }
+            }
+        }
+        row.keys = Row.NO_KEYS;
+    }
+
+    /**
+     * Marks the row containing a node for re-keying.
+     *
+     * @return <code>true</code> if the node is contained in a row.
+     */
+    private boolean markRow(Node node) {
+        for (Node current = node; current != null; current = getParent(current)) {
+            Row row = this.rows.get(current);
+            if (row != null) {
+                this.dirty.put(current, row);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAttached(Node node) {
+        Document document = this.instance.getInstanceDocument();
+        for (Node current = node; current != null; current = getParent(current)) {
+            if (current == document) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private XPathFunctionContext getFunctionContext() {
+        return this.instance.getXPathFunctionContext();
+    }
+
+    private static Node getParent(Node node) {
+        return node.getNodeType() == Node.ATTRIBUTE_NODE ? ((Attr) node).getOwnerElement() : node.getParentNode();
+    }
+
+    private static class Row implements Comparable<Row> {
+        private static final String[] NO_KEYS = new String[0];
+
+        private final Node node;
+        private int position;
+        private String[] keys = NO_KEYS;
+
+        private Row(Node node, int position) {
+            this.node = node;
+            this.position = position;
+        }
+
+        public int compareTo(Row other) {
+            return this.position < other.position ? -1 : (this.position == other.position ? 0 : 1);
+        }
+    }
+}
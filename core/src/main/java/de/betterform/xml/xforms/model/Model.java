@@ -25,10 +25,14 @@ import de.betterform.xml.xforms.exception.XFormsLinkException;
 import de.betterform.xml.xforms.exception.XFormsVersionException;
 import de.betterform.xml.xforms.model.bind.Bind;
 import de.betterform.xml.xforms.model.bind.RefreshView;
+import de.betterform.xml.xforms.model.bind.StateChangeView;
 import de.betterform.xml.xforms.model.constraints.MainDependencyGraph;
 import de.betterform.xml.xforms.model.constraints.SubGraph;
 import de.betterform.xml.xforms.model.constraints.Validator;
 import de.betterform.xml.xforms.model.constraints.Vertex;
+import de.betterform.xml.xforms.ui.AbstractFormControl;
+import de.betterform.xml.xforms.ui.BoundControlIndex;
+import de.betterform.xml.xforms.ui.DirtyRefreshFilter;
 import de.betterform.xml.xpath.XPathUtil;
 import de.betterform.xml.xpath.impl.saxon.SaxonReferenceFinderImpl;
 import de.betterform.xml.xpath.impl.saxon.XPathCache;
@@ -39,7 +43,6 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.xerces.dom.DOMInputImpl;
 import org.apache.xerces.xs.*;
 import org.w3c.dom.*;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
 import org.w3c.dom.events.Event;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSResourceResolver;
@@ -53,6 +56,7 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URI;
@@ -88,6 +92,31 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
     private static XSModel defaultSchema = null;
     private List refreshedItems;
 
+    /**
+     * property switching on the incremental update of the main dependency graph after insert and delete
+     */
+    public static final String INCREMENTAL_REBUILD_PROPERTY = "betterform.rebuild.incremental";
+    private boolean incrementalRebuild;
+    private List insertedNodes;
+    private List deletedNodes;
+    private boolean fullRebuildRequired;
+
+    /**
+     * property selecting the refresh mode. 'full' refreshes all ui elements of this model, 'dirty'
+     * skips form controls bound to unchanged nodes unless a rebuild happened since the last refresh.
+     */
+    public static final String REFRESH_MODE_PROPERTY = "betterform.refresh.mode";
+    private boolean dirtyRefresh;
+    private boolean fullRefreshRequired = true;
+    private DirtyRefreshFilter refreshFilter;
+    private BoundControlIndex controlIndex;
+
+    /**
+     * model items whose state changed since the last refresh. The value tells whether the change
+     * is inherited by the descendants of the model item (relevance and readonly state).
+     */
+    private Map<ModelItem, Boolean> changedItems = new IdentityHashMap<ModelItem, Boolean>();
+
     /**
      * Creates a new Model object.
      *
@@ -282,6 +311,44 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
         }
     }
 
+    /**
+     * records a node inserted into an instance of this model. If incremental rebuild is enabled the
+     * next rebuild just adds the vertices of the inserted subtree to the main dependency graph.
+     *
+     * @param insertedNode the root of the inserted subtree
+     */
+    public void addInsertedNode(Node insertedNode) {
+        if (this.incrementalRebuild && this.mainGraph != null) {
+            if (this.insertedNodes == null) {
+                this.insertedNodes = new ArrayList();
+            }
+            this.insertedNodes.add(insertedNode);
+        }
+    }
+
+    /**
+     * records a node deleted from an instance of this model. If incremental rebuild is enabled the
+     * next rebuild just removes the vertices of the deleted subtree from the main dependency graph.
+     *
+     * @param deletedNode the root of the deleted subtree
+     */
+    public void addDeletedNode(Node deletedNode) {
+        if (this.incrementalRebuild && this.mainGraph != null) {
+            if (this.deletedNodes == null) {
+                this.deletedNodes = new ArrayList();
+            }
+            this.deletedNodes.add(deletedNode);
+        }
+    }
+
+    /**
+     * signals that instance data has been changed in a way the main dependency graph cannot be
+     * patched for, e.g. by replacing an instance. The next rebuild will build the graph from scratch.
+     */
+    public void requireFullRebuild() {
+        this.fullRebuildRequired = true;
+    }
+
     /**
      * adds a new instance to this model.
      *
@@ -361,6 +428,11 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
             getLogger().trace(this + " init");
         }
         this.refreshedItems = new ArrayList();
+        this.incrementalRebuild = Boolean.valueOf(Config.getInstance().getProperty(INCREMENTAL_REBUILD_PROPERTY, "false")).booleanValue();
+        this.dirtyRefresh = "dirty".equals(Config.getInstance().getProperty(REFRESH_MODE_PROPERTY, "full"));
+        if (this.dirtyRefresh) {
+            this.controlIndex = new BoundControlIndex();
+        }
 
         this.updateSequencer = new UpdateSequencer(this);
 
@@ -521,8 +593,10 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
             if (this.updateSequencer.sequence(REBUILD)) {
                 return;
             }
+            // bindings of ui elements may change with the instance structure
+            this.fullRefreshRequired = true;
 
-            if (this.modelBindings != null && this.modelBindings.size() > 0) {
+            if (this.modelBindings != null && this.modelBindings.size() > 0 && !rebuildIncrementally()) {
                 if (getLogger().isDebugEnabled()) {
                     getLogger().debug(this + " rebuild: creating main dependency graph for " +
                             this.modelBindings.size() + " bind(s)");
@@ -538,15 +612,46 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
 
                 this.changed = (Vector) this.mainGraph.getVertices().clone();
             }
+            this.insertedNodes = null;
+            this.deletedNodes = null;
+            this.fullRebuildRequired = false;
 
             this.updateSequencer.perform();
         }
         catch (Exception e) {
+            // the main graph might be patched partially
+            this.fullRebuildRequired = true;
             this.updateSequencer.reset();
             this.container.handleEventException(e);
         }
     }
 
+    /**
+     * patches the main dependency graph for the nodes inserted and deleted since the last rebuild.
+     *
+     * @return <code>false</code> if the graph has to be built from scratch.
+     * @throws XFormsException if an expression cannot be evaluated
+     */
+    private boolean rebuildIncrementally() throws XFormsException {
+        if (!this.incrementalRebuild || this.fullRebuildRequired || this.mainGraph == null ||
+                (this.insertedNodes == null && this.deletedNodes == null)) {
+            return false;
+        }
+
+        if (this.changed == null) {
+            this.changed = new Vector();
+        }
+        boolean patched = this.mainGraph.updateBindGraphs(this.modelBindings, this,
+                this.insertedNodes != null ? this.insertedNodes : Collections.EMPTY_LIST,
+                this.deletedNodes != null ? this.deletedNodes : Collections.EMPTY_LIST,
+                this.changed);
+
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug(this + " rebuild: " + (patched ? "patched main dependency graph" : "incremental rebuild not possible"));
+        }
+        return patched;
+    }
+
     /**
      * 7.3.3 The recalculate() Method
      * <p/>
@@ -626,6 +731,151 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
         }
     }
 
+    /**
+     * returns the filter restricting the current refresh to the dirty region of this model.
+     *
+     * @return the filter or <code>null</code> if all ui elements have to be refreshed.
+     */
+    public DirtyRefreshFilter getRefreshFilter() {
+        return this.refreshFilter;
+    }
+
+    /**
+     * returns the index of the form controls whose refresh may be restricted to the dirty region.
+     *
+     * @return the index or <code>null</code> if this model always refreshes all ui elements.
+     */
+    public BoundControlIndex getControlIndex() {
+        return this.controlIndex;
+    }
+
+    /**
+     * collects the nodes whose model items changed since the last refresh.
+     *
+     * @return a filter for the changed nodes or <code>null</code> if a full refresh is required.
+     * @throws XFormsException if the model items cannot be iterated
+     */
+    private DirtyRefreshFilter createRefreshFilter() throws XFormsException {
+        if (!this.dirtyRefresh || this.fullRefreshRequired || this.instances == null) {
+            return null;
+        }
+
+        DirtyRefreshFilter filter = new DirtyRefreshFilter(this.controlIndex);
+        List<ModelItem> items = listChangedItems();
+        for (int index = 0; index < items.size(); index++) {
+            ModelItem modelItem = items.get(index);
+            if (hasChanged(modelItem)) {
+                filter.addDirtyNode((Node) modelItem.getNode());
+            }
+        }
+
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug(this + " refresh: " + filter.size() + " dirty node(s)");
+        }
+        return filter;
+    }
+
+    /**
+     * records a model item whose state changed since the last refresh. Only these model items
+     * and, for inherited changes, their descendants are considered by the next refresh.
+     *
+     * @param modelItem the changed model item.
+     * @param inherited whether the descendants of the model item inherit the changed state.
+     */
+    public void addChangedItem(ModelItem modelItem, boolean inherited) {
+        if (!this.ready) {
+            // all model items are initialized when the model gets ready
+            return;
+        }
+
+        if (inherited) {
+            this.changedItems.put(modelItem, Boolean.TRUE);
+        }
+        else if (!this.changedItems.containsKey(modelItem)) {
+            this.changedItems.put(modelItem, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Returns the model items of an instance whose value changed since the last refresh, in no
+     * particular order. Only valid once the model is ready, before all model items are considered
+     * changed.
+     *
+     * @param instance the instance.
+     * @return the model items with changed values still attached to the instance document.
+     */
+    public List<ModelItem> listValueChangedItems(Instance instance) {
+        Document document = instance.getInstanceDocument();
+        List<ModelItem> items = new ArrayList<ModelItem>();
+        for (Iterator<ModelItem> iterator = this.changedItems.keySet().iterator(); iterator.hasNext();) {
+            ModelItem modelItem = iterator.next();
+            if (!modelItem.getStateChangeView().hasValueChanged()) {
+                continue;
+            }
+
+            // skip items of other instances and deleted items
+            Node node = (Node) modelItem.getNode();
+            if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+                node = ((Attr) node).getOwnerElement();
+            }
+            while (node != null && node != document) {
+                node = node.getParentNode();
+            }
+            if (node != null) {
+                items.add(modelItem);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * lists the model items changed since the last refresh, including the descendants of model
+     * items with inherited changes.
+     */
+    private List<ModelItem> listChangedItems() {
+        // iterating descendants may create and register new model items
+        Map<ModelItem, Boolean> changed = new IdentityHashMap<ModelItem, Boolean>(this.changedItems);
+        List<ModelItem> items = new ArrayList<ModelItem>(changed.size());
+        for (Iterator<Map.Entry<ModelItem, Boolean>> entries = changed.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry<ModelItem, Boolean> entry = entries.next();
+            if (entry.getValue().booleanValue()) {
+                Iterator iterator = new ModelItemIterator((Node) entry.getKey().getNode());
+                while (iterator.hasNext()) {
+                    items.add((ModelItem) iterator.next());
+                }
+            }
+            else {
+                items.add(entry.getKey());
+            }
+        }
+        return items;
+    }
+
+    private boolean hasChanged(ModelItem modelItem) {
+        StateChangeView stateChangeView = modelItem.getStateChangeView();
+        if (stateChangeView.hasValueChanged() || stateChangeView.hasValidChanged() ||
+                stateChangeView.hasEnabledChanged() || stateChangeView.hasReadonlyChanged() ||
+                stateChangeView.hasRequiredChanged()) {
+            return true;
+        }
+
+        RefreshView refreshView = modelItem.getRefreshView();
+        if (refreshView.isValueChangedMarked() || refreshView.isValidMarked() || refreshView.isInvalidMarked() ||
+                refreshView.isEnabledMarked() || refreshView.isDisabledMarked() ||
+                refreshView.isReadonlyMarked() || refreshView.isReadwriteMarked() ||
+                refreshView.isRequiredMarked() || refreshView.isOptionalMarked()) {
+            return true;
+        }
+
+        Iterator customMIPs = modelItem.getLocalUpdateView().getCustomMIPValues().keySet().iterator();
+        while (customMIPs.hasNext()) {
+            if (stateChangeView.hasCustomMIPChanged((String) customMIPs.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 7.3.5 The refresh() Method
      * <p/>
@@ -643,23 +893,53 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
                 return;
             }
 
-            Initializer.updateUIElements(this.container.getDocument().getDocumentElement(), this);
+            DirtyRefreshFilter previousFilter = this.refreshFilter;
+            this.refreshFilter = createRefreshFilter();
+            try {
+                Initializer.updateUIElements(this.container.getDocument().getDocumentElement(), this);
+                if (this.refreshFilter != null) {
+                    List<AbstractFormControl> controls = this.refreshFilter.getDirtyControls();
+                    for (int index = 0; index < controls.size(); index++) {
+                        controls.get(index).refresh();
+                    }
+                }
+                else if (this.controlIndex != null) {
+                    // a rebuild may have bound the indexed controls to other nodes
+                    this.controlIndex.update();
+                }
+            } finally {
+                this.refreshFilter = previousFilter;
+            }
+            boolean fullRefresh = this.fullRefreshRequired;
+            this.fullRefreshRequired = false;
 
             if (this.instances != null) {
                 Instance instance;
                 Iterator iterator;
                 ModelItem modelItem;
-                for (int index = 0; index < this.instances.size(); index++) {
-                    instance = (Instance) this.instances.get(index);
-
-                    // resets state keeping on model items
-                    iterator = instance.iterateModelItems();
+                if (fullRefresh) {
+                    // a rebuild may have changed the declared properties of any model item
+                    for (int index = 0; index < this.instances.size(); index++) {
+                        instance = (Instance) this.instances.get(index);
+
+                        // resets state keeping on model items
+                        iterator = instance.iterateModelItems();
+                        while (iterator.hasNext()) {
+                            modelItem = (ModelItem) iterator.next();
+                            modelItem.getStateChangeView().reset();
+                        }
+                    }
+                }
+                else {
+                    // resets state keeping on changed model items only
+                    iterator = listChangedItems().iterator();
                     while (iterator.hasNext()) {
                         modelItem = (ModelItem) iterator.next();
                         modelItem.getStateChangeView().reset();
                     }
                 }
             }
+            this.changedItems.clear();
 
             //reset refreshItems
             for (int index = 0; index < this.refreshedItems.size(); index++) {
@@ -1091,11 +1371,17 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
         this.refreshedItems.add(changed);
     }
 
-    private XSModel loadSchema(String uri) throws XFormsException, IllegalAccessException, ClassNotFoundException, InstantiationException {
+    private XSModel loadSchema(String uri) throws XFormsException {
         ConnectorFactory connectorFactory = this.container.getConnectorFactory();
-        URI absoluteURI = connectorFactory.getAbsoluteURI(uri, this.element);
+        final String absoluteURI = connectorFactory.getAbsoluteURI(uri, this.element).toString();
 
-        return getSchemaLoader().loadURI(absoluteURI.toString());
+        File file = SchemaCache.toFile(absoluteURI);
+        File[] files = file != null ? new File[]{file} : new File[0];
+        return (XSModel) SchemaCache.getInstance().get("schema:" + absoluteURI, files, new SchemaCache.Loader() {
+            public Object load() throws Exception {
+                return getSchemaLoader().loadURI(absoluteURI);
+            }
+        });
     }
 
     private XSModel loadSchema(InputStream stream) throws IllegalAccessException, ClassNotFoundException, InstantiationException {
@@ -1105,7 +1391,7 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
         return getSchemaLoader().load(input);
     }
 
-    private XSModel loadSchema(Element element) throws TransformerException, IllegalAccessException, InstantiationException, ClassNotFoundException {
+    private XSModel loadSchema(Element element) throws TransformerException, XFormsException {
         Element copy = (Element) element.cloneNode(true);
         NamespaceResolver.applyNamespaces(element, copy);
 
@@ -1113,9 +1399,16 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
         Transformer transformer = TransformerFactory.newInstance().newTransformer();
         transformer.setOutputProperty(OutputKeys.METHOD, "xml");
         transformer.transform(new DOMSource(copy), new StreamResult(stream));
-        byte[] array = stream.toByteArray();
-
-        return loadSchema(new ByteArrayInputStream(array));
+        final byte[] array = stream.toByteArray();
+
+        // imports and includes of inline schemas are resolved against the base uri of the form
+        String baseURI = this.container.getProcessor() != null ? this.container.getProcessor().getBaseURI() : null;
+        String key = "inline:" + SchemaCache.digest(array) + "@" + baseURI;
+        return (XSModel) SchemaCache.getInstance().get(key, new File[0], new SchemaCache.Loader() {
+            public Object load() throws Exception {
+                return loadSchema(new ByteArrayInputStream(array));
+            }
+        });
     }
 
 
@@ -1123,9 +1416,7 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
             InstantiationException, ClassNotFoundException {
         // System.setProperty(DOMImplementationRegistry.PROPERTY,
         // "org.apache.xerces.dom.DOMXSImplementationSourceImpl");
-        DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
-        XSImplementation implementation = (XSImplementation) registry.getDOMImplementation("XS-Loader");
-        XSLoader loader = implementation.createXSLoader(null);
+        XSLoader loader = SchemaCache.getImplementation().createXSLoader(null);
 
         DOMConfiguration cfg = loader.getConfig();
 
@@ -1231,6 +1522,8 @@ public class Model extends XFormsElement implements XFormsModelElement, DefaultA
                                 if (LOGGER.isDebugEnabled()) {
                                     LOGGER.debug("loading schema resource '" + schemaURI.toString() + "'\n\n");
                                 }
+                                // a cached schema has to be loaded again when an imported or included one changes
+                                SchemaCache.addDependency(schemaURI.toString());
                                 return ConnectorFactory.getFactory().getHTTPResourceAsStream(schemaURI);
 
                             } else {
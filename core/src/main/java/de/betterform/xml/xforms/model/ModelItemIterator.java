@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model;
+
+import de.betterform.xml.xpath.impl.saxon.XPathUtil;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Live iterator over the model items of a nodeset.
+ * <p/>
+ * The nodes are visited in document order, each node followed by its attributes and, if deep
+ * iteration was requested, its descendants. The DOM is walked while iterating instead of copying
+ * the model items into a list first, missing model items are created on the fly. The nodes must
+ * not be modified during iteration.
+ *
+ * @version $Id$
+ */
+class ModelItemIterator implements Iterator {
+
+    private final List nodeset;
+    private final boolean deep;
+    private int position;
+    private Node root;
+    private Node next;
+
+    // attributes of the element currently visited
+    private Node owner;
+    private NamedNodeMap attributes;
+    private int attributeIndex;
+
+    /**
+     * Creates a new iterator over the model items of a nodeset.
+     *
+     * @param nodeset the nodeset as returned by an XPath evaluation.
+     * @param deep include attributes and children or not.
+     */
+    ModelItemIterator(List nodeset, boolean deep) {
+        this.nodeset = nodeset;
+        this.deep = deep;
+        this.next = nextRoot();
+    }
+
+    /**
+     * Creates a new iterator over the model items of a node and its attributes and descendants.
+     *
+     * @param node the node.
+     */
+    ModelItemIterator(Node node) {
+        this.nodeset = null;
+        this.deep = true;
+        this.root = node;
+        this.next = node;
+    }
+
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    public Object next() {
+        if (this.next == null) {
+            throw new NoSuchElementException();
+        }
+
+        Node node = this.next;
+        ModelItem modelItem = (ModelItem) node.getUserData("");
+        if (modelItem == null) {
+            modelItem = Instance.createModelItem(node);
+        }
+
+        this.next = this.deep ? following(node) : nextRoot();
+        return modelItem;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private Node nextRoot() {
+        if (this.nodeset == null || this.position >= this.nodeset.size()) {
+            this.root = null;
+            return null;
+        }
+
+        this.position++;
+        this.root = XPathUtil.getAsNode(this.nodeset, this.position);
+        return this.root;
+    }
+
+    private Node following(Node node) {
+        if (this.attributes != null) {
+            // visiting the attributes of the owner element
+            this.attributeIndex++;
+            if (this.attributeIndex < this.attributes.getLength()) {
+                return this.attributes.item(this.attributeIndex);
+            }
+
+            Node element = this.owner;
+            this.owner = null;
+            this.attributes = null;
+            return firstChildOrNext(element);
+        }
+
+        if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+            return nextRoot();
+        }
+
+        NamedNodeMap map = node.getAttributes();
+        if (map != null && map.getLength() > 0) {
+            this.owner = node;
+            this.attributes = map;
+            this.attributeIndex = 0;
+            return map.item(0);
+        }
+
+        return firstChildOrNext(node);
+    }
+
+    private Node firstChildOrNext(Node node) {
+        Node child = node.getFirstChild();
+        if (child != null) {
+            return child;
+        }
+
+        Node current = node;
+        while (current != null && current != this.root) {
+            Node sibling = current.getNextSibling();
+            if (sibling != null) {
+                return sibling;
+            }
+            current = current.getParentNode();
+        }
+
+        return nextRoot();
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.config.XFormsConfigException;
+import de.betterform.xml.xforms.exception.XFormsException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.xerces.xs.XSImplementation;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process-wide cache of loaded XML Schemas.
+ * <p/>
+ * Loaded schemas (XSModels, grammar pools, target namespaces) do not change once loaded and are
+ * shared by the models of all sessions. Entries are keyed by the absolute schema URI or, for
+ * inline schemas, by a digest of their content. Entries loaded from files are loaded again when
+ * one of the files is modified, including files of imported or included schemas reported with
+ * {@link #addDependency(String)} while loading. The cache can be switched off with the property
+ * 'betterform.schema.cache.enabled' of betterform-config. Hit and miss counters are published
+ * through JMX under the name {@link #OBJECT_NAME}.
+ *
+ * @version $Id$
+ */
+public class SchemaCache implements SchemaCacheMBean {
+
+    private static final Log LOGGER = LogFactory.getLog(SchemaCache.class);
+
+    public static final String CACHE_ENABLED_PROPERTY = "betterform.schema.cache.enabled";
+    public static final String OBJECT_NAME = "de.betterform:type=SchemaCache";
+    public static final int MAX_SIZE = 100;
+
+    private static final SchemaCache fgSchemaCache = new SchemaCache();
+    private static final ThreadLocal<Dependencies> LOADING = new ThreadLocal<Dependencies>();
+    private static XSImplementation implementation;
+
+    public static SchemaCache getInstance() {
+        return fgSchemaCache;
+    }
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(fgSchemaCache, name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("SchemaCache could not be registered as MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads a cache entry on a cache miss.
+     */
+    public interface Loader {
+
+        /**
+         * @return the loaded value, never <code>null</code>.
+         * @throws Exception if the value could not be loaded.
+         */
+        Object load() throws Exception;
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+    private volatile boolean configured = false;
+    private volatile boolean enabled = true;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+
+    private SchemaCache() {
+    }
+
+    /**
+     * returns the XML Schema implementation used to create schema loaders. The implementation is
+     * looked up once, as the lookup through the DOMImplementationRegistry is expensive.
+     *
+     * @return the XML Schema implementation.
+     */
+    public static synchronized XSImplementation getImplementation() throws IllegalAccessException,
+            InstantiationException, ClassNotFoundException {
+        if (implementation == null) {
+            DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
+            implementation = (XSImplementation) registry.getDOMImplementation("XS-Loader");
+        }
+        return implementation;
+    }
+
+    /**
+     * returns a cached entry or loads it.
+     *
+     * @param key the cache key.
+     * @param files the files the entry is loaded from, an entry is loaded again when one of them
+     * is modified. Entries of other resources are kept until evicted.
+     * @param loader loads the entry on a cache miss.
+     * @return the cached or loaded entry.
+     * @throws XFormsException if the entry could not be loaded.
+     */
+    public Object get(String key, File[] files, Loader loader) throws XFormsException {
+        if (!this.configured) {
+            configure();
+        }
+
+        if (this.enabled) {
+            Entry entry;
+            synchronized (this.entries) {
+                entry = this.entries.get(key);
+            }
+            if (entry != null) {
+                if (!entry.isModified()) {
+                    this.hits.incrementAndGet();
+                    return entry.value;
+                }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("reloading modified schema entry " + key);
+                }
+                this.reloads.incrementAndGet();
+            }
+        }
+
+        this.misses.incrementAndGet();
+        // take the modification times first, so a modification during load is not missed
+        Dependencies dependencies = new Dependencies();
+        for (int index = 0; index < files.length; index++) {
+            dependencies.add(files[index]);
+        }
+
+        Dependencies outer = LOADING.get();
+        LOADING.set(dependencies);
+        Object value;
+        try {
+            value = loader.load();
+        }
+        catch (XFormsException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new XFormsException(e);
+        }
+        finally {
+            if (outer != null) {
+                // an entry loaded while loading another one depends on the same files
+                outer.addAll(dependencies);
+                LOADING.set(outer);
+            }
+            else {
+                LOADING.remove();
+            }
+        }
+        if (value == null) {
+            throw new XFormsException("schema entry " + key + " could not be loaded");
+        }
+
+        if (this.enabled) {
+            synchronized (this.entries) {
+                this.entries.put(key, new Entry(value, dependencies));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * records a resource read while an entry is loaded on the current thread, e.g. an imported or
+     * included schema. The entry is loaded again when the resource is modified.
+     *
+     * @param uri the absolute URI of the resource. Resources other than files are ignored.
+     */
+    public static void addDependency(String uri) {
+        Dependencies dependencies = LOADING.get();
+        File file = toFile(uri);
+        if (dependencies != null && file != null) {
+            dependencies.add(file);
+        }
+    }
+
+    /**
+     * returns the file of a <code>file</code> URI.
+     *
+     * @param uri the URI.
+     * @return the file or <code>null</code> if the URI does not denote a file.
+     */
+    public static File toFile(String uri) {
+        if (uri == null || !uri.startsWith("file:")) {
+            return null;
+        }
+        try {
+            return new File(new URI(uri).getSchemeSpecificPart());
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * returns the files of the given URIs that denote files.
+     */
+    public static File[] toFiles(String[] uris) {
+        int count = 0;
+        File[] files = new File[uris.length];
+        for (int index = 0; index < uris.length; index++) {
+            File file = toFile(uris[index]);
+            if (file != null) {
+                files[count++] = file;
+            }
+        }
+
+        File[] result = new File[count];
+        System.arraycopy(files, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * computes a digest of schema content to be used as cache key.
+     *
+     * @param content the serialized schema.
+     * @return the hex encoded digest.
+     */
+    public static String digest(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            StringBuffer buffer = new StringBuffer(digest.length * 2);
+            for (int index = 0; index < digest.length; index++) {
+                int value = digest[index] & 0xff;
+                if (value < 0x10) {
+                    buffer.append('0');
+                }
+                buffer.append(Integer.toHexString(value));
+            }
+            return buffer.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-1
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * reads the cache settings from betterform-config. Called lazily on first use as the
+     * configuration might not be loaded yet when this class is initialized.
+     */
+    private synchronized void configure() {
+        if (this.configured) {
+            return;
+        }
+        try {
+            this.enabled = Boolean.valueOf(Config.getInstance().getProperty(CACHE_ENABLED_PROPERTY, "true")).booleanValue();
+        } catch (XFormsConfigException e) {
+            LOGGER.warn("SchemaCache could not read configuration - using defaults: " + e.getMessage());
+        }
+        this.configured = true;
+    }
+
+    /**
+     * forces the cache settings to be re-read from betterform-config on next use.
+     */
+    public synchronized void reconfigure() {
+        this.configured = false;
+        clear();
+    }
+
+    // SchemaCacheMBean
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getReloads() {
+        return this.reloads.get();
+    }
+
+    public double getHitRatio() {
+        long hitCount = this.hits.get();
+        long lookups = hitCount + this.misses.get();
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    public void resetStatistics() {
+        this.hits.set(0);
+        this.misses.set(0);
+        this.reloads.set(0);
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final File[] files;
+        private final long[] modified;
+
+        Entry(Object value, Dependencies dependencies) {
+            this.value = value;
+            this.files = new File[dependencies.modified.size()];
+            this.modified = new long[this.files.length];
+            int index = 0;
+            for (Map.Entry<File, Long> dependency : dependencies.modified.entrySet()) {
+                this.files[index] = dependency.getKey();
+                this.modified[index] = dependency.getValue().longValue();
+                index++;
+            }
+        }
+
+        boolean isModified() {
+            for (int index = 0; index < this.files.length; index++) {
+                if (this.files[index].lastModified() != this.modified[index]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The files an entry is loaded from along with their modification times when first read.
+     */
+    private static final class Dependencies {
+        private final Map<File, Long> modified = new LinkedHashMap<File, Long>();
+
+        void add(File file) {
+            if (!this.modified.containsKey(file)) {
+                this.modified.put(file, Long.valueOf(file.lastModified()));
+            }
+        }
+
+        void addAll(Dependencies dependencies) {
+            for (Map.Entry<File, Long> dependency : dependencies.modified.entrySet()) {
+                if (!this.modified.containsKey(dependency.getKey())) {
+                    this.modified.put(dependency.getKey(), dependency.getValue());
+                }
+            }
+        }
+    }
+}
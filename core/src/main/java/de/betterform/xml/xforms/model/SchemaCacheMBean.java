@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model;
+
+/**
+ * JMX management interface of the {@link SchemaCache}.
+ *
+ * @version $Id$
+ */
+public interface SchemaCacheMBean {
+
+    /**
+     * @return true if loaded schemas are cached
+     */
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return number of entries currently held
+     */
+    int getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return number of entries loaded again because their file was modified
+     */
+    long getReloads();
+
+    /**
+     * @return hits divided by lookups or 0 if there have been no lookups yet
+     */
+    double getHitRatio();
+
+    /**
+     * removes all entries from the cache.
+     */
+    void clear();
+
+    void resetStatistics();
+}
@@ -18,8 +18,6 @@ import org.w3c.dom.NodeList;
  */
 class XercesElementImpl extends XercesNodeImpl {
 
-    private Element element;
-
     /**
      * Creates a new Xerces ElementImpl based ModelItem implementation.
      *
@@ -29,23 +27,13 @@ class XercesElementImpl extends XercesNodeImpl {
         super(id);
     }
 
-    /**
-     * Returns the node of this model item.
-     *
-     * @return the node of this model item.
-     */
-    public Object getNode() {
-        return this.element;
-    }
-
     /**
      * Stes the node of this model item.
      *
      * @param node the node of this model item.
      */
     public void setNode(Object node) {
-        this.element = (Element) node;
-        this.node = (Node) node;
+        this.node = (Element) node;
     }
 
     /**
@@ -54,10 +42,8 @@ class XercesElementImpl extends XercesNodeImpl {
      * @return the value of this model item.
      */
     public String getValue() {
-        Node child;
-        NodeList children = this.element.getChildNodes();
-        for (int index = 0; index < children.getLength(); index++) {
-            child = children.item(index);
+        // walk siblings instead of using a NodeList, which caches state in the document
+        for (Node child = this.node.getFirstChild(); child != null; child = child.getNextSibling()) {
             if (Node.TEXT_NODE == child.getNodeType() ||
                     Node.CDATA_SECTION_NODE == child.getNodeType()) {
                 return child.getNodeValue();
@@ -75,15 +61,12 @@ class XercesElementImpl extends XercesNodeImpl {
     public boolean setValue(String value) {
         if (valueChanged(value)) {
             // check for @xsi:nil
-            Node nil = this.element.getAttributeNodeNS(NamespaceConstants.XMLSCHEMA_INSTANCE_NS, "nil");
+            Node nil = getElement().getAttributeNodeNS(NamespaceConstants.XMLSCHEMA_INSTANCE_NS, "nil");
             if (nil != null) {
                 nil.setNodeValue(String.valueOf(value == null || value.length() == 0));
             }
 
-            Node child;
-            NodeList children = this.element.getChildNodes();
-            for (int index = 0; index < children.getLength(); index++) {
-                child = children.item(index);
+            for (Node child = this.node.getFirstChild(); child != null; child = child.getNextSibling()) {
                 if (Node.TEXT_NODE == child.getNodeType() ||
                         Node.CDATA_SECTION_NODE == child.getNodeType()) {
                     child.setNodeValue(value);
@@ -91,7 +74,7 @@ class XercesElementImpl extends XercesNodeImpl {
                 }
             }
 
-            this.element.insertBefore(this.element.getOwnerDocument().createTextNode(value), this.element.getFirstChild());
+            this.node.insertBefore(this.node.getOwnerDocument().createTextNode(value), this.node.getFirstChild());
             return true;
         }else {
             return false;
@@ -109,7 +92,7 @@ class XercesElementImpl extends XercesNodeImpl {
      * <code>false</code>.
      */
     public boolean isXSINillable() {
-        return this.element.getAttributeNS(NamespaceConstants.XMLSCHEMA_INSTANCE_NS, "nil").equals("true");
+        return getElement().getAttributeNS(NamespaceConstants.XMLSCHEMA_INSTANCE_NS, "nil").equals("true");
     }
 
     /**
@@ -122,9 +105,12 @@ class XercesElementImpl extends XercesNodeImpl {
      * <code>null</code> if there is no such type declaration.
      */
     public String getXSIType() {
-        return this.element.hasAttributeNS(NamespaceConstants.XMLSCHEMA_INSTANCE_NS, "type")
-                ? this.element.getAttributeNS(NamespaceConstants.XMLSCHEMA_INSTANCE_NS, "type")
+        return getElement().hasAttributeNS(NamespaceConstants.XMLSCHEMA_INSTANCE_NS, "type")
+                ? getElement().getAttributeNS(NamespaceConstants.XMLSCHEMA_INSTANCE_NS, "type")
                 : null;
     }
 
+    private Element getElement() {
+        return (Element) this.node;
+    }
 }
@@ -47,7 +47,7 @@ class XercesNodeImpl implements ModelItem {
     public XercesNodeImpl(String id) {
         this.id = id;
         this.declarationView = new DeclarationViewImpl();
-        this.localUpdateView = new LocalUpdateViewImpl();
+        this.localUpdateView = new LocalUpdateViewImpl(this);
         this.stateChangeView = new StateChangeViewImpl(this);
         this.refreshView = new RefreshViewImpl(this);
     }
@@ -253,6 +253,27 @@ class XercesNodeImpl implements ModelItem {
         return this.mediatype;
     }
 
+    /**
+     * Returns a copy of this model item for a copy of its node. The copy keeps the computed states of
+     * this model item and does not report changes to a model.
+     *
+     * @param node the copy of the node.
+     * @param parent the model item of the parent of the copy or <code>null</code>.
+     * @return the copy of this model item.
+     */
+    XercesNodeImpl copy(Node node, ModelItem parent) {
+        XercesNodeImpl copy = node.getNodeType() == Node.ELEMENT_NODE ? new XercesElementImpl(this.id) : new XercesNodeImpl(this.id);
+        copy.setNode(node);
+        copy.parent = parent;
+        copy.declarationView = this.declarationView.copy();
+        copy.localUpdateView = this.localUpdateView.copy();
+        copy.localUpdateView.setLocalReadonly(isReadonly());
+        copy.localUpdateView.setLocalRelevant(isRelevant());
+        copy.filename = this.filename;
+        copy.mediatype = this.mediatype;
+        return copy;
+    }
+
     // helper
 
     /**
@@ -276,23 +297,34 @@ class XercesNodeImpl implements ModelItem {
         // notify state change view
         this.stateChangeView.setValueChanged(); //todo: remove this once refreshview is in place
         this.refreshView.setValueChangedMarker();
+        Instance instance = getInstance();
+        if (instance != null) {
+            instance.nodeChanged(this.node);
+        }
+        Model model = getModel();
+        if (model != null) {
+            model.addChangedItem(this, false);
+        }
         return true;
     }
 
     public Model getModel() {
+        Instance instance = getInstance();
+        if(instance != null) {
+            return instance.getModel();
+        }
+        LOGGER.warn("Node is probably null");
+        return null;
+    }
+
+    private Instance getInstance() {
         if(this.node != null) {
-            Instance instance;
             if (this.node instanceof Document) {
-                instance = (Instance) ((Document) this.node).getDocumentElement().getUserData("instance");
+                return (Instance) ((Document) this.node).getDocumentElement().getUserData("instance");
             } else {
-                instance = (Instance) this.node.getOwnerDocument().getDocumentElement().getUserData("instance");
+                return (Instance) this.node.getOwnerDocument().getDocumentElement().getUserData("instance");
             }
-            if(instance != null) {
-                return instance.getModel();
-            }
-
         }
-        LOGGER.warn("Node is probably null");
         return null;
     }
 
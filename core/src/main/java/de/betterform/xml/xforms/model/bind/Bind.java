@@ -65,6 +65,7 @@ public class Bind extends XFormsElement implements Binding, DefaultAction {
     private Set calculateReferences;
     private Set constraintReferences;
     private HashMap<String, Set> customMIPReferences;
+    private boolean positionSensitive;
 
     protected List nodeset;
 
@@ -355,6 +356,16 @@ public class Bind extends XFormsElement implements Binding, DefaultAction {
         return this.customMIPReferences;
     }
 
+    /**
+     * Returns whether any model item property expression of this bind depends on node positions.
+     *
+     * @return <code>true</code> if an expression uses <code>position()</code>, <code>last()</code>
+     * or a numeric predicate.
+     */
+    public boolean isPositionSensitive() {
+        return this.positionSensitive;
+    }
+
     // implementation of 'de.betterform.xml.events.DefaultAction'
 
     /**
@@ -465,6 +476,13 @@ public class Bind extends XFormsElement implements Binding, DefaultAction {
 	            	this.customMIPReferences.put(key, this.referenceFinder.getReferences(this.customMIPs.get(key), getPrefixMapping(), this.container));
 				}
 	        }
+
+            this.positionSensitive = isPositionSensitive(this.readonly) || isPositionSensitive(this.required)
+                    || isPositionSensitive(this.relevant) || isPositionSensitive(this.calculate)
+                    || isPositionSensitive(this.constraint);
+            for (Iterator it = this.customMIPs.values().iterator(); !this.positionSensitive && it.hasNext();) {
+                this.positionSensitive = isPositionSensitive((String) it.next());
+            }
 	        	
 	        updateXPathContext();
         }
@@ -476,6 +494,10 @@ public class Bind extends XFormsElement implements Binding, DefaultAction {
         }
     }
 
+    private boolean isPositionSensitive(String expression) throws XFormsException {
+        return expression != null && this.referenceFinder.isPositionSensitive(expression, getPrefixMapping(), this.container);
+    }
+
     /**
      * Initializes all bound model items.
      *
@@ -94,6 +94,14 @@ public interface LocalUpdateView {
 	public Map<String, String> getCustomMIPValues();
 	
 	public void setCustomMIPValues(Map<String, String> customMIPValues);
+
+    /**
+     * Sets the value of a custom model item property.
+     *
+     * @param name the prefixed name of the custom property.
+     * @param value the value of the custom property.
+     */
+    void setCustomMIPValue(String name, String value);
     
 
 }
@@ -8,6 +8,8 @@ package de.betterform.xml.xforms.model.bind.impl;
 import de.betterform.xml.xforms.model.bind.DeclarationView;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.logging.Log;
@@ -36,7 +38,30 @@ public class DeclarationViewImpl implements DeclarationView {
      * Creates a new declaration viewport implementation.
      */
     public DeclarationViewImpl() {
-        this.constraints=new ArrayList();
+        this.constraints = Collections.EMPTY_LIST;
+    }
+
+    /**
+     * Returns a copy of the declarations.
+     *
+     * @return a copy of the declarations.
+     */
+    public DeclarationViewImpl copy() {
+        DeclarationViewImpl copy = new DeclarationViewImpl();
+        copy.datatype = this.datatype;
+        copy.readonly = this.readonly;
+        copy.required = this.required;
+        copy.relevant = this.relevant;
+        copy.calculate = this.calculate;
+        copy.constraint = this.constraint;
+        if (this.constraints != Collections.EMPTY_LIST) {
+            copy.constraints = new ArrayList(this.constraints);
+        }
+        if (this.customMIPs != null) {
+            copy.customMIPs = new HashMap<String, String>(this.customMIPs);
+        }
+        copy.p3ptype = this.p3ptype;
+        return copy;
     }
 
     // implementation of 'de.betterform.xml.xforms.model.bind.DeclarationView'
@@ -164,6 +189,9 @@ public class DeclarationViewImpl implements DeclarationView {
     }
 
     public void addConstraint(String constraint) {
+        if (this.constraints == Collections.EMPTY_LIST) {
+            this.constraints = new ArrayList();
+        }
         this.constraints.add(constraint);
     }
 
@@ -5,24 +5,33 @@
 
 package de.betterform.xml.xforms.model.bind.impl;
 
+import de.betterform.xml.xforms.model.Model;
+import de.betterform.xml.xforms.model.ModelItem;
 import de.betterform.xml.xforms.model.bind.LocalUpdateView;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Local Update viewport implementation.
+ * <p/>
+ * The local states are kept as bits of a single field and the custom property map is only created
+ * when a custom property is set, since every instance node has a local update view.
  *
  * @author Ulrich Nicolas Liss&eacute;
  * @version $Id: LocalUpdateViewImpl.java 2090 2006-03-16 09:37:00Z joernt $
  */
 public class LocalUpdateViewImpl implements LocalUpdateView {
 
-    private boolean datatypeValid;
-    private boolean localReadonly;
-    private boolean localRequired;
-    private boolean localRelevant;
-    private boolean constraintValid;
+    private static final int DATATYPE_VALID = 1;
+    private static final int LOCAL_READONLY = 1 << 1;
+    private static final int LOCAL_REQUIRED = 1 << 2;
+    private static final int LOCAL_RELEVANT = 1 << 3;
+    private static final int CONSTRAINT_VALID = 1 << 4;
+
+    private ModelItem modelItem;
+    private int state;
     private Map<String, String> customMIPValues;
 
     /**
@@ -30,12 +39,33 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      */
     public LocalUpdateViewImpl() {
         // default settings
-        this.datatypeValid = true;
-        this.localReadonly = false;
-        this.localRequired = false;
-        this.localRelevant = true;
-        this.constraintValid = true;
-        this.customMIPValues = new HashMap<String, String>();
+        this.state = DATATYPE_VALID | LOCAL_RELEVANT | CONSTRAINT_VALID;
+        this.customMIPValues = Collections.emptyMap();
+    }
+
+    /**
+     * Creates a new local update viewport implementation reporting state changes to the model of
+     * the owner model item.
+     *
+     * @param modelItem the owner model item.
+     */
+    public LocalUpdateViewImpl(ModelItem modelItem) {
+        this();
+        this.modelItem = modelItem;
+    }
+
+    /**
+     * Returns a copy of the local states which does not report state changes.
+     *
+     * @return a copy of the local states.
+     */
+    public LocalUpdateViewImpl copy() {
+        LocalUpdateViewImpl copy = new LocalUpdateViewImpl();
+        copy.state = this.state;
+        if (this.customMIPValues != Collections.EMPTY_MAP) {
+            copy.customMIPValues = new HashMap<String, String>(this.customMIPValues);
+        }
+        return copy;
     }
 
     // implementation of 'de.betterform.xml.xforms.model.bind.LocalUpdateView'
@@ -46,7 +76,7 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * @return the local <code>datatype valid</code> state of a model item.
      */
     public boolean isDatatypeValid() {
-        return this.datatypeValid;
+        return (this.state & DATATYPE_VALID) != 0;
     }
 
     /**
@@ -56,7 +86,9 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * model item.
      */
     public void setDatatypeValid(boolean datatypeValid) {
-        this.datatypeValid = datatypeValid;
+        if (setState(DATATYPE_VALID, datatypeValid)) {
+            stateChanged(false);
+        }
     }
 
     /**
@@ -65,7 +97,7 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * @return the local <code>readonly</code> state of a model item.
      */
     public boolean isLocalReadonly() {
-        return this.localReadonly;
+        return (this.state & LOCAL_READONLY) != 0;
     }
 
     /**
@@ -75,7 +107,9 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * item.
      */
     public void setLocalReadonly(boolean localReadonly) {
-        this.localReadonly = localReadonly;
+        if (setState(LOCAL_READONLY, localReadonly)) {
+            stateChanged(true);
+        }
     }
 
     /**
@@ -84,7 +118,7 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * @return the <code>required</code> state state of a model item.
      */
     public boolean isLocalRequired() {
-        return this.localRequired;
+        return (this.state & LOCAL_REQUIRED) != 0;
     }
 
     /**
@@ -94,7 +128,9 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * item.
      */
     public void setLocalRequired(boolean localRequired) {
-        this.localRequired = localRequired;
+        if (setState(LOCAL_REQUIRED, localRequired)) {
+            stateChanged(false);
+        }
     }
 
     /**
@@ -103,7 +139,7 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * @return the <code>relevant</code> state state of a model item.
      */
     public boolean isLocalRelevant() {
-        return this.localRelevant;
+        return (this.state & LOCAL_RELEVANT) != 0;
     }
 
     /**
@@ -113,7 +149,9 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * item.
      */
     public void setLocalRelevant(boolean localRelevant) {
-        this.localRelevant = localRelevant;
+        if (setState(LOCAL_RELEVANT, localRelevant)) {
+            stateChanged(true);
+        }
     }
 
     /**
@@ -122,7 +160,7 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * @return the local <code>constraint valid</code> state of a model item.
      */
     public boolean isConstraintValid() {
-        return this.constraintValid;
+        return (this.state & CONSTRAINT_VALID) != 0;
     }
 
     /**
@@ -132,7 +170,9 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
      * model item.
      */
     public void setConstraintValid(boolean constraintValid) {
-        this.constraintValid = constraintValid;
+        if (setState(CONSTRAINT_VALID, constraintValid)) {
+            stateChanged(false);
+        }
     }
 
 	public Map<String, String> getCustomMIPValues() {
@@ -143,4 +183,49 @@ public class LocalUpdateViewImpl implements LocalUpdateView {
 		this.customMIPValues = customMIPValues;
 	}
 
+    /**
+     * Sets the value of a custom model item property.
+     *
+     * @param name the prefixed name of the custom property.
+     * @param value the value of the custom property.
+     */
+    public void setCustomMIPValue(String name, String value) {
+        if (this.customMIPValues == Collections.EMPTY_MAP) {
+            this.customMIPValues = new HashMap<String, String>();
+        }
+        String current = this.customMIPValues.put(name, value);
+        if (current == null ? value != null : !current.equals(value)) {
+            stateChanged(false);
+        }
+    }
+
+    /**
+     * Sets a state bit.
+     *
+     * @param bit the state bit.
+     * @param value the new value.
+     * @return <code>true</code> if the state changed.
+     */
+    private boolean setState(int bit, boolean value) {
+        if (((this.state & bit) != 0) == value) {
+            return false;
+        }
+        this.state = value ? this.state | bit : this.state & ~bit;
+        return true;
+    }
+
+    /**
+     * reports a changed state to the model, so that the next refresh picks up this model item.
+     *
+     * @param inherited whether descendant model items inherit the changed state.
+     */
+    private void stateChanged(boolean inherited) {
+        if (this.modelItem != null) {
+            Model model = this.modelItem.getModel();
+            if (model != null) {
+                model.addChangedItem(this.modelItem, inherited);
+            }
+        }
+    }
+
 }
@@ -14,28 +14,32 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Node;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Refresh viewport implementation.
+ * <p/>
+ * The markers are kept as bits of a single field.
  *
  * @version $Id: StateChangeViewImpl.java 3083 2008-01-21 11:29:21Z joern $
  */
 public class RefreshViewImpl implements RefreshView {
     private static final Log LOGGER = LogFactory.getLog(RefreshView.class);
 
+    private static final int VALUE_CHANGED = 1;
+    private static final int VALID = 1 << 1;
+    private static final int INVALID = 1 << 2;
+    private static final int READWRITE = 1 << 3;
+    private static final int READONLY = 1 << 4;
+    private static final int OPTIONAL = 1 << 5;
+    private static final int REQUIRED = 1 << 6;
+    private static final int ENABLED = 1 << 7;
+    private static final int DISABLED = 1 << 8;
+
     private ModelItem modelItem;
 
-    private boolean valueChangedMarker;
-    private boolean validMarker;
-    private boolean invalidMarker;
-    private boolean readwriteMarker;
-    private boolean readonlyMarker;
-    private boolean optionalMarker;
-    private boolean requiredMarker;
-    private boolean enabledMarker;
-    private boolean disabledMarker;
+    private int markers;
 
     private List invalids;
 
@@ -46,12 +50,12 @@ public class RefreshViewImpl implements RefreshView {
      */
     public RefreshViewImpl(ModelItem modelItem) {
         this.modelItem = modelItem;
-        this.invalids = new ArrayList(5);
+        this.invalids = Collections.EMPTY_LIST;
     }
 
 
     public void setValueChangedMarker() {
-        this.valueChangedMarker = true;
+        mark(VALUE_CHANGED, true);
         Model model = this.modelItem.getModel();
         if(model != null){
             this.modelItem.getModel().addRefreshItem(this);
@@ -59,69 +63,75 @@ public class RefreshViewImpl implements RefreshView {
     }
 
     public void setReadonlyMarker() {
-        this.readwriteMarker = false;
-        this.readonlyMarker = true;
+        mark(READWRITE, false);
+        mark(READONLY, true);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("readonly MIP marked for dispatching for " + DOMUtil.getCanonicalPath((Node) this.modelItem.getNode()));
         }
-
+        addChangedItem(true);
     }
 
     public void setReadWriteMarker() {
-        this.readonlyMarker = false;
-        this.readwriteMarker = true;
+        mark(READONLY, false);
+        mark(READWRITE, true);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("readwrite MIP marked for dispatching for " + DOMUtil.getCanonicalPath((Node) this.modelItem.getNode()));
         }
-
+        addChangedItem(true);
     }
 
     public void setEnabledMarker() {
-        this.disabledMarker = false;
-        this.enabledMarker = true;
+        mark(DISABLED, false);
+        mark(ENABLED, true);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("enabled MIP marked for dispatching for " + DOMUtil.getCanonicalPath((Node) this.modelItem.getNode()));
         }
+        addChangedItem(true);
     }
 
     public void setDisabledMarker() {
-        this.enabledMarker = false;
-        this.disabledMarker = true;
+        mark(ENABLED, false);
+        mark(DISABLED, true);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("disabled MIP marked for dispatching for " + DOMUtil.getCanonicalPath((Node) this.modelItem.getNode()));
         }
+        addChangedItem(true);
     }
 
     public void setOptionalMarker() {
-        this.requiredMarker = false;
-        this.optionalMarker = true;
+        mark(REQUIRED, false);
+        mark(OPTIONAL, true);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("optional MIP marked for dispatching for " + DOMUtil.getCanonicalPath((Node) this.modelItem.getNode()));
         }
+        addChangedItem(false);
     }
 
     public void setRequiredMarker() {
-        this.optionalMarker = false;
-        this.requiredMarker = true;
+        mark(OPTIONAL, false);
+        mark(REQUIRED, true);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("required MIP marked for dispatching for " + DOMUtil.getCanonicalPath((Node) this.modelItem.getNode()));
         }
+        addChangedItem(false);
     }
 
     public void setValidMarker() {
-        this.invalidMarker = false;
-        this.validMarker = true;
+        mark(INVALID, false);
+        mark(VALID, true);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("valid MIP marked for dispatching for " + DOMUtil.getCanonicalPath((Node) this.modelItem.getNode()));
         }
+        addChangedItem(false);
     }
 
     public void setInvalidMarker() {
-        this.validMarker = false;
-        this.invalidMarker = true;
+        mark(VALID, false);
+        mark(INVALID, true);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("invalid MIP marked for dispatching for " + DOMUtil.getCanonicalPath((Node) this.modelItem.getNode()));
         }
+        addChangedItem(false);
     }
 
     public List <Constraint> getInvalids() {
@@ -136,66 +146,58 @@ public class RefreshViewImpl implements RefreshView {
      * Resets all state changes so that no changes are reported.
      */
     public void reset() {
-        this.valueChangedMarker = false;
-        this.invalidMarker = false;
-        this.validMarker = false;
-        this.readwriteMarker = false;
-        this.readonlyMarker = false;
-        this.optionalMarker = false;
-        this.requiredMarker = false;
-        this.enabledMarker = false;
-        this.disabledMarker = false;
+        this.markers = 0;
     }
 
     public boolean isValueChangedMarked() {
-        return this.valueChangedMarker;
+        return isSet(VALUE_CHANGED);
     }
 
     public boolean isValidMarked() {
-        return this.validMarker == true ? true : false;
+        return isSet(VALID);
     }
 
     public boolean isInvalidMarked() {
-        return this.invalidMarker == true ? true : false;
+        return isSet(INVALID);
     }
 
     public boolean isReadonlyMarked() {
         if (inheritsReadWriteMip() && this.modelItem.getParent() != null) {
             if (this.modelItem.getParent().getRefreshView().isReadonlyMarked()) {
-                this.readonlyMarker = true;
+                mark(READONLY, true);
                 addParentRefreshViewToModel();
             } else {
-                this.readonlyMarker = false;
+                mark(READONLY, false);
             }
-            return this.readonlyMarker;
+            return isSet(READONLY);
         }
 
-        return this.readonlyMarker == true ? true : false;
+        return isSet(READONLY);
     }
 
     public boolean isReadwriteMarked() {
         if (inheritsReadWriteMip() && this.modelItem.getParent() != null) {
             if (this.modelItem.getParent().getRefreshView().isReadwriteMarked()) {
-                this.readwriteMarker = true;
+                mark(READWRITE, true);
                 addParentRefreshViewToModel();
             } else {
-                this.readwriteMarker = false;
+                mark(READWRITE, false);
             }
-            return this.readwriteMarker;
+            return isSet(READWRITE);
         }
-        return this.readwriteMarker ? true : false;
+        return isSet(READWRITE);
     }
 
     public boolean isRequiredMarked() {
-        return this.requiredMarker ? true : false;
+        return isSet(REQUIRED);
     }
 
     public boolean isOptionalMarked() {
-        return this.optionalMarker ? true : false;
+        return isSet(OPTIONAL);
     }
 
     private boolean inheritsReadWriteMip() {
-        if (!this.readwriteMarker && !this.readonlyMarker) {
+        if (!isSet(READWRITE) && !isSet(READONLY)) {
             return true;
         } else {
             return false;
@@ -203,7 +205,7 @@ public class RefreshViewImpl implements RefreshView {
     }
 
     private boolean inheritsRelevantMip() {
-        if (!this.enabledMarker && !this.disabledMarker) {
+        if (!isSet(ENABLED) && !isSet(DISABLED)) {
             return true;
         } else {
             return false;
@@ -213,28 +215,28 @@ public class RefreshViewImpl implements RefreshView {
     public boolean isEnabledMarked() {
         if (inheritsRelevantMip() && this.modelItem.getParent() != null) {
             if (this.modelItem.getParent().getRefreshView().isEnabledMarked()) {
-                this.enabledMarker = true;
+                mark(ENABLED, true);
                 addParentRefreshViewToModel();
             } else {
-                this.enabledMarker = false;
+                mark(ENABLED, false);
             }
-            return this.enabledMarker;
+            return isSet(ENABLED);
         }
 
-        return this.enabledMarker ? true : false;
+        return isSet(ENABLED);
     }
 
     public boolean isDisabledMarked() {
         if (inheritsRelevantMip() && this.modelItem.getParent() != null) {
             if (this.modelItem.getParent().getRefreshView().isDisabledMarked()) {
-                this.disabledMarker = true;
+                mark(DISABLED, true);
                 addParentRefreshViewToModel();
             } else {
-                this.disabledMarker = false;
+                mark(DISABLED, false);
             }
-            return this.disabledMarker;
+            return isSet(DISABLED);
         }
-        return this.disabledMarker ? true : false;
+        return isSet(DISABLED);
     }
 
     @Override
@@ -242,6 +244,26 @@ public class RefreshViewImpl implements RefreshView {
         return this.modelItem.toString(); 
     }
 
+    /**
+     * reports the marked model item to the model, so that the next refresh picks it up.
+     *
+     * @param inherited whether descendant model items inherit the marker.
+     */
+    private void addChangedItem(boolean inherited) {
+        Model model = this.modelItem.getModel();
+        if (model != null) {
+            model.addChangedItem(this.modelItem, inherited);
+        }
+    }
+
+    private boolean isSet(int marker) {
+        return (this.markers & marker) != 0;
+    }
+
+    private void mark(int marker, boolean value) {
+        this.markers = value ? this.markers | marker : this.markers & ~marker;
+    }
+
     private void addParentRefreshViewToModel() {
         Model model = this.modelItem.getModel();
         if(model != null) {
@@ -5,6 +5,8 @@
 
 package de.betterform.xml.xforms.model.bind.impl;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 import de.betterform.xml.xforms.model.ModelItem;
@@ -12,19 +14,23 @@ import de.betterform.xml.xforms.model.bind.StateChangeView;
 
 /**
  * State Change viewport implementation.
+ * <p/>
+ * The states of the last refresh are kept as bits of a single field.
  *
  * @author Ulrich Nicolas Liss&eacute;
  * @version $Id: StateChangeViewImpl.java 3083 2008-01-21 11:29:21Z joern $
  */
 public class StateChangeViewImpl implements StateChangeView {
 
+    private static final int VALID = 1;
+    private static final int READONLY = 1 << 1;
+    private static final int REQUIRED = 1 << 2;
+    private static final int ENABLED = 1 << 3;
+    private static final int VALUE_CHANGED = 1 << 4;
+
     private ModelItem modelItem;
 
-    private boolean valid;
-    private boolean readonly;
-    private boolean required;
-    private boolean enabled;
-    private boolean valueChanged;
+    private int state;
     private Map<String, String> customMIPS;
     
     /**
@@ -35,14 +41,9 @@ public class StateChangeViewImpl implements StateChangeView {
     public StateChangeViewImpl(ModelItem modelItem) {
         this.modelItem = modelItem;
 
-        this.valid = true;
-        this.readonly = false;
-        this.required = false;
-        this.enabled = true;
+        this.state = VALID | ENABLED;
 
-        this.valueChanged = false;
-        
-        this.customMIPS = modelItem.getLocalUpdateView().getCustomMIPValues();
+        this.customMIPS = copyCustomMIPValues();
     }
 
     // implementation of 'de.betterform.xml.xforms.model.bind.StateChangeView'
@@ -53,7 +54,7 @@ public class StateChangeViewImpl implements StateChangeView {
      * @return the valid change state of a model item.
      */
     public boolean hasValidChanged() {
-        return this.valid != this.modelItem.isValid();
+        return isSet(VALID) != this.modelItem.isValid();
     }
 
     /**
@@ -62,7 +63,7 @@ public class StateChangeViewImpl implements StateChangeView {
      * @return the readonly change state of a model item.
      */
     public boolean hasReadonlyChanged() {
-        return this.readonly != this.modelItem.isReadonly();
+        return isSet(READONLY) != this.modelItem.isReadonly();
     }
 
     /**
@@ -71,7 +72,7 @@ public class StateChangeViewImpl implements StateChangeView {
      * @return the required change state of a model item.
      */
     public boolean hasRequiredChanged() {
-        return this.required != this.modelItem.isRequired();
+        return isSet(REQUIRED) != this.modelItem.isRequired();
     }
 
     /**
@@ -80,7 +81,7 @@ public class StateChangeViewImpl implements StateChangeView {
      * @return the enabled change state of a model item.
      */
     public boolean hasEnabledChanged() {
-        return this.enabled != this.modelItem.isRelevant();
+        return isSet(ENABLED) != this.modelItem.isRelevant();
     }
 
     /**
@@ -89,25 +90,41 @@ public class StateChangeViewImpl implements StateChangeView {
      * @return the value change state of a model item.
      */
     public boolean hasValueChanged() {
-        return this.valueChanged;
+        return isSet(VALUE_CHANGED);
     }
 
+    /**
+     * Returns the change state of a custom model item property.
+     *
+     * @param key the prefixed name of the custom property.
+     * @return the change state of the custom property.
+     */
     public boolean hasCustomMIPChanged(String key) {
-    	return this.customMIPS.get(key) != this.modelItem.getLocalUpdateView().getCustomMIPValues().get(key);
+        String last = this.customMIPS.get(key);
+        String current = this.modelItem.getLocalUpdateView().getCustomMIPValues().get(key);
+        return last == null ? current != null : !last.equals(current);
     }
     
     /**
      * Resets all state changes so that no changes are reported.
      */
     public void reset() {
-        this.valid = this.modelItem.isValid();
-        this.readonly = this.modelItem.isReadonly();
-        this.required = this.modelItem.isRequired();
-        this.enabled = this.modelItem.isRelevant();
-
-        this.customMIPS = this.modelItem.getLocalUpdateView().getCustomMIPValues();
-
-        this.valueChanged = false;
+        int state = 0;
+        if (this.modelItem.isValid()) {
+            state |= VALID;
+        }
+        if (this.modelItem.isReadonly()) {
+            state |= READONLY;
+        }
+        if (this.modelItem.isRequired()) {
+            state |= REQUIRED;
+        }
+        if (this.modelItem.isRelevant()) {
+            state |= ENABLED;
+        }
+        this.state = state;
+
+        this.customMIPS = copyCustomMIPValues();
     }
 
     // member access
@@ -116,7 +133,23 @@ public class StateChangeViewImpl implements StateChangeView {
      * Sets the value change state dirty.
      */
     public void setValueChanged() {
-        this.valueChanged = true;
+        this.state |= VALUE_CHANGED;
+    }
+
+    /**
+     * the local update view changes its map in place, so the values of the last refresh are copied.
+     * Model items without custom properties share the empty map.
+     */
+    private Map<String, String> copyCustomMIPValues() {
+        Map<String, String> values = this.modelItem.getLocalUpdateView().getCustomMIPValues();
+        if (values.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return new HashMap<String, String>(values);
+    }
+
+    private boolean isSet(int bit) {
+        return (this.state & bit) != 0;
     }
 
 }
@@ -73,7 +73,7 @@ public class CustomVertex extends Vertex {
 				"string(" + this.xpathExpression + ")");
 
 		ModelItem modelItem = (ModelItem) this.instanceNode.getUserData("");
-		modelItem.getLocalUpdateView().getCustomMIPValues().put(prefix, result);	
+		modelItem.getLocalUpdateView().setCustomMIPValue(prefix, result);	
 
 //		if (result) {
 //			modelItem.getRefreshView().setDifferentMarker();
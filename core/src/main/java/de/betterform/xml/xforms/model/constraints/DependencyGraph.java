@@ -37,11 +37,17 @@ public class DependencyGraph {
      */
     protected Vector vertices;
 
+    /**
+     * index of all vertices by their instance node. Nodes are compared by identity.
+     */
+    private Map<Node, VertexSlots> vertexIndex;
+
     /**
      * Creates a new DependencyGraph object.
      */
     public DependencyGraph() {
         this.vertices = new Vector();
+        this.vertexIndex = new IdentityHashMap<Node, VertexSlots>();
     }
 
     /**
@@ -52,23 +58,54 @@ public class DependencyGraph {
      * @return returns the matching Vertex object or null if not found
      */
     public Vertex getVertex(Node instanceNode, short property, String key) {
-        Enumeration enumeration = vertices.elements();
+        VertexSlots slots = this.vertexIndex.get(instanceNode);
+        if (slots == null) {
+            return null;
+        }
 
-        while (enumeration.hasMoreElements()) {
-            Vertex v = (Vertex) enumeration.nextElement();
-            boolean equalNodes = v.instanceNode == instanceNode;
-            boolean equalTypes = v.getVertexType() == property;
-
-            if (equalNodes && equalTypes) {
-            	if (v.getVertexType() == Vertex.CUSTOM_VERTEX && !((CustomVertex) v).getPrefix().equals(key)) {
-            	 	// No identical 'key' for custom vertex so continue loop
-            	} else {
-            		return v;
-            	}
-            }
+        return slots.get(property, key);
+    }
+
+    /**
+     * returns all Vertices attached to a given instanceNode.
+     *
+     * @param instanceNode the instance data node
+     * @return the Vertices of all types attached to the node, possibly empty
+     */
+    protected List<Vertex> getVertices(Node instanceNode) {
+        VertexSlots slots = this.vertexIndex.get(instanceNode);
+        if (slots == null) {
+            return Collections.emptyList();
         }
 
-        return null;
+        return slots.values();
+    }
+
+    /**
+     * adds a Vertex to the index. An existing Vertex of same node, type and key is replaced.
+     *
+     * @param v the Vertex to index
+     */
+    protected void indexVertex(Vertex v) {
+        VertexSlots slots = this.vertexIndex.get(v.instanceNode);
+        if (slots == null) {
+            slots = new VertexSlots();
+            this.vertexIndex.put(v.instanceNode, slots);
+        }
+
+        slots.put(v);
+    }
+
+    /**
+     * removes a Vertex from the index.
+     *
+     * @param v the Vertex to remove
+     */
+    protected void unindexVertex(Vertex v) {
+        VertexSlots slots = this.vertexIndex.get(v.instanceNode);
+        if (slots != null && slots.remove(v) && slots.isEmpty()) {
+            this.vertexIndex.remove(v.instanceNode);
+        }
     }
 
     /**
@@ -193,21 +230,11 @@ public class DependencyGraph {
         }
 
         vertices.addElement(v);
+        indexVertex(v);
 
         return v;
     }
 
-    /**
-     * adds a Vertex to the pool hold by this object. Will add no duplicates to the collection.
-     *
-     * @param v the Vertex to add
-     */
-    private void addVertex(Vertex v) {
-        if (!vertices.contains(v)) {
-            vertices.addElement(v);
-        }
-    }
-
     /**
      * print the list of vertices
      */
@@ -228,7 +255,8 @@ public class DependencyGraph {
 */
 
     /**
-     * recalculates this graph.
+     * recalculates this graph. The vertices are computed in topological order, starting with the
+     * vertices that do not depend on any other. The graph is empty afterwards.
      *
      * @throws XFormsException
      */
@@ -237,58 +265,125 @@ public class DependencyGraph {
             LOGGER.debug("recalculate: starting ...");
         }
 
-        // remove non zero vertices
-        this.removeNonZeroVertices();
+        // the ready queue Z: every vertex enters it exactly once, when its in-degree drops to zero
+        Vertex[] queue = new Vertex[this.vertices.size()];
+        int tail = 0;
+        for (int i = 0; i < this.vertices.size(); i++) {
+            Vertex v = (Vertex) this.vertices.get(i);
+            if (v.inDegree == 0) {
+                queue[tail++] = v;
+            }
+        }
 
-        while (this.vertices.size() > 0) {
+        for (int head = 0; head < tail; head++) {
             // remove a vertex v from Z
-            Vertex v = (Vertex) this.vertices.firstElement();
-            this.removeVertex(v);
+            Vertex v = queue[head];
+            queue[head] = null;
             v.compute();
 
-            Enumeration enumeration = v.depList.elements();
-
-            while (enumeration.hasMoreElements()) {
-                Vertex w = (Vertex) enumeration.nextElement();
+            List depList = v.depList;
+            for (int i = 0; i < depList.size(); i++) {
+                Vertex w = (Vertex) depList.get(i);
                 w.inDegree--;
 
                 if (w.inDegree == 0) {
-                    this.addVertex(w);
+                    if (tail == queue.length) {
+                        // dependents outside this graph
+                        Vertex[] grown = new Vertex[queue.length * 2 + 1];
+                        System.arraycopy(queue, 0, grown, 0, tail);
+                        queue = grown;
+                    }
+                    queue[tail++] = w;
                 }
             }
         }
 
+        this.vertices.clear();
+        this.vertexIndex.clear();
+
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("recalculate: finished");
         }
     }
 
-    private void removeNonZeroVertices() {
-        Vector nonzeros = new Vector();
-        Enumeration enumeration = vertices.elements();
+    /**
+     * removes a Vertex from the collection.
+     *
+     * @param v the Vertex to remove
+     */
+    protected void removeVertex(Vertex v) {
+        // vertices are mostly removed right after they have been added, so search from the end
+        for (int i = this.vertices.size() - 1; i >= 0; i--) {
+            if (this.vertices.get(i) == v) {
+                this.vertices.remove(i);
+                break;
+            }
+        }
+        unindexVertex(v);
+    }
 
-        while (enumeration.hasMoreElements()) {
-            Vertex v = (Vertex) enumeration.nextElement();
+    /**
+     * The vertices attached to a single instance node, one slot per Model Item Property
+     * plus the custom vertices by their key.
+     */
+    private static class VertexSlots {
+        private final Vertex[] properties = new Vertex[Vertex.CUSTOM_VERTEX];
+        private Map<String, Vertex> custom;
 
-            if (v.inDegree > 0) {
-                nonzeros.addElement(v);
+        Vertex get(short property, String key) {
+            if (property == Vertex.CUSTOM_VERTEX) {
+                return this.custom != null ? this.custom.get(key) : null;
             }
+            return this.properties[property - 1];
         }
 
-        enumeration = nonzeros.elements();
+        void put(Vertex v) {
+            short property = v.getVertexType();
+            if (property == Vertex.CUSTOM_VERTEX) {
+                if (this.custom == null) {
+                    this.custom = new HashMap<String, Vertex>(4);
+                }
+                this.custom.put(((CustomVertex) v).getPrefix(), v);
+            } else {
+                this.properties[property - 1] = v;
+            }
+        }
 
-        while (enumeration.hasMoreElements()) {
-            Vertex v = (Vertex) enumeration.nextElement();
-            this.removeVertex(v);
+        boolean remove(Vertex v) {
+            short property = v.getVertexType();
+            if (property == Vertex.CUSTOM_VERTEX) {
+                String key = ((CustomVertex) v).getPrefix();
+                if (this.custom != null && this.custom.get(key) == v) {
+                    this.custom.remove(key);
+                    return true;
+                }
+            } else if (this.properties[property - 1] == v) {
+                this.properties[property - 1] = null;
+                return true;
+            }
+            return false;
         }
-    }
 
-    /**
-     * removes a Vertex from the collection.
-     *
-     * @param v the Vertex to remove
-     */
-    protected void removeVertex(Vertex v) {
-        this.vertices.removeElement(v);
+        List<Vertex> values() {
+            List<Vertex> values = new ArrayList<Vertex>(this.properties.length);
+            for (int i = 0; i < this.properties.length; i++) {
+                if (this.properties[i] != null) {
+                    values.add(this.properties[i]);
+                }
+            }
+            if (this.custom != null) {
+                values.addAll(this.custom.values());
+            }
+            return values;
+        }
+
+        boolean isEmpty() {
+            for (int i = 0; i < this.properties.length; i++) {
+                if (this.properties[i] != null) {
+                    return false;
+                }
+            }
+            return this.custom == null || this.custom.isEmpty();
+        }
     }
 }
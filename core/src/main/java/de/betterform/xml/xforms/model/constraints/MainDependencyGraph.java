@@ -14,13 +14,11 @@ import de.betterform.xml.xpath.impl.saxon.BetterFormXPathContext;
 import de.betterform.xml.xpath.impl.saxon.XPathUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
-import java.util.Enumeration;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.Vector;
+import java.util.*;
 
 /**
  * Implementation of XForms recalculation.
@@ -71,6 +69,7 @@ public class MainDependencyGraph extends DependencyGraph {
         Vertex vertex = this.addVertex(relativeContext, instanceNode, expression, property, customMIP);
         boolean hadVertex = vertex.wasAlreadyInGraph;
         vertex.wasAlreadyInGraph = false;
+        vertex.references = references;
 
         // Analyze the Xpath Expression 'calculate'. Read nodeset RefNS
         // (the nodes this XPAth references)
@@ -140,64 +139,398 @@ public class MainDependencyGraph extends DependencyGraph {
         
         final List nodeset = bind.getNodeset();
         for (int i = 0; i < nodeset.size(); i++) {
-            BetterFormXPathContext relativeContext = new BetterFormXPathContext(nodeset, i + 1, bind.getPrefixMapping(), bind.getXPathFunctionContext());
+            buildNodeGraph(bind, instance, nodeset, i + 1);
+        }
+    }
+
+    /**
+     * builds the vertices of a Bind for a single node of its nodeset.
+     *
+     * @param bind the Bind
+     * @param instance the instance of the Bind
+     * @param nodeset the nodeset of the Bind
+     * @param position the position of the node in the nodeset (1-based)
+     */
+    private void buildNodeGraph(Bind bind, Instance instance, List nodeset, int position) throws XFormsException {
+        BetterFormXPathContext relativeContext = new BetterFormXPathContext(nodeset, position, bind.getPrefixMapping(), bind.getXPathFunctionContext());
+        Node node = XPathUtil.getAsNode(nodeset, position);
+        ModelItem modelItem = instance.getModelItem(node);
+
+        String property = bind.getCalculate();
+        if (property != null) {
+            modelItem.getDeclarationView().setCalculate(property);
+            this.addReferredNodesToGraph(relativeContext, node, property, Vertex.CALCULATE_VERTEX, bind.getCalculateReferences());
+        }
+
+        property = bind.getRelevant();
+        if (property != null) {
+            modelItem.getDeclarationView().setRelevant(property);
+            this.addReferredNodesToGraph(relativeContext, node, property, Vertex.RELEVANT_VERTEX, bind.getRelevantReferences());
+        }
+
+        property = bind.getReadonly();
+        if (property != null) {
+            modelItem.getDeclarationView().setReadonly(property);
+            this.addReferredNodesToGraph(relativeContext, node, property, Vertex.READONLY_VERTEX, bind.getReadonlyReferences());
+        }
+
+        property = bind.getRequired();
+        if (property != null) {
+            modelItem.getDeclarationView().setRequired(property);
+            this.addReferredNodesToGraph(relativeContext, node, property, Vertex.REQUIRED_VERTEX, bind.getRequiredReferences());
+        }
+
+        property = bind.getConstraint();
+        if (property != null) {
+            List constraints = bind.getConstraints();
+            modelItem.getDeclarationView().setConstraints(constraints);
+            modelItem.getDeclarationView().setConstraint(property);
+            this.addReferredNodesToGraph(relativeContext, node, property, Vertex.CONSTRAINT_VERTEX, bind.getConstraintReferences());
+        }
+        
+        //RKU
+        //property = bind.getCustomMIPs();
+        Map<String, String> customMIPs = bind.getCustomMIPs();
+        if (!customMIPs.isEmpty()) {
+        	modelItem.getDeclarationView().setCustomMIPs(customMIPs);
+        	for (String key : customMIPs.keySet()) {
+                
+                this.addReferredNodesToGraph(relativeContext, node, customMIPs.get(key), Vertex.CUSTOM_VERTEX, bind.getCustomMIPReferences(key), key);
+				}
+        }
+
+        property = bind.getDatatype();
+        if (property != null) {
+            modelItem.getDeclarationView().setDatatype(property);
+        }
+
+        property = bind.getP3PType();
+        if (property != null) {
+            modelItem.getDeclarationView().setP3PType(property);
+        }
+    }
+
+    /**
+     * patches the graph after nodes have been inserted into or deleted from the instances of the model
+     * instead of building it from scratch. Only the vertices of the inserted and deleted subtrees are created
+     * or removed; the vertices of all other nodes just get their evaluation context moved to the updated bind
+     * nodesets.
+     * <p/>
+     * Vertices depending on an inserted node are found through the corresponding node of an adjacent sibling
+     * of the same name: each vertex referring to that node gets its references resolved again. Moved vertices
+     * keep their references, so the graph is not patched if any bind expression depends on node positions
+     * (see {@link Bind#isPositionSensitive()}), as such an expression may select other nodes afterwards.
+     *
+     * @param binds the binds of the model in document order
+     * @param model the model
+     * @param insertedNodes the roots of the inserted subtrees
+     * @param deletedNodes the roots of the deleted subtrees
+     * @param changed the list of changed vertices. vertices to be recalculated are added, removed ones are dropped.
+     * @return <code>false</code> if the graph could not be patched and has to be rebuilt from scratch.
+     * @throws XFormsException if an expression cannot be evaluated
+     */
+    public boolean updateBindGraphs(List binds, Model model, List insertedNodes, List deletedNodes, List changed) throws XFormsException {
+        for (int i = 0; i < binds.size(); i++) {
+            if (((Bind) binds.get(i)).isPositionSensitive()) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("updateBindGraphs: " + binds.get(i) + " depends on node positions");
+                }
+                return false;
+            }
+        }
+
+        Map<Node, Node> inserted = newNodeSet();
+        for (int i = 0; i < insertedNodes.size(); i++) {
+            Node root = (Node) insertedNodes.get(i);
+            if (root.getNodeType() != Node.ELEMENT_NODE || !isAttached(root)) {
+                return false;
+            }
+            collectSubtree(root, inserted);
+        }
+
+        // pairs of inserted node and the corresponding node in an adjacent, existing sibling
+        List<Node[]> counterparts = new ArrayList<Node[]>();
+        for (int i = 0; i < insertedNodes.size(); i++) {
+            Element root = (Element) insertedNodes.get(i);
+            Element sibling = getExistingSibling(root, inserted);
+            if (sibling == null) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("updateBindGraphs: no existing sibling for inserted node " + root.getNodeName());
+                }
+                return false;
+            }
+            collectCounterparts(root, sibling, counterparts);
+        }
+
+        Map<Node, Node> deleted = newNodeSet();
+        for (int i = 0; i < deletedNodes.size(); i++) {
+            collectSubtree((Node) deletedNodes.get(i), deleted);
+        }
+        for (Node node : deleted.keySet()) {
+            if (inserted.containsKey(node)) {
+                return false;
+            }
+        }
+
+        Map<Vertex, Vertex> recalculate = new IdentityHashMap<Vertex, Vertex>();
+        removeVertices(deleted, recalculate);
+        for (Iterator it = changed.iterator(); it.hasNext();) {
+            Vertex vertex = (Vertex) it.next();
+            if (deleted.containsKey(vertex.instanceNode)) {
+                it.remove();
+            }
+        }
+
+        for (int i = 0; i < binds.size(); i++) {
+            if (!updateBindGraph((Bind) binds.get(i), model, inserted, deleted, recalculate)) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("updateBindGraphs: nodeset of " + binds.get(i) + " changed shape");
+                }
+                return false;
+            }
+        }
+
+        // resolve references of vertices which might refer to the inserted nodes
+        Map<Vertex, Vertex> affected = new IdentityHashMap<Vertex, Vertex>();
+        for (int i = 0; i < counterparts.size(); i++) {
+            List<Vertex> siblingVertices = getVertices(counterparts.get(i)[1]);
+            for (int j = 0; j < siblingVertices.size(); j++) {
+                List depList = siblingVertices.get(j).depList;
+                for (int k = 0; k < depList.size(); k++) {
+                    Vertex dependent = (Vertex) depList.get(k);
+                    if (dependent.references != null && dependent.xpathExpression != null && !inserted.containsKey(dependent.instanceNode)) {
+                        affected.put(dependent, dependent);
+                    }
+                }
+            }
+        }
+        for (Vertex vertex : affected.keySet()) {
+            Vector refns = getXPathRefNodes(vertex.relativeContext, vertex.xpathExpression, vertex.references);
+            for (int i = 0; i < refns.size(); i++) {
+                Node referencedNode = (Node) refns.get(i);
+                if (inserted.containsKey(referencedNode)) {
+                    Vertex refVertex = this.addVertex(null, referencedNode, null, Vertex.CALCULATE_VERTEX, null);
+                    this.addEdge(refVertex, vertex);
+                    recalculate.put(vertex, vertex);
+                }
+            }
+        }
+
+        for (int i = 0; i < changed.size(); i++) {
+            recalculate.remove(changed.get(i));
+        }
+        changed.addAll(recalculate.keySet());
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("updateBindGraphs: " + inserted.size() + " inserted, " + deleted.size() + " deleted nodes, "
+                    + affected.size() + " affected vertices");
+        }
+        return true;
+    }
+
+    /**
+     * moves the vertices of a Bind to its updated nodeset and builds the vertices of inserted nodes.
+     *
+     * @return <code>false</code> if the nodeset contains nodes which have been neither inserted nor deleted
+     */
+    private boolean updateBindGraph(Bind bind, Model model, Map<Node, Node> inserted, Map<Node, Node> deleted, Map<Vertex, Vertex> recalculate) throws XFormsException {
+        // the bind refills its nodeset list in place, so take the old positions first
+        List oldNodeset = bind.getNodeset();
+        Map<Node, Integer> oldPositions = new IdentityHashMap<Node, Integer>();
+        for (int i = 0; oldNodeset != null && i < oldNodeset.size(); i++) {
+            oldPositions.put(XPathUtil.getAsNode(oldNodeset, i + 1), Integer.valueOf(i));
+        }
+
+        bind.updateXPathContext();
+        List nodeset = bind.getNodeset();
+        Instance instance = model.getInstance(bind.getInstanceId());
+
+        int kept = 0;
+        for (int i = 0; i < nodeset.size(); i++) {
             Node node = XPathUtil.getAsNode(nodeset, i + 1);
-            ModelItem modelItem = instance.getModelItem(node);
-            
+            Integer oldPosition = oldPositions.get(node);
+
+            if (oldPosition == null) {
+                if (!inserted.containsKey(node)) {
+                    return false;
+                }
+
+                int size = this.vertices.size();
+                buildNodeGraph(bind, instance, nodeset, i + 1);
+                for (int j = size; j < this.vertices.size(); j++) {
+                    Vertex vertex = (Vertex) this.vertices.get(j);
+                    recalculate.put(vertex, vertex);
+                }
+            } else {
+                kept++;
+                if (nodeset != oldNodeset || oldPosition.intValue() != i) {
+                    moveVertices(bind, node, new BetterFormXPathContext(nodeset, i + 1, bind.getPrefixMapping(), bind.getXPathFunctionContext()));
+                }
+            }
+        }
 
-            String property = bind.getCalculate();
-            if (property != null) {
-                modelItem.getDeclarationView().setCalculate(property);
-                this.addReferredNodesToGraph(relativeContext, node, property, Vertex.CALCULATE_VERTEX, bind.getCalculateReferences());
+        if (kept < oldPositions.size()) {
+            // all nodes not bound anymore have to be deleted ones
+            int removed = 0;
+            for (Node node : oldPositions.keySet()) {
+                if (deleted.containsKey(node)) {
+                    removed++;
+                }
             }
+            return kept + removed == oldPositions.size();
+        }
 
-            property = bind.getRelevant();
-            if (property != null) {
-                modelItem.getDeclarationView().setRelevant(property);
-                this.addReferredNodesToGraph(relativeContext, node, property, Vertex.RELEVANT_VERTEX, bind.getRelevantReferences());
+        return true;
+    }
+
+    /**
+     * sets the evaluation context of the vertices a Bind created for a node.
+     */
+    private void moveVertices(Bind bind, Node node, BetterFormXPathContext relativeContext) {
+        moveVertex(getVertex(node, Vertex.CALCULATE_VERTEX, null), bind.getCalculate(), relativeContext);
+        moveVertex(getVertex(node, Vertex.RELEVANT_VERTEX, null), bind.getRelevant(), relativeContext);
+        moveVertex(getVertex(node, Vertex.READONLY_VERTEX, null), bind.getReadonly(), relativeContext);
+        moveVertex(getVertex(node, Vertex.REQUIRED_VERTEX, null), bind.getRequired(), relativeContext);
+        moveVertex(getVertex(node, Vertex.CONSTRAINT_VERTEX, null), bind.getConstraint(), relativeContext);
+
+        Map<String, String> customMIPs = bind.getCustomMIPs();
+        for (String key : customMIPs.keySet()) {
+            moveVertex(getVertex(node, Vertex.CUSTOM_VERTEX, key), customMIPs.get(key), relativeContext);
+        }
+    }
+
+    private void moveVertex(Vertex vertex, String property, BetterFormXPathContext relativeContext) {
+        if (vertex != null && property != null) {
+            vertex.relativeContext = relativeContext;
+        }
+    }
+
+    /**
+     * removes the vertices of deleted nodes along with all edges pointing to them.
+     *
+     * @param deleted the deleted nodes
+     * @param recalculate collects the remaining vertices which depended on a removed one
+     */
+    private void removeVertices(Map<Node, Node> deleted, Map<Vertex, Vertex> recalculate) {
+        Map<Vertex, Vertex> removed = new IdentityHashMap<Vertex, Vertex>();
+        for (Node node : deleted.keySet()) {
+            List<Vertex> nodeVertices = getVertices(node);
+            for (int i = 0; i < nodeVertices.size(); i++) {
+                Vertex vertex = nodeVertices.get(i);
+                removed.put(vertex, vertex);
+                unindexVertex(vertex);
             }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
 
-            property = bind.getReadonly();
-            if (property != null) {
-                modelItem.getDeclarationView().setReadonly(property);
-                this.addReferredNodesToGraph(relativeContext, node, property, Vertex.READONLY_VERTEX, bind.getReadonlyReferences());
+        for (Vertex vertex : removed.keySet()) {
+            for (int i = 0; i < vertex.depList.size(); i++) {
+                Vertex dependent = (Vertex) vertex.depList.get(i);
+                if (!removed.containsKey(dependent)) {
+                    recalculate.put(dependent, dependent);
+                }
             }
+        }
 
-            property = bind.getRequired();
-            if (property != null) {
-                modelItem.getDeclarationView().setRequired(property);
-                this.addReferredNodesToGraph(relativeContext, node, property, Vertex.REQUIRED_VERTEX, bind.getRequiredReferences());
+        // single pass over the graph instead of removing vertex by vertex
+        Vector remaining = new Vector(this.vertices.size());
+        for (int i = 0; i < this.vertices.size(); i++) {
+            Vertex vertex = (Vertex) this.vertices.get(i);
+            if (removed.containsKey(vertex)) {
+                continue;
             }
+            for (int j = vertex.depList.size() - 1; j >= 0; j--) {
+                if (removed.containsKey(vertex.depList.get(j))) {
+                    vertex.depList.remove(j);
+                }
+            }
+            remaining.add(vertex);
+        }
+        this.vertices = remaining;
+    }
+
+    private static Map<Node, Node> newNodeSet() {
+        return new IdentityHashMap<Node, Node>();
+    }
+
+    private static boolean isAttached(Node node) {
+        Node parent = node.getParentNode();
+        while (parent != null && parent.getNodeType() != Node.DOCUMENT_NODE) {
+            parent = parent.getParentNode();
+        }
+        return parent != null;
+    }
+
+    /**
+     * adds the node, its attributes and all its descendants to the set.
+     */
+    private static void collectSubtree(Node node, Map<Node, Node> nodes) {
+        nodes.put(node, node);
+
+        NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; attributes != null && i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            nodes.put(attribute, attribute);
+        }
+
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collectSubtree(child, nodes);
+        }
+    }
 
-            property = bind.getConstraint();
-            if (property != null) {
-                List constraints = bind.getConstraints();
-                modelItem.getDeclarationView().setConstraints(constraints);
-                modelItem.getDeclarationView().setConstraint(property);
-                this.addReferredNodesToGraph(relativeContext, node, property, Vertex.CONSTRAINT_VERTEX, bind.getConstraintReferences());
+    /**
+     * returns the nearest sibling element of same name which has not been inserted itself.
+     */
+    private static Element getExistingSibling(Element element, Map<Node, Node> inserted) {
+        for (Node sibling = element.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+            if (isSameName(element, sibling) && !inserted.containsKey(sibling)) {
+                return (Element) sibling;
             }
-            
-            //RKU
-            //property = bind.getCustomMIPs();
-            Map<String, String> customMIPs = bind.getCustomMIPs();
-            if (!customMIPs.isEmpty()) {
-            	modelItem.getDeclarationView().setCustomMIPs(customMIPs);
-            	for (String key : customMIPs.keySet()) {
-                    
-                    this.addReferredNodesToGraph(relativeContext, node, customMIPs.get(key), Vertex.CUSTOM_VERTEX, bind.getCustomMIPReferences(key), key);
-				}
+        }
+        for (Node sibling = element.getNextSibling(); sibling != null; sibling = sibling.getNextSibling()) {
+            if (isSameName(element, sibling) && !inserted.containsKey(sibling)) {
+                return (Element) sibling;
             }
+        }
+        return null;
+    }
 
-            property = bind.getDatatype();
-            if (property != null) {
-                modelItem.getDeclarationView().setDatatype(property);
+    /**
+     * pairs the nodes of two structurally equal subtrees.
+     */
+    private static void collectCounterparts(Node node, Node counterpart, List<Node[]> pairs) {
+        pairs.add(new Node[]{node, counterpart});
+
+        NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; attributes != null && i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            Node other = counterpart.getAttributes().getNamedItemNS(attribute.getNamespaceURI(), attribute.getLocalName() != null ? attribute.getLocalName() : attribute.getNodeName());
+            if (other != null) {
+                pairs.add(new Node[]{attribute, other});
             }
+        }
 
-            property = bind.getP3PType();
-            if (property != null) {
-                modelItem.getDeclarationView().setP3PType(property);
+        Node child = node.getFirstChild();
+        Node other = counterpart.getFirstChild();
+        while (child != null && other != null) {
+            if (child.getNodeType() == other.getNodeType() && (child.getNodeType() != Node.ELEMENT_NODE || isSameName(child, other))) {
+                collectCounterparts(child, other, pairs);
             }
+            child = child.getNextSibling();
+            other = other.getNextSibling();
+        }
+    }
+
+    private static boolean isSameName(Node node, Node other) {
+        if (other.getNodeType() != Node.ELEMENT_NODE) {
+            return false;
         }
+        String namespace = node.getNamespaceURI();
+        String name = node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+        String otherName = other.getLocalName() != null ? other.getLocalName() : other.getNodeName();
+        return name.equals(otherName) && (namespace == null ? other.getNamespaceURI() == null : namespace.equals(other.getNamespaceURI()));
     }
 
     /**
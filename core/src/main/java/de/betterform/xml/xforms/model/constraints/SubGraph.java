@@ -55,20 +55,19 @@ public class SubGraph extends DependencyGraph {
 
         Vertex originalVertex;
         Vertex clonedVertex;
-        int index;
+        Vertex visitedVertex;
+        String prefix;
         Iterator iterator = changedVertices.iterator();
         while (iterator.hasNext()) {
             originalVertex = (Vertex) iterator.next();
-            index = this.vertices.indexOf(originalVertex);
+            prefix = originalVertex.getVertexType() == Vertex.CUSTOM_VERTEX ? ((CustomVertex) originalVertex).getPrefix() : null;
+            visitedVertex = getVertex(originalVertex.instanceNode, originalVertex.getVertexType(), prefix);
 
-            if (index < 0) {
+            if (visitedVertex == null) {
                 // not visited yet ...
-            	if (originalVertex.getVertexType() == Vertex.CUSTOM_VERTEX) {
-            		clonedVertex = createSubVertex(originalVertex.relativeContext, originalVertex.instanceNode, originalVertex.xpathExpression, originalVertex.getVertexType(), ((CustomVertex) originalVertex).getPrefix());	
-            	} else {
-            		clonedVertex = createSubVertex(originalVertex.relativeContext, originalVertex.instanceNode, originalVertex.xpathExpression, originalVertex.getVertexType(), null);
-            	}
+                clonedVertex = createSubVertex(originalVertex.relativeContext, originalVertex.instanceNode, originalVertex.xpathExpression, originalVertex.getVertexType(), prefix);
             	this.vertices.add(clonedVertex);
+                indexVertex(clonedVertex);
 
                 if (clonedParent != null) {
                     clonedParent.addDep(clonedVertex);
@@ -80,7 +79,7 @@ public class SubGraph extends DependencyGraph {
             } else {
                 // ... already visited
                 if (clonedParent != null) {
-                    clonedParent.addDep((Vertex) this.vertices.elementAt(index));
+                    clonedParent.addDep(visitedVertex);
                 }
             }
         }
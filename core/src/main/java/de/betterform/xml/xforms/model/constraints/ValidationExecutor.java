@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model.constraints;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.config.XFormsConfigException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of threads validating partitions of large instances in parallel during
+ * <code>xforms-revalidate</code>.
+ * <p/>
+ * The pool is shared by all sessions. The number of threads is configured with the property
+ * 'betterform.validation.parallel.threads' of betterform-config, <code>0</code> disables parallel
+ * validation. Instances are only validated in parallel if at least
+ * 'betterform.validation.parallel.threshold' model items have to be validated.
+ *
+ * @version $Id$
+ */
+public class ValidationExecutor {
+
+    private static final Log LOGGER = LogFactory.getLog(ValidationExecutor.class);
+
+    public static final String THREADS_PROPERTY = "betterform.validation.parallel.threads";
+    public static final String THRESHOLD_PROPERTY = "betterform.validation.parallel.threshold";
+
+    public static final int DEFAULT_THREADS = 0;
+    public static final int DEFAULT_THRESHOLD = 10000;
+
+    private static ValidationExecutor fgInstance = null;
+    private static boolean fgConfigured = false;
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final int threshold;
+
+    /**
+     * Returns the shared executor, creating it from betterform-config on first use.
+     *
+     * @return the shared executor or <code>null</code> if parallel validation is disabled.
+     * @throws XFormsConfigException if the configuration could not be loaded.
+     */
+    public static synchronized ValidationExecutor getInstance() throws XFormsConfigException {
+        if (!fgConfigured) {
+            Config config = Config.getInstance();
+            int threads = getIntProperty(config, THREADS_PROPERTY, DEFAULT_THREADS);
+            if (threads > 0) {
+                fgInstance = new ValidationExecutor(threads, getIntProperty(config, THRESHOLD_PROPERTY, DEFAULT_THRESHOLD));
+            }
+            fgConfigured = true;
+        }
+        return fgInstance;
+    }
+
+    /**
+     * Replaces the shared executor, e.g. to enable parallel validation without configuration.
+     * The threads of the former executor are stopped.
+     *
+     * @param executor the executor to use, <code>null</code> to disable parallel validation.
+     */
+    public static synchronized void setInstance(ValidationExecutor executor) {
+        if (fgInstance != null && fgInstance != executor) {
+            fgInstance.shutdown();
+        }
+        fgInstance = executor;
+        fgConfigured = true;
+    }
+
+    public ValidationExecutor(int threads, int threshold) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("validation executor created: threads=" + threads + ", threshold=" + threshold);
+        }
+
+        this.threads = threads;
+        this.threshold = threshold;
+
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "betterFORM validation " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return the number of pool threads.
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * @return the minimum number of model items validated in parallel.
+     */
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * Runs the given tasks on the pool threads and waits for all of them.
+     *
+     * @param tasks the tasks.
+     * @throws ExecutionException if a task failed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void invokeAll(List<Callable<Object>> tasks) throws ExecutionException, InterruptedException {
+        List<Future<Object>> futures = this.executor.invokeAll(tasks);
+        for (int index = 0; index < futures.size(); index++) {
+            futures.get(index).get();
+        }
+    }
+
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    // ********************* helper ***************************************
+
+    private static int getIntProperty(Config config, String name, int defaultValue) {
+        String value = config.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOGGER.warn(name + " is not a number. Check your settings in betterform-config.xml!");
+        return defaultValue;
+    }
+}
@@ -27,14 +27,23 @@ import org.apache.xerces.util.NamespaceSupport;
 import org.apache.xerces.xs.XSConstants;
 import org.w3c.dom.Node;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 
 /**
  * Validates instance data items.
+ * <p/>
+ * Datatype names are resolved once per name to a {@link DatatypeHandle} holding the expanded name
+ * and the Schema type. The instance validation during <code>xforms-revalidate</code> validates only
+ * the model items with changed values once the model is ready, and large instances are validated
+ * in parallel if a {@link ValidationExecutor} is configured.
  *
  * @author Ulrich Nicolas Liss&eacute;
  * @version $Id: Validator.java 3508 2008-08-31 10:03:03Z lars $
@@ -56,9 +65,16 @@ public class Validator {
     private static String TYPE_NOTATION = "NOTATION";
     private static String TYPE_NS_NOTATION = NamespaceResolver.expand(NamespaceConstants.XMLSCHEMA_NS, Validator.TYPE_NOTATION);
 
+    private static final ThreadLocal<ValidationResources> RESOURCES = new ThreadLocal<ValidationResources>() {
+        protected ValidationResources initialValue() {
+            return new ValidationResources();
+        }
+    };
+
     private Model model;
     private Map datatypes;
     private ValidatorMode mode;
+    private final Map<String, DatatypeHandle> handles = new ConcurrentHashMap<String, DatatypeHandle>();
 
     /**
      * Creates a new Validator.
@@ -68,6 +84,14 @@ public class Validator {
         this.mode = new OptimizedValidatorMode();
     }
 
+    /**
+     * Drops the validation objects of the current thread. To be called by threads leaving the
+     * application, e.g. by server threads at the end of each request.
+     */
+    public static void releaseResources() {
+        RESOURCES.remove();
+    }
+
     /**
      * Returns the Model of this Validator.
      *
@@ -84,6 +108,7 @@ public class Validator {
      */
     public void setModel(Model model) {
         this.model = model;
+        this.handles.clear();
     }
 
     /**
@@ -102,6 +127,7 @@ public class Validator {
      */
     public void setDatatypes(Map datatypes) {
         this.datatypes = datatypes;
+        this.handles.clear();
     }
 
     /**
@@ -117,8 +143,7 @@ public class Validator {
             return false;
         }
 
-        String expandedName = NamespaceResolver.getExpandedName(this.model.getElement(), name);
-        return this.datatypes.get(expandedName) != null;
+        return getHandle(name).known;
     }
 
     /**
@@ -187,7 +212,36 @@ public class Validator {
         // ignored and nothing discontinues validation. once the model is ready,
         // model items are validated in optzimized mode which simply skips
         // all unmodified model items.
-        validate(instance, instance.getInstanceNodeset(), 1, "/", Collections.EMPTY_MAP, null, this.model.isReady() ? this.mode : new DefaultValidatorMode());
+        List items;
+        if (this.model.isReady() && this.mode instanceof OptimizedValidatorMode) {
+            // the model keeps track of the modified items, no need to visit the others
+            items = this.model.listValueChangedItems(instance);
+        }
+        else {
+            ValidatorMode mode = this.model.isReady() ? this.mode : new DefaultValidatorMode();
+            items = new ArrayList();
+            Iterator iterator = instance.iterateModelItems(instance.getInstanceNodeset(), 1, "/", Collections.EMPTY_MAP, null, true);
+            while (iterator.hasNext()) {
+                ModelItem modelItem = (ModelItem) iterator.next();
+                if (mode.performValidation(modelItem)) {
+                    items.add(modelItem);
+                }
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("validate Instance '" + instance.getId() + "': " + items.size() + " item(s)");
+        }
+
+        ValidationExecutor executor = ValidationExecutor.getInstance();
+        if (executor != null && items.size() >= executor.getThreshold() && items.size() > 1) {
+            validateParallel(items, executor);
+        }
+        else {
+            for (int index = 0; index < items.size(); index++) {
+                validate((ModelItem) items.get(index));
+            }
+        }
     }
 
     /**
@@ -225,6 +279,26 @@ public class Validator {
      * @param modelItem the model item to be validated.
      */
     public void validate(ModelItem modelItem) {
+        // set datatype validity
+        modelItem.getLocalUpdateView().setDatatypeValid(isDatatypeValid(modelItem));
+    }
+
+    /**
+     * Computes the datatype validity of a model item without changing its state.
+     */
+    private boolean isDatatypeValid(ModelItem modelItem) {
+        boolean datatypeValid = isDatatypeValid(prepare(modelItem));
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("validate: " + DOMUtil.getCanonicalPath((Node) modelItem.getNode()) + " computed " + (datatypeValid ? "valid" : "INVALID"));
+        }
+        return datatypeValid;
+    }
+
+    /**
+     * Reads everything the datatype check of a model item needs from the model item and the
+     * model. Must be called by the thread owning the model, the result may be checked by any thread.
+     */
+    private ValidationItem prepare(ModelItem modelItem) {
         // obtain value to be checked
         String value = modelItem.getValue();
 
@@ -236,66 +310,176 @@ public class Validator {
             }
 
             // item is considered valid regardless which type it has
-            modelItem.getLocalUpdateView().setDatatypeValid(true);
-            return;
+            return ValidationItem.NIL;
+        }
+
+        String xsiTypeName = modelItem.getXSIType();
+        DatatypeHandle xsiType = xsiTypeName != null ? getHandle(xsiTypeName) : null;
+        String xfTypeName = modelItem.getDeclarationView().getDatatype();
+        DatatypeHandle xfType = xfTypeName != null ? getHandle(xfTypeName) : null;
+
+        // QNames are resolved against the namespaces in scope of the model
+        String prefix = null;
+        String namespaceURI = null;
+        if (((xsiType != null && xsiType.qname) || (xfType != null && xfType.qname)) && value != null && value.indexOf(":") != -1) {
+            prefix = value.substring(0, value.indexOf(":")).intern();
+            namespaceURI = (String) NamespaceResolver.getAllNamespaces(this.model.getElement()).get(prefix);
+        }
+
+        return new ValidationItem(value, xsiType, xfType, prefix, namespaceURI);
+    }
+
+    /**
+     * Computes the datatype validity of a prepared model item. Reads neither the model item nor
+     * the model.
+     */
+    private boolean isDatatypeValid(ValidationItem item) {
+        if (item == ValidationItem.NIL) {
+            return true;
         }
 
         // compute datatype validity
         boolean datatypeValid = true;
 
         // first check xsi:type ...
-        String xsiType = expandName(modelItem.getXSIType());
-        if (xsiType != null && !isDefaultType(xsiType) && isKnown(modelItem.getXSIType())) {
+        if (item.xsiType != null && item.xsiType.check && item.xsiType.known) {
             // only check non-string datatypes
-            datatypeValid = checkDatatype(xsiType, value);
+            datatypeValid = checkDatatype(item.xsiType, item);
         }
 
         // ... then check xf:type
-        String xfType = expandName(modelItem.getDeclarationView().getDatatype());
-        if (xfType != null && !isDefaultType(xfType)) {
+        if (item.xfType != null && item.xfType.check) {
             // only check non-string datatypes
-            datatypeValid &= checkDatatype(xfType, value);
+            datatypeValid &= checkDatatype(item.xfType, item);
         }
 
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("validate: " + DOMUtil.getCanonicalPath((Node) modelItem.getNode()) + " computed " + (datatypeValid ? "valid" : "INVALID"));
+        return datatypeValid;
+    }
+
+    /**
+     * Validates the model items in partitions on the threads of the executor. The calling thread
+     * reads the values and types of the model items, the validity is computed in parallel from these
+     * plain values, the model items are updated afterwards by the calling thread.
+     */
+    private void validateParallel(List items, ValidationExecutor executor) throws XFormsException {
+        final ValidationItem[] prepared = new ValidationItem[items.size()];
+        for (int index = 0; index < prepared.length; index++) {
+            prepared[index] = prepare((ModelItem) items.get(index));
         }
+        final boolean[] valid = new boolean[items.size()];
+        int partitions = Math.min(items.size(), executor.getThreads() * 2);
+        int partitionSize = (items.size() + partitions - 1) / partitions;
 
-        // set datatype validity
-        modelItem.getLocalUpdateView().setDatatypeValid(datatypeValid);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("validate: " + items.size() + " item(s) in " + partitions + " partition(s)");
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(partitions);
+        for (int start = 0; start < items.size(); start += partitionSize) {
+            final int from = start;
+            final int to = Math.min(items.size(), start + partitionSize);
+            tasks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (int index = from; index < to; index++) {
+                        valid[index] = isDatatypeValid(prepared[index]);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            executor.invokeAll(tasks);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new XFormsException("parallel validation failed", cause instanceof Exception ? (Exception) cause : e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XFormsException("parallel validation interrupted", e);
+        }
+
+        for (int index = 0; index < valid.length; index++) {
+            ModelItem modelItem = (ModelItem) items.get(index);
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("validate: " + DOMUtil.getCanonicalPath((Node) modelItem.getNode()) + " computed " + (valid[index] ? "valid" : "INVALID"));
+            }
+            modelItem.getLocalUpdateView().setDatatypeValid(valid[index]);
+        }
     }
 
-    private String expandName(String datatype) {
-        return datatype != null ? NamespaceResolver.getExpandedName(this.model.getElement(), datatype) : null;
+    /**
+     * Returns the handle of a datatype name, resolving the name on first use.
+     */
+    private DatatypeHandle getHandle(String name) {
+        DatatypeHandle handle = this.handles.get(name);
+        if (handle == null) {
+            synchronized (this.handles) {
+                handle = this.handles.get(name);
+                if (handle == null) {
+                    String expandedName = NamespaceResolver.getExpandedName(this.model.getElement(), name);
+                    Object type = this.datatypes != null ? this.datatypes.get(expandedName) : null;
+                    handle = new DatatypeHandle(expandedName, type, !isDefaultType(expandedName));
+                    if (handle.simpleType != null && !handle.qname) {
+                        // let Xerces prepare the type (e.g. compile pattern facets) before threads share it
+                        checkDatatype(handle, "", null, null);
+                    }
+                    this.handles.put(name, handle);
+                }
+            }
+        }
+        return handle;
     }
 
     private boolean isDefaultType(String expandedName) {
         return TYPE_STRING.equals(expandedName) || TYPE_NS_STRING.equals(expandedName);
     }
 
-    private boolean checkDatatype(String expandedName, String value) {
-        XSSimpleType simpleType = (XSSimpleType) this.datatypes.get(expandedName);
+    private boolean checkDatatype(DatatypeHandle handle, ValidationItem item) {
+        return checkDatatype(handle, item.value, item.prefix, item.namespaceURI);
+    }
+
+    private boolean checkDatatype(DatatypeHandle handle, String value, String nsPrefix, String nsURI) {
+        String expandedName = handle.expandedName;
+        XSSimpleType simpleType = handle.simpleType;
+        if (simpleType == null) {
+            // unknown or complex type, nothing to check against
+            return true;
+        }
+
+        if(LOGGER.isTraceEnabled()){
+            LOGGER.trace("checking datatype - expandedName: " + expandedName);
+        }
+
+        if (!handle.qname) {
+            // reuse the validation objects of this thread
+            ValidationResources resources = RESOURCES.get();
+            resources.validatedInfo.reset();
+            try {
+                simpleType.validate(value, resources.validationState, resources.validatedInfo);
+            }
+            catch (InvalidDatatypeValueException e) {
+                if(LOGGER.isTraceEnabled()){
+                    LOGGER.trace("value '" + value + "' of type " + expandedName + " is invalid - " + e.getMessage());
+                }
+                return false;
+            }
+            return true;
+        }
+
         ValidatedInfo validatedInfo = new ValidatedInfo();
         ValidationState validationState = new ValidationState();
         validationState.setFacetChecking(true);
         validationState.setExtraChecking(false);
         validationState.setUsingNamespaces(true);
 
-        if(LOGGER.isTraceEnabled()){
-            LOGGER.trace("checking datatype - expandedName: " + expandedName);
-        }
         // TODO: does not yet work with restricted QNames
-        if(expandedName.endsWith("QName") && value.indexOf(":") != -1){
+        if(nsPrefix != null && nsURI != null) {
             NamespaceSupport support = new NamespaceSupport();
             support.pushContext();
-            String nsPrefix = value.substring(0,value.indexOf(":")).intern();
-            Map namespaces = NamespaceResolver.getAllNamespaces(this.model.getElement());
-            String nsURI  = (String) namespaces.get(nsPrefix);
-
-            if(nsPrefix != null && nsURI != null) {
-                support.declarePrefix(nsPrefix, nsURI);
-                validationState.setNamespaceSupport(support);
-            }
+            support.declarePrefix(nsPrefix, nsURI);
+            validationState.setNamespaceSupport(support);
         }
 
         //TODO: handle nullpointer see Testcase 8.1.4.b
@@ -311,6 +495,60 @@ public class Validator {
 
         return true;
     }
+
+    /**
+     * A resolved datatype name.
+     */
+    private static class DatatypeHandle {
+        private final String expandedName;
+        private final boolean known;
+        private final boolean check;
+        private final boolean qname;
+        private final XSSimpleType simpleType;
+
+        private DatatypeHandle(String expandedName, Object type, boolean check) {
+            this.expandedName = expandedName;
+            this.known = type != null;
+            this.check = check;
+            this.qname = expandedName.endsWith("QName");
+            this.simpleType = type instanceof XSSimpleType ? (XSSimpleType) type : null;
+        }
+    }
+
+    /**
+     * The value of a model item along with the resolved types and namespace to check it against.
+     */
+    private static class ValidationItem {
+        private static final ValidationItem NIL = new ValidationItem(null, null, null, null, null);
+
+        private final String value;
+        private final DatatypeHandle xsiType;
+        private final DatatypeHandle xfType;
+        private final String prefix;
+        private final String namespaceURI;
+
+        private ValidationItem(String value, DatatypeHandle xsiType, DatatypeHandle xfType, String prefix, String namespaceURI) {
+            this.value = value;
+            this.xsiType = xsiType;
+            this.xfType = xfType;
+            this.prefix = prefix;
+            this.namespaceURI = namespaceURI;
+        }
+    }
+
+    /**
+     * Validation objects reused by a thread for all types not depending on namespace declarations.
+     */
+    private static class ValidationResources {
+        private final ValidatedInfo validatedInfo = new ValidatedInfo();
+        private final ValidationState validationState = new ValidationState();
+
+        private ValidationResources() {
+            this.validationState.setFacetChecking(true);
+            this.validationState.setExtraChecking(false);
+            this.validationState.setUsingNamespaces(true);
+        }
+    }
 }
 
 // end of class
@@ -13,6 +13,7 @@ import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Node;
 
 import java.util.Enumeration;
+import java.util.Set;
 import java.util.Vector;
 
 
@@ -73,6 +74,11 @@ public abstract class Vertex {
      */
     protected String xpathExpression = null;
 
+    /**
+     * the reference paths of the xpath expression, used to resolve the referenced nodes again
+     */
+    protected Set references = null;
+
     /**
      * list of referencees
      */
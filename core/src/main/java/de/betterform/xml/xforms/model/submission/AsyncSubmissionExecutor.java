@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model.submission;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.config.XFormsConfigException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of threads running asynchronous submissions (<code>mode="asynchronous"</code>).
+ * <p/>
+ * The pool is shared by all sessions. The number of threads and the number of submissions waiting
+ * for a free thread are configured with the properties 'betterform.submission.async.threads' and
+ * 'betterform.submission.async.queue' of betterform-config. Submissions exceeding the queue are
+ * rejected.
+ *
+ * @version $Id$
+ */
+public class AsyncSubmissionExecutor {
+
+    private static final Log LOGGER = LogFactory.getLog(AsyncSubmissionExecutor.class);
+
+    public static final String THREADS_PROPERTY = "betterform.submission.async.threads";
+    public static final String QUEUE_PROPERTY = "betterform.submission.async.queue";
+
+    public static final int DEFAULT_THREADS = 10;
+    public static final int DEFAULT_QUEUE = 100;
+
+    private static AsyncSubmissionExecutor fgInstance = null;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Returns the shared executor, creating it from betterform-config on first use.
+     *
+     * @return the shared executor.
+     * @throws XFormsConfigException if the configuration could not be loaded.
+     */
+    public static synchronized AsyncSubmissionExecutor getInstance() throws XFormsConfigException {
+        if (fgInstance == null) {
+            Config config = Config.getInstance();
+            fgInstance = new AsyncSubmissionExecutor(
+                    getIntProperty(config, THREADS_PROPERTY, DEFAULT_THREADS),
+                    getIntProperty(config, QUEUE_PROPERTY, DEFAULT_QUEUE));
+        }
+        return fgInstance;
+    }
+
+    /**
+     * Stops the threads of the shared executor. Running submissions are interrupted, waiting ones
+     * are dropped. The next call to {@link #getInstance()} creates a new executor.
+     */
+    public static synchronized void shutdownInstance() {
+        if (fgInstance != null) {
+            fgInstance.shutdown();
+            fgInstance = null;
+        }
+    }
+
+    protected AsyncSubmissionExecutor(int threads, int queueSize) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("asynchronous submission executor created: threads=" + threads + ", queue=" + queueSize);
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "betterFORM asynchronous submission " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Runs a submission on a pool thread.
+     *
+     * @param submission the submission task.
+     * @throws RejectedExecutionException if all threads are busy and the queue is full.
+     */
+    public void execute(Runnable submission) throws RejectedExecutionException {
+        this.executor.execute(submission);
+    }
+
+    /**
+     * @return the number of pool threads.
+     */
+    public int getThreads() {
+        return this.executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the number of submissions currently running.
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of submissions waiting for a free thread.
+     */
+    public int getQueued() {
+        return this.executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    // ********************* helper ***************************************
+
+    private static int getIntProperty(Config config, String name, int defaultValue) {
+        String value = config.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOGGER.warn(name + " is not a positive number. Check your settings in betterform-config.xml!");
+        return defaultValue;
+    }
+}
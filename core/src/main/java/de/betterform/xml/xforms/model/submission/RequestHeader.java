@@ -5,7 +5,9 @@
 
 package de.betterform.xml.xforms.model.submission;
 
-public class RequestHeader {
+import java.io.Serializable;
+
+public class RequestHeader implements Serializable {
     private String name;
     private String value;
 
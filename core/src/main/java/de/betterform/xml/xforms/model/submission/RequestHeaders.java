@@ -8,11 +8,12 @@ package de.betterform.xml.xforms.model.submission;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-public class RequestHeaders {
+public class RequestHeaders implements Serializable {
 
     private List<RequestHeader> headers;
     private static Log LOGGER = LogFactory.getLog(RequestHeaders.class);
@@ -5,6 +5,7 @@
 
 package de.betterform.xml.xforms.model.submission;
 
+import de.betterform.connector.AbstractConnector;
 import de.betterform.connector.SubmissionHandler;
 import de.betterform.connector.http.AbstractHTTPConnector;
 import de.betterform.generator.XSLTGenerator;
@@ -43,12 +44,15 @@ import org.w3c.dom.events.Event;
 
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMResult;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -72,6 +76,7 @@ public class Submission extends BindingElement implements DefaultAction {
     private String separator = null;
     private List<String> includenamespaceprefixes = null;
     private String replace = null;
+    private boolean asynchronous = false;
     private String instance = null;
     private String targetExpr = null;
 
@@ -83,6 +88,7 @@ public class Submission extends BindingElement implements DefaultAction {
     private String serialization;
     private static final String EMBEDNODE = "embedElement";
     private static final String DOCUMENT = "document";
+    private static final String RESPONSE_PARSE_ERROR = "response-parse-error";
 
     /**
      * Creates a new Submission object.
@@ -413,6 +419,9 @@ public class Submission extends BindingElement implements DefaultAction {
             this.replace = "all";
         }
 
+        // get optional mode attribute
+        this.asynchronous = MODE_ASYNCHRONOUS.equals(getXFormsAttribute(MODE_ATTRIBUTE));
+
         // get optional instance attribute
         this.instance = getXFormsAttribute(INSTANCE_ATTRIBUTE);
 
@@ -619,39 +628,46 @@ public class Submission extends BindingElement implements DefaultAction {
 
             // serialize and transmit instance items
             SubmissionHandler sh = this.container.getConnectorFactory().createSubmissionHandler(this.action, this.element);
-            if (submissionBodyEl.getFirstChild() == null) {
-                response = sh.submit(this, instanceNode);
-            }
-            else {
-                response = sh.submit(this, submissionBodyEl.getFirstChild());
+            Node submitNode = submissionBodyEl.getFirstChild() == null ? instanceNode : submissionBodyEl.getFirstChild();
+            if (isAsynchronous() && submitAsynchronous(sh, submitNode)) {
+                // replace processing continues in completeAsynchronous()
+                return;
             }
-        }
-        catch (XFormsInternalSubmitException e) {
-        	Map<String, Object> info = XFormsSubmitError.constructInfoObject(this.element, this.container, locationPath, e.getErrorType(), getResourceURI(), e.getStatusCode(), null, e.getStatusText(), e.getResponseBodyAsString());
-            throw new XFormsSubmitError("instance submission failed at: " + DOMUtil.getCanonicalPath(this.getElement()), e, this.getTarget(), info);
+            response = sh.submit(this, submitNode);
         }
         catch (Exception e) {
-            String errorType;
-            if(e instanceof XFormsInternalSubmitException){
-                errorType = ((XFormsInternalSubmitException)e).getErrorType();
-            } else {
-                errorType = XFormsConstants.RESOURCE_ERROR;
-            }            
-            Map<String, Object> info = XFormsSubmitError.constructInfoObject(this.element, this.container, locationPath, errorType, getResourceURI());
-
-            //todo: hacky - event context info construction must be reviewed - using exception cause as response-reason-phrase for now
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                info.put(RESPONSE_REASON_PHRASE,e.getCause().getMessage());
-                if(e.getCause() instanceof XFormsInternalSubmitException){
-                    info.put(RESPONSE_STATUS_CODE, new Integer(((XFormsInternalSubmitException)e.getCause()).getStatusCode()).doubleValue());
-                }
+            throw createSubmitError(e);
+        }
+
+        handleResponse(response);
+    }
+
+    /**
+     * Creates the <code>xforms-submit-error</code> indication for a failed submission.
+     */
+    private XFormsSubmitError createSubmitError(Exception e) throws XFormsException {
+        if (e instanceof XFormsInternalSubmitException) {
+            XFormsInternalSubmitException submitException = (XFormsInternalSubmitException) e;
+            Map<String, Object> info = XFormsSubmitError.constructInfoObject(this.element, this.container, locationPath, submitException.getErrorType(), getResourceURI(), submitException.getStatusCode(), null, submitException.getStatusText(), submitException.getResponseBodyAsString());
+            return new XFormsSubmitError("instance submission failed at: " + DOMUtil.getCanonicalPath(this.getElement()), e, this.getTarget(), info);
+        }
+
+        Map<String, Object> info = XFormsSubmitError.constructInfoObject(this.element, this.container, locationPath, XFormsConstants.RESOURCE_ERROR, getResourceURI());
+
+        //todo: hacky - event context info construction must be reviewed - using exception cause as response-reason-phrase for now
+        if (e.getCause() != null && e.getCause().getMessage() != null) {
+            info.put(RESPONSE_REASON_PHRASE,e.getCause().getMessage());
+            if(e.getCause() instanceof XFormsInternalSubmitException){
+                info.put(RESPONSE_STATUS_CODE, new Integer(((XFormsInternalSubmitException)e.getCause()).getStatusCode()).doubleValue());
             }
-            throw new XFormsSubmitError("instance submission failed at: " + DOMUtil.getCanonicalPath(this.getElement()), e, this.getTarget(), info);
-            //throw new XFormsSubmitError("instance submission failed", e, this.getTarget(), this.action);
         }
+        return new XFormsSubmitError("instance submission failed at: " + DOMUtil.getCanonicalPath(this.getElement()), e, this.getTarget(), info);
+    }
 
-        //todo: for async submits processing should stop here!!!
-        // handle replace mode
+    /**
+     * Performs replace processing of a submission response.
+     */
+    protected void handleResponse(Map response) throws XFormsException {
         if (this.replace.equals("all")) {
             submitReplaceAll(response);
             return;
@@ -685,6 +701,181 @@ public class Submission extends BindingElement implements DefaultAction {
         throw new XFormsSubmitError("unknown replace mode " + this.replace, this.getTarget(), XFormsSubmitError.constructInfoObject(this.element, this.container, locationPath, XFormsConstants.VALIDATION_ERROR, getResourceURI()));
     }
 
+    /**
+     * Checks whether this submission is run asynchronously. Only submissions replacing instance data
+     * or nothing are, the other replace modes replace the document or parts of the ui and need the
+     * request of the user.
+     */
+    protected boolean isAsynchronous() {
+        return this.asynchronous
+                && (this.replace.equals("instance") || this.replace.equals("text") || this.replace.equals("none"));
+    }
+
+    /**
+     * Runs the submission handler on a thread of the <code>AsyncSubmissionExecutor</code>. Before,
+     * the handler is prepared on the calling thread: the submission options are resolved, the data
+     * is serialized and the handler gets a private copy of the context, so the submission thread
+     * neither reads the instance or the submission nor touches the context of the processor. The
+     * replace processing is done by <code>completeAsynchronous()</code> on the thread processing the
+     * container, when it runs the pending tasks of the container.
+     *
+     * @return <code>false</code> if the handler does not support asynchronous submissions or the
+     * submission was rejected by the executor, the submission has to be run synchronously then.
+     */
+    private boolean submitAsynchronous(final SubmissionHandler handler, final Node data) throws XFormsException {
+        if (!(handler instanceof AbstractConnector) || !((AbstractConnector) handler).isAsynchronousSupported()) {
+            getLogger().warn(this + " submit: " + handler.getClass().getName() + " does not support asynchronous submissions, submitting synchronously");
+            return false;
+        }
+
+        handler.setContext(copyContext(handler.getContext()));
+        ((AbstractConnector) handler).prepare(this, data);
+
+        final Container submissionContainer = this.container;
+        final String replaceMode = this.replace;
+        AsyncSubmissionExecutor executor = AsyncSubmissionExecutor.getInstance();
+
+        submissionContainer.beginAsyncTask();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    Map response = null;
+                    Exception error = null;
+                    try {
+                        response = handler.submit(Submission.this, data);
+                        readResponse(response, replaceMode);
+                    }
+                    catch (Exception e) {
+                        error = e;
+                    }
+                    finally {
+                        submissionContainer.endAsyncTask(new Completion(response, error));
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            submissionContainer.endAsyncTask(null);
+            getLogger().warn(this + " submit: no thread available for asynchronous submission, submitting synchronously");
+            return false;
+        }
+
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug(this + " submit: submitting asynchronously");
+        }
+        return true;
+    }
+
+    /**
+     * Copies the context of the processor for a handler running on another thread. The request
+     * headers are copied as well, they are changed by every submission.
+     */
+    private static Map copyContext(Map context) {
+        Map copy = new HashMap(context);
+        RequestHeaders headers = (RequestHeaders) copy.get(AbstractHTTPConnector.HTTP_REQUEST_HEADERS);
+        if (headers != null) {
+            RequestHeaders headersCopy = new RequestHeaders();
+            for (RequestHeader header : headers.getAllHeaders()) {
+                headersCopy.addHeader(new RequestHeader(header.getName(), header.getValue()));
+            }
+            copy.put(AbstractHTTPConnector.HTTP_REQUEST_HEADERS, headersCopy);
+        }
+        return copy;
+    }
+
+    /**
+     * Reads the response body on the submission thread, so the connection is released before the
+     * replace processing. XML responses to be used as instance data are parsed straight from the
+     * connection, other responses are buffered.
+     */
+    private static void readResponse(Map response, String replace) throws IOException {
+        Object body = response.get(XFormsProcessor.SUBMISSION_RESPONSE_STREAM);
+        if (!(body instanceof InputStream)) {
+            return;
+        }
+
+        InputStream stream = (InputStream) body;
+        if (replace.equals("none")) {
+            stream.close();
+            return;
+        }
+
+        if (replace.equals("instance") && !response.containsKey(XFormsProcessor.SUBMISSION_RESPONSE_DOCUMENT)) {
+            try {
+                response.put(XFormsProcessor.SUBMISSION_RESPONSE_DOCUMENT, DOMUtil.parseInputStream(stream, true, false));
+            }
+            catch (Exception e) {
+                // parse error is reported during replace processing
+                response.put(RESPONSE_PARSE_ERROR, e);
+            }
+            finally {
+                stream.close();
+            }
+            return;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            byte[] bytes = new byte[4096];
+            int count;
+            while ((count = stream.read(bytes)) != -1) {
+                buffer.write(bytes, 0, count);
+            }
+        }
+        finally {
+            stream.close();
+        }
+        response.put(XFormsProcessor.SUBMISSION_RESPONSE_STREAM, new ByteArrayInputStream(buffer.toByteArray()));
+    }
+
+    /**
+     * Performs the replace processing of an asynchronous submission on the thread processing the
+     * container. Errors are dispatched as <code>xforms-submit-error</code>, they can not be rethrown
+     * as the event flow which started the submission has finished already.
+     */
+    private void completeAsynchronous(Map response, Exception error) {
+        if (this.container.lookup(this.id) != this) {
+            getLogger().warn(this + " submit: submission has been disposed, response of asynchronous submission ignored");
+            return;
+        }
+
+        try {
+            if (error != null) {
+                throw createSubmitError(error);
+            }
+            handleResponse(response);
+        }
+        catch (XFormsErrorIndication indication) {
+            LOGGER.warn("XForms Error: " + indication.getMessage());
+            if (!indication.isHandled()) {
+                try {
+                    this.container.dispatch(indication.getEventTarget(), indication.getEventType(), indication.getContextInfo());
+                }
+                catch (XFormsException e) {
+                    LOGGER.error(this + " submit: exception during error indication event", e);
+                }
+                indication.setHandled();
+            }
+        }
+        catch (XFormsException e) {
+            LOGGER.error(this + " submit: asynchronous submission failed", e);
+        }
+    }
+
+    private class Completion implements Runnable {
+        private final Map response;
+        private final Exception error;
+
+        Completion(Map response, Exception error) {
+            this.response = response;
+            this.error = error;
+        }
+
+        public void run() {
+            completeAsynchronous(this.response, this.error);
+        }
+    }
+
     /**
 	 * @return
 	 * @throws XFormsException
@@ -919,7 +1110,10 @@ public class Submission extends BindingElement implements DefaultAction {
         Document responseInstance;
         try {
 
-            if(response.containsKey(XFormsProcessor.SUBMISSION_RESPONSE_DOCUMENT)){
+            if(response.containsKey(RESPONSE_PARSE_ERROR)){
+                // response was parsed on the submission thread already
+                throw (Exception) response.remove(RESPONSE_PARSE_ERROR);
+            }else if(response.containsKey(XFormsProcessor.SUBMISSION_RESPONSE_DOCUMENT)){
                 responseInstance = (Document) response.get(XFormsProcessor.SUBMISSION_RESPONSE_DOCUMENT);
             }else{
                 InputStream responseStream = (InputStream) response.get(XFormsProcessor.SUBMISSION_RESPONSE_STREAM);
@@ -1128,6 +1322,7 @@ public class Submission extends BindingElement implements DefaultAction {
             }else {
                 throw new XFormsSubmitError("Invalid target", this.getTarget(), XFormsSubmitError.constructInfoObject(this.element, this.container, locationPath, XFormsConstants.TARGET_ERROR, getResourceURI(), 200d, null, "", ""));
             }
+            invalidateIndexes(referedModel, targetNode);
         }
         else if(this.instance != null && referedModel.getInstance(this.instance) == null) {
             this.container.dispatch(referedModel.getId(), XFormsEventNames.BINDING_EXCEPTION);
@@ -1140,11 +1335,27 @@ public class Submission extends BindingElement implements DefaultAction {
         }
 
         // perform rebuild, recalculate, revalidate, and refresh
+        referedModel.requireFullRebuild();
         referedModel.rebuild();
         referedModel.recalculate();
         referedModel.revalidate();
     }
 
+    /**
+     * marks the indexes of the instance containing a node replaced by this submission for rebuilding,
+     * as the replacement bypasses the instance.
+     */
+    private void invalidateIndexes(Model model, Node targetNode) {
+        Document document = targetNode.getNodeType() == Node.DOCUMENT_NODE ? (Document) targetNode : targetNode.getOwnerDocument();
+        List instances = model.getInstances();
+        for (int index = 0; index < instances.size(); index++) {
+            Instance instance = (Instance) instances.get(index);
+            if (instance.getInstanceDocument() == document) {
+                instance.invalidateIndexes();
+            }
+        }
+    }
+
     /**
      * Performs replace processing according to section 11.1, para 5.
      */
@@ -1209,6 +1420,7 @@ public class Submission extends BindingElement implements DefaultAction {
         }else {
             LOGGER.warn("Don't know how to handle targetNode '" + targetNode.getLocalName() + "', node is neither an element nor an attribute Node");
         }
+        invalidateIndexes(this.model, targetNode);
 
         // perform rebuild, recalculate, revalidate, and refresh
         this.model.rebuild();
@@ -1241,6 +1453,16 @@ public class Submission extends BindingElement implements DefaultAction {
             getLogger().debug(this + " submit: replacing none");
         }
 
+        // the response body is not used, close it to free the underlying connection
+        Object responseStream = response.get(XFormsProcessor.SUBMISSION_RESPONSE_STREAM);
+        if (responseStream instanceof InputStream) {
+            try {
+                ((InputStream) responseStream).close();
+            } catch (IOException e) {
+                getLogger().warn(this + " submit: could not close response stream: " + e.getMessage());
+            }
+        }
+
         // dispatch xforms-submit-done
         this.container.dispatch(this.target, XFormsEventNames.SUBMIT_DONE, constructEventInfo(response));
     }
@@ -1249,7 +1471,7 @@ public class Submission extends BindingElement implements DefaultAction {
 		Map<String, Object> result = new HashMap<String, Object>();
 		
 		final Document ownerDocument = this.element.getOwnerDocument();
-		final DocumentWrapper wrapper = new DocumentWrapper(ownerDocument, this.container.getProcessor().getBaseURI(), this.container.getConfiguration());
+		final DocumentWrapper wrapper = this.container.getDocumentWrapper(ownerDocument);
 		
 		
 		List<Item> headerItems = new ArrayList<Item>(response.size());
@@ -122,6 +122,24 @@ public abstract class AbstractFormControl extends BindingElement implements Defa
     public void init() throws XFormsException {
         super.init();
         initializeActions();
+
+        BoundControlIndex index = this.model.getControlIndex();
+        if (index != null) {
+            index.add(this);
+        }
+    }
+
+    /**
+     * Performs element disposal.
+     *
+     * @throws XFormsException if any error occurred during disposal.
+     */
+    public void dispose() throws XFormsException {
+        BoundControlIndex index = this.model.getControlIndex();
+        if (index != null) {
+            index.remove(this);
+        }
+        super.dispose();
     }
 
     // lifecycle template methods
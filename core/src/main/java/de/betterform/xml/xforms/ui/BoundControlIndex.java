@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.ui;
+
+import de.betterform.xml.xforms.exception.XFormsException;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps instance nodes to the form controls bound to them for the dirty refresh of a model.
+ * <p/>
+ * Only form controls whose binding can change through a rebuild only are indexed, see
+ * {@link DirtyRefreshFilter#isStaticControl(AbstractFormControl)}. Controls are added when
+ * they are initialized and removed when they are disposed. As a rebuild is followed by a full
+ * refresh, the index is updated to the bound nodes after each full refresh.
+ *
+ * @version $Id$
+ */
+public class BoundControlIndex {
+
+    private final Map<Node, List<AbstractFormControl>> controls = new IdentityHashMap<Node, List<AbstractFormControl>>();
+    private final Map<AbstractFormControl, Node> nodes = new IdentityHashMap<AbstractFormControl, Node>();
+
+    /**
+     * adds a form control if its refresh can be restricted to the dirty region.
+     *
+     * @param control the initialized form control.
+     * @throws XFormsException if the bound node could not be determined.
+     */
+    public void add(AbstractFormControl control) throws XFormsException {
+        if (!DirtyRefreshFilter.isStaticControl(control)) {
+            return;
+        }
+        Node node = control.getInstanceNode();
+        this.nodes.put(control, node);
+        addControl(node, control);
+    }
+
+    /**
+     * removes a disposed form control.
+     *
+     * @param control the form control.
+     */
+    public void remove(AbstractFormControl control) {
+        if (this.nodes.containsKey(control)) {
+            removeControl(this.nodes.remove(control), control);
+        }
+    }
+
+    /**
+     * @param element an ui element.
+     * @return <code>true</code> if the element is an indexed form control.
+     */
+    public boolean contains(AbstractUIElement element) {
+        return this.nodes.containsKey(element);
+    }
+
+    /**
+     * @param node an instance node.
+     * @return the indexed form controls bound to the node.
+     */
+    public List<AbstractFormControl> getControls(Node node) {
+        List<AbstractFormControl> bound = this.controls.get(node);
+        return bound != null ? bound : Collections.<AbstractFormControl>emptyList();
+    }
+
+    public int size() {
+        return this.nodes.size();
+    }
+
+    /**
+     * moves the indexed form controls to the nodes they are bound to now.
+     *
+     * @throws XFormsException if a bound node could not be determined.
+     */
+    public void update() throws XFormsException {
+        for (Iterator<Map.Entry<AbstractFormControl, Node>> it = this.nodes.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<AbstractFormControl, Node> entry = it.next();
+            Node node = entry.getKey().getInstanceNode();
+            if (node != entry.getValue()) {
+                removeControl(entry.getValue(), entry.getKey());
+                addControl(node, entry.getKey());
+                entry.setValue(node);
+            }
+        }
+    }
+
+    private void addControl(Node node, AbstractFormControl control) {
+        if (node == null) {
+            // not bound, nothing to refresh
+            return;
+        }
+        List<AbstractFormControl> bound = this.controls.get(node);
+        if (bound == null) {
+            bound = new ArrayList<AbstractFormControl>(1);
+            this.controls.put(node, bound);
+        }
+        bound.add(control);
+    }
+
+    private void removeControl(Node node, AbstractFormControl control) {
+        List<AbstractFormControl> bound = node != null ? this.controls.get(node) : null;
+        if (bound != null) {
+            bound.remove(control);
+            if (bound.isEmpty()) {
+                this.controls.remove(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.ui;
+
+import de.betterform.xml.xforms.XFormsConstants;
+import de.betterform.xml.xforms.XFormsElement;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Restricts a refresh to the form controls bound to changed instance nodes.
+ * <p/>
+ * The filter holds the instance nodes whose model items changed since the last refresh (the dirty
+ * region). A form control is static if its binding can only change through a rebuild, i.e. neither
+ * the control, its ancestors nor its child ui elements use expressions that depend on instance
+ * values. Static controls are kept in the {@link BoundControlIndex} of the model: the refresh walk
+ * skips them and afterwards refreshes those bound to dirty nodes as found in the index. All other
+ * ui elements are refreshed as usual.
+ *
+ * @version $Id$
+ */
+public class DirtyRefreshFilter implements XFormsConstants {
+
+    /**
+     * matches instance('id') calls which select a fixed instance.
+     */
+    private static final Pattern INSTANCE_FUNCTION = Pattern.compile("instance\\(\\s*('[^']*'|\"[^\"]*\")\\s*\\)");
+
+    private static final String[] ANCESTOR_BINDING_ATTRIBUTES = {
+            REF_ATTRIBUTE, NODESET_ATTRIBUTE, REPEAT_NODESET_ATTRIBUTE, REPEAT_REF_ATTRIBUTE
+    };
+
+    private final Map<Node, Node> dirtyNodes = new IdentityHashMap<Node, Node>();
+    private final BoundControlIndex index;
+
+    /**
+     * @param index the static form controls of the model.
+     */
+    public DirtyRefreshFilter(BoundControlIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * adds a changed instance node. As the value of an element contains the values of its
+     * descendants, all ancestors are marked dirty as well.
+     *
+     * @param node the changed instance node.
+     */
+    public void addDirtyNode(Node node) {
+        Node current = node;
+        while (current != null && current.getNodeType() != Node.DOCUMENT_NODE) {
+            if (this.dirtyNodes.put(current, current) != null) {
+                // ancestors already added
+                return;
+            }
+            if (current.getNodeType() == Node.ATTRIBUTE_NODE) {
+                current = ((Attr) current).getOwnerElement();
+            } else {
+                current = current.getParentNode();
+            }
+        }
+    }
+
+    public boolean isDirty(Node node) {
+        return this.dirtyNodes.containsKey(node);
+    }
+
+    public int size() {
+        return this.dirtyNodes.size();
+    }
+
+    /**
+     * Checks whether the refresh walk can skip an ui element.
+     *
+     * @param uiElement the ui element.
+     * @return <code>true</code> if the element is a static form control, refreshed by
+     *         {@link #getDirtyControls()} if bound to a dirty node, otherwise <code>false</code>.
+     */
+    public boolean canSkip(AbstractUIElement uiElement) {
+        return this.index.contains(uiElement);
+    }
+
+    /**
+     * @return the static form controls bound to dirty nodes.
+     */
+    public List<AbstractFormControl> getDirtyControls() {
+        List<AbstractFormControl> controls = new ArrayList<AbstractFormControl>();
+        for (Node node : this.dirtyNodes.keySet()) {
+            controls.addAll(this.index.getControls(node));
+        }
+        return controls;
+    }
+
+    /**
+     * Checks whether a form control is static. Only depends on the ui document, so it is checked
+     * once when the control is initialized.
+     *
+     * @param control the initialized form control.
+     * @return <code>true</code> if the control is bound by an expression that does not depend on
+     *         instance values and neither its ancestors nor its child ui elements depend on them.
+     */
+    static boolean isStaticControl(AbstractFormControl control) {
+        return control.getNodeset() != null && isStatic(control)
+                && hasStaticAncestors(control.getElement()) && hasStaticChildren(control.getElement());
+    }
+
+    private static boolean isStatic(BindingElement element) {
+        if (element.attributeValueMap != null) {
+            return false;
+        }
+        if (element.getXFormsAttribute(VALUE_ATTRIBUTE) != null || element.getXFormsAttribute(CONTEXT_ATTRIBUTE) != null) {
+            return false;
+        }
+        return isStaticExpression(element.getXFormsAttribute(REF_ATTRIBUTE)) && isStaticExpression(element.getXFormsAttribute(NODESET_ATTRIBUTE));
+    }
+
+    private static boolean hasStaticAncestors(Element element) {
+        Node parent = element.getParentNode();
+        while (parent != null && parent.getNodeType() == Node.ELEMENT_NODE) {
+            Element ancestor = (Element) parent;
+            if (XFormsElement.getXFormsAttribute(ancestor, CONTEXT_ATTRIBUTE) != null) {
+                return false;
+            }
+            for (int i = 0; i < ANCESTOR_BINDING_ATTRIBUTES.length; i++) {
+                if (!isStaticExpression(XFormsElement.getXFormsAttribute(ancestor, ANCESTOR_BINDING_ATTRIBUTES[i]))) {
+                    return false;
+                }
+            }
+            parent = parent.getParentNode();
+        }
+        return true;
+    }
+
+    private static boolean hasStaticChildren(Element element) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+
+            Object userData = child.getUserData("");
+            if (userData instanceof BindingElement) {
+                BindingElement bindingElement = (BindingElement) userData;
+                if (bindingElement.hasBindingExpression() || !isStatic(bindingElement)) {
+                    return false;
+                }
+            }
+            if (!hasStaticChildren((Element) child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An expression is static if it selects nodes by path only. Predicates, variables and
+     * function calls other than <code>instance('id')</code> may depend on instance values.
+     */
+    static boolean isStaticExpression(String expression) {
+        if (expression == null) {
+            return true;
+        }
+        String path = expression;
+        if (path.indexOf("instance(") != -1) {
+            path = INSTANCE_FUNCTION.matcher(path).replaceAll("");
+        }
+        return path.indexOf('[') == -1 && path.indexOf('(') == -1 && path.indexOf('$') == -1 && path.indexOf('{') == -1;
+    }
+}
@@ -629,11 +629,9 @@ public class Repeat extends BindingElement implements EventListener {
     }
 
     private RepeatItem initializeRepeatItem(int position) throws XFormsException {
-        // detect reference node
-        Node before = DOMUtil.findNthChildNS(this.element, NamespaceConstants.XFORMS_NS, GROUP, position);
-        if (before == null) {
-            before = DOMUtil.findFirstChildNS(this.element, NamespaceConstants.BETTERFORM_NS, "data");
-        }
+        // detect reference node: the item currently at this position or the data element following all items
+        RepeatItem following = getRepeatItem(position);
+        Node before = following != null ? following.getElement() : getDataElement();
 
         // create repeat item
         Element group = (Element) this.prototype.cloneNode(true);
@@ -666,6 +664,17 @@ public class Repeat extends BindingElement implements EventListener {
         return repeatItem;
     }
 
+    private Node getDataElement() {
+        // the data element is appended during init and stays behind the items, look for it from the end
+        for (Node node = this.element.getLastChild(); node != null; node = node.getPreviousSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && NamespaceConstants.BETTERFORM_NS.equals(node.getNamespaceURI()) && "data".equals(node.getLocalName())) {
+                return node;
+            }
+        }
+
+        return null;
+    }
+
     private void disposeRepeatItem(RepeatItem repeatItem) throws XFormsException {
         // dispose repeat item
         Element element = repeatItem.getElement();
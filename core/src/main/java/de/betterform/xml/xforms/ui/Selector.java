@@ -86,7 +86,7 @@ public class Selector extends AbstractFormControl {
 		Item item;
 
 		Iterator iterator = null;
-        List elemContext = de.betterform.xml.xpath.impl.saxon.XPathUtil.getElementContext(getElement(), container.getProcessor().getBaseURI());
+        List elemContext = Collections.singletonList(container.getDocumentWrapper(getElement()).wrap(getElement()));
         String xformsPrefix = null;
         if (this.xformsPrefix != null){
             xformsPrefix = this.xformsPrefix;
@@ -340,7 +340,7 @@ public class Selector extends AbstractFormControl {
         Item item;
         String itemId;
         boolean selectable = true;
-        List elemContext = de.betterform.xml.xpath.impl.saxon.XPathUtil.getElementContext(getElement(), container.getProcessor().getBaseURI());
+        List elemContext = Collections.singletonList(container.getDocumentWrapper(getElement()).wrap(getElement()));
 
         String xfNamespacePrefix = this.xformsPrefix;
         if (xfNamespacePrefix == null) {
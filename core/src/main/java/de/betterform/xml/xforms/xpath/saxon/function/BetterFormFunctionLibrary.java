@@ -59,6 +59,13 @@ public class BetterFormFunctionLibrary extends XPathFunctionLibrary {
         arg(e, 0, BuiltInAtomicType.STRING, StaticProperty.EXACTLY_ONE);
         arg(e, 1, BuiltInAtomicType.STRING, StaticProperty.ALLOWS_ZERO_OR_ONE, null);
 
+        // lookup returns the rows of an instance having one of the given keys using a hash index
+        e = register("{" + NamespaceConstants.BETTERFORM_NS + "}lookup", Lookup.class, 0, 4, 4, Type.ITEM_TYPE, StaticProperty.ALLOWS_ZERO_OR_MORE);
+        arg(e, 0, BuiltInAtomicType.STRING, StaticProperty.EXACTLY_ONE);
+        arg(e, 1, BuiltInAtomicType.STRING, StaticProperty.EXACTLY_ONE);
+        arg(e, 2, BuiltInAtomicType.STRING, StaticProperty.EXACTLY_ONE);
+        arg(e, 3, Type.ITEM_TYPE, StaticProperty.ALLOWS_ZERO_OR_MORE, null);
+
 //        e = register("{" + NamespaceConstants.BETTERFORM_NS + "}appContext", AppContext.class, 0, 1, 2, BuiltInAtomicType.STRING, StaticProperty.EXACTLY_ONE);
 //        arg(e, 0, BuiltInAtomicType.STRING, StaticProperty.EXACTLY_ONE);
 //        arg(e, 1, BuiltInAtomicType.STRING, StaticProperty.ALLOWS_ZERO_OR_ONE, null);
@@ -9,6 +9,7 @@ import de.betterform.xml.xforms.Container;
 import de.betterform.xml.xforms.model.submission.RequestHeader;
 import de.betterform.xml.xforms.model.submission.RequestHeaders;
 import de.betterform.xml.xforms.xpath.saxon.function.XFormsFunction;
+import de.betterform.xml.xpath.impl.saxon.DocumentWrapperFactory;
 import net.sf.saxon.dom.DocumentWrapper;
 import net.sf.saxon.dom.NodeWrapper;
 import net.sf.saxon.expr.Expression;
@@ -16,7 +17,6 @@ import net.sf.saxon.expr.parser.ExpressionVisitor;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.tree.iter.ListIterator;
 import net.sf.saxon.om.SequenceIterator;
-import net.sf.saxon.sxpath.IndependentContext;
 import net.sf.saxon.trans.XPathException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -120,6 +120,6 @@ public class AppContext extends XFormsFunction {
 
 
     private DocumentWrapper getDocumentElementContext(Document document) {
-	    return new DocumentWrapper(document, "configuration.xml", new IndependentContext().getConfiguration());
+	    return DocumentWrapperFactory.getSharedFactory().getDocumentWrapper(document, "configuration.xml");
 	}
 }
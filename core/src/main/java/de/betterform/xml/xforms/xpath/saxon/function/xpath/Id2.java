@@ -5,14 +5,13 @@
 
 package de.betterform.xml.xforms.xpath.saxon.function.xpath;
 
+import de.betterform.xml.xforms.Container;
 import de.betterform.xml.xforms.XFormsElement;
 import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.model.bind.Binding;
 import de.betterform.xml.xforms.xpath.saxon.function.XFormsFunction;
 import de.betterform.xml.xforms.xpath.saxon.function.XPathFunctionContext;
 import de.betterform.xml.xpath.impl.saxon.XPathUtil;
-import net.sf.saxon.Configuration;
-import net.sf.saxon.dom.DocumentWrapper;
 import net.sf.saxon.expr.Expression;
 import net.sf.saxon.expr.StaticProperty;
 import net.sf.saxon.expr.XPathContext;
@@ -117,7 +116,7 @@ public class Id2 extends XFormsFunction {
             }
             try {
 				getElementsByIDs(ids, xformsElement.getModel().getInstance(binding.getInstanceId()).getInstanceDocument().getDocumentElement()
-						, resultList, xformsElement.getContainerObject().getConfiguration());
+						, resultList, xformsElement.getContainerObject());
 			} catch (XFormsException e) {
 				throw new XPathException(e);
 			}
@@ -125,7 +124,7 @@ public class Id2 extends XFormsFunction {
 			do {
 				getElementsByIDs(ids, XPathUtil.getAsNode(Collections
 						.singletonList(item), 1), resultList, xformsElement
-						.getContainerObject().getConfiguration());
+						.getContainerObject());
 			} while ((item = nodeIterator.next()) != null);
 		}
 
@@ -137,7 +136,7 @@ public class Id2 extends XFormsFunction {
 		return new ArrayIterator(resultList.toArray(result));
 	}
 
-	private void getElementsByIDs(String ids, Node node, ArrayList<Item> result, Configuration configuration) {
+	private void getElementsByIDs(String ids, Node node, ArrayList<Item> result, Container container) {
 		// Naive non-performant implementation
 		
 		final Set<String> idSet = new HashSet<String>(Arrays.asList(ids.split(" ")));
@@ -150,7 +149,7 @@ public class Id2 extends XFormsFunction {
     		final Element el = (Element)it;
 			if ((el.hasAttributeNS("http://www.w3.org/XML/1998/namespace", "id") && idSet.contains(el.getAttribute("xml:id"))) 
 					|| (el.hasAttributeNS("http://www.w3.org/XMLSchema-instance", "type") && "xsd:ID".equals(el.getAttributeNS("http://www.w3.org/XMLSchema-instance", "type")) && idSet.contains(el.getTextContent()))) {
-				result.add(new DocumentWrapper(el.getOwnerDocument(), "dummy", configuration).wrap(el));
+				result.add(container.getDocumentWrapper(el).wrap(el));
     		}
 	    }
 	}
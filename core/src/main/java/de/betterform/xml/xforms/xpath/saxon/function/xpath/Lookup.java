@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+package de.betterform.xml.xforms.xpath.saxon.function.xpath;
+
+import de.betterform.xml.xforms.Container;
+import de.betterform.xml.xforms.XFormsElement;
+import de.betterform.xml.xforms.exception.XFormsException;
+import de.betterform.xml.xforms.model.Instance;
+import de.betterform.xml.xforms.xpath.saxon.function.XFormsFunction;
+import de.betterform.xml.xforms.xpath.saxon.function.XPathFunctionContext;
+import net.sf.saxon.expr.Expression;
+import net.sf.saxon.expr.StringLiteral;
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.expr.parser.ExpressionVisitor;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.SequenceIterator;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.tree.iter.EmptyIterator;
+import net.sf.saxon.tree.iter.ListIterator;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks up rows of an instance by key using a hash index:
+ * <code>bf:lookup('codes', 'row', '@id', current()/code)</code> returns the same rows as
+ * <code>instance('codes')/row[@id = current()/code]</code> without scanning all rows.
+ * <p/>
+ * Arguments are the instance id, the path selecting the rows relative to the root element of the
+ * instance, the path selecting the keys relative to a row and the value(s) to look up. Keys and
+ * values are compared as strings. The index is maintained by the instance, see
+ * {@link de.betterform.xml.xforms.model.InstanceIndex}.
+ *
+ * @version $Id$
+ */
+public class Lookup extends XFormsFunction {
+    private static final long serialVersionUID = 6381724493851264671L;
+
+    public Expression preEvaluate(ExpressionVisitor visitor) throws XPathException {
+        return this;
+    }
+
+    /**
+     * Returns a path selecting the keys of all rows for the dependency analysis of binds. Expressions
+     * using this function depend on the rows found and on these keys, as changing a key changes
+     * the rows found.
+     *
+     * @param prefixMapping the namespace prefixes of the expression.
+     * @return the path or <code>null</code> if the instance id, the row path or the key path is not
+     *         given as a string literal.
+     */
+    public String getKeysReference(Map prefixMapping) {
+        if (argument.length != 4) {
+            return null;
+        }
+        for (int index = 0; index < 3; index++) {
+            if (!(argument[index] instanceof StringLiteral)) {
+                return null;
+            }
+        }
+
+        String instanceId = ((StringLiteral) argument[0]).getStringValue();
+        String rowPath = ((StringLiteral) argument[1]).getStringValue();
+        String keyPath = ((StringLiteral) argument[2]).getStringValue();
+        return "instance('" + instanceId + "')/(" + rowPath + ")/(" + keyPath + ")";
+    }
+
+    public SequenceIterator iterate(XPathContext xpathContext) throws XPathException {
+        if (argument.length != 4) {
+            throw new XPathException("There must be 4 arguments (instanceId, rowPath, keyPath, value) for this function");
+        }
+
+        XPathFunctionContext functionContext = getFunctionContext(xpathContext);
+        if (functionContext == null) {
+            return EmptyIterator.getInstance();
+        }
+
+        XFormsElement element = functionContext.getXFormsElement();
+        String instanceId = argument[0].evaluateAsString(xpathContext).toString();
+        Instance instance = element.getModel().getInstance(instanceId);
+        if (instance == null) {
+            throw new XPathException("Instance: " + instanceId + " not found");
+        }
+
+        String rowPath = argument[1].evaluateAsString(xpathContext).toString();
+        String keyPath = argument[2].evaluateAsString(xpathContext).toString();
+
+        List<String> values = new ArrayList<String>(1);
+        SequenceIterator valueIterator = argument[3].iterate(xpathContext);
+        for (Item item = valueIterator.next(); item != null; item = valueIterator.next()) {
+            values.add(item.getStringValue());
+        }
+        if (values.isEmpty()) {
+            return EmptyIterator.getInstance();
+        }
+
+        List<Node> rows;
+        try {
+            rows = instance.getIndex(rowPath, keyPath, element.getPrefixMapping()).lookup(values);
+        } catch (XFormsException e) {
+            throw new XPathException(e);
+        }
+        if (rows.isEmpty()) {
+            return EmptyIterator.getInstance();
+        }
+
+        Container container = element.getContainerObject();
+        List<Item> result = new ArrayList<Item>(rows.size());
+        for (int index = 0; index < rows.size(); index++) {
+            Node row = rows.get(index);
+            result.add(container.getDocumentWrapper(row).wrap(row));
+        }
+        return new ListIterator(result);
+    }
+}
@@ -16,7 +16,6 @@ import org.apache.xerces.xs.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -106,10 +105,7 @@ public class SchemaChilds extends XFormsFunction {
     }
 
     private Document handleElement(XSElementDeclaration xsElementDeclaration) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        Document document = factory.newDocumentBuilder().newDocument();
+        Document document = DOMUtil.getDocumentBuilder(true, false).newDocument();
         document.appendChild(document.createElementNS(xsElementDeclaration.getNamespace(), xsElementDeclaration.getName()));
         Element rootElement = document.getDocumentElement();
 
@@ -209,8 +205,7 @@ public class SchemaChilds extends XFormsFunction {
                     }
 
                     if (elementDocument != null) {
-                        String baseURI = container.getProcessor().getBaseURI();
-                        return new ListIterator(de.betterform.xml.xpath.impl.saxon.XPathUtil.getRootContext(elementDocument,baseURI));
+                        return new ListIterator(container.getRootContext(elementDocument));
                     }
                 }
 
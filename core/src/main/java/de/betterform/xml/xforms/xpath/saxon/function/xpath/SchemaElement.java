@@ -17,7 +17,6 @@ import org.apache.xerces.xs.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -205,10 +204,7 @@ public class SchemaElement extends XFormsFunction {
     }
 
     private Document handleElement(XSElementDeclaration xsElementDeclaration) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        Document document = factory.newDocumentBuilder().newDocument();
+        Document document = DOMUtil.getDocumentBuilder(true, false).newDocument();
         document.appendChild(document.createElementNS(xsElementDeclaration.getNamespace(), xsElementDeclaration.getName()));
         Element rootElement = document.getDocumentElement();
 
@@ -235,10 +231,7 @@ public class SchemaElement extends XFormsFunction {
 
 
     private Document handleModelGroup(XSModelGroupDefinition xsModelGroupDefinition) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        Document document = factory.newDocumentBuilder().newDocument();
+        Document document = DOMUtil.getDocumentBuilder(true, false).newDocument();
 
         document.appendChild(document.createElementNS(xsModelGroupDefinition.getNamespace(), xsModelGroupDefinition.getName()));
         Element rootElement = document.getDocumentElement();
@@ -288,8 +281,7 @@ public class SchemaElement extends XFormsFunction {
                     }
 
                     if (elementDocument != null) {
-                        String baseURI = container.getProcessor().getBaseURI();
-                        return new ListIterator(de.betterform.xml.xpath.impl.saxon.XPathUtil.getRootContext(elementDocument,baseURI));
+                        return new ListIterator(container.getRootContext(elementDocument));
                     }
                 }
 
@@ -16,7 +16,6 @@ import org.apache.xerces.xs.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -100,10 +99,7 @@ public class SchemaEnumeration extends XFormsFunction {
                             XSSimpleTypeDecl xsSimpleTypeDecl = (XSSimpleTypeDecl) xsTypeDefinition;
                             StringList lexicalEnumeration = xsSimpleTypeDecl.getLexicalEnumeration();
                             if (lexicalEnumeration.getLength() > 0) {
-                                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                                factory.setNamespaceAware(true);
-                                factory.setValidating(false);
-                                Document document = factory.newDocumentBuilder().newDocument();
+                                Document document = DOMUtil.getDocumentBuilder(true, false).newDocument();
                                 document.appendChild(document.createElementNS(namespace, elementName));
                                 Element rootElement = document.getDocumentElement();
 
@@ -157,8 +153,7 @@ public class SchemaEnumeration extends XFormsFunction {
                     }
 
                     if (elementDocument != null) {
-                        String baseURI = container.getProcessor().getBaseURI();
-                        return new ListIterator(de.betterform.xml.xpath.impl.saxon.XPathUtil.getRootContext(elementDocument,baseURI));
+                        return new ListIterator(container.getRootContext(elementDocument));
                     }
                 }
 
@@ -49,4 +49,18 @@ public interface XPathReferenceFinder {
      * @throws XFormsException if a reference detection error occurred.
      */
     Set getReferences(String xpath, Map prefixMapping, Container container) throws XFormsException;
+
+    /**
+     * Checks whether the value of the given XPath expression depends on the position of
+     * nodes, i.e. whether it uses <code>position()</code>, <code>last()</code> or numeric
+     * predicates. The references of such an expression may select other nodes after an
+     * insertion or deletion.
+     *
+     * @param xpath the XPath expression.
+     * @param prefixMapping the prefix to name space mapping
+     * @param container the container
+     * @return <code>true</code> if the expression depends on node positions.
+     * @throws XFormsException if the expression cannot be analyzed.
+     */
+    boolean isPositionSensitive(String xpath, Map prefixMapping, Container container) throws XFormsException;
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xpath.impl.saxon;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.dom.DocumentWrapper;
+import net.sf.saxon.dom.NodeWrapper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Wraps DOM documents for Saxon with a fixed Configuration.
+ * <p/>
+ * Every document is wrapped once as long as its wrapper is in use, so nodes of the same document
+ * share a document number and compare as expected. Documents and wrappers are held weakly:
+ * documents no longer referenced elsewhere (e.g. replaced instances) are not kept alive by the
+ * factory, and wrappers no longer in use are created anew on the next request.
+ *
+ * @version $Id$
+ */
+public class DocumentWrapperFactory {
+
+    private static final DocumentWrapperFactory fgSharedFactory = new DocumentWrapperFactory(SaxonConfigurationFactory.getSharedConfiguration());
+
+    private final Configuration configuration;
+    private final Map<Document, WeakReference<DocumentWrapper>> wrappers = new WeakHashMap<Document, WeakReference<DocumentWrapper>>();
+
+    /**
+     * Returns the factory wrapping documents not owned by a container with the process-wide
+     * Configuration.
+     *
+     * @return the shared factory.
+     */
+    public static DocumentWrapperFactory getSharedFactory() {
+        return fgSharedFactory;
+    }
+
+    /**
+     * Creates a new factory.
+     *
+     * @param configuration the Configuration of the wrappers.
+     */
+    public DocumentWrapperFactory(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return the Configuration of the wrappers.
+     */
+    public Configuration getConfiguration() {
+        return this.configuration;
+    }
+
+    /**
+     * Returns the wrapper of a document. A wrapper still in use is returned if it has the same
+     * base URI, otherwise a new one is created.
+     *
+     * @param document the document.
+     * @param baseURI the base URI of the document, may be <code>null</code>.
+     * @return the wrapper.
+     */
+    public synchronized DocumentWrapper getDocumentWrapper(Document document, String baseURI) {
+        WeakReference<DocumentWrapper> reference = this.wrappers.get(document);
+        DocumentWrapper wrapper = reference != null ? reference.get() : null;
+        if (wrapper != null && (baseURI == null ? wrapper.getBaseURI() == null : baseURI.equals(wrapper.getBaseURI()))) {
+            return wrapper;
+        }
+
+        wrapper = new DocumentWrapper(document, baseURI, this.configuration);
+        this.wrappers.put(document, new WeakReference<DocumentWrapper>(wrapper));
+        return wrapper;
+    }
+
+    /**
+     * Wraps a node of a document.
+     *
+     * @param node the node, a document or a node within a document.
+     * @param baseURI the base URI of the document, may be <code>null</code>.
+     * @return the wrapped node.
+     */
+    public NodeWrapper wrap(Node node, String baseURI) {
+        Document document = node.getNodeType() == Node.DOCUMENT_NODE ? (Document) node : node.getOwnerDocument();
+        return getDocumentWrapper(document, baseURI).wrap(node);
+    }
+
+    /**
+     * @return the number of documents currently known.
+     */
+    public synchronized int size() {
+        return this.wrappers.size();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xpath.impl.saxon;
+
+import de.betterform.xml.config.Config;
+import net.sf.saxon.Configuration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out the Saxon Configurations used by the XForms containers.
+ * <p/>
+ * How Configurations are shared is set with the property 'betterform.saxon.configuration' of
+ * betterform-config:
+ * <ul>
+ * <li><code>session</code> (default): every container gets a Configuration of its own.</li>
+ * <li><code>form</code>: containers of forms with the same base URI share a Configuration.</li>
+ * <li><code>shared</code>: all containers share one Configuration.</li>
+ * </ul>
+ * The Configuration owns the NamePool and is part of the key of compiled XPath expressions in the
+ * {@link XPathCache}, so sharing it lets sessions share name codes and compiled expressions.
+ * <p/>
+ * Isolation: a shared Configuration holds no instance data. The NamePool only collects element and
+ * attribute names, compiled expressions are immutable and every evaluation runs with a dynamic
+ * context of its own, holding the context item, variables and the XForms function context. The
+ * NamePool and the document number allocator are synchronized by Saxon. Code using a shared
+ * Configuration must not change its settings (e.g. register collations or functions), as such
+ * changes affect all sessions.
+ *
+ * @version $Id$
+ */
+public class SaxonConfigurationFactory {
+
+    private static final Log LOGGER = LogFactory.getLog(SaxonConfigurationFactory.class);
+
+    public static final String MODE_PROPERTY = "betterform.saxon.configuration";
+    public static final String MODE_SESSION = "session";
+    public static final String MODE_FORM = "form";
+    public static final String MODE_SHARED = "shared";
+
+    /**
+     * maximum number of per-form Configurations held. Configurations of evicted forms stay in use
+     * by their running sessions, their compiled expressions are removed from the {@link XPathCache}.
+     */
+    public static final int MAX_FORM_CONFIGURATIONS = 100;
+
+    private static final Configuration fgSharedConfiguration = new Configuration();
+
+    private static final Map<String, Configuration> fgFormConfigurations = new LinkedHashMap<String, Configuration>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Configuration> eldest) {
+            if (size() > MAX_FORM_CONFIGURATIONS) {
+                // running sessions of the form recompile their expressions on demand
+                XPathCache.getInstance().evict(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static volatile String fgMode = null;
+
+    private SaxonConfigurationFactory() {
+    }
+
+    /**
+     * Returns the process-wide Configuration. It is used for all containers in mode
+     * <code>shared</code> and for expressions evaluated outside of a container.
+     *
+     * @return the process-wide Configuration.
+     */
+    public static Configuration getSharedConfiguration() {
+        return fgSharedConfiguration;
+    }
+
+    /**
+     * Returns the Configuration for a new container according to the configured mode.
+     *
+     * @param baseURI the base URI of the form, may be <code>null</code>.
+     * @return the Configuration to use.
+     */
+    public static Configuration getConfiguration(String baseURI) {
+        String mode = getMode();
+        if (MODE_SHARED.equals(mode)) {
+            return fgSharedConfiguration;
+        }
+        if (MODE_FORM.equals(mode) && baseURI != null) {
+            String key = getFormKey(baseURI);
+            synchronized (fgFormConfigurations) {
+                Configuration configuration = fgFormConfigurations.get(key);
+                if (configuration == null) {
+                    configuration = new Configuration();
+                    fgFormConfigurations.put(key, configuration);
+                }
+                return configuration;
+            }
+        }
+        return new Configuration();
+    }
+
+    /**
+     * Releases the Configuration of a container being shut down. A Configuration of its own is
+     * removed from the {@link XPathCache}, as the cached expressions would keep it alive. Shared
+     * and per-form Configurations held by this factory stay cached.
+     *
+     * @param configuration the Configuration of the container.
+     */
+    public static void release(Configuration configuration) {
+        if (configuration == null || configuration == fgSharedConfiguration) {
+            return;
+        }
+        synchronized (fgFormConfigurations) {
+            if (fgFormConfigurations.containsValue(configuration)) {
+                return;
+            }
+        }
+        XPathCache.getInstance().evict(configuration);
+    }
+
+    /**
+     * @return the configured mode, one of {@link #MODE_SESSION}, {@link #MODE_FORM} or
+     *         {@link #MODE_SHARED}.
+     */
+    public static String getMode() {
+        String mode = fgMode;
+        if (mode == null) {
+            mode = MODE_SESSION;
+            try {
+                String value = Config.getInstance().getProperty(MODE_PROPERTY, MODE_SESSION).trim();
+                if (MODE_SESSION.equals(value) || MODE_FORM.equals(value) || MODE_SHARED.equals(value)) {
+                    mode = value;
+                } else {
+                    LOGGER.warn(MODE_PROPERTY + " has unknown value '" + value + "', using '" + MODE_SESSION + "'. Check your settings in betterform-config.xml!");
+                }
+            } catch (Exception e) {
+                LOGGER.warn(MODE_PROPERTY + " could not be read, using '" + MODE_SESSION + "': " + e.getMessage());
+            }
+            fgMode = mode;
+        }
+        return mode;
+    }
+
+    /**
+     * Overrides the configured mode. Affects containers created afterwards only.
+     *
+     * @param mode the mode, <code>null</code> to read it from betterform-config again.
+     */
+    public static void setMode(String mode) {
+        fgMode = mode;
+    }
+
+    /**
+     * forms are identified by their base URI without query and fragment.
+     */
+    private static String getFormKey(String baseURI) {
+        int end = baseURI.length();
+        int query = baseURI.indexOf('?');
+        if (query != -1) {
+            end = query;
+        }
+        int fragment = baseURI.indexOf('#');
+        if (fragment != -1 && fragment < end) {
+            end = fragment;
+        }
+        return baseURI.substring(0, end);
+    }
+}
@@ -15,12 +15,20 @@ import net.sf.saxon.expr.AxisExpression;
 import net.sf.saxon.expr.ContextItemExpression;
 import net.sf.saxon.expr.Expression;
 import net.sf.saxon.expr.FilterExpression;
+import net.sf.saxon.expr.FirstItemExpression;
 import net.sf.saxon.expr.FunctionCall;
+import net.sf.saxon.expr.LastItemExpression;
 import net.sf.saxon.expr.ParentNodeExpression;
 import net.sf.saxon.expr.SlashExpression;
+import net.sf.saxon.expr.SubscriptExpression;
+import net.sf.saxon.expr.TailExpression;
+import net.sf.saxon.functions.Last;
+import net.sf.saxon.functions.Position;
+import net.sf.saxon.type.TypeHierarchy;
 import de.betterform.xml.xforms.Container;
 import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.xpath.saxon.function.Instance;
+import de.betterform.xml.xforms.xpath.saxon.function.xpath.Lookup;
 import de.betterform.xml.xpath.XPathReferenceFinder;
 
 /**
@@ -59,6 +67,43 @@ public class SaxonReferenceFinderImpl implements XPathReferenceFinder {
     }
   }
 
+  /**
+   * Checks whether the given XPath expression depends on node positions. Besides
+   * <code>position()</code> and <code>last()</code> this detects predicates with a numeric
+   * value, which Saxon may have rewritten to item, subscript or tail expressions.
+   *
+   * @param xpath the XPath expression.
+   * @param prefixMapping the prefix to name space mapping
+   * @param container the container
+   * @return <code>true</code> if the expression depends on node positions.
+   * @throws XFormsException if the expression cannot be compiled.
+   */
+  public boolean isPositionSensitive(String xpath, Map prefixMapping, Container container) throws XFormsException {
+    try {
+      Expression expression = XPathCache.getInstance().getXPathExpression(xpath, prefixMapping, container.getConfiguration()).getInternalExpression();
+      return isPositionSensitive(expression, container.getConfiguration().getTypeHierarchy());
+    } catch (Exception e) {
+      throw new XFormsException("Can't analyze positions in: " + xpath + " (" + e.getMessage() + ")", e);
+    }
+  }
+
+  private boolean isPositionSensitive(Expression expression, TypeHierarchy typeHierarchy) {
+    if (expression instanceof Position || expression instanceof Last
+            || expression instanceof FirstItemExpression || expression instanceof LastItemExpression
+            || expression instanceof SubscriptExpression || expression instanceof TailExpression) {
+      return true;
+    }
+    if (expression instanceof FilterExpression && ((FilterExpression) expression).isPositional(typeHierarchy)) {
+      return true;
+    }
+    for (Iterator it = expression.iterateSubExpressions(); it.hasNext();) {
+      if (isPositionSensitive((Expression) it.next(), typeHierarchy)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void addExpressionReferences(HashSet references, String context, Expression expression, Map prefixMapping) {
     if (expression instanceof AxisExpression) {
       references.add((context != null ? (context + "/") : "") + SaxonXPathExpressionSerializer.serialize(expression, prefixMapping));
@@ -82,6 +127,14 @@ public class SaxonReferenceFinderImpl implements XPathReferenceFinder {
       if (expression instanceof Instance) {
         references.add(newContext);
       }
+      if (expression instanceof Lookup) {
+        // the rows found and the keys of all rows, a changed key may change the rows found
+        references.add(newContext);
+        String keysReference = ((Lookup) expression).getKeysReference(prefixMapping);
+        if (keysReference != null) {
+          references.add(keysReference);
+        }
+      }
 
       for (Iterator it = expression.iterateSubExpressions(); it.hasNext();) {
         addExpressionReferences(references, context, (Expression) it.next(), prefixMapping);
@@ -5,6 +5,8 @@
 
 package de.betterform.xml.xpath.impl.saxon;
 
+import de.betterform.xml.config.Config;
+import de.betterform.xml.config.XFormsConfigException;
 import de.betterform.xml.ns.NamespaceConstants;
 import de.betterform.xml.xforms.XFormsProcessorImpl;
 import de.betterform.xml.xforms.exception.XFormsException;
@@ -29,19 +31,40 @@ import net.sf.saxon.sxpath.IndependentContext;
 import net.sf.saxon.trans.XPathException;
 import net.sf.saxon.tree.iter.LookaheadIterator;
 import net.sf.saxon.xpath.XPathFunctionLibrary;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Node;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A XPath cache that caches the XPath expressions.
+ * <p/>
+ * Compiled expressions are kept in a bounded LRU map keyed by the expression string, the
+ * namespace prefix mapping and the Saxon Configuration they were compiled against. Entries pin
+ * their Configuration, so they are dropped with {@link #evict(Configuration)} once it is no longer
+ * used, see {@link SaxonConfigurationFactory#release(Configuration)}. The cache
+ * can be switched off and sized with the properties 'betterform.xpath.cache.enabled' and
+ * 'betterform.xpath.cache.size' of betterform-config. Hit and miss counters are published
+ * through JMX under the name {@link #OBJECT_NAME}.
  *
  * @author Nick Van den Bleeken
  * @version $Id$
  */
-public class XPathCache {
-	
-    private static final Configuration kCONFIG = new Configuration();
+public class XPathCache implements XPathCacheMBean {
+
+    private static final Log LOGGER = LogFactory.getLog(XPathCache.class);
+
+    public static final String CACHE_ENABLED_PROPERTY = "betterform.xpath.cache.enabled";
+    public static final String CACHE_SIZE_PROPERTY = "betterform.xpath.cache.size";
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    public static final String OBJECT_NAME = "de.betterform:type=XPathCache";
+
+    private static final Configuration kCONFIG = SaxonConfigurationFactory.getSharedConfiguration();
 
 	private static final FunctionLibraryList fgXFormsFunctionLibrary;
 
@@ -62,6 +85,24 @@ public class XPathCache {
         return fgXPathCache;
     }
 
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(fgXPathCache, name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("XPathCache could not be registered as MBean: " + e.getMessage());
+        }
+    }
+
+    private final ExpressionMap expressions = new ExpressionMap();
+    private volatile boolean configured = false;
+    private volatile boolean enabled = true;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
     private XPathCache() {
     }
 
@@ -174,13 +215,51 @@ public class XPathCache {
 
     }
 
+    /**
+     * returns the compiled expression for given XPath, prefix mapping and configuration. The expression
+     * is taken from the cache if present, otherwise it is compiled and stored in the cache.
+     *
+     * @param xpathString the XPath expression
+     * @param prefixMapping the namespace prefixes in scope of the expression
+     * @param configuration the Saxon configuration to compile against
+     * @return the compiled expression
+     * @throws XPathException if the expression cannot be compiled
+     */
+    public XPathExpression getXPathExpression(String xpathString, Map prefixMapping, Configuration configuration) throws XPathException {
+        if (!this.configured) {
+            configure();
+        }
+        if (!this.enabled) {
+            return compileXPathExpression(xpathString, prefixMapping, configuration);
+        }
+
+        ExpressionKey key = new ExpressionKey(xpathString, prefixMapping, configuration);
+        XPathExpression exp;
+        synchronized (this.expressions) {
+            exp = (XPathExpression) this.expressions.get(key);
+        }
+        if (exp != null) {
+            this.hits.incrementAndGet();
+            return exp;
+        }
+
+        this.misses.incrementAndGet();
+        exp = compileXPathExpression(xpathString, prefixMapping, configuration);
+        // the key must not keep a reference to the caller's (mutable) map
+        key = new ExpressionKey(xpathString, new HashMap(prefixMapping), configuration);
+        synchronized (this.expressions) {
+            this.expressions.put(key, exp);
+        }
+        return exp;
+    }
+
     /**
      * @param xpathString
      * @param prefixMapping
      * @return
      * @throws XPathException
      */
-    public XPathExpression getXPathExpression(String xpathString, Map prefixMapping, Configuration configuration) throws XPathException {
+    private XPathExpression compileXPathExpression(String xpathString, Map prefixMapping, Configuration configuration) throws XPathException {
         XPathEvaluator xpe = new XPathEvaluator(configuration);
 
         //IndependentContext independentContext = (IndependentContext) xpe.getStaticContext();
@@ -204,6 +283,119 @@ public class XPathCache {
         return exp;
     }
 
+    /**
+     * reads the cache settings from betterform-config. Called lazily on first use as the
+     * configuration might not be loaded yet when this class is initialized.
+     */
+    private synchronized void configure() {
+        if (this.configured) {
+            return;
+        }
+        try {
+            Config config = Config.getInstance();
+            this.enabled = Boolean.valueOf(config.getProperty(CACHE_ENABLED_PROPERTY, "true")).booleanValue();
+            String size = config.getProperty(CACHE_SIZE_PROPERTY);
+            if (size != null) {
+                setMaxSize(Integer.parseInt(size.trim()));
+            }
+        } catch (XFormsConfigException e) {
+            LOGGER.warn("XPathCache could not read configuration - using defaults: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("invalid value for " + CACHE_SIZE_PROPERTY + " - using default of " + DEFAULT_CACHE_SIZE);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("XPathCache enabled: " + this.enabled + ", max size: " + getMaxSize());
+        }
+        this.configured = true;
+    }
+
+    /**
+     * forces the cache settings to be re-read from betterform-config on next use.
+     */
+    public synchronized void reconfigure() {
+        this.configured = false;
+        clear();
+    }
+
+    // XPathCacheMBean
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (this.expressions) {
+            return this.expressions.size();
+        }
+    }
+
+    public int getMaxSize() {
+        synchronized (this.expressions) {
+            return this.expressions.maxSize;
+        }
+    }
+
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("max size must be a positive number");
+        }
+        synchronized (this.expressions) {
+            this.expressions.maxSize = maxSize;
+            this.expressions.trim();
+        }
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public double getHitRatio() {
+        long hitCount = this.hits.get();
+        long lookups = hitCount + this.misses.get();
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+    public void clear() {
+        synchronized (this.expressions) {
+            this.expressions.clear();
+        }
+    }
+
+    /**
+     * removes all expressions compiled against given configuration.
+     *
+     * @param configuration the configuration no longer in use
+     * @return the number of removed expressions
+     */
+    public int evict(Configuration configuration) {
+        int removed = 0;
+        synchronized (this.expressions) {
+            for (Iterator it = this.expressions.keySet().iterator(); it.hasNext();) {
+                if (((ExpressionKey) it.next()).configuration == configuration) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public void resetStatistics() {
+        this.hits.set(0);
+        this.misses.set(0);
+    }
+
     /**
      * @param prefixMapping
      * @return
@@ -226,6 +418,66 @@ public class XPathCache {
         return independentContext;
     }
 
+    /**
+     * LRU map of compiled expressions. Not synchronized, access is guarded by the owning cache.
+     */
+    private static class ExpressionMap extends LinkedHashMap {
+        private int maxSize = DEFAULT_CACHE_SIZE;
+
+        ExpressionMap() {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > this.maxSize;
+        }
+
+        void trim() {
+            Iterator it = keySet().iterator();
+            while (size() > this.maxSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Cache key of a compiled expression. The configuration is compared by identity as compiled
+     * expressions hold name codes of its NamePool. Keys and compiled expressions hold the
+     * configuration strongly, entries are removed by {@link XPathCache#evict(Configuration)}.
+     */
+    private static final class ExpressionKey {
+        private final String xpath;
+        private final Map prefixMapping;
+        private final Configuration configuration;
+        private final int hash;
+
+        ExpressionKey(String xpath, Map prefixMapping, Configuration configuration) {
+            this.xpath = xpath;
+            this.prefixMapping = prefixMapping;
+            this.configuration = configuration;
+            this.hash = 31 * (31 * xpath.hashCode() + prefixMapping.hashCode()) + System.identityHashCode(configuration);
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ExpressionKey)) {
+                return false;
+            }
+            ExpressionKey other = (ExpressionKey) obj;
+            return this.hash == other.hash
+                    && this.configuration == other.configuration
+                    && this.xpath.equals(other.xpath)
+                    && this.prefixMapping.equals(other.prefixMapping);
+        }
+    }
+
     private static class ListSequenceIterator implements SequenceIterator, Cloneable, LastPositionFinder, LookaheadIterator {
 
         private List nodeset;
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xpath.impl.saxon;
+
+/**
+ * JMX management interface of the {@link XPathCache}.
+ *
+ * @version $Id$
+ */
+public interface XPathCacheMBean {
+
+    /**
+     * @return true if compiled expressions are cached
+     */
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return number of compiled expressions currently held
+     */
+    int getSize();
+
+    /**
+     * @return maximum number of compiled expressions held before the least recently used ones get evicted
+     */
+    int getMaxSize();
+
+    void setMaxSize(int maxSize);
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return hits divided by lookups or 0 if there have been no lookups yet
+     */
+    double getHitRatio();
+
+    /**
+     * removes all compiled expressions from the cache.
+     */
+    void clear();
+
+    void resetStatistics();
+}
@@ -8,11 +8,9 @@ package de.betterform.xml.xpath.impl.saxon;
 import de.betterform.xml.ns.NamespaceResolver;
 import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.xpath.saxon.function.XPathFunctionContext;
-import net.sf.saxon.dom.DocumentWrapper;
 import net.sf.saxon.dom.NodeWrapper;
 import net.sf.saxon.om.Item;
 import net.sf.saxon.om.NodeInfo;
-import net.sf.saxon.sxpath.IndependentContext;
 import net.sf.saxon.value.BooleanValue;
 import net.sf.saxon.value.DoubleValue;
 import org.w3c.dom.Document;
@@ -124,14 +122,14 @@ public class XPathUtil {
     public static List getRootContext(Document doc,String baseURI) {
             final Element documentElement = doc.getDocumentElement();
             if (documentElement != null)
-                return Collections.singletonList(new DocumentWrapper(doc, baseURI, new IndependentContext().getConfiguration()).wrap(documentElement));
+                return Collections.singletonList(DocumentWrapperFactory.getSharedFactory().getDocumentWrapper(doc, baseURI).wrap(documentElement));
             else
                 return Collections.EMPTY_LIST;
     }
 
     public static List getElementContext(Element element,String baseURI){
         if (element != null)
-            return Collections.singletonList(new DocumentWrapper(element.getOwnerDocument(), baseURI, new IndependentContext().getConfiguration()).wrap(element));
+            return Collections.singletonList(DocumentWrapperFactory.getSharedFactory().getDocumentWrapper(element.getOwnerDocument(), baseURI).wrap(element));
         else
             return Collections.EMPTY_LIST;
     }
@@ -13,16 +13,29 @@ import org.apache.commons.logging.LogFactory;
 import javax.xml.transform.*;
 import javax.xml.transform.stream.StreamSource;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides a resource caching implementation of TransformerService. Special
  * care is taken for the inter-dependencies of the cached resources, i.e.
  * a resource is considered dirty if any dependant resource is dirty. This
  * means that a stylesheet will be reloaded even if just an included stylesheet
- * has been changed. 
+ * has been changed.
+ * <p/>
+ * The service is shared by all sessions and safe for concurrent use. Cache
+ * lookups do not lock, and a stylesheet is compiled only once even if it is
+ * requested by several threads at the same time. How often resources are
+ * checked for modifications is controlled by the check interval, see
+ * {@link #setCheckInterval(long)}.
  *
  * @author Ulrich Nicolas Liss&eacute;
  * @version $Id: CachingTransformerService.java 2922 2007-10-17 14:07:48Z lars $
@@ -31,19 +44,31 @@ public class CachingTransformerService implements TransformerService, URIResolve
 
     private static final Log LOGGER = LogFactory.getLog(CachingTransformerService.class);
 
-    private HashMap resources;
-    private HashMap<String,URI> name2URI;
-    private ArrayList resolvers;
-    private TransformerFactory transformerFactory;
-    private boolean nocache = false;
+    /**
+     * check interval value to check resources for modifications on every access.
+     */
+    public static final long CHECK_ALWAYS = 0;
+
+    /**
+     * check interval value to never check resources for modifications.
+     */
+    public static final long CHECK_NEVER = -1;
+
+    private final ConcurrentMap<URI, CacheEntry> resources;
+    private final ConcurrentMap<String, URI> name2URI;
+    private final List resolvers;
+    private volatile TransformerFactory transformerFactory;
+    private volatile boolean nocache = false;
+    private volatile long checkInterval = CHECK_ALWAYS;
+    private ScheduledExecutorService checker;
 
     /**
      * Creates a new caching transformer service.
      */
     public CachingTransformerService() {
-        this.resources = new HashMap();
-        this.name2URI = new HashMap<String, URI>();
-        this.resolvers = new ArrayList();
+        this.resources = new ConcurrentHashMap<URI, CacheEntry>();
+        this.name2URI = new ConcurrentHashMap<String, URI>();
+        this.resolvers = new CopyOnWriteArrayList();
     }
 
     /**
@@ -64,13 +89,20 @@ public class CachingTransformerService implements TransformerService, URIResolve
      * @return the transformer factory.
      */
     public TransformerFactory getTransformerFactory() {
-        if (this.transformerFactory == null) {
-            this.transformerFactory = new net.sf.saxon.TransformerFactoryImpl();
-            this.transformerFactory.setURIResolver(this);
-            this.transformerFactory.setErrorListener(new XmlStylesheetTransformerErrorListener());
+        TransformerFactory factory = this.transformerFactory;
+        if (factory == null) {
+            synchronized (this) {
+                factory = this.transformerFactory;
+                if (factory == null) {
+                    factory = new net.sf.saxon.TransformerFactoryImpl();
+                    factory.setURIResolver(this);
+                    factory.setErrorListener(new XmlStylesheetTransformerErrorListener());
+                    this.transformerFactory = factory;
+                }
+            }
         }
 
-        return this.transformerFactory;
+        return factory;
     }
 
     /**
@@ -117,24 +149,21 @@ public class CachingTransformerService implements TransformerService, URIResolve
 
         try {
             // lookup cache entry
-            CacheEntry entry = (CacheEntry) this.resources.get(uri);
-            if (nocache==true || entry == null || entry.isDirty()) {
+            CacheEntry entry = this.resources.get(uri);
+            if (this.nocache || entry == null || isStale(entry)) {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("get transformer: cache " + (entry == null ? "miss" : "dirty") + " for " + uri);
                 }
 
-                 // load missing/dirty resource
+                // load missing/dirty resource
                 Resource resource = load(uri);
                 if (resource == null) {
                     // complain if resource couldn't be loaded
                     throw new IllegalArgumentException(uri.toString());
                 }
 
-                // sync entry with resource
-                entry = sync(entry, resource);
-
-                // store entry in cache
-                this.resources.put(uri, entry);
+                // store entry in cache, unless another thread was faster
+                entry = store(uri, entry, new CacheEntry(resource.lastModified(), resource));
                 this.name2URI.put(getXsltName(uri), uri);
             }
             else {
@@ -143,14 +172,8 @@ public class CachingTransformerService implements TransformerService, URIResolve
                 }
             }
 
-            if (entry.templates == null) {
-                // create source and templates object (this might trigger uri resolution)
-                Source source = new StreamSource(entry.resource.getInputStream());
-                source.setSystemId(uri.toString());
-                entry.templates = getTransformerFactory().newTemplates(source);
-            }
-
-            return entry.templates.newTransformer();
+            // compile templates once per entry (this might trigger uri resolution)
+            return entry.getTemplates(uri).newTransformer();
         }
         catch (Exception e) {
             throw new TransformerException(e);
@@ -166,6 +189,84 @@ public class CachingTransformerService implements TransformerService, URIResolve
         this.nocache = b;    
     }
 
+    /**
+     * Returns the interval in milliseconds cached resources are checked for modifications.
+     *
+     * @return the check interval.
+     */
+    public long getCheckInterval() {
+        return this.checkInterval;
+    }
+
+    /**
+     * Sets the interval in milliseconds cached resources are checked for modifications.
+     * <p/>
+     * With {@link #CHECK_ALWAYS} the resource and all its dependencies are checked on
+     * every access. With a positive interval a background thread checks all cached
+     * resources periodically and evicts modified ones, so a cache hit is a single
+     * lookup. With {@link #CHECK_NEVER} resources are never reloaded.
+     *
+     * @param interval the check interval.
+     */
+    public synchronized void setCheckInterval(long interval) {
+        stopChecker();
+        this.checkInterval = interval;
+
+        if (interval > 0) {
+            this.checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "betterFORM XSLT cache checker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.checker.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    evictDirtyEntries();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background modification checks. Cached transformers can still be obtained
+     * afterwards, but modified resources are not detected anymore.
+     */
+    public synchronized void shutdown() {
+        stopChecker();
+        this.checkInterval = CHECK_NEVER;
+    }
+
+    /**
+     * Removes all entries of modified resources, or of resources depending on modified
+     * resources, from the cache.
+     */
+    void evictDirtyEntries() {
+        try {
+            Iterator<Map.Entry<URI, CacheEntry>> iterator = this.resources.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<URI, CacheEntry> entry = iterator.next();
+                if (entry.getValue().isDirty()) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("evicting modified resource " + entry.getKey());
+                    }
+                    this.resources.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            // keep the checker running
+            LOGGER.warn("checking cached resources failed: " + e.getMessage());
+        }
+    }
+
+    private void stopChecker() {
+        if (this.checker != null) {
+            this.checker.shutdownNow();
+            this.checker = null;
+        }
+    }
+
     // implementation of 'javax.xml.transform.URIResolver'
 
     /**
@@ -188,8 +289,8 @@ public class CachingTransformerService implements TransformerService, URIResolve
             URI uri = base != null ? new URI(base).resolve(href) : new URI(href);
 
             // lookup cache entry
-            CacheEntry entry = (CacheEntry) this.resources.get(uri);
-            if (nocache == true || entry == null || entry.isDirty() || !(entry.isTransform())) {
+            CacheEntry entry = this.resources.get(uri);
+            if (this.nocache || entry == null || isStale(entry) || !(entry.isTransform())) {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("resolve: cache " + (entry == null ? "miss" : "dirty") + " for " + uri);
                 }
@@ -201,16 +302,16 @@ public class CachingTransformerService implements TransformerService, URIResolve
                     return null;
                 }
 
-                // sync entry with resource
-                entry = sync(entry, resource);
-
                 // store entry in cache
+                entry = new CacheEntry(resource.lastModified(), resource);
                 this.resources.put(uri, entry);
 
                 if (base != null) {
                     // add dependency to parent entry
-                    CacheEntry parent = (CacheEntry) this.resources.get(new URI(base));
-                    parent.dependencies.add(entry);
+                    CacheEntry parent = this.resources.get(new URI(base));
+                    if (parent != null) {
+                        parent.dependencies.add(entry);
+                    }
                 }
             }
             else {
@@ -267,32 +368,57 @@ public class CachingTransformerService implements TransformerService, URIResolve
         return null;
     }
 
-    private CacheEntry sync(CacheEntry entry, Resource resource) {
-        if (entry == null) {
-            // create entry
-            entry = new CacheEntry(resource.lastModified(), resource);
+    private boolean isStale(CacheEntry entry) {
+        // with a positive interval, modified entries are evicted by the checker
+        return this.checkInterval == CHECK_ALWAYS && entry.isDirty();
+    }
+
+    private CacheEntry store(URI uri, CacheEntry current, CacheEntry entry) {
+        if (this.nocache) {
+            this.resources.put(uri, entry);
+            return entry;
         }
-        else {
-            // reset entry for reuse
-            entry.lastModified = resource.lastModified();
-            entry.resource = resource;
-            entry.templates = null;
-            entry.dependencies.clear();
+        if (current != null && this.resources.replace(uri, current, entry)) {
+            return entry;
         }
 
-        return entry;
+        // first load or concurrent reload: use the entry stored first
+        CacheEntry existing = this.resources.putIfAbsent(uri, entry);
+        return existing != null ? existing : entry;
     }
 
-    private static class CacheEntry {
-        long lastModified;
-        Resource resource;
-        Templates templates;
-        List dependencies;
+    /**
+     * A cached resource. Entries are not modified after their templates are compiled, a
+     * modified resource is loaded into a new entry. Dependants still referring to the old
+     * entry are thus reported dirty as well.
+     */
+    private class CacheEntry {
+        final long lastModified;
+        final Resource resource;
+        final List dependencies;
+        private volatile Templates templates;
 
         CacheEntry(long lastModified, Resource resource) {
             this.lastModified = lastModified;
             this.resource = resource;
-            this.dependencies = new ArrayList();
+            this.dependencies = new CopyOnWriteArrayList();
+        }
+
+        Templates getTemplates(URI uri) throws Exception {
+            Templates result = this.templates;
+            if (result == null) {
+                synchronized (this) {
+                    result = this.templates;
+                    if (result == null) {
+                        // create source and templates object (this might trigger uri resolution)
+                        Source source = new StreamSource(this.resource.getInputStream());
+                        source.setSystemId(uri.toString());
+                        result = getTransformerFactory().newTemplates(source);
+                        this.templates = result;
+                    }
+                }
+            }
+            return result;
         }
 
         boolean isDirty() {
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.cache;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xpath.impl.saxon.XPathUtil;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Tests the cache of parsed form templates.
+ *
+ * @version $Id$
+ */
+public class CacheManagerTest extends TestCase {
+
+    private File form;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        Config.getInstance(Config.class.getResource("default.xml").getPath());
+
+        this.form = File.createTempFile("CacheManagerTest", ".xhtml");
+        copy(new File(XFormsProcessorImpl.class.getResource("actions.xhtml").getPath()), this.form);
+    }
+
+    protected void tearDown() throws Exception {
+        this.form.delete();
+        super.tearDown();
+    }
+
+    public void testTemplateIsCopied() throws Exception {
+        Document document = DOMResource.newDocumentBuilder().parse(this.form);
+        CacheManager.putTemplate("testTemplateIsCopied", document);
+
+        Document first = CacheManager.getTemplate("testTemplateIsCopied");
+        Document second = CacheManager.getTemplate("testTemplateIsCopied");
+
+        assertNotNull(first);
+        assertNotSame(document, first);
+        assertNotSame(first, second);
+        assertEquals(document.getDocumentElement().getNamespaceURI(), first.getDocumentElement().getNamespaceURI());
+        assertEquals(document.getElementsByTagNameNS("*", "*").getLength(), second.getElementsByTagNameNS("*", "*").getLength());
+        assertNull(CacheManager.getTemplate("unknown"));
+    }
+
+    public void testSessionsAreIsolated() throws Exception {
+        XFormsProcessorImpl first = createProcessor();
+        XFormsProcessorImpl second = createProcessor();
+
+        first.setControlValue("hello-input", "changed");
+
+        assertNotSame(first.getXForms(), second.getXForms());
+        assertEquals("changed", getValue(first));
+        assertEquals("Hello World", getValue(second));
+
+        first.shutdown();
+        second.shutdown();
+    }
+
+    public void testModifiedFormIsReloaded() throws Exception {
+        XFormsProcessorImpl first = createProcessor();
+        first.shutdown();
+
+        replace(this.form, "Hello World", "Hello Cache");
+        this.form.setLastModified(this.form.lastModified() + 2000);
+
+        XFormsProcessorImpl second = createProcessor();
+        assertEquals("Hello Cache", getValue(second));
+        second.shutdown();
+    }
+
+    private XFormsProcessorImpl createProcessor() throws Exception {
+        XFormsProcessorImpl processor = new XFormsProcessorImpl();
+        processor.setXForms(this.form.toURI());
+        processor.init();
+        return processor;
+    }
+
+    private String getValue(XFormsProcessorImpl processor) throws Exception {
+        Document instance = processor.getContainer().getDefaultModel().getDefaultInstance().getInstanceDocument();
+        return XPathUtil.evaluateAsString(instance, "//helloworld");
+    }
+
+    private void replace(File file, String text, String replacement) throws Exception {
+        InputStream in = new FileInputStream(file);
+        byte[] content = new byte[(int) file.length()];
+        int offset = 0;
+        while (offset < content.length) {
+            offset += in.read(content, offset, content.length - offset);
+        }
+        in.close();
+
+        OutputStream out = new FileOutputStream(file);
+        out.write(new String(content, "UTF-8").replace(text, replacement).getBytes("UTF-8"));
+        out.close();
+    }
+
+    private void copy(File source, File target) throws Exception {
+        InputStream in = new FileInputStream(source);
+        OutputStream out = new FileOutputStream(target);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        out.close();
+    }
+}
@@ -79,6 +79,30 @@ public class FileSubmissionHandlerTest extends TestCase {
         assertTrue(this.comparator.compare(this.instance, put));
     }
 
+    /**
+     * Tests that a prepared handler submits the instance data as of preparation.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testSubmitPutPrepared() throws Exception {
+        Submission submission = (Submission) this.xformsProcesssorImpl.getContainer().lookup("submission-put");
+        URI uri = ConnectorFactory.getFactory().getAbsoluteURI(submission.getAction(), submission.getElement());
+
+        FileSubmissionHandler handler = (FileSubmissionHandler) this.submissionHandler;
+        handler.setURI(uri.toString());
+        handler.prepare(submission, this.instance);
+        Document prepared = (Document) this.instance.cloneNode(true);
+        this.instance.getDocumentElement().appendChild(this.instance.createElement("changed"));
+
+        Map map = handler.submit(submission, null);
+        assertNotNull(map);
+
+        this.tmpFile = submission.getAction();
+        Document put = this.builder.parse(getClass().getResourceAsStream(this.tmpFile));
+        assertTrue(this.comparator.compare(prepared, put));
+        assertFalse(this.comparator.compare(this.instance, put));
+    }
+
     /**
      * Sets up the test.
      *
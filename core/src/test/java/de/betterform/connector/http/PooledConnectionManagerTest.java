@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.connector.http;
+
+import de.betterform.connector.ConnectorFactory;
+import de.betterform.xml.config.Config;
+import junit.framework.TestCase;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the shared pool of HTTP connections.
+ *
+ * @version $Id$
+ */
+public class PooledConnectionManagerTest extends TestCase {
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        Config.getInstance(Config.class.getResource("default.xml").getPath());
+        PooledConnectionManager.shutdownInstance();
+    }
+
+    protected void tearDown() throws Exception {
+        PooledConnectionManager.shutdownInstance();
+        super.tearDown();
+    }
+
+    public void testConfiguredLimits() throws Exception {
+        PooledConnectionManager manager = PooledConnectionManager.getInstance();
+
+        assertNotNull(manager);
+        assertEquals(100, manager.getMaxTotal());
+        assertEquals(20, manager.getDefaultMaxPerRoute());
+        assertEquals(30000, manager.getIdleTimeout());
+        assertEquals(30000, manager.getLeaseTimeout());
+        assertEquals(0, manager.getConnectionsInPool());
+        assertEquals(0, manager.getLeased());
+        assertEquals(0, manager.getLeases());
+        assertEquals(0, manager.getWaits());
+    }
+
+    public void testSharedInstance() throws Exception {
+        assertSame(PooledConnectionManager.getInstance(), PooledConnectionManager.getInstance());
+    }
+
+    public void testClientsShareConnectionManager() throws Exception {
+        ConnectorFactory factory = ConnectorFactory.getFactory();
+        BasicHttpParams params = new BasicHttpParams();
+        DefaultHttpClient first = factory.getHttpClient(params);
+        DefaultHttpClient second = factory.getHttpClient(new BasicHttpParams());
+
+        assertNotSame(first, second);
+        assertSame(PooledConnectionManager.getInstance(), first.getConnectionManager());
+        assertSame(first.getConnectionManager(), second.getConnectionManager());
+        assertEquals(30000, params.getLongParameter(PooledConnectionManager.CONN_MANAGER_TIMEOUT, 0));
+        // the connect timeout is left alone
+        assertEquals(0, HttpConnectionParams.getConnectionTimeout(params));
+    }
+
+    public void testCustomSchemesNotShared() throws Exception {
+        ConnectorFactory factory = ConnectorFactory.getFactory();
+        Scheme scheme = new Scheme("https", 9443, PlainSocketFactory.getSocketFactory());
+        DefaultHttpClient client = factory.getHttpClient(new BasicHttpParams(), Collections.singletonList(scheme));
+
+        assertNotSame(PooledConnectionManager.getInstance(), client.getConnectionManager());
+        assertSame(scheme, client.getConnectionManager().getSchemeRegistry().get("https"));
+        assertNotSame(scheme, PooledConnectionManager.getInstance().getSchemeRegistry().get("https"));
+        assertNotSame(scheme, factory.getHttpClient(new BasicHttpParams()).getConnectionManager().getSchemeRegistry().get("https"));
+    }
+
+    public void testLeaseTimeout() throws Exception {
+        PooledConnectionManager manager = new PooledConnectionManager(1, 1, 0, 100);
+        try {
+            HttpRoute route = new HttpRoute(new HttpHost("localhost", 8080));
+            ManagedClientConnection connection = manager.requestConnection(route, null).getConnection(0, TimeUnit.MILLISECONDS);
+            assertNotNull(connection);
+
+            // a timeout of 0 (the default connect timeout) must not wait forever
+            try {
+                manager.requestConnection(route, null).getConnection(0, TimeUnit.MILLISECONDS);
+                fail("ConnectionPoolTimeoutException expected");
+            } catch (ConnectionPoolTimeoutException e) {
+                assertEquals(1, manager.getTimeouts());
+            }
+            manager.releaseConnection(connection, -1, TimeUnit.MILLISECONDS);
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    public void testShutdownCreatesNewPool() throws Exception {
+        PooledConnectionManager manager = PooledConnectionManager.getInstance();
+        PooledConnectionManager.shutdownInstance();
+
+        assertNotSame(manager, PooledConnectionManager.getInstance());
+    }
+}
@@ -83,4 +83,23 @@ public class FormDataSerializerTest extends TestCase {
         assertEquals(numberOfKeys + 1,  string.substring(2).split("--" + boundary + "\r\n").length);
     }
 
+   /**
+    * Test that a boundary preset by the caller is used, as required for streaming the body
+    * after the content type has been sent.
+    * */
+   public void testSerializePresetBoundary() throws Exception {
+        Submission submission            = (Submission) this.xformsProcesssorImpl.getContainer().lookup("submission-form-data-post");
+        Document instance                = this.xformsProcesssorImpl.getContainer().getDefaultModel().getDefaultInstance().getInstanceDocument();
+        SerializerRequestWrapper wrapper = new SerializerRequestWrapper(new ByteArrayOutputStream(500));
+        String boundary                  = FormDataSerializer.createBoundary();
+        wrapper.addHeader(FormDataSerializer.BOUNDARY_HEADER, boundary);
+        this.serializer.serialize(submission, instance, wrapper, "UTF-8");
+        String string                    = wrapper.getBodyStream().toString();
+
+        assertEquals(boundary, wrapper.getHeader(FormDataSerializer.BOUNDARY_HEADER));
+        assertTrue(string.startsWith("\r\n--" + boundary));
+        assertTrue(string.endsWith("\r\n--" + boundary + "--"));
+        assertEquals(numberOfKeys + 1,  string.substring(2).split("--" + boundary + "\r\n").length);
+    }
+
 }
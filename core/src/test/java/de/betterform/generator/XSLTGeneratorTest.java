@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+package de.betterform.generator;
+
+import de.betterform.xml.dom.DOMUtil;
+import de.betterform.xml.xslt.impl.CachingTransformerService;
+import de.betterform.xml.xslt.impl.FileResourceResolver;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+/**
+ * Tests the XSLT generator writing to streams.
+ *
+ * @version $Id$
+ */
+public class XSLTGeneratorTest extends TestCase {
+
+    private CachingTransformerService transformerService;
+    private XSLTGenerator generator;
+
+    public void testGenerateToStream() throws Exception {
+        long renders = RenderStatistics.getInstance().getRenders();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        this.generator.setInput(DOMUtil.parseString("<form><input/></form>", true, false));
+        this.generator.setOutput(stream);
+        this.generator.setParameter("title", "test");
+        this.generator.generate();
+
+        assertEquals("<page title=\"test\"><form><input/></form></page>", stream.toString("UTF-8"));
+        assertEquals(renders + 1, RenderStatistics.getInstance().getRenders());
+        assertTrue(RenderStatistics.getInstance().getBytes() >= stream.size());
+        assertTrue(RenderStatistics.getInstance().getMaxTimeToFirstByte() >= 0);
+    }
+
+    public void testGenerateTwice() throws Exception {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        this.generator.setInput(DOMUtil.parseString("<form/>", true, false));
+        this.generator.setOutput(first);
+        this.generator.generate();
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        this.generator.setInput(DOMUtil.parseString("<form/>", true, false));
+        this.generator.setOutput(second);
+        this.generator.generate();
+
+        assertEquals(first.toString("UTF-8"), second.toString("UTF-8"));
+    }
+
+    protected void setUp() throws Exception {
+        File parent = new File(getClass().getResource("XSLTGeneratorTest.xsl").getPath()).getParentFile();
+        this.transformerService = new CachingTransformerService(new FileResourceResolver());
+        this.generator = new XSLTGenerator();
+        this.generator.setTransformerService(this.transformerService);
+        this.generator.setStylesheetURI(new File(parent, "XSLTGeneratorTest.xsl").toURI());
+    }
+
+    protected void tearDown() throws Exception {
+        this.transformerService.shutdown();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.session;
+
+import de.betterform.xml.dom.DOMUtil;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+
+/**
+ * Tests the binary document serializer.
+ *
+ * @version $Id$
+ */
+public class BinaryDocumentSerializerTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        Document document = DOMUtil.parseInputStream(getClass().getResourceAsStream("session.xhtml"), true, false);
+
+        assertRoundTrip(document, false);
+        assertRoundTrip(document, true);
+    }
+
+    public void testLargeDocument() throws Exception {
+        Document document = DOMUtil.newDocument(true, false);
+        Element root = document.createElementNS("http://www.w3.org/2002/xforms", "xf:instance");
+        document.appendChild(root);
+        for (int i = 0; i < 10000; i++) {
+            Element item = document.createElementNS(null, "item");
+            item.setAttributeNS(null, "id", "item-" + i);
+            item.appendChild(document.createTextNode("value of item " + i + " äöü"));
+            root.appendChild(item);
+        }
+
+        // larger than the 64KB limit of writeUTF
+        assertRoundTrip(document, false);
+        assertRoundTrip(document, true);
+    }
+
+    public void testNamesArePooled() throws Exception {
+        Document document = DOMUtil.parseString("<data><item>1</item><item>2</item><item>3</item></data>", true, false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryDocumentSerializer(false).write(document, out);
+        String encoded = out.toString("ISO-8859-1");
+
+        assertEquals(encoded.indexOf("item"), encoded.lastIndexOf("item"));
+    }
+
+    public void testInvalidInput() throws Exception {
+        try {
+            BinaryDocumentSerializer.read(new ByteArrayInputStream("<data/>".getBytes("UTF-8")));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertRoundTrip(Document document, boolean compress) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // written the way XFormsProcessorImpl.writeExternal() does
+        ObjectOutput out = new ObjectOutputStream(bytes);
+        new BinaryDocumentSerializer(compress).write(document, out);
+        out.writeUTF("trailer");
+        out.close();
+
+        ObjectInput in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Document result = BinaryDocumentSerializer.read(in);
+
+        // the serialized document must not consume data following it
+        assertEquals("trailer", in.readUTF());
+        assertTrue(document.getDocumentElement().isEqualNode(result.getDocumentElement()));
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.session;
+
+import de.betterform.xml.dom.DOMUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.io.UTFDataFormatException;
+
+/**
+ * Compares the size and speed of the session serialization formats:
+ * <ul>
+ * <li>xml - the former format: the document serialized to a String with a new Transformer and
+ * written with <code>writeUTF</code>, parsed again with <code>DOMUtil.parseString</code></li>
+ * <li>binary - {@link BinaryDocumentSerializer} without compression</li>
+ * <li>deflated - {@link BinaryDocumentSerializer} with compression</li>
+ * </ul>
+ * The reset transform of {@link DefaultSerializer} is the same for all formats and is not measured.
+ * <p/>
+ * Usage: <code>SessionSerializationBenchmark [iterations] [file ...]</code>. Without files the
+ * test session form and generated instances of growing size are measured.
+ *
+ * @version $Id$
+ */
+public class SessionSerializationBenchmark {
+
+    private static final int WARMUP = 200;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        System.out.println("document                    format      bytes  write(us)   read(us)");
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++) {
+                InputStream in = new FileInputStream(args[i]);
+                try {
+                    run(args[i], DOMUtil.parseInputStream(in, true, false), iterations);
+                } finally {
+                    in.close();
+                }
+            }
+        } else {
+            run("session.xhtml", DOMUtil.parseInputStream(SessionSerializationBenchmark.class.getResourceAsStream("session.xhtml"), true, false), iterations);
+            run("100 items", createDocument(100), iterations);
+            run("1000 items", createDocument(1000), iterations / 10);
+            run("10000 items", createDocument(10000), iterations / 100);
+        }
+    }
+
+    private static void run(String name, Document document, int iterations) throws Exception {
+        report(name, "xml", new XmlFormat(), document, iterations);
+        report(name, "binary", new BinaryFormat(false), document, iterations);
+        report(name, "deflated", new BinaryFormat(true), document, iterations);
+    }
+
+    private static void report(String name, String formatName, Format format, Document document, int iterations) throws Exception {
+        byte[] bytes;
+        try {
+            bytes = write(format, document);
+        } catch (UTFDataFormatException e) {
+            System.out.println(pad(name, 28) + pad(formatName, 8) + "  exceeds 64KB limit of writeUTF");
+            return;
+        }
+
+        for (int i = 0; i < Math.min(WARMUP, iterations); i++) {
+            read(format, write(format, document));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            write(format, document);
+        }
+        long writeTime = (System.nanoTime() - start) / iterations / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            read(format, bytes);
+        }
+        long readTime = (System.nanoTime() - start) / iterations / 1000;
+
+        System.out.println(pad(name, 28) + pad(formatName, 8)
+                + padLeft(String.valueOf(bytes.length), 9)
+                + padLeft(String.valueOf(writeTime), 11)
+                + padLeft(String.valueOf(readTime), 11));
+    }
+
+    private static byte[] write(Format format, Document document) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutput out = new ObjectOutputStream(bytes);
+        format.write(document, out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Document read(Format format, byte[] bytes) throws Exception {
+        ObjectInput in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return format.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Document createDocument(int items) {
+        Document document = DOMUtil.newDocument(true, false);
+        Element root = document.createElementNS("http://www.w3.org/1999/xhtml", "xhtml:html");
+        document.appendChild(root);
+        Element instance = document.createElementNS("http://www.w3.org/2002/xforms", "xf:instance");
+        root.appendChild(instance);
+        Element data = document.createElementNS(null, "data");
+        instance.appendChild(data);
+        for (int i = 0; i < items; i++) {
+            Element item = document.createElementNS(null, "item");
+            item.setAttributeNS(null, "id", "item-" + i);
+            Element name = document.createElementNS(null, "name");
+            name.appendChild(document.createTextNode("Item " + i));
+            item.appendChild(name);
+            Element amount = document.createElementNS(null, "amount");
+            amount.appendChild(document.createTextNode(String.valueOf(i * 3.5)));
+            item.appendChild(amount);
+            data.appendChild(item);
+        }
+        return document;
+    }
+
+    private static String pad(String value, int length) {
+        StringBuffer buffer = new StringBuffer(value);
+        while (buffer.length() < length) {
+            buffer.append(' ');
+        }
+        return buffer.toString();
+    }
+
+    private static String padLeft(String value, int length) {
+        StringBuffer buffer = new StringBuffer();
+        while (buffer.length() + value.length() < length) {
+            buffer.append(' ');
+        }
+        return buffer.append(value).toString();
+    }
+
+    private interface Format {
+        void write(Document document, ObjectOutput out) throws Exception;
+
+        Document read(ObjectInput in) throws Exception;
+    }
+
+    private static class XmlFormat implements Format {
+        public void write(Document document, ObjectOutput out) throws Exception {
+            StringWriter stringWriter = new StringWriter();
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+            transformer.transform(new DOMSource(document), new StreamResult(stringWriter));
+            out.writeUTF(stringWriter.getBuffer().toString());
+        }
+
+        public Document read(ObjectInput in) throws Exception {
+            return DOMUtil.parseString(in.readUTF(), true, false);
+        }
+    }
+
+    private static class BinaryFormat implements Format {
+        private final BinaryDocumentSerializer serializer;
+
+        BinaryFormat(boolean compress) {
+            this.serializer = new BinaryDocumentSerializer(compress);
+        }
+
+        public void write(Document document, ObjectOutput out) throws Exception {
+            this.serializer.write(document, out);
+        }
+
+        public Document read(ObjectInput in) throws Exception {
+            return BinaryDocumentSerializer.read(in);
+        }
+    }
+}
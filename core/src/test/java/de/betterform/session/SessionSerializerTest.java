@@ -77,6 +77,35 @@ public class SessionSerializerTest extends XMLTestBase {
         assertNotNull(xformsProcesssorImpl.getContainer());
     }
 
+    /**
+     * reads a session written by a former version, which wrote the host document as an XML string.
+     * @throws Exception
+     */
+    public void testReadFormerFormat() throws Exception {
+        InputStream in = getClass().getResourceAsStream("session.xhtml");
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            xml.write(buffer, 0, read);
+        }
+        in.close();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeUTF(xml.toString("UTF-8"));
+        out.writeInt(42);
+        out.close();
+
+        XFormsProcessorImpl xformsProcesssorImpl = new XFormsProcessorImpl();
+        ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        xformsProcesssorImpl.readExternal(objectIn);
+        assertEquals(42, objectIn.readInt());
+        xformsProcesssorImpl.setBaseURI(this.baseURI);
+        xformsProcesssorImpl.init();
+        assertNotNull(xformsProcesssorImpl.getContainer());
+    }
+
     public void testEhcachSerialization() throws Exception {
         CacheManager manager = CacheManager.create();
         Ehcache sessionCache = manager.getCache("xfTestConfigOneElementInMemory");
@@ -154,6 +154,51 @@ public class DOMUtilTest extends TestCase {
         assertTrue(comparator.compare(expected.getDocumentElement(), result));
     }
 
+    public void testDocumentBuilderPerThread() throws Exception {
+        DocumentBuilder builder = DOMUtil.getDocumentBuilder(true, false);
+        assertSame(builder, DOMUtil.getDocumentBuilder(true, false));
+        assertNotSame(builder, DOMUtil.getDocumentBuilder(false, false));
+        assertTrue(builder.isNamespaceAware());
+        assertFalse(DOMUtil.getDocumentBuilder(false, false).isNamespaceAware());
+
+        final DocumentBuilder[] other = new DocumentBuilder[1];
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    other[0] = DOMUtil.getDocumentBuilder(true, false);
+                } catch (Exception e) {
+                    // checked below
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(builder, other[0]);
+    }
+
+    public void testReleaseDocumentBuilders() throws Exception {
+        DocumentBuilder builder = DOMUtil.getDocumentBuilder(true, false);
+        DOMUtil.releaseDocumentBuilders();
+
+        DocumentBuilder created = DOMUtil.getDocumentBuilder(true, false);
+        assertNotSame(builder, created);
+        assertSame(created, DOMUtil.getDocumentBuilder(true, false));
+    }
+
+    public void testParseAfterParseError() throws Exception {
+        try {
+            DOMUtil.parseString("<root><unclosed></root>", true, false);
+            fail("parse error expected");
+        } catch (org.xml.sax.SAXException e) {
+            // expected
+        }
+
+        Document document = DOMUtil.parseString("<root><child/></root>", true, false);
+        assertEquals("root", document.getDocumentElement().getNodeName());
+        assertNotSame(document, DOMUtil.parseString("<root><child/></root>", true, false));
+    }
+
     // ++++++++++++ oops, don't look at my private parts!  +++++++++++++++
     private Document getXmlResource(String fileName) throws Exception {
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
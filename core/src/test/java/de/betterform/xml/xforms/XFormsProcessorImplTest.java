@@ -11,6 +11,8 @@ import de.betterform.xml.xpath.impl.saxon.XPathUtil;
 import junit.framework.TestCase;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
 import org.w3c.dom.events.EventTarget;
 import org.xml.sax.InputSource;
 
@@ -79,6 +81,39 @@ public class XFormsProcessorImplTest extends TestCase {
         assertEquals("Hello new World", XPathUtil.evaluateAsString(instance, "//helloworld"));
     }
 
+    /**
+     * test if deferred updates refresh the model once for several value changes.
+     *
+     * @throws Exception
+     */
+    public void testDeferredUpdate() throws Exception {
+        processor.setXForms(getClass().getResourceAsStream("actions.xhtml"));
+        processor.init();
+
+        final int[] refreshs = new int[1];
+        EventTarget model = (EventTarget) XPathUtil.evaluateAsSingleNode(processor.getXForms(), "//*[@id='C-1']");
+        model.addEventListener(XFormsEventNames.REFRESH, new EventListener() {
+            public void handleEvent(Event event) {
+                refreshs[0]++;
+            }
+        }, false);
+
+        processor.beginDeferredUpdate();
+        processor.setControlValue("hello-input", "Hello new World");
+        processor.setControlValue("hello-input", "Hello newer World");
+        assertEquals(0, refreshs[0]);
+
+        Document instance = processor.getContainer().getDefaultModel().getDefaultInstance().getInstanceDocument();
+        assertEquals("Hello newer World", XPathUtil.evaluateAsString(instance, "//helloworld"));
+
+        processor.endDeferredUpdate();
+        assertEquals(1, refreshs[0]);
+
+        // updates are not deferred any more
+        processor.setControlValue("hello-input", "Hello World");
+        assertEquals(2, refreshs[0]);
+    }
+
     /**
      * test if setControlValue suppresses update for unchanged value.
      *
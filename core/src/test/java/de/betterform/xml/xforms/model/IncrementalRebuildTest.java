@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.events.DOMEventNames;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xpath.impl.saxon.XPathUtil;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * Tests the incremental update of the main dependency graph after insert and delete.
+ */
+public class IncrementalRebuildTest extends TestCase {
+
+    private XFormsProcessorImpl processor;
+    private String resourceName = "IncrementalRebuildTest.xhtml";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Config.getInstance(getConfig("true"));
+
+        processor = new XFormsProcessorImpl();
+        String path = getClass().getResource(resourceName).getPath();
+        processor.setBaseURI("file://" + path.substring(0, path.lastIndexOf(resourceName)));
+        processor.setXForms(getClass().getResourceAsStream(resourceName));
+        processor.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        processor.shutdown();
+        Config.unloadConfig();
+        super.tearDown();
+    }
+
+    public void testInitialCalculation() throws Exception {
+        assertEquals("3", evaluate("total"));
+        assertEquals("2", evaluate("items/item[1]/double"));
+        assertEquals("4", evaluate("items/item[2]/double"));
+    }
+
+    public void testInsert() throws Exception {
+        processor.dispatch("insert", DOMEventNames.ACTIVATE);
+
+        assertEquals(3, Integer.parseInt(evaluate("count(items/item)")));
+        assertEquals("13", evaluate("total"));
+        assertEquals("20", evaluate("items/item[2]/double"));
+        assertEquals("4", evaluate("items/item[3]/double"));
+    }
+
+    public void testDelete() throws Exception {
+        processor.dispatch("delete", DOMEventNames.ACTIVATE);
+
+        assertEquals(1, Integer.parseInt(evaluate("count(items/item)")));
+        assertEquals("2", evaluate("total"));
+        assertEquals("4", evaluate("items/item[1]/double"));
+    }
+
+    public void testInsertAfterDelete() throws Exception {
+        processor.dispatch("delete", DOMEventNames.ACTIVATE);
+        processor.dispatch("insert", DOMEventNames.ACTIVATE);
+
+        assertEquals("12", evaluate("total"));
+        assertEquals("4", evaluate("items/item[1]/double"));
+        assertEquals("20", evaluate("items/item[2]/double"));
+    }
+
+    public void testPositionSensitiveBinds() throws Exception {
+        processor.shutdown();
+        resourceName = "IncrementalRebuildPositionTest.xhtml";
+        setUp();
+
+        processor.dispatch("insert", DOMEventNames.ACTIVATE);
+
+        assertEquals("1", evaluate("items/item[1]/pos"));
+        assertEquals("2", evaluate("items/item[2]/pos"));
+        assertEquals("3", evaluate("items/item[3]/pos"));
+        assertEquals("1", evaluate("second"));
+    }
+
+    private String evaluate(String xpath) throws Exception {
+        Model model = processor.getContainer().getDefaultModel();
+        Document instance = model.getDefaultInstance().getInstanceDocument();
+        return XPathUtil.evaluateAsString(instance.getDocumentElement(), xpath);
+    }
+
+    private InputStream getConfig(String incremental) throws Exception {
+        InputStream in = Config.class.getResourceAsStream("default.xml");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+
+        String config = out.toString("UTF-8").replace(
+                "name=\"" + Model.INCREMENTAL_REBUILD_PROPERTY + "\" value=\"false\"",
+                "name=\"" + Model.INCREMENTAL_REBUILD_PROPERTY + "\" value=\"" + incremental + "\"");
+        return new ByteArrayInputStream(config.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests the live iteration over model items and the state reset of changed model items.
+ */
+public class ModelItemIteratorTest extends TestCase {
+
+    private XFormsProcessorImpl processor;
+    private String resourceName = "ModelItemIteratorTest.xhtml";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Config.getInstance(Config.class.getResource("default.xml").getPath());
+
+        processor = new XFormsProcessorImpl();
+        String path = getClass().getResource(resourceName).getPath();
+        processor.setBaseURI("file://" + path.substring(0, path.lastIndexOf(resourceName)));
+        processor.setXForms(getClass().getResourceAsStream(resourceName));
+        processor.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        processor.shutdown();
+        super.tearDown();
+    }
+
+    public void testDocumentOrder() throws Exception {
+        List names = listNames(getInstance().iterateModelItems());
+
+        assertEquals("[#document, data, a, x, b, flag, #text, c]", names.toString());
+    }
+
+    public void testShallow() throws Exception {
+        Instance instance = getInstance();
+        Iterator iterator = instance.iterateModelItems(instance.getInstanceNodeset(), 1, "a|c", Collections.EMPTY_MAP, null, false);
+
+        assertEquals("[a, c]", listNames(iterator).toString());
+    }
+
+    public void testSubtree() throws Exception {
+        Document document = getInstance().getInstanceDocument();
+        Node a = document.getDocumentElement().getFirstChild();
+
+        assertEquals("[a, x, b]", listNames(new ModelItemIterator(a)).toString());
+    }
+
+    public void testCreatesModelItems() throws Exception {
+        Document document = getInstance().getInstanceDocument();
+        Node c = document.getDocumentElement().getLastChild();
+        c.appendChild(document.createElement("d"));
+        Node d = c.getFirstChild();
+        assertNull(d.getUserData(""));
+
+        Iterator iterator = new ModelItemIterator(c);
+        iterator.next();
+        ModelItem modelItem = (ModelItem) iterator.next();
+
+        assertFalse(iterator.hasNext());
+        assertSame(d, modelItem.getNode());
+        assertSame(modelItem, d.getUserData(""));
+        assertSame(c.getUserData(""), modelItem.getParent());
+    }
+
+    public void testInheritedStateReset() throws Exception {
+        Document document = getInstance().getInstanceDocument();
+        Node a = document.getDocumentElement().getFirstChild();
+        ModelItem b = (ModelItem) a.getFirstChild().getUserData("");
+        assertTrue(b.isRelevant());
+
+        processor.setControlValue("input-flag", "true");
+
+        assertFalse(b.isRelevant());
+        assertFalse(b.getStateChangeView().hasEnabledChanged());
+        assertFalse(((ModelItem) a.getUserData("")).getStateChangeView().hasEnabledChanged());
+    }
+
+    public void testValueStateReset() throws Exception {
+        Document document = getInstance().getInstanceDocument();
+        ModelItem flag = (ModelItem) document.getDocumentElement().getFirstChild().getNextSibling().getUserData("");
+
+        processor.setControlValue("input-flag", "true");
+
+        assertEquals("true", flag.getValue());
+        assertFalse(flag.getStateChangeView().hasValueChanged());
+    }
+
+    private Instance getInstance() {
+        return processor.getContainer().getDefaultModel().getDefaultInstance();
+    }
+
+    private List listNames(Iterator iterator) {
+        List names = new ArrayList();
+        while (iterator.hasNext()) {
+            names.add(((Node) ((ModelItem) iterator.next()).getNode()).getNodeName());
+        }
+        return names;
+    }
+}
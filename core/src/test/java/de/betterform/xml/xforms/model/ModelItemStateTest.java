@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+package de.betterform.xml.xforms.model;
+
+import de.betterform.xml.dom.DOMUtil;
+import de.betterform.xml.xforms.model.bind.LocalUpdateView;
+import de.betterform.xml.xforms.model.bind.RefreshView;
+import de.betterform.xml.xforms.model.bind.StateChangeView;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Tests the state kept by the views of a model item.
+ *
+ * @version $Id$
+ */
+public class ModelItemStateTest extends TestCase {
+
+    private ModelItem parent;
+    private ModelItem item;
+
+    protected void setUp() throws Exception {
+        Document document = DOMUtil.parseString("<root><child>value</child></root>", true, false);
+        Element child = DOMUtil.findFirstChild(document.getDocumentElement(), "child");
+
+        this.item = Instance.createModelItem(child);
+        this.parent = this.item.getParent();
+    }
+
+    public void testDefaults() throws Exception {
+        assertFalse(this.item.isReadonly());
+        assertFalse(this.item.isRequired());
+        assertTrue(this.item.isRelevant());
+        assertTrue(this.item.isValid());
+        assertTrue(this.item.getLocalUpdateView().getCustomMIPValues().isEmpty());
+        assertTrue(this.item.getDeclarationView().getConstraints().isEmpty());
+        assertTrue(this.item.getRefreshView().getInvalids().isEmpty());
+
+        StateChangeView stateChangeView = this.item.getStateChangeView();
+        assertFalse(stateChangeView.hasReadonlyChanged());
+        assertFalse(stateChangeView.hasRequiredChanged());
+        assertFalse(stateChangeView.hasEnabledChanged());
+        assertFalse(stateChangeView.hasValidChanged());
+        assertFalse(stateChangeView.hasValueChanged());
+    }
+
+    public void testLocalUpdateView() throws Exception {
+        LocalUpdateView localUpdateView = this.item.getLocalUpdateView();
+
+        localUpdateView.setLocalRequired(true);
+        localUpdateView.setDatatypeValid(false);
+        assertTrue(this.item.isRequired());
+        assertFalse(this.item.isValid());
+        assertTrue(localUpdateView.isConstraintValid());
+
+        localUpdateView.setDatatypeValid(true);
+        localUpdateView.setConstraintValid(false);
+        assertFalse(this.item.isValid());
+        assertFalse(localUpdateView.isLocalReadonly());
+        assertTrue(localUpdateView.isLocalRelevant());
+
+        // inherited states
+        this.parent.getLocalUpdateView().setLocalReadonly(true);
+        this.parent.getLocalUpdateView().setLocalRelevant(false);
+        assertTrue(this.item.isReadonly());
+        assertFalse(this.item.isRelevant());
+        assertFalse(localUpdateView.isLocalReadonly());
+    }
+
+    public void testCustomMIPValues() throws Exception {
+        LocalUpdateView localUpdateView = this.item.getLocalUpdateView();
+        localUpdateView.setCustomMIPValue("my:prop", "a");
+        localUpdateView.setCustomMIPValue("my:other", "b");
+
+        assertEquals(2, this.item.getLocalUpdateView().getCustomMIPValues().size());
+        assertEquals("a", this.item.getLocalUpdateView().getCustomMIPValues().get("my:prop"));
+        // other model items are not affected
+        assertTrue(this.parent.getLocalUpdateView().getCustomMIPValues().isEmpty());
+    }
+
+    public void testStateChangeView() throws Exception {
+        StateChangeView stateChangeView = this.item.getStateChangeView();
+
+        this.item.getLocalUpdateView().setLocalReadonly(true);
+        this.item.getLocalUpdateView().setConstraintValid(false);
+        this.item.setValue("changed");
+        assertTrue(stateChangeView.hasReadonlyChanged());
+        assertTrue(stateChangeView.hasValidChanged());
+        assertFalse(stateChangeView.hasRequiredChanged());
+        assertTrue(stateChangeView.hasValueChanged());
+
+        stateChangeView.reset();
+        assertFalse(stateChangeView.hasReadonlyChanged());
+        assertFalse(stateChangeView.hasValidChanged());
+        assertFalse(stateChangeView.hasValueChanged());
+
+        this.item.getLocalUpdateView().setLocalReadonly(false);
+        assertTrue(stateChangeView.hasReadonlyChanged());
+    }
+
+    public void testCustomMIPChanged() throws Exception {
+        StateChangeView stateChangeView = this.item.getStateChangeView();
+        LocalUpdateView localUpdateView = this.item.getLocalUpdateView();
+        assertFalse(stateChangeView.hasCustomMIPChanged("my:prop"));
+
+        localUpdateView.setCustomMIPValue("my:prop", "a");
+        assertTrue(stateChangeView.hasCustomMIPChanged("my:prop"));
+        assertFalse(stateChangeView.hasCustomMIPChanged("my:other"));
+
+        stateChangeView.reset();
+        assertFalse(stateChangeView.hasCustomMIPChanged("my:prop"));
+
+        // setting the same value again is no change, changes of the map in place are detected
+        localUpdateView.setCustomMIPValue("my:prop", "a");
+        assertFalse(stateChangeView.hasCustomMIPChanged("my:prop"));
+        localUpdateView.setCustomMIPValue("my:prop", "b");
+        assertTrue(stateChangeView.hasCustomMIPChanged("my:prop"));
+
+        stateChangeView.reset();
+        assertFalse(stateChangeView.hasCustomMIPChanged("my:prop"));
+        assertFalse(this.parent.getStateChangeView().hasCustomMIPChanged("my:prop"));
+    }
+
+    public void testCopyModelItems() throws Exception {
+        this.parent.getLocalUpdateView().setLocalReadonly(true);
+        this.item.getLocalUpdateView().setCustomMIPValue("my:prop", "a");
+        this.item.setFilename("file.txt");
+
+        Element root = (Element) this.parent.getNode();
+        Document document = DOMUtil.newDocument(true, false);
+        Element copy = (Element) document.importNode(root, true);
+        document.appendChild(copy);
+        Instance.copyModelItems(root, copy);
+
+        Element child = DOMUtil.findFirstChild(copy, "child");
+        ModelItem copiedItem = (ModelItem) child.getUserData("");
+        assertNotSame(this.item, copiedItem);
+        assertSame(child, copiedItem.getNode());
+        assertSame(copy.getUserData(""), copiedItem.getParent());
+        assertTrue(copiedItem.isReadonly());
+        assertEquals("a", copiedItem.getLocalUpdateView().getCustomMIPValues().get("my:prop"));
+        assertEquals("file.txt", copiedItem.getFilename());
+
+        // the copy is not affected by later changes
+        this.parent.getLocalUpdateView().setLocalReadonly(false);
+        this.item.getLocalUpdateView().setCustomMIPValue("my:prop", "b");
+        this.item.setValue("changed");
+        assertTrue(copiedItem.isReadonly());
+        assertEquals("a", copiedItem.getLocalUpdateView().getCustomMIPValues().get("my:prop"));
+        assertEquals("value", copiedItem.getValue());
+    }
+
+    public void testRefreshView() throws Exception {
+        RefreshView refreshView = this.item.getRefreshView();
+
+        refreshView.setRequiredMarker();
+        refreshView.setInvalidMarker();
+        assertTrue(refreshView.isRequiredMarked());
+        assertFalse(refreshView.isOptionalMarked());
+        assertTrue(refreshView.isInvalidMarked());
+        assertFalse(refreshView.isValidMarked());
+
+        refreshView.setOptionalMarker();
+        assertFalse(refreshView.isRequiredMarked());
+        assertTrue(refreshView.isOptionalMarked());
+
+        // readonly and relevant markers are inherited from the parent
+        this.parent.getRefreshView().setReadonlyMarker();
+        this.parent.getRefreshView().setDisabledMarker();
+        assertTrue(refreshView.isReadonlyMarked());
+        assertFalse(refreshView.isReadwriteMarked());
+        assertTrue(refreshView.isDisabledMarked());
+        assertFalse(refreshView.isEnabledMarked());
+
+        refreshView.setReadWriteMarker();
+        assertTrue(refreshView.isReadwriteMarked());
+        assertFalse(refreshView.isReadonlyMarked());
+
+        refreshView.reset();
+        this.parent.getRefreshView().reset();
+        assertFalse(refreshView.isReadonlyMarked());
+        assertFalse(refreshView.isReadwriteMarked());
+        assertFalse(refreshView.isOptionalMarked());
+        assertFalse(refreshView.isInvalidMarked());
+        assertFalse(refreshView.isDisabledMarked());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import junit.framework.TestCase;
+import org.apache.xerces.xs.XSModel;
+
+import java.io.File;
+import java.io.FileWriter;
+
+/**
+ * Tests the process-wide schema cache.
+ *
+ * @version $Id$
+ */
+public class SchemaCacheTest extends TestCase {
+
+    private SchemaCache cache;
+    private int loads;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        Config.getInstance(Config.class.getResource("default.xml").getPath());
+        this.cache = SchemaCache.getInstance();
+        this.cache.reconfigure();
+        this.cache.resetStatistics();
+        this.loads = 0;
+    }
+
+    protected void tearDown() throws Exception {
+        this.cache.setEnabled(true);
+        this.cache.reconfigure();
+        super.tearDown();
+    }
+
+    public void testHitAndMiss() throws Exception {
+        Object first = this.cache.get("test:hit", new File[0], new CountingLoader());
+        Object second = this.cache.get("test:hit", new File[0], new CountingLoader());
+
+        assertSame(first, second);
+        assertEquals(1, this.loads);
+        assertEquals(1, this.cache.getHits());
+        assertEquals(1, this.cache.getMisses());
+        assertEquals(1, this.cache.getSize());
+    }
+
+    public void testModifiedFileIsReloaded() throws Exception {
+        File file = File.createTempFile("SchemaCacheTest", ".xsd");
+        try {
+            FileWriter writer = new FileWriter(file);
+            writer.write("<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'/>");
+            writer.close();
+
+            File[] files = new File[]{file};
+            Object first = this.cache.get("test:file", files, new CountingLoader());
+            assertSame(first, this.cache.get("test:file", files, new CountingLoader()));
+
+            assertTrue(file.setLastModified(file.lastModified() + 2000));
+            Object reloaded = this.cache.get("test:file", files, new CountingLoader());
+
+            assertNotSame(first, reloaded);
+            assertEquals(2, this.loads);
+            assertEquals(1, this.cache.getReloads());
+            assertSame(reloaded, this.cache.get("test:file", files, new CountingLoader()));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    public void testModifiedDependencyIsReloaded() throws Exception {
+        final File file = File.createTempFile("SchemaCacheTest", ".xsd");
+        try {
+            SchemaCache.Loader loader = new CountingLoader() {
+                public Object load() throws Exception {
+                    // as the schema loader reports an included schema
+                    SchemaCache.addDependency(file.toURI().toString());
+                    return super.load();
+                }
+            };
+            Object first = this.cache.get("test:dependency", new File[0], loader);
+            assertSame(first, this.cache.get("test:dependency", new File[0], loader));
+
+            assertTrue(file.setLastModified(file.lastModified() + 2000));
+
+            assertNotSame(first, this.cache.get("test:dependency", new File[0], loader));
+            assertEquals(2, this.loads);
+            assertEquals(1, this.cache.getReloads());
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    public void testDisabled() throws Exception {
+        this.cache.setEnabled(false);
+
+        this.cache.get("test:disabled", new File[0], new CountingLoader());
+        this.cache.get("test:disabled", new File[0], new CountingLoader());
+
+        assertEquals(2, this.loads);
+        assertEquals(0, this.cache.getHits());
+        assertEquals(0, this.cache.getSize());
+    }
+
+    public void testDigest() throws Exception {
+        String digest = SchemaCache.digest("<xs:schema/>".getBytes("UTF-8"));
+
+        assertEquals(40, digest.length());
+        assertEquals(digest, SchemaCache.digest("<xs:schema/>".getBytes("UTF-8")));
+        assertFalse(digest.equals(SchemaCache.digest("<xs:schema />".getBytes("UTF-8"))));
+    }
+
+    public void testToFiles() throws Exception {
+        File[] files = SchemaCache.toFiles(new String[]{"file:/tmp/a.xsd", "http://localhost/b.xsd"});
+
+        assertEquals(1, files.length);
+        assertEquals(new File("/tmp/a.xsd"), files[0]);
+    }
+
+    public void testModelsShareSchemas() throws Exception {
+        XSModel first = loadSchema();
+        long misses = this.cache.getMisses();
+        XSModel second = loadSchema();
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(misses, this.cache.getMisses());
+        assertTrue(this.cache.getHits() > 0);
+    }
+
+    private XSModel loadSchema() throws Exception {
+        String path = XFormsProcessorImpl.class.getResource("ModelTest.xhtml").getPath();
+        XFormsProcessorImpl processor = new XFormsProcessorImpl();
+        try {
+            processor.setBaseURI("file://" + path.substring(0, path.lastIndexOf("ModelTest.xhtml")));
+            processor.setXForms(XFormsProcessorImpl.class.getResourceAsStream("ModelTest.xhtml"));
+            processor.init();
+
+            Model model = processor.getContainer().getModel("model-2");
+            return (XSModel) model.getSchemas().get(1);
+        }
+        finally {
+            processor.shutdown();
+        }
+    }
+
+    private class CountingLoader implements SchemaCache.Loader {
+        public Object load() throws Exception {
+            SchemaCacheTest.this.loads++;
+            return new Object();
+        }
+    }
+}
@@ -6,8 +6,10 @@
 package de.betterform.xml.xforms.model;
 
 import de.betterform.xml.xforms.BetterFormTestCase;
+import de.betterform.xml.xforms.model.constraints.ValidationExecutor;
 import de.betterform.xml.xforms.model.constraints.Validator;
 import de.betterform.xml.xforms.xpath.saxon.function.XPathFunctionContext;
+import org.w3c.dom.Node;
 
 /**
  * Validator test cases.
@@ -444,7 +446,63 @@ public class ValidatorTest extends BetterFormTestCase {
         validator.validate(modelItem);
         assertEquals(true, modelItem.isValid());
     }
-    
+
+    /**
+     * Tests that instance validation only checks model items with changed values once the model is
+     * ready.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testValidateInstanceChangedItems() throws Exception {
+        Instance instance = getDefaultModel().getDefaultInstance();
+        ModelItem changed = instance.getModelItem(evaluateInDefaultContextAsNode("/data/item[2]"));
+        ModelItem unchanged = instance.getModelItem(evaluateInDefaultContextAsNode("/data/item[3]"));
+        assertEquals(false, changed.isValid());
+        assertEquals(false, unchanged.isValid());
+
+        changed.setValue("42");
+        ((Node) unchanged.getNode()).setTextContent("42");
+        getDefaultModel().getValidator().validate(instance);
+
+        assertEquals(true, changed.isValid());
+        assertEquals(false, unchanged.isValid());
+    }
+
+    /**
+     * Tests instance validation in partitions on several threads.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testValidateInstanceParallel() throws Exception {
+        ValidationExecutor.setInstance(new ValidationExecutor(2, 1));
+        try {
+            Instance instance = getDefaultModel().getDefaultInstance();
+            ModelItem[] modelItems = new ModelItem[5];
+            for (int index = 0; index < modelItems.length; index++) {
+                modelItems[index] = instance.getModelItem(evaluateInDefaultContextAsNode("/data/item[" + (index + 1) + "]"));
+                modelItems[index].setValue("4712");
+            }
+            getDefaultModel().getValidator().validate(instance);
+
+            assertEquals(true, modelItems[0].isValid());
+            assertEquals(false, modelItems[1].isValid());
+            assertEquals(false, modelItems[2].isValid());
+            assertEquals(false, modelItems[3].isValid());
+            assertEquals(false, modelItems[4].isValid());
+
+            modelItems[1].setValue("4711");
+            modelItems[3].setValue("4711");
+            getDefaultModel().getValidator().validate(instance);
+
+            assertEquals(true, modelItems[1].isValid());
+            assertEquals(false, modelItems[2].isValid());
+            assertEquals(true, modelItems[3].isValid());
+        }
+        finally {
+            ValidationExecutor.setInstance(null);
+        }
+    }
+
     protected String getTestCaseURI() {
         return "ValidatorTest.xhtml";  //To change body of implemented methods use File | Settings | File Templates.
     }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model.constraints;
+
+import de.betterform.xml.dom.DOMUtil;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the vertex index and the topological sort of DependencyGraph.
+ *
+ * @version $Id$
+ */
+public class DependencyGraphTest extends TestCase {
+
+    private Document document;
+    private Element a;
+    private Element b;
+
+    public void testGetVertexByNodeAndType() throws Exception {
+        DependencyGraph graph = new DependencyGraph();
+        Vertex calculate = graph.addVertex(null, this.a, "1", Vertex.CALCULATE_VERTEX, null);
+        Vertex relevant = graph.addVertex(null, this.a, "true()", Vertex.RELEVANT_VERTEX, null);
+
+        assertSame(calculate, graph.getVertex(this.a, Vertex.CALCULATE_VERTEX, null));
+        assertSame(relevant, graph.getVertex(this.a, Vertex.RELEVANT_VERTEX, null));
+        assertNull(graph.getVertex(this.a, Vertex.READONLY_VERTEX, null));
+        assertNull(graph.getVertex(this.b, Vertex.CALCULATE_VERTEX, null));
+    }
+
+    public void testAddVertexReturnsExistingVertex() throws Exception {
+        DependencyGraph graph = new DependencyGraph();
+        Vertex prebuilt = graph.addVertex(null, this.a, null, Vertex.CALCULATE_VERTEX, null);
+        Vertex vertex = graph.addVertex(null, this.a, "1", Vertex.CALCULATE_VERTEX, null);
+
+        assertSame(prebuilt, vertex);
+        assertEquals("1", vertex.getXPathExpression());
+        assertEquals(1, graph.vertices.size());
+    }
+
+    public void testCustomVerticesAreKeyed() throws Exception {
+        DependencyGraph graph = new DependencyGraph();
+        Vertex foo = graph.addVertex(null, this.a, "1", Vertex.CUSTOM_VERTEX, "foo");
+        Vertex bar = graph.addVertex(null, this.a, "2", Vertex.CUSTOM_VERTEX, "bar");
+
+        assertNotSame(foo, bar);
+        assertSame(foo, graph.getVertex(this.a, Vertex.CUSTOM_VERTEX, "foo"));
+        assertSame(bar, graph.getVertex(this.a, Vertex.CUSTOM_VERTEX, "bar"));
+        assertNull(graph.getVertex(this.a, Vertex.CUSTOM_VERTEX, "baz"));
+    }
+
+    public void testRemoveVertex() throws Exception {
+        DependencyGraph graph = new DependencyGraph();
+        Vertex vertex = graph.addVertex(null, this.a, "1", Vertex.CALCULATE_VERTEX, null);
+        graph.removeVertex(vertex);
+
+        assertNull(graph.getVertex(this.a, Vertex.CALCULATE_VERTEX, null));
+        assertEquals(0, graph.vertices.size());
+    }
+
+    public void testRecalculateInTopologicalOrder() throws Exception {
+        List computed = new ArrayList();
+        DependencyGraph graph = new DependencyGraph();
+        Vertex total = add(graph, new RecordingVertex(this.a, "total", computed));
+        Vertex sum = add(graph, new RecordingVertex(this.b, "sum", computed));
+        Vertex item = add(graph, new RecordingVertex(this.document.getDocumentElement(), "item", computed));
+        graph.addEdge(sum, total);
+        graph.addEdge(item, sum);
+        graph.addEdge(item, total);
+
+        graph.recalculate();
+
+        assertEquals(3, computed.size());
+        assertEquals("item", computed.get(0));
+        assertEquals("sum", computed.get(1));
+        assertEquals("total", computed.get(2));
+        assertEquals(0, graph.vertices.size());
+        assertNull(graph.getVertex(this.a, Vertex.CALCULATE_VERTEX, null));
+    }
+
+    private Vertex add(DependencyGraph graph, Vertex vertex) {
+        graph.vertices.add(vertex);
+        graph.indexVertex(vertex);
+        return vertex;
+    }
+
+    protected void setUp() throws Exception {
+        this.document = DOMUtil.parseString("<root><a/><b/></root>", true, false);
+        this.a = DOMUtil.getFirstChildElement(this.document.getDocumentElement());
+        this.b = DOMUtil.getNextSiblingElement(this.a);
+    }
+
+    private static class RecordingVertex extends Vertex {
+        private final List computed;
+
+        RecordingVertex(Element node, String name, List computed) {
+            super(null, node, name);
+            this.computed = computed;
+        }
+
+        public short getVertexType() {
+            return Vertex.CALCULATE_VERTEX;
+        }
+
+        public void compute() {
+            this.computed.add(this.xpathExpression);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.model.submission;
+
+import de.betterform.xml.events.XFormsEventNames;
+import de.betterform.xml.xforms.BetterFormTestCase;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xforms.model.Instance;
+import de.betterform.xml.xforms.xpath.saxon.function.XPathFunctionContext;
+import de.betterform.xml.xpath.impl.saxon.XPathUtil;
+import org.w3c.dom.Document;
+
+/**
+ * Tests submissions with <code>mode="asynchronous"</code>.
+ *
+ * @version $Id$
+ */
+public class AsyncSubmissionTest extends BetterFormTestCase {
+
+    public void testAsynchronousReplaceInstance() throws Exception {
+        this.processor.dispatch("s-async-instance", XFormsEventNames.SUBMIT);
+
+        // replace processing is deferred until the pending tasks are run
+        assertEquals("empty", getResult());
+        assertEquals("false", getStatus("done"));
+
+        awaitCompletion();
+
+        assertEquals("request", getResult());
+        assertEquals("true", getStatus("done"));
+        assertFalse(((XFormsProcessorImpl) this.processor).hasPendingTasks());
+    }
+
+    public void testAsynchronousSubmitError() throws Exception {
+        this.processor.dispatch("s-async-error", XFormsEventNames.SUBMIT);
+        awaitCompletion();
+
+        assertEquals("true", getStatus("error"));
+        assertEquals("false", getStatus("done"));
+    }
+
+    public void testDataIsSubmittedAsOfSubmit() throws Exception {
+        this.processor.dispatch("s-async-instance", XFormsEventNames.SUBMIT);
+        Instance data = getDefaultModel().getInstance("i-data");
+        data.setNodeValue(data.getInstanceDocument().getDocumentElement().getElementsByTagName("item").item(0), "changed");
+        awaitCompletion();
+
+        assertEquals("request", getResult());
+    }
+
+    private void awaitCompletion() throws Exception {
+        XFormsProcessorImpl processorImpl = (XFormsProcessorImpl) this.processor;
+        long timeout = System.currentTimeMillis() + 10000;
+        while (processorImpl.hasPendingTasks()) {
+            if (!processorImpl.runPendingTasks()) {
+                assertTrue("asynchronous submission timed out", System.currentTimeMillis() < timeout);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private String getResult() throws Exception {
+        Document result = getDefaultModel().getInstance("i-result").getInstanceDocument();
+        return XPathUtil.evaluateAsString(result, "/data/item");
+    }
+
+    private String getStatus(String name) throws Exception {
+        Document status = getDefaultModel().getInstance("i-status").getInstanceDocument();
+        return XPathUtil.evaluateAsString(status, "/status/" + name);
+    }
+
+    protected String getTestCaseURI() {
+        return "AsyncSubmissionTest.xhtml";
+    }
+
+    protected XPathFunctionContext getDefaultFunctionContext() {
+        return null;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.xml.xforms.ui;
+
+import de.betterform.xml.config.Config;
+import de.betterform.xml.events.DOMEventNames;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xforms.model.Model;
+import de.betterform.xml.xpath.impl.saxon.XPathUtil;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Tests the refresh restricted to the dirty region of a model.
+ *
+ * @version $Id$
+ */
+public class DirtyRefreshTest extends TestCase {
+
+    private XFormsProcessorImpl processor;
+    private Document host;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        Config.getInstance(getConfig());
+
+        String resourceName = "DirtyRefreshTest.xhtml";
+        processor = new XFormsProcessorImpl();
+        String path = getClass().getResource(resourceName).getPath();
+        processor.setBaseURI("file://" + path.substring(0, path.lastIndexOf(resourceName)));
+        processor.setXForms(getClass().getResourceAsStream(resourceName));
+        processor.init();
+        host = processor.getContainer().getDocument();
+    }
+
+    protected void tearDown() throws Exception {
+        processor.shutdown();
+        Config.unloadConfig();
+        super.tearDown();
+    }
+
+    public void testDependentControlsAreRefreshed() throws Exception {
+        assertEquals("3", value("output-sum"));
+        assertEquals("10", value("output-value"));
+
+        processor.setControlValue("input-a", "5");
+
+        assertEquals("5", value("input-a"));
+        assertEquals("7", value("output-sum"));
+        assertEquals("50", value("output-value"));
+        assertEquals("5", value("output-a"));
+        assertEquals("2", value("input-b"));
+    }
+
+    public void testStateChangesAreRefreshed() throws Exception {
+        assertEquals("false", XPathUtil.evaluateAsString(host, "//xf:input[@id='input-other']/bf:data/@bf:readonly"));
+
+        processor.setControlValue("input-a", "11");
+
+        assertEquals("true", XPathUtil.evaluateAsString(host, "//xf:input[@id='input-other']/bf:data/@bf:readonly"));
+    }
+
+    public void testCleanControlsAreSkipped() throws Exception {
+        Model model = processor.getContainer().getDefaultModel();
+        DirtyRefreshFilter filter = new DirtyRefreshFilter(model.getControlIndex());
+        filter.addDirtyNode(((BindingElement) processor.getContainer().lookup("input-a")).getInstanceNode());
+
+        assertTrue(filter.canSkip((AbstractUIElement) processor.getContainer().lookup("input-a")));
+        assertTrue(filter.canSkip((AbstractUIElement) processor.getContainer().lookup("input-b")));
+        assertTrue(filter.canSkip((AbstractUIElement) processor.getContainer().lookup("output-sum")));
+        assertFalse(filter.canSkip((AbstractUIElement) processor.getContainer().lookup("output-value")));
+        assertFalse(filter.canSkip((AbstractUIElement) processor.getContainer().lookup("group")));
+        assertNull(model.getRefreshFilter());
+
+        List<AbstractFormControl> dirty = filter.getDirtyControls();
+        assertTrue(dirty.contains(processor.getContainer().lookup("input-a")));
+        assertTrue(dirty.contains(processor.getContainer().lookup("output-a")));
+        assertFalse(dirty.contains(processor.getContainer().lookup("input-b")));
+    }
+
+    public void testDisposedControlsAreRemoved() throws Exception {
+        BoundControlIndex index = processor.getContainer().getDefaultModel().getControlIndex();
+        int size = index.size();
+
+        processor.dispatch("delete", DOMEventNames.ACTIVATE);
+
+        assertEquals(size - 1, index.size());
+    }
+
+    public void testStaticExpression() throws Exception {
+        assertTrue(DirtyRefreshFilter.isStaticExpression(null));
+        assertTrue(DirtyRefreshFilter.isStaticExpression("a/b"));
+        assertTrue(DirtyRefreshFilter.isStaticExpression("instance('other')/a"));
+        assertTrue(DirtyRefreshFilter.isStaticExpression("../@id"));
+        assertFalse(DirtyRefreshFilter.isStaticExpression("item[2]"));
+        assertFalse(DirtyRefreshFilter.isStaticExpression("item[index('r')]"));
+        assertFalse(DirtyRefreshFilter.isStaticExpression("instance(../name)/a"));
+        assertFalse(DirtyRefreshFilter.isStaticExpression("$var"));
+    }
+
+    private String value(String id) throws Exception {
+        return XPathUtil.evaluateAsString(host, "//xf:*[@id='" + id + "']/bf:data");
+    }
+
+    private InputStream getConfig() throws Exception {
+        InputStream in = Config.class.getResourceAsStream("default.xml");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+
+        String config = out.toString("UTF-8").replace(
+                "name=\"" + Model.REFRESH_MODE_PROPERTY + "\" value=\"full\"",
+                "name=\"" + Model.REFRESH_MODE_PROPERTY + "\" value=\"dirty\"");
+        return new ByteArrayInputStream(config.getBytes("UTF-8"));
+    }
+}
@@ -4,10 +4,15 @@
  */
 package de.betterform.xml.xforms.xpath;
 
+import de.betterform.xml.events.XFormsEventNames;
 import de.betterform.xml.xforms.BetterFormTestCase;
 import de.betterform.xml.xforms.exception.XFormsException;
+import de.betterform.xml.xforms.model.Instance;
+import de.betterform.xml.xforms.model.InstanceIndex;
 import de.betterform.xml.xforms.xpath.saxon.function.XPathFunctionContext;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.ByteArrayInputStream;
@@ -157,6 +162,109 @@ public class BetterFormExtensionFunctionsTest extends BetterFormTestCase {
     }
 
 
+    /**
+     * Tests the bf:lookup() extension function.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testLookup() throws Exception {
+        assertEquals("Beta", evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', '@id', 'b')/name)"));
+        assertEquals("Beta", evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', 'code', 'B2')/name)"));
+        assertEquals("0", evaluateInDefaultContextAsString("count(bf:lookup('codes-instance', 'row', '@id', 'x'))"));
+        assertEquals("0", evaluateInDefaultContextAsString("count(bf:lookup('codes-instance', 'row', '@id', ()))"));
+
+        // several values, results in document order
+        assertEquals("2", evaluateInDefaultContextAsString("count(bf:lookup('codes-instance', 'row', '@id', ('c', 'a', 'c')))"));
+        assertEquals("Alpha", evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', '@id', ('c', 'a'))[1]/name)"));
+
+        // same result as the predicate
+        assertEquals(evaluateInDefaultContextAsString("string(instance('codes-instance')/row[code = 'C1']/@id)"),
+                evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', 'code', 'C1')/@id)"));
+    }
+
+    /**
+     * Tests that the index of bf:lookup() follows changes of the instance.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testLookupIndexUpdate() throws Exception {
+        Instance instance = getDefaultModel().getInstance("codes-instance");
+        assertEquals("Alpha", evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', '@id', 'a')/name)"));
+        InstanceIndex index = instance.getIndex("row", "@id", null);
+        assertEquals(1, index.getBuildCount());
+
+        // value changes re-key the row only
+        Element row = (Element) instance.getInstanceDocument().getDocumentElement().getElementsByTagName("row").item(0);
+        instance.setNodeValue(row.getAttributeNode("id"), "z");
+        assertEquals("0", evaluateInDefaultContextAsString("count(bf:lookup('codes-instance', 'row', '@id', 'a'))"));
+        assertEquals("Alpha", evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', '@id', 'z')/name)"));
+        assertEquals(1, index.getBuildCount());
+
+        // new rows are keyed without rebuilding the index
+        Element last = (Element) instance.getInstanceDocument().getDocumentElement().getElementsByTagName("row").item(2);
+        instance.insertNode(last.getParentNode(), last, null);
+        assertEquals("2", evaluateInDefaultContextAsString("count(bf:lookup('codes-instance', 'row', '@id', 'c'))"));
+        assertEquals("Alpha", evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', '@id', ('c', 'z'))[1]/name)"));
+        assertEquals(1, index.getBuildCount());
+
+        // deleted rows are dropped
+        instance.deleteNode(last, "row");
+        assertEquals("1", evaluateInDefaultContextAsString("count(bf:lookup('codes-instance', 'row', '@id', 'c'))"));
+        assertEquals(1, index.getBuildCount());
+    }
+
+    /**
+     * Tests that binds using bf:lookup() depend on the keys of the rows.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testLookupDependencies() throws Exception {
+        assertEquals("Beta", evaluateInDefaultContextAsString("string(instance('lookup-instance')/name)"));
+
+        // the row found changes by changing keys only
+        Instance instance = getDefaultModel().getInstance("codes-instance");
+        NodeList rows = instance.getInstanceDocument().getDocumentElement().getElementsByTagName("row");
+        instance.setNodeValue(((Element) rows.item(1)).getAttributeNode("id"), "x");
+        instance.setNodeValue(((Element) rows.item(2)).getAttributeNode("id"), "b");
+        getDefaultModel().recalculate();
+
+        assertEquals("Gamma", evaluateInDefaultContextAsString("string(instance('lookup-instance')/name)"));
+    }
+
+    /**
+     * Tests that the index of bf:lookup() follows a submission replacing a row.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testLookupAfterTargetrefReplace() throws Exception {
+        assertEquals("Gamma", evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', '@id', 'c')/name)"));
+
+        this.processor.dispatch("submission-replace-row", XFormsEventNames.SUBMIT);
+
+        assertEquals("0", evaluateInDefaultContextAsString("count(bf:lookup('codes-instance', 'row', '@id', 'c'))"));
+        assertEquals("Delta", evaluateInDefaultContextAsString("string(bf:lookup('codes-instance', 'row', '@id', 'd')/name)"));
+    }
+
+    /**
+     * Tests that indexes of paths with prefixes bound to different namespaces are kept apart.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testLookupIndexNamespaces() throws Exception {
+        Instance instance = getDefaultModel().getInstance("codes-instance");
+        HashMap<String, String> first = new HashMap<String, String>();
+        first.put("p", "urn:first");
+        HashMap<String, String> second = new HashMap<String, String>();
+        second.put("p", "urn:second");
+        HashMap<String, String> other = new HashMap<String, String>(first);
+        other.put("q", "urn:other");
+
+        InstanceIndex index = instance.getIndex("p:row", "@id", first);
+        assertNotSame(index, instance.getIndex("p:row", "@id", second));
+        // prefixes not used by the paths do not matter
+        assertSame(index, instance.getIndex("p:row", "@id", other));
+    }
+
     protected void preInit() {
         processor.setContextParam("foo", "bar"); //sample app-context param
 
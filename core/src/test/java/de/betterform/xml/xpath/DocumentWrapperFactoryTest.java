@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+package de.betterform.xml.xpath;
+
+import de.betterform.xml.dom.DOMUtil;
+import de.betterform.xml.xforms.Container;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xforms.model.Instance;
+import de.betterform.xml.xpath.impl.saxon.DocumentWrapperFactory;
+import de.betterform.xml.xpath.impl.saxon.SaxonConfigurationFactory;
+import de.betterform.xml.xpath.impl.saxon.XPathUtil;
+import junit.framework.TestCase;
+import net.sf.saxon.dom.DocumentWrapper;
+import net.sf.saxon.dom.NodeWrapper;
+import org.w3c.dom.Document;
+
+import java.util.List;
+
+/**
+ * Tests the reuse of Saxon document wrappers.
+ *
+ * @version $Id$
+ */
+public class DocumentWrapperFactoryTest extends TestCase {
+
+    public void testWrapperReused() throws Exception {
+        DocumentWrapperFactory factory = new DocumentWrapperFactory(SaxonConfigurationFactory.getSharedConfiguration());
+        Document document = DOMUtil.parseString("<root><child/></root>", true, false);
+
+        DocumentWrapper wrapper = factory.getDocumentWrapper(document, "file:/forms/a.xhtml");
+        assertSame(wrapper, factory.getDocumentWrapper(document, "file:/forms/a.xhtml"));
+        assertSame(wrapper, factory.getDocumentWrapper(document, "file:/forms/a.xhtml").wrap(document.getDocumentElement()).getDocumentRoot());
+        assertEquals(1, factory.size());
+    }
+
+    public void testWrapperBaseURI() throws Exception {
+        DocumentWrapperFactory factory = new DocumentWrapperFactory(SaxonConfigurationFactory.getSharedConfiguration());
+        Document document = DOMUtil.parseString("<root/>", true, false);
+
+        DocumentWrapper wrapper = factory.getDocumentWrapper(document, "file:/forms/a.xhtml");
+        DocumentWrapper other = factory.getDocumentWrapper(document, "file:/forms/b.xhtml");
+        assertNotSame(wrapper, other);
+        assertEquals("file:/forms/b.xhtml", other.getBaseURI());
+        assertSame(other, factory.getDocumentWrapper(document, "file:/forms/b.xhtml"));
+    }
+
+    public void testRootContextReused() throws Exception {
+        Document document = DOMUtil.parseString("<root/>", true, false);
+
+        List first = XPathUtil.getRootContext(document, "");
+        List second = XPathUtil.getRootContext(document, "");
+        assertSame(((NodeWrapper) first.get(0)).getDocumentRoot(), ((NodeWrapper) second.get(0)).getDocumentRoot());
+        assertSame(SaxonConfigurationFactory.getSharedConfiguration(), ((NodeWrapper) first.get(0)).getConfiguration());
+    }
+
+    public void testContainerConfiguration() throws Exception {
+        XFormsProcessorImpl processor = new XFormsProcessorImpl();
+        processor.setXForms(getClass().getResourceAsStream("XPathTest.xhtml"));
+        processor.init();
+        try {
+            Container container = processor.getContainer();
+            Instance instance = container.getDefaultModel().getDefaultInstance();
+
+            NodeWrapper root = (NodeWrapper) instance.getInstanceNodeset().get(0);
+            assertSame(container.getConfiguration(), root.getConfiguration());
+            assertSame(container.getDocumentWrapper(instance.getInstanceDocument()), root.getDocumentRoot());
+            assertSame(root.getDocumentRoot(), ((NodeWrapper) instance.getInstanceNodeset().get(0)).getDocumentRoot());
+        } finally {
+            processor.shutdown();
+        }
+    }
+}
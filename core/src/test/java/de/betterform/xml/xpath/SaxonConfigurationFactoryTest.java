@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+package de.betterform.xml.xpath;
+
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xpath.impl.saxon.SaxonConfigurationFactory;
+import de.betterform.xml.xpath.impl.saxon.XPathCache;
+import junit.framework.TestCase;
+import net.sf.saxon.Configuration;
+
+import java.util.HashMap;
+
+/**
+ * Tests the sharing modes of Saxon Configurations between containers.
+ *
+ * @version $Id$
+ */
+public class SaxonConfigurationFactoryTest extends TestCase {
+
+    public void testSessionMode() throws Exception {
+        SaxonConfigurationFactory.setMode(SaxonConfigurationFactory.MODE_SESSION);
+
+        Configuration first = SaxonConfigurationFactory.getConfiguration("file:/forms/a.xhtml");
+        Configuration second = SaxonConfigurationFactory.getConfiguration("file:/forms/a.xhtml");
+        assertNotSame(first, second);
+        assertNotSame(SaxonConfigurationFactory.getSharedConfiguration(), first);
+    }
+
+    public void testFormMode() throws Exception {
+        SaxonConfigurationFactory.setMode(SaxonConfigurationFactory.MODE_FORM);
+
+        Configuration first = SaxonConfigurationFactory.getConfiguration("file:/forms/a.xhtml");
+        assertSame(first, SaxonConfigurationFactory.getConfiguration("file:/forms/a.xhtml?lang=de#top"));
+        assertNotSame(first, SaxonConfigurationFactory.getConfiguration("file:/forms/b.xhtml"));
+        assertNotSame(first, SaxonConfigurationFactory.getConfiguration(null));
+    }
+
+    public void testSharedMode() throws Exception {
+        SaxonConfigurationFactory.setMode(SaxonConfigurationFactory.MODE_SHARED);
+
+        assertSame(SaxonConfigurationFactory.getSharedConfiguration(), SaxonConfigurationFactory.getConfiguration("file:/forms/a.xhtml"));
+        assertSame(SaxonConfigurationFactory.getSharedConfiguration(), SaxonConfigurationFactory.getConfiguration(null));
+    }
+
+    public void testDefaultMode() throws Exception {
+        SaxonConfigurationFactory.setMode(null);
+        // as set in default.xml
+        assertEquals(SaxonConfigurationFactory.MODE_SESSION, SaxonConfigurationFactory.getMode());
+    }
+
+    public void testSharedModeSharesExpressionsBetweenProcessors() throws Exception {
+        SaxonConfigurationFactory.setMode(SaxonConfigurationFactory.MODE_SHARED);
+
+        long before = XPathCache.getInstance().getMisses();
+        XFormsProcessorImpl first = createProcessor();
+        long afterFirst = XPathCache.getInstance().getMisses();
+        XFormsProcessorImpl second = createProcessor();
+        long afterSecond = XPathCache.getInstance().getMisses();
+        try {
+            assertSame(first.getContainer().getConfiguration(), second.getContainer().getConfiguration());
+            // the expressions of the second form were compiled for the first one already
+            assertTrue(afterSecond - afterFirst < afterFirst - before);
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    public void testReleaseEvictsOwnConfiguration() throws Exception {
+        SaxonConfigurationFactory.setMode(SaxonConfigurationFactory.MODE_SESSION);
+        XFormsProcessorImpl processor = createProcessor();
+        Configuration configuration = processor.getContainer().getConfiguration();
+        processor.shutdown();
+
+        // the expressions of the form were removed on shutdown
+        assertEquals(0, XPathCache.getInstance().evict(configuration));
+    }
+
+    public void testReleaseKeepsSharedConfigurations() throws Exception {
+        SaxonConfigurationFactory.setMode(SaxonConfigurationFactory.MODE_FORM);
+        Configuration form = SaxonConfigurationFactory.getConfiguration("file:/forms/a.xhtml");
+        XPathCache.getInstance().getXPathExpression("/a", new HashMap(), form);
+        SaxonConfigurationFactory.release(form);
+        assertEquals(1, XPathCache.getInstance().evict(form));
+
+        Configuration shared = SaxonConfigurationFactory.getSharedConfiguration();
+        XPathCache.getInstance().getXPathExpression("/shared-release-test", new HashMap(), shared);
+        int size = XPathCache.getInstance().getSize();
+        SaxonConfigurationFactory.release(shared);
+        assertEquals(size, XPathCache.getInstance().getSize());
+    }
+
+    protected void tearDown() throws Exception {
+        SaxonConfigurationFactory.setMode(null);
+    }
+
+    private XFormsProcessorImpl createProcessor() throws Exception {
+        XFormsProcessorImpl processor = new XFormsProcessorImpl();
+        processor.setXForms(getClass().getResourceAsStream("XPathTest.xhtml"));
+        processor.init();
+        return processor;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+package de.betterform.xml.xpath;
+
+import de.betterform.xml.xpath.impl.saxon.XPathCache;
+import de.betterform.xml.xpath.impl.saxon.sxpath.XPathExpression;
+import junit.framework.TestCase;
+import net.sf.saxon.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests caching of compiled expressions in XPathCache.
+ *
+ * @version $Id$
+ */
+public class XPathCacheTest extends TestCase {
+
+    private XPathCache cache;
+    private Configuration configuration;
+    private Map prefixes;
+
+    public void testExpressionIsReused() throws Exception {
+        XPathExpression first = this.cache.getXPathExpression("/a/b", this.prefixes, this.configuration);
+        XPathExpression second = this.cache.getXPathExpression("/a/b", this.prefixes, this.configuration);
+
+        assertSame(first, second);
+        assertEquals(1, this.cache.getMisses());
+        assertEquals(1, this.cache.getHits());
+        assertEquals(1, this.cache.getSize());
+    }
+
+    public void testKeyContainsPrefixMapping() throws Exception {
+        XPathExpression first = this.cache.getXPathExpression("/x:a", this.prefixes, this.configuration);
+
+        Map other = new HashMap();
+        other.put("x", "http://example.org/other");
+        XPathExpression second = this.cache.getXPathExpression("/x:a", other, this.configuration);
+
+        assertNotSame(first, second);
+        assertEquals(2, this.cache.getMisses());
+    }
+
+    public void testKeyContainsConfiguration() throws Exception {
+        XPathExpression first = this.cache.getXPathExpression("/a", this.prefixes, this.configuration);
+        XPathExpression second = this.cache.getXPathExpression("/a", this.prefixes, new Configuration());
+
+        assertNotSame(first, second);
+        assertEquals(2, this.cache.getSize());
+    }
+
+    public void testCallerMapIsNotKept() throws Exception {
+        XPathExpression first = this.cache.getXPathExpression("/x:a", this.prefixes, this.configuration);
+        this.prefixes.put("x", "http://example.org/changed");
+        XPathExpression second = this.cache.getXPathExpression("/x:a", this.prefixes, this.configuration);
+
+        assertNotSame(first, second);
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        this.cache.setMaxSize(2);
+        XPathExpression a = this.cache.getXPathExpression("/a", this.prefixes, this.configuration);
+        this.cache.getXPathExpression("/b", this.prefixes, this.configuration);
+        // touch '/a' so '/b' becomes the eldest entry
+        this.cache.getXPathExpression("/a", this.prefixes, this.configuration);
+        this.cache.getXPathExpression("/c", this.prefixes, this.configuration);
+
+        assertEquals(2, this.cache.getSize());
+        assertSame(a, this.cache.getXPathExpression("/a", this.prefixes, this.configuration));
+        long misses = this.cache.getMisses();
+        this.cache.getXPathExpression("/b", this.prefixes, this.configuration);
+        assertEquals(misses + 1, this.cache.getMisses());
+    }
+
+    public void testEvictRemovesExpressionsOfConfiguration() throws Exception {
+        Configuration other = new Configuration();
+        this.cache.getXPathExpression("/a", this.prefixes, this.configuration);
+        this.cache.getXPathExpression("/b", this.prefixes, this.configuration);
+        XPathExpression kept = this.cache.getXPathExpression("/a", this.prefixes, other);
+
+        assertEquals(2, this.cache.evict(this.configuration));
+        assertEquals(1, this.cache.getSize());
+        assertSame(kept, this.cache.getXPathExpression("/a", this.prefixes, other));
+    }
+
+    public void testDisabledCacheCompilesEveryTime() throws Exception {
+        this.cache.setEnabled(false);
+        XPathExpression first = this.cache.getXPathExpression("/a", this.prefixes, this.configuration);
+        XPathExpression second = this.cache.getXPathExpression("/a", this.prefixes, this.configuration);
+
+        assertNotSame(first, second);
+        assertEquals(0, this.cache.getSize());
+    }
+
+    protected void setUp() throws Exception {
+        this.cache = XPathCache.getInstance();
+        // triggers lazy configuration before the settings are changed by tests
+        this.cache.getXPathExpression(".", new HashMap(), new Configuration());
+        this.cache.setEnabled(true);
+        this.cache.setMaxSize(XPathCache.DEFAULT_CACHE_SIZE);
+        this.cache.clear();
+        this.cache.resetStatistics();
+
+        this.configuration = new Configuration();
+        this.prefixes = new HashMap();
+        this.prefixes.put("x", "http://example.org/x");
+    }
+
+    protected void tearDown() throws Exception {
+        this.cache.setEnabled(true);
+        this.cache.setMaxSize(XPathCache.DEFAULT_CACHE_SIZE);
+        this.cache.clear();
+        this.cache.resetStatistics();
+    }
+}
@@ -67,6 +67,16 @@ public class XPathReferenceFinderTest extends TestCase {
 
     }
 
+    public void testIsPositionSensitive() throws Exception {
+        assertFalse(this.referenceFinder.isPositionSensitive("../amount * 2", Collections.EMPTY_MAP, fDummyContainer));
+        assertFalse(this.referenceFinder.isPositionSensitive("sum(../item[amount > 2]/amount)", Collections.EMPTY_MAP, fDummyContainer));
+        assertTrue(this.referenceFinder.isPositionSensitive("position()", Collections.EMPTY_MAP, fDummyContainer));
+        assertTrue(this.referenceFinder.isPositionSensitive("../item[last()]/amount", Collections.EMPTY_MAP, fDummyContainer));
+        assertTrue(this.referenceFinder.isPositionSensitive("../item[1]/amount", Collections.EMPTY_MAP, fDummyContainer));
+        assertTrue(this.referenceFinder.isPositionSensitive("../item[2]/amount", Collections.EMPTY_MAP, fDummyContainer));
+        assertTrue(this.referenceFinder.isPositionSensitive("../item[index('repeat')]", Collections.EMPTY_MAP, fDummyContainer));
+    }
+
     public void testGetReferencesWithNamespaces() throws Exception {
     	Map prefixes = new HashMap();
     	prefixes.put("ns", "http://example.com");
@@ -15,7 +15,10 @@ import javax.xml.transform.stream.StreamSource;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -183,6 +186,82 @@ public class CachingTransformerServiceTest extends TestCase {
         assertEquals(true, this.resourceResolver.resources.keySet().contains(simpleURI));
     }
 
+    /**
+     * Tests that modified resources are not reloaded with checks disabled.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testCheckNever() throws Exception {
+        this.transformerService.setCheckInterval(CachingTransformerService.CHECK_NEVER);
+        URI simpleURI = new File(this.parent, "CachingTransformerServiceSimpleTest.xsl").toURI();
+        this.transformerService.getTransformer(simpleURI);
+
+        TestResource resource = (TestResource) this.resourceResolver.resources.get(simpleURI);
+        resource.lastModified = System.currentTimeMillis();
+        this.resourceResolver.resources.clear();
+        this.transformerService.getTransformer(simpleURI);
+
+        assertEquals(0, this.resourceResolver.resources.keySet().size());
+    }
+
+    /**
+     * Tests that the background check evicts modified resources and their dependants.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testBackgroundCheck() throws Exception {
+        this.transformerService.setCheckInterval(60000);
+        URI includeURI = new File(this.parent, "CachingTransformerServiceIncludeTest.xsl").toURI();
+        URI simpleURI = new File(this.parent, "CachingTransformerServiceSimpleTest.xsl").toURI();
+        this.transformerService.getTransformer(includeURI);
+
+        // modified resource is served from cache until the next check
+        TestResource resource = (TestResource) this.resourceResolver.resources.get(simpleURI);
+        resource.lastModified = System.currentTimeMillis();
+        this.resourceResolver.resources.clear();
+        this.transformerService.getTransformer(includeURI);
+        assertEquals(0, this.resourceResolver.resources.keySet().size());
+
+        this.transformerService.evictDirtyEntries();
+        this.transformerService.getTransformer(includeURI);
+        assertEquals(true, this.resourceResolver.resources.keySet().contains(includeURI));
+        assertEquals(true, this.resourceResolver.resources.keySet().contains(simpleURI));
+    }
+
+    /**
+     * Tests that concurrent requests for the same stylesheet load it once.
+     *
+     * @throws Exception if any error occurred during the test.
+     */
+    public void testConcurrentGetTransformer() throws Exception {
+        final URI nestedURI = new File(this.parent, "CachingTransformerServiceNestedTest.xsl").toURI();
+        final List errors = Collections.synchronizedList(new ArrayList());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20; j++) {
+                            assertNotNull(transformerService.getTransformer(nestedURI));
+                        }
+                    }
+                    catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(3, this.resourceResolver.resources.keySet().size());
+    }
+
     /**
      * Tests obtaining a transformer object from the cache.
      *
@@ -241,6 +320,7 @@ public class CachingTransformerServiceTest extends TestCase {
      * @throws Exception in any error occurred during setup.
      */
     protected void tearDown() throws Exception {
+        this.transformerService.shutdown();
         this.parent = null;
         this.resourceResolver = null;
         this.transformerService = null;
@@ -269,7 +349,7 @@ public class CachingTransformerServiceTest extends TestCase {
     }
 
     private static class TestResourceResolver implements ResourceResolver {
-        Map resources = new HashMap();
+        Map resources = Collections.synchronizedMap(new HashMap());
         ResourceResolver resolver;
 
         TestResourceResolver(ResourceResolver resolver) {
@@ -0,0 +1,16 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+  ~ Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+  ~ Licensed under the terms of BSD License
+  -->
+
+<xsl:stylesheet version="2.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+    <xsl:output method="xml" omit-xml-declaration="yes"/>
+    <xsl:param name="title" select="'none'"/>
+
+    <xsl:template match="/">
+        <page title="{$title}">
+            <xsl:copy-of select="*"/>
+        </page>
+    </xsl:template>
+</xsl:stylesheet>
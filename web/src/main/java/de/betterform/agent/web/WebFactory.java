@@ -37,6 +37,7 @@ public class WebFactory {
     public static final String LOG_CONFIG = "log4j.file";
     public static final String BETTERFORM_SUBMISSION_RESPONSE = "betterform.submission.response";
     public static final String XSLT_CACHE_PROPERTY = "xslt.cache.enabled";
+    public static final String XSLT_CHECK_INTERVAL_PROPERTY = "xslt.cache.check-interval";
 
     public static final String UPLOADDIR_PROPERTY = "uploadDir";
     public static final String RELATIVE_URI_PROPERTY = "forms.uri.relative";
@@ -168,6 +169,12 @@ public class WebFactory {
 
         
         boolean xsltCacheEnabled = Config.getInstance().getProperty(WebFactory.XSLT_CACHE_PROPERTY).equalsIgnoreCase("true");
+        String checkInterval = Config.getInstance().getProperty(WebFactory.XSLT_CHECK_INTERVAL_PROPERTY, String.valueOf(CachingTransformerService.CHECK_ALWAYS));
+        try {
+            transformerService.setCheckInterval(Long.parseLong(checkInterval.trim()));
+        } catch (NumberFormatException e) {
+            throw new XFormsConfigException("invalid value for " + WebFactory.XSLT_CHECK_INTERVAL_PROPERTY + ": " + checkInterval);
+        }
 
         String xsltPath = WebProcessor.RESOURCE_DIR + "xslt/";
         String xsltDefault = Config.getInstance().getStylesheet(this.userAgentId);
@@ -202,11 +209,22 @@ public class WebFactory {
             }
         }
 
-        // store service in servlet context
-        // todo: contemplate about transformer service thread-safety
+        // store service in servlet context, replacing the service of another servlet or filter
+        destroyTransformerService();
         servletContext.setAttribute(TransformerService.TRANSFORMER_SERVICE, transformerService);
     }
 
+    /**
+     * stops the background modification checks of the XSLT Transformer service stored in the servlet context.
+     * The service stays usable for sessions still referring to it.
+     */
+    public void destroyTransformerService() {
+        Object transformerService = servletContext.getAttribute(TransformerService.TRANSFORMER_SERVICE);
+        if (transformerService instanceof CachingTransformerService) {
+            ((CachingTransformerService) transformerService).shutdown();
+        }
+    }
+
      public static XSLTGenerator setupTransformer(URI uri, ServletContext context) throws URISyntaxException {
         TransformerService transformerService = (TransformerService) context.getAttribute(TransformerService.TRANSFORMER_SERVICE);
 
@@ -6,6 +6,7 @@
 package de.betterform.agent.web;
 
 import de.betterform.agent.web.event.DefaultUIEventImpl;
+import de.betterform.agent.web.event.SessionEventLoop;
 import de.betterform.agent.web.event.UIEvent;
 import de.betterform.agent.web.flux.FluxProcessor;
 import de.betterform.agent.web.servlet.HttpRequestHandler;
@@ -21,8 +22,6 @@ import de.betterform.xml.ns.NamespaceConstants;
 import de.betterform.xml.xforms.AbstractProcessorDecorator;
 import de.betterform.xml.xforms.XFormsProcessorImpl;
 import de.betterform.xml.xforms.exception.XFormsException;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +41,9 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Superclass for Adapters used in web applications. Does minimal event listening on the processor and provides
@@ -72,6 +74,7 @@ public class WebProcessor extends AbstractProcessorDecorator {
     public static final String FORWARD_URL = "betterform.base.url";
     public static final String ADAPTER_PREFIX = "A";
     public static final String REQUEST_PATH = "requestpath";
+    public static final String STREAM_RENDERING_PROPERTY = "betterform.web.render.streaming";
 
 
     /**
@@ -92,6 +95,7 @@ public class WebProcessor extends AbstractProcessorDecorator {
     protected transient HttpServletResponse response;
     protected transient HttpSession httpSession;
     protected transient ServletContext context;
+    private transient SessionEventLoop eventLoop;
     protected boolean isXFormsPresent = false;
     private static final Log LOGGER = LogFactory.getLog(FluxProcessor.class);
     private String uploadDestination;
@@ -123,6 +127,19 @@ public class WebProcessor extends AbstractProcessorDecorator {
         return this.key;
     }
 
+    /**
+     * Returns the event loop ordering the requests of this session. Requests changing the processor must
+     * run between {@link SessionEventLoop#beginUpdate()} and {@link SessionEventLoop#endUpdate()}.
+     *
+     * @return the event loop of this session.
+     */
+    public synchronized SessionEventLoop getEventLoop() {
+        if (this.eventLoop == null) {
+            this.eventLoop = new SessionEventLoop(this);
+        }
+        return this.eventLoop;
+    }
+
     public void setRequest(HttpServletRequest request) {
         this.request = request;
     }
@@ -246,7 +263,7 @@ public class WebProcessor extends AbstractProcessorDecorator {
             return context;
         }
         // otherwise get the context from the http session.
-        return httpSession.getServletContext();
+        return httpSession != null ? httpSession.getServletContext() : null;
     }
 
     /**
@@ -270,12 +287,164 @@ public class WebProcessor extends AbstractProcessorDecorator {
         if (noHttp()) {
             throw new XFormsException("request, response and session object are undefined");
         }
-            addEventListeners();
+        initProcessor();
+    }
+
+    /**
+     * attaches the event listeners and initializes the wrapped processor. Called by init() and when a passivated
+     * processor is activated.
+     *
+     * @throws XFormsException
+     */
+    protected void initProcessor() throws XFormsException {
+        addEventListeners();
 
         // init processor
         this.xformsProcessor.init();
     }
 
+    /**
+     * writes the state of this processor to a stream so that it can be restored by
+     * {@link #activate(java.io.ObjectInput, javax.servlet.ServletContext)} of a new instance of the same class.
+     * <p/>
+     * The host document is written by XFormsProcessorImpl.writeExternal() which resets it to its initial state
+     * keeping the instance data, repeat indexes and selected cases. The ids of its elements are written
+     * beforehand, so the ids generated during the session (e.g. for repeat items) stay valid for the client.
+     * Context params which are not serializable are skipped. The processor must not be used any more after
+     * passivation.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void passivate(ObjectOutput out) throws IOException {
+        out.writeUTF(this.key);
+        out.writeObject(this.useragent);
+        out.writeObject(this.locale);
+        out.writeObject(this.uploadDir);
+        out.writeObject(this.uploadDestination);
+        out.writeBoolean(this.isXFormsPresent);
+
+        if (this.uiGenerator instanceof XSLTGenerator) {
+            XSLTGenerator generator = (XSLTGenerator) this.uiGenerator;
+            out.writeObject(generator.getStylesheetURI());
+            writeSerializableEntries(out, generator.getParameters());
+        } else {
+            out.writeObject(null);
+        }
+
+        Map contextParams = new HashMap(((XFormsProcessorImpl) this.xformsProcessor).getContext());
+        contextParams.remove(UIGENERATOR);
+        writeSerializableEntries(out, contextParams);
+
+        ((XFormsProcessorImpl) this.xformsProcessor).writeElementIds(out);
+        ((XFormsProcessorImpl) this.xformsProcessor).writeExternal(out);
+    }
+
+    /**
+     * restores the state written by {@link #passivate(java.io.ObjectOutput)} and initializes the processor again.
+     * The form is re-initialized from its reset host document without running the handlers of the initialization
+     * events (e.g. initial submissions) again, and its elements get the ids of the passivated session so that
+     * events of the client still reach their targets.
+     *
+     * @param in the stream to read from
+     * @param servletContext the context of the web application
+     * @throws IOException if reading fails
+     * @throws ClassNotFoundException if a class of a context param can not be found
+     * @throws XFormsException if the processor can not be initialized
+     */
+    public void activate(ObjectInput in, ServletContext servletContext) throws IOException, ClassNotFoundException, XFormsException {
+        this.context = servletContext;
+        this.configuration = Config.getInstance();
+
+        this.key = in.readUTF();
+        this.useragent = (String) in.readObject();
+        this.locale = (String) in.readObject();
+        this.uploadDir = (String) in.readObject();
+        this.uploadDestination = (String) in.readObject();
+        this.isXFormsPresent = in.readBoolean();
+
+        URI stylesheetURI = (URI) in.readObject();
+        Map generatorParams = null;
+        if (stylesheetURI != null) {
+            generatorParams = readSerializableEntries(in);
+        }
+
+        Map contextParams = readSerializableEntries(in);
+        for (Iterator iterator = contextParams.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            setContextParam((String) entry.getKey(), entry.getValue());
+        }
+
+        ((XFormsProcessorImpl) this.xformsProcessor).readElementIds(in);
+        ((XFormsProcessorImpl) this.xformsProcessor).readExternal(in);
+        if (getContextParam(BASE_URI) != null) {
+            setBaseURI((String) getContextParam(BASE_URI));
+        }
+
+        if (stylesheetURI != null) {
+            try {
+                XSLTGenerator generator = setupTransformer(stylesheetURI);
+                for (Iterator iterator = generatorParams.entrySet().iterator(); iterator.hasNext();) {
+                    Map.Entry entry = (Map.Entry) iterator.next();
+                    generator.setParameter((String) entry.getKey(), entry.getValue());
+                }
+                this.uiGenerator = generator;
+                setContextParam(UIGENERATOR, generator);
+            } catch (URISyntaxException e) {
+                throw new XFormsException(e);
+            }
+        }
+
+        initProcessor();
+    }
+
+    /**
+     * writes each entry separately so that an entry which fails to serialize is skipped without corrupting the stream.
+     */
+    private void writeSerializableEntries(ObjectOutput out, Map map) throws IOException {
+        Map serialized = new HashMap(map.size());
+        for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            if (entry.getValue() != null && !(entry.getValue() instanceof Serializable)) {
+                continue;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream entryOut = new ObjectOutputStream(bytes);
+                entryOut.writeObject(entry.getValue());
+                entryOut.close();
+                serialized.put(entry.getKey(), bytes.toByteArray());
+            } catch (NotSerializableException e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("skipping context param '" + entry.getKey() + "' during passivation: " + e.getMessage());
+                }
+            }
+        }
+
+        out.writeInt(serialized.size());
+        for (Iterator iterator = serialized.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            byte[] bytes = (byte[]) entry.getValue();
+            out.writeUTF((String) entry.getKey());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private Map readSerializableEntries(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        Map map = new HashMap(size);
+        for (int i = 0; i < size; i++) {
+            String name = in.readUTF();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            ObjectInputStream entryIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            map.put(name, entryIn.readObject());
+            entryIn.close();
+        }
+        return map;
+    }
+
     public XMLEvent checkForExitEvent() {
         return this.exitEvent;
     }
@@ -303,6 +472,25 @@ public class WebProcessor extends AbstractProcessorDecorator {
         }
     }
 
+    /**
+     * runs the replace processing of finished asynchronous submissions. The resulting events are
+     * handled like those of an UIEvent.
+     *
+     * @return <code>true</code> if any asynchronous submission has been completed.
+     * @throws XFormsException if the processor has no document container.
+     */
+    public boolean runPendingTasks() throws XFormsException {
+        return ((XFormsProcessorImpl) this.xformsProcessor).runPendingTasks();
+    }
+
+    /**
+     * @return <code>true</code> if asynchronous submissions are running or waiting for their
+     * replace processing.
+     */
+    public boolean hasPendingTasks() {
+        return ((XFormsProcessorImpl) this.xformsProcessor).hasPendingTasks();
+    }
+
     /**
      * listen to processor and add a DefaultUIEventImpl object to the
      * EventQueue.
@@ -331,7 +519,18 @@ public class WebProcessor extends AbstractProcessorDecorator {
      *
      * @throws java.net.URISyntaxException
      */
-    public synchronized void handleRequest() throws XFormsException {
+    public void handleRequest() throws XFormsException {
+        // runs as an update of this session, concurrent requests of the same session wait for their turn
+        SessionEventLoop eventLoop = getEventLoop();
+        eventLoop.beginUpdate();
+        try {
+            processRequest();
+        } finally {
+            eventLoop.endUpdate();
+        }
+    }
+
+    private void processRequest() throws XFormsException {
         boolean updating = false; //this will become true in case PlainHtmlProcessor is in use
         WebUtil.nonCachingResponse(response);
 
@@ -342,6 +541,7 @@ public class WebProcessor extends AbstractProcessorDecorator {
                 UIEvent uiEvent = new DefaultUIEventImpl();
                 uiEvent.initEvent("http-request", null, request);
                 handleUIEvent(uiEvent);
+                runPendingTasks();
             }
 
             XMLEvent exitEvent = checkForExitEvent();
@@ -378,21 +578,22 @@ public class WebProcessor extends AbstractProcessorDecorator {
                     setContextParam(REFERER, request.getContextPath() + request.getServletPath() + "?" + referer);
                     //actually register the XFormsSession with the manager
                     // getManager().addXFormsSession(this);
-                    Cache cache = CacheManager.getInstance().getCache("xfSessionCache");
-                    if(cache == null) {
-                        throw new XFormsException("Ehcache Error: 'xfSessionCache' is missing in WEB-INF/classes/ehcache.xml");
-                    }
-                    cache.put(new net.sf.ehcache.Element(this.getKey(), this));
+                    WebUtil.putWebProcessor(this);
 
                     //todo:check if it's still necessary to set an attribute to the session
                     httpSession.setAttribute("TimeStamp", System.currentTimeMillis());
 
-                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    if (isStreamRendering()) {
+                        // the page is written to the client while it is generated, without content length
+                        generateUI(this.xformsProcessor.getXForms(), response.getOutputStream());
+                    } else {
+                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-                    generateUI(this.xformsProcessor.getXForms(), outputStream);
+                        generateUI(this.xformsProcessor.getXForms(), outputStream);
 
-                    response.setContentLength(outputStream.toByteArray().length);
-                    response.getOutputStream().write(outputStream.toByteArray());
+                        response.setContentLength(outputStream.size());
+                        outputStream.writeTo(response.getOutputStream());
+                    }
                 }
             }
         } catch (IOException e) {
@@ -403,6 +604,20 @@ public class WebProcessor extends AbstractProcessorDecorator {
         WebUtil.printSessionKeys(this.httpSession);
     }
 
+    /**
+     * returns true if generated pages are written to the response while they are generated. Otherwise pages are
+     * buffered to send the content length and to allow for an error page if generation fails.
+     *
+     * @return true if generated pages are streamed to the client
+     */
+    protected boolean isStreamRendering() {
+        try {
+            return Boolean.valueOf(Config.getInstance().getProperty(STREAM_RENDERING_PROPERTY, "false").trim()).booleanValue();
+        } catch (XFormsConfigException e) {
+            return false;
+        }
+    }
+
     protected void generateUI(Object input, Object output) throws XFormsException {
         uiGenerator.setInput(input);
         uiGenerator.setOutput(output);
@@ -6,13 +6,15 @@
 
 package de.betterform.agent.web;
 
+import de.betterform.agent.web.session.EhcacheSessionStore;
+import de.betterform.agent.web.session.SessionStore;
 import de.betterform.connector.http.AbstractHTTPConnector;
+import de.betterform.xml.config.Config;
 import de.betterform.xml.xforms.XFormsProcessor;
+import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.model.submission.RequestHeaders;
 import de.betterform.xml.xslt.TransformerService;
 import de.betterform.xml.xslt.impl.CachingTransformerService;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.cookie.ClientCookie;
@@ -31,14 +33,22 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Enumeration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -54,6 +64,14 @@ public class WebUtil {
     private static final String FILENAME = "fileName";
     private static final String PLAIN_PATH = "plainPath";
     private static final String CONTEXT_PATH = "contextPath";
+    public static final String SESSION_STORE_PROPERTY = "betterform.session.store";
+    private static final int RELAY_BUFFER_SIZE = 32 * 1024;
+    private static SessionStore sessionStore = null;
+
+    /**
+     * the processors obtained from the session store by the current request, see {@link #endRequest()}
+     */
+    private static final ThreadLocal<List<WebProcessor>> REQUEST_PROCESSORS = new ThreadLocal<List<WebProcessor>>();
 
     public static String getRequestURI(HttpServletRequest request) {
         StringBuffer buffer = new StringBuffer(request.getScheme());
@@ -139,35 +157,100 @@ public class WebUtil {
             return null;
         }
 
-        Cache cache = CacheManager.getInstance().getCache("xfSessionCache");
-        if(cache == null || cache.get(key) == null) {
-            LOGGER.warn("No xformsSession for key " + key + " in Cache");
-            return null;
+        WebProcessor processor = getSessionStore().get(key);
+        if (processor != null) {
+            trackProcessor(processor);
         }
+        return processor;
+    }
 
-        net.sf.ehcache.Element elem = cache.get(key);
-        WebProcessor webProcessor = (WebProcessor) elem.getObjectValue();
-        if (webProcessor == null) {
-            LOGGER.warn("Cached WebProcessor for key '" + key + "' is null");
-            return null;
+    /**
+     * adds a new WebProcessor to the session store.
+     *
+     * @param processor the initialized processor
+     * @throws XFormsException if the processor could not be stored
+     */
+    public static void putWebProcessor(WebProcessor processor) throws XFormsException {
+        getSessionStore().put(processor);
+        trackProcessor(processor);
+    }
+
+    /**
+     * releases the WebProcessors obtained by the current request, allowing the session store to passivate them.
+     * Called at the end of every request by {@link de.betterform.agent.web.servlet.BfServletContextListener}.
+     */
+    public static void endRequest() {
+        List<WebProcessor> processors = REQUEST_PROCESSORS.get();
+        if (processors == null) {
+            return;
         }
-//        XStream xStream = new XStream();
-//        String xml = xStream.toXML(webProcessor);
-//        LOGGER.debug(xml);
+        REQUEST_PROCESSORS.remove();
 
-        return webProcessor;
+        SessionStore store;
+        synchronized (WebUtil.class) {
+            store = sessionStore;
+        }
+        if (store == null) {
+            return;
+        }
+        for (int i = 0; i < processors.size(); i++) {
+            store.release(processors.get(i));
+        }
     }
 
     public static boolean removeSession(String key) {
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("removing key: '" + key + "' from cache");
+            LOGGER.debug("removing key: '" + key + "' from session store");
+        }
+        return getSessionStore().remove(key);
+    }
+
+    /**
+     * returns the store holding the WebProcessors of all XForms sessions. The class of the store is configured
+     * with the property 'betterform.session.store' in betterform-config.xml. If the property is not set or the
+     * store can not be created, the xfSessionCache of ehcache is used.
+     *
+     * @return the session store
+     */
+    public static synchronized SessionStore getSessionStore() {
+        if (sessionStore == null) {
+            sessionStore = createSessionStore();
         }
-        Cache xfSessionCache = CacheManager.getInstance().getCache("xfSessionCache");
-        boolean removedSession = false;
-        if (xfSessionCache != null) {
-            removedSession = xfSessionCache.remove(key);
+        return sessionStore;
+    }
+
+    /**
+     * shuts down the session store. A new store is created on next access.
+     */
+    public static synchronized void shutdownSessionStore() {
+        if (sessionStore != null) {
+            sessionStore.shutdown();
+            sessionStore = null;
+        }
+    }
+
+    private static void trackProcessor(WebProcessor processor) {
+        List<WebProcessor> processors = REQUEST_PROCESSORS.get();
+        if (processors == null) {
+            processors = new ArrayList<WebProcessor>(1);
+            REQUEST_PROCESSORS.set(processors);
+        }
+        processors.add(processor);
+    }
+
+    private static SessionStore createSessionStore() {
+        String className = null;
+        try {
+            className = Config.getInstance().getProperty(SESSION_STORE_PROPERTY);
+            if (className == null || className.trim().equals("")) {
+                return new EhcacheSessionStore();
+            }
+            Class clazz = Class.forName(className.trim(), true, WebUtil.class.getClassLoader());
+            return (SessionStore) clazz.newInstance();
+        } catch (Exception e) {
+            LOGGER.error("Session store '" + className + "' could not be created - using " + EhcacheSessionStore.class.getName(), e);
+            return new EhcacheSessionStore();
         }
-        return removedSession;
     }
 
     public static String decodeUrl(String formPath, HttpServletRequest request) throws UnsupportedEncodingException {
@@ -373,6 +456,45 @@ public class WebUtil {
         return isXML;
     }
 
+    /**
+     * relays a stream to the client, e.g. the response body of a submission/@replace="all".
+     * File streams are transferred through their channel, all other streams are copied in
+     * bulk through a single buffer. Both streams are left open.
+     *
+     * @param input the stream to relay.
+     * @param output the stream to write to, usually the ServletOutputStream.
+     * @return the number of bytes relayed.
+     * @throws IOException if reading or writing fails.
+     */
+    public static long relay(InputStream input, OutputStream output) throws IOException {
+        long count = 0;
+        if (input instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) input).getChannel();
+            WritableByteChannel target = Channels.newChannel(output);
+            long position = channel.position();
+            long size = channel.size();
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                count += transferred;
+            }
+            channel.position(position);
+        }
+
+        // copy what is left (or everything for non-file streams)
+        byte[] buffer = new byte[RELAY_BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+            count += read;
+        }
+        output.flush();
+        return count;
+    }
+
     /**
      * transforms an input document and writes it to the ServletOutputStream.
      *
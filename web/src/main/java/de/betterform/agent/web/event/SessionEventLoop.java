@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.agent.web.event;
+
+import de.betterform.xml.xforms.XFormsProcessor;
+import de.betterform.xml.xforms.exception.XFormsException;
+import org.w3c.dom.Document;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Orders the requests of one XForms session.
+ * <p/>
+ * Requests changing the state of the processor (UI events, value changes, submissions) are
+ * updates. Only one update runs at a time, waiting updates are processed in the order of their
+ * arrival. Every update is run by the request thread that brought it between {@link #beginUpdate()}
+ * and {@link #endUpdate()}, so the results are returned to that request directly.
+ * <p/>
+ * Read-only requests (upload progress, keep-alive, instance reads) do not wait for updates.
+ * Instance documents are read from snapshots. At the end of an update a new snapshot is taken only
+ * of the instances read since their last snapshot, so while an update is running active readers get
+ * the state after the last completed update. Snapshots nobody read are dropped and taken again on
+ * the next read.
+ *
+ * @version $Id$
+ */
+public class SessionEventLoop {
+
+    private final ReentrantLock updateLock = new ReentrantLock(true);
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
+    private final XFormsProcessor processor;
+    private volatile long version = 0;
+
+    /**
+     * @param processor the processor of this session.
+     */
+    public SessionEventLoop(XFormsProcessor processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * Waits until all updates requested earlier are done and starts an update. Updates may be
+     * nested within the same thread. Every call must be followed by a call to {@link #endUpdate()}.
+     */
+    public void beginUpdate() {
+        this.updateLock.lock();
+    }
+
+    /**
+     * Ends an update, takes new snapshots of the instances read since their last snapshot and lets
+     * the next waiting update run.
+     */
+    public void endUpdate() {
+        try {
+            if (this.updateLock.getHoldCount() == 1) {
+                long completed = this.version + 1;
+                takeSnapshots(completed);
+                this.version = completed;
+            }
+        } finally {
+            this.updateLock.unlock();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if an update is running or waiting.
+     */
+    public boolean isUpdating() {
+        return this.updateLock.isLocked() || this.updateLock.hasQueuedThreads();
+    }
+
+    /**
+     * @return the number of updates completed so far.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns a copy of an instance document as of the last completed update.
+     * <p/>
+     * The copy is taken at most once per update and shared by all readers, it must not be
+     * modified. The first read of an instance waits for a running update, later reads are served
+     * from the snapshot taken at the end of the last update. When called during an update of the
+     * current thread, the live instance is copied.
+     *
+     * @param modelId the XForms model id.
+     * @param instanceId the instance id.
+     * @return a copy of the instance document.
+     * @throws XFormsException if there is no such model or instance.
+     */
+    public Document getInstanceSnapshot(String modelId, String instanceId) throws XFormsException {
+        String key = modelId + "#" + instanceId;
+        boolean updating = this.updateLock.isHeldByCurrentThread();
+        Snapshot snapshot = this.snapshots.get(key);
+        if (!updating && snapshot != null && snapshot.version == this.version) {
+            snapshot.read = true;
+            return snapshot.document;
+        }
+
+        // no snapshot of the last completed update yet, copy the instance as soon as no update is running
+        if (!this.updateLock.tryLock()) {
+            this.updateLock.lock();
+        }
+        try {
+            if (updating) {
+                return copy(modelId, instanceId);
+            }
+            snapshot = this.snapshots.get(key);
+            if (snapshot == null || snapshot.version != this.version) {
+                snapshot = new Snapshot(modelId, instanceId, copy(modelId, instanceId), this.version);
+                this.snapshots.put(key, snapshot);
+            }
+            snapshot.read = true;
+            return snapshot.document;
+        } finally {
+            this.updateLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of instance snapshots currently kept.
+     */
+    int getSnapshotCount() {
+        return this.snapshots.size();
+    }
+
+    /**
+     * copies the instances read since their last snapshot and drops the snapshots nobody read. Must
+     * be called at the end of an update with the lock held.
+     */
+    private void takeSnapshots(long completed) {
+        for (Iterator<Map.Entry<String, Snapshot>> iterator = this.snapshots.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, Snapshot> entry = iterator.next();
+            Snapshot snapshot = entry.getValue();
+            if (!snapshot.read) {
+                iterator.remove();
+                continue;
+            }
+            try {
+                entry.setValue(new Snapshot(snapshot.modelId, snapshot.instanceId, copy(snapshot.modelId, snapshot.instanceId), completed));
+            } catch (Exception e) {
+                // the model or instance is gone, e.g. after an unload of an embedded form
+                iterator.remove();
+            }
+        }
+    }
+
+    private Document copy(String modelId, String instanceId) throws XFormsException {
+        Document instance = this.processor.getXFormsModel(modelId).getInstanceDocument(instanceId);
+        return (Document) instance.cloneNode(true);
+    }
+
+    private static class Snapshot {
+        private final String modelId;
+        private final String instanceId;
+        private final Document document;
+        private final long version;
+        private volatile boolean read = false;
+
+        private Snapshot(String modelId, String instanceId, Document document, long version) {
+            this.modelId = modelId;
+            this.instanceId = instanceId;
+            this.document = document;
+            this.version = version;
+        }
+    }
+}
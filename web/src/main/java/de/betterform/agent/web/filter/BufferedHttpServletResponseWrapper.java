@@ -59,6 +59,17 @@ public class BufferedHttpServletResponseWrapper extends HttpServletResponseWrapp
         return output.toByteArray();
     }
 
+    /**
+     * writeDataTo writes the data that would be written to the response to the given stream
+     * without copying the buffer first
+     * @param outputStream the stream to write to
+     * @throws IOException
+     */
+    public void writeDataTo(OutputStream outputStream) throws IOException {
+        flushBuffer();
+        output.writeTo(outputStream);
+    }
+
     /**
      * getData get the data that would be written to the response as String
      * @return String String with output
@@ -46,6 +46,9 @@ import java.util.Map;
 public class XFormsFilter implements Filter {
     private static final Log LOG = LogFactory.getLog(XFormsFilter.class);
     private static final String USERAGENT = "dojo";
+    private static final byte[] INSTANCE_WITH_XMLNS = ascii("<xforms:instance xmlns=\"\">");
+    private static final byte[] INSTANCE_WITHOUT_XMLNS = ascii("<xforms:instance>");
+    private static final byte[] XFORMS_NS_DECLARATION = ascii("=\"" + NamespaceConstants.XFORMS_NS + "\"");
     protected WebFactory webFactory;
 
     protected String defaultRequestEncoding = "UTF-8";
@@ -82,6 +85,9 @@ public class XFormsFilter implements Filter {
             LOG.debug("cleanups allocated resources");
         }
 //        webFactory.destroyXFormsSessionManager();
+        if (webFactory != null) {
+            webFactory.destroyTransformerService();
+        }
     }
 
 
@@ -247,7 +253,7 @@ public class XFormsFilter implements Filter {
 
                     LOG.info("End Render XForm");
                 } else {
-                    srvResponse.getOutputStream().write(bufResponse.getData());
+                    bufResponse.writeDataTo(srvResponse.getOutputStream());
                     srvResponse.getOutputStream().close();
                 }
             }
@@ -346,20 +352,9 @@ public class XFormsFilter implements Filter {
         //[3] check betterform config if response body parsing is disabled
         if (disableReponseBodyParsing()) return false;
 
-        //[4] otherwise check response body for XForms markup
-        String strResponse = bufResponse.getDataAsString();
-
-        //[5]find the xforms namespace local name
-        int xfNSDeclEnd = strResponse.indexOf("=\"" + NamespaceConstants.XFORMS_NS + "\"");
-        if (xfNSDeclEnd != -1) {
-            String temp = strResponse.substring(0, xfNSDeclEnd);
-            int xfNSDeclStart = temp.lastIndexOf(':') + 1;
-            String xfNSLocal = temp.substring(xfNSDeclStart);
-
-            //check for xforms elements
-            if (strResponse.contains('<' + xfNSLocal + ":")) {
-                return true;
-            }
+        //[4] otherwise check response body for XForms markup, scanning the bytes like correctInstanceXMLNS
+        if (containsXFormsMarkup(bufResponse.getData())) {
+            return true;
         }
         //[6] if inclusion is configured we have to process anyway
         try {
@@ -460,20 +455,94 @@ public class XFormsFilter implements Filter {
     }
 
     /**
-     * Inserts the attribute xmlns="" on the xforms:instance node if it is missing
+     * Checks if the content declares the XForms namespace with a prefix and contains an element
+     * with that prefix.
+     * <p/>
+     * The content is scanned byte-wise like in {@link #correctInstanceXMLNS(byte[])}. The prefix is
+     * taken from the bytes between the last ':' and the namespace declaration, ':' cannot occur
+     * within multi-byte UTF-8 sequences.
+     *
+     * @param content The response body
+     * @return true if an XForms element has been found
+     */
+    static boolean containsXFormsMarkup(byte[] content) {
+        //find the xforms namespace local name
+        int xfNSDeclEnd = indexOf(content, XFORMS_NS_DECLARATION, 0);
+        if (xfNSDeclEnd == -1) {
+            return false;
+        }
+        int xfNSDeclStart = xfNSDeclEnd;
+        while (xfNSDeclStart > 0 && content[xfNSDeclStart - 1] != ':') {
+            xfNSDeclStart--;
+        }
+
+        //check for xforms elements
+        byte[] element = new byte[xfNSDeclEnd - xfNSDeclStart + 2];
+        element[0] = '<';
+        System.arraycopy(content, xfNSDeclStart, element, 1, xfNSDeclEnd - xfNSDeclStart);
+        element[element.length - 1] = ':';
+        return indexOf(content, element, 0) != -1;
+    }
+
+    /**
+     * Inserts the attribute xmlns="" on the xforms:instance node if it is missing.
+     * <p/>
+     * The content is scanned byte-wise. Both markers are plain ASCII and their bytes cannot occur
+     * within multi-byte UTF-8 sequences, so there is no need to decode the content into a string.
      *
      * @param content The HTML page content
      * @return The content with the corrected xforms:instance
-     * @throws UnsupportedEncodingException
      */
-    private byte[] correctInstanceXMLNS(byte[] content) throws UnsupportedEncodingException {
-        String buffer = new String(content, "UTF-8");
-        if (buffer.indexOf("<xforms:instance xmlns=\"\">") == -1) {
-            String newBuf = buffer.replace("<xforms:instance>", "<xforms:instance xmlns=\"\">");
-            return newBuf.getBytes("UTF-8");
+    static byte[] correctInstanceXMLNS(byte[] content) {
+        if (indexOf(content, INSTANCE_WITH_XMLNS, 0) != -1) {
+            return content;
         }
 
-        return content;
+        int match = indexOf(content, INSTANCE_WITHOUT_XMLNS, 0);
+        if (match == -1) {
+            return content;
+        }
+
+        ByteArrayOutputStream corrected = new ByteArrayOutputStream(content.length + 64);
+        int start = 0;
+        while (match != -1) {
+            corrected.write(content, start, match - start);
+            corrected.write(INSTANCE_WITH_XMLNS, 0, INSTANCE_WITH_XMLNS.length);
+            start = match + INSTANCE_WITHOUT_XMLNS.length;
+            match = indexOf(content, INSTANCE_WITHOUT_XMLNS, start);
+        }
+        corrected.write(content, start, content.length - start);
+        return corrected.toByteArray();
+    }
+
+    private static byte[] ascii(String string) {
+        byte[] bytes = new byte[string.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) string.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the position of the first occurrence of a pattern in the content, starting at the given
+     * position, or -1 if the pattern is not found.
+     */
+    private static int indexOf(byte[] content, byte[] pattern, int from) {
+        int last = content.length - pattern.length;
+        byte first = pattern[0];
+        for (int i = from; i <= last; i++) {
+            if (content[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && content[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -540,12 +609,10 @@ public class XFormsFilter implements Filter {
                     response.setHeader(name, value);
                 }
 
-                // copy body stream
+                // relay body stream
                 InputStream bodyStream = (InputStream) submissionResponse.get("body");
-                OutputStream outputStream = new BufferedOutputStream(response.getOutputStream());
-                for (int b = bodyStream.read(); b > -1; b = bodyStream.read()) {
-                    outputStream.write(b);
-                }
+                OutputStream outputStream = response.getOutputStream();
+                WebUtil.relay(bodyStream, outputStream);
 
                 // close streams
                 bodyStream.close();
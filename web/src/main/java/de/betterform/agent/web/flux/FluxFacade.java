@@ -61,7 +61,12 @@ public class FluxFacade {
             LOGGER.debug("FluxProcessor init called on Facade");
         }
         FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
-        return processor.getEventQueue().getEventList();
+        processor.getEventLoop().beginUpdate();
+        try {
+            return processor.getEventList();
+        } finally {
+            processor.getEventLoop().endUpdate();
+        }
     }
 
     //todo: should be named 'dispatchActivateEvent'
@@ -70,10 +75,17 @@ public class FluxFacade {
         FluxProcessor processor = null;
         try {
             processor = FluxUtil.getProcessor(sessionKey);
+        } catch (FluxException e) {
+            return this.renderErrorMessage(e.getMessage());
+        }
+        processor.getEventLoop().beginUpdate();
+        try {
             processor.dispatchEvent(id);
-            return processor.getEventQueue().getEventList();
+            return processor.getEventList();
         } catch (FluxException e) {
             return this.renderErrorMessage(e.getMessage());
+        } finally {
+            processor.getEventLoop().endUpdate();
         }
     }
 
@@ -96,12 +108,12 @@ public class FluxFacade {
         FluxProcessor processor = null;
         try {
             processor = FluxUtil.getProcessor(sessionKey);
-            processor.getEventQueue().flush();
         } catch (FluxException e) {
             e.printStackTrace();
         }
+        processor.getEventLoop().beginUpdate();
         try {
-
+            processor.getEventQueue().flush();
             if (contextInfo != null) {
                 Map params = new HashMap(1);
                 params.put("context-info", contextInfo);
@@ -109,11 +121,14 @@ public class FluxFacade {
             } else {
                 processor.dispatch(id, eventType);
             }
+            processor.runPendingTasks();
+            return processor.getEventList();
         }
         catch (XFormsException e) {
             return this.renderErrorMessage(e.getMessage());
+        } finally {
+            processor.getEventLoop().endUpdate();
         }
-        return processor.getEventQueue().getEventList();
     }
 
     public List setUIControlValue(String id, String value, String sessionKey) throws XFormsException {
@@ -193,6 +208,53 @@ public class FluxFacade {
         }
     }
 
+    /**
+     * applies a batch of UI changes in one round trip. The changes are applied in the given order with a
+     * single rebuild, recalculate, revalidate and refresh at the end. The i-th change is described by the
+     * i-th entry of each array:
+     * <ul>
+     * <li><code>SETVALUE</code>: sets the value of control <code>ids[i]</code> to <code>values[i]</code></li>
+     * <li><code>SETINDEX</code>: sets the index of repeat <code>ids[i]</code> to <code>values[i]</code></li>
+     * <li><code>flux-action-event</code>: activates trigger <code>ids[i]</code></li>
+     * <li><code>DISPATCH</code>: dispatches an event of type <code>values[i]</code> to <code>ids[i]</code></li>
+     * </ul>
+     *
+     * @param eventNames the kinds of the changes
+     * @param ids        the ids of the targets
+     * @param values     the values, <code>null</code> entries for activations
+     * @param sessionKey the sessionKey identifying the user session
+     * @return the list of events resulting from the whole batch. If a change fails, the batch stops there and
+     * the events of the preceding changes are followed by a message naming the failed change.
+     * @throws FluxException raises exception if problem during processing occurs
+     */
+    public List<XMLEvent> handleUIEvents(String[] eventNames, String[] ids, String[] values, String sessionKey) throws FluxException {
+        if (eventNames == null || ids == null || values == null || eventNames.length != ids.length || eventNames.length != values.length) {
+            return this.renderErrorMessage("ERROR: FluxFacade.handleUIEvents(): invalid batch");
+        }
+
+        List<UIEvent> uiEvents = new ArrayList<UIEvent>(eventNames.length);
+        for (int i = 0; i < eventNames.length; i++) {
+            UIEvent event = new DefaultUIEventImpl();
+            event.initEvent(eventNames[i], ids[i], values[i]);
+            uiEvents.add(event);
+        }
+
+        FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
+        processor.getEventLoop().beginUpdate();
+        try {
+            processor.handleUIEvents(uiEvents);
+            return processor.getEventList();
+        }
+        catch (XFormsException e) {
+            // the changes applied before the failed event are sent along with the message
+            List<XMLEvent> events = new ArrayList<XMLEvent>(processor.getEventList());
+            events.addAll(this.renderErrorMessage(e.getMessage()));
+            return events;
+        } finally {
+            processor.getEventLoop().endUpdate();
+        }
+    }
+
     public List setRepeatIndex(String id, String position, String sessionKey) throws FluxException {
         UIEvent event = new DefaultUIEventImpl();
         event.initEvent("SETINDEX", id, position);
@@ -253,28 +315,33 @@ public class FluxFacade {
             return this.renderErrorMessage("ERROR: session " + sessionKey + " does not exist");
         }
 
+        // read-only: the progress is reported with a queue of its own to not wait for running updates of the session
+        EventQueue eventQueue = new EventQueue();
+        XMLEvent progressEvent = eventQueue.add("upload-progress-event", id, "upload");
+        eventQueue.addProperty(progressEvent, "progress", progress);
+        return eventQueue.getEventList();
+    }
 
-        EventQueue eventQueue = null;
-        if (webProcessor != null) {
-            FluxProcessor processor = (FluxProcessor) webProcessor;
-            eventQueue = processor.getEventQueue();
-            XMLEvent progressEvent = eventQueue.add("upload-progress-event", id, "upload");
-            eventQueue.addProperty(progressEvent, "progress", progress);
-
-            List<XMLEvent> origEvents = eventQueue.getEventList();
-            List<XMLEvent> eventList = new ArrayList<XMLEvent>();
-
-            for (XMLEvent xmlEvent : origEvents) {
-                eventList.add(xmlEvent);
-            }
-            eventQueue.flush();
-            return eventList;
-            //eventQueue.flush();
-        } else {
-            eventQueue = new EventQueue();
-            XMLEvent progressEvent = eventQueue.add("upload-progress-event", id, "upload");
-            eventQueue.addProperty(progressEvent, "progress", progress);
-            return eventQueue.getEventList();
+    /**
+     * delivers the results of asynchronous submissions. The client calls this repeatedly while the
+     * returned events end with a <code>betterform-pending-tasks</code> event.
+     *
+     * @param sessionKey the sessionKey identifying the user session
+     * @return the list of events resulting from the replace processing of finished submissions
+     * @throws FluxException if the session does not exist
+     */
+    public List<XMLEvent> poll(String sessionKey) throws FluxException {
+        FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
+        processor.getEventLoop().beginUpdate();
+        try {
+            processor.getEventQueue().flush();
+            processor.runPendingTasks();
+            return processor.getEventList();
+        }
+        catch (XFormsException e) {
+            return this.renderErrorMessage(e.getMessage());
+        } finally {
+            processor.getEventLoop().endUpdate();
         }
     }
 
@@ -342,7 +409,12 @@ public class FluxFacade {
             if (webProcessor == null) {
                 return;
             }
-            webProcessor.shutdown();
+            webProcessor.getEventLoop().beginUpdate();
+            try {
+                webProcessor.shutdown();
+            } finally {
+                webProcessor.getEventLoop().endUpdate();
+            }
         } catch (XFormsException e) {
             LOGGER.warn("FluxFacade close: " + sessionKey, e);
         } finally {
@@ -353,19 +425,23 @@ public class FluxFacade {
 
     private List handleUIEvent(UIEvent uiEvent, String sessionKey) throws FluxException {
         FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
-        if (processor != null) {
+        if (processor == null) {
+            //session expired or cookie got lost
+            throw new FluxException("Sorry your session expired. Press Reload to start over.");
+        }
+        List eventlog;
+        processor.getEventLoop().beginUpdate();
+        try {
             try {
                 processor.handleUIEvent(uiEvent);
             }
             catch (XFormsException e) {
                 LOGGER.error(e.getMessage());
             }
-        } else {
-            //session expired or cookie got lost
-            throw new FluxException("Sorry your session expired. Press Reload to start over.");
+            eventlog = processor.getEventList();
+        } finally {
+            processor.getEventLoop().endUpdate();
         }
-        EventQueue eventQueue = processor.getEventQueue();
-        List eventlog = eventQueue.getEventList();
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Object ID: " + this);
             LOGGER.debug("EventLog: " + eventlog.toString());
@@ -375,7 +451,8 @@ public class FluxFacade {
     }
 
     /*
-    make this available through Facade for those that know what they are doing
+    make this available through Facade for those that know what they are doing. Returns a snapshot of the instance
+    as of the last completed update of the session.
      */
     public static org.w3c.dom.Element getInstanceDocument(String modelId, String instanceId, String sessionKey){
         return FluxModel.getInstanceDocument(modelId, instanceId, sessionKey);
@@ -58,7 +58,8 @@ public class FluxModel {
     public static org.w3c.dom.Element getInstanceDocument(String modelId, String instanceId, String sessionKey){
 
         try {
-            return FluxUtil.getProcessor(sessionKey).getXFormsModel(modelId).getInstanceDocument(instanceId).getDocumentElement();
+            FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
+            return processor.getEventLoop().getInstanceSnapshot(modelId, instanceId).getDocumentElement();
         } catch (XFormsException e) {
             return DOMUtil.newDocument(false,false).getDocumentElement();
         } catch (FluxException e) {
@@ -69,7 +70,8 @@ public class FluxModel {
     public String getInstanceAsString(String modelId, String instanceId, String sessionKey){
         Element element = null;
         try {
-            element = FluxUtil.getProcessor(sessionKey).getXFormsModel(modelId).getInstanceDocument(instanceId).getDocumentElement();
+            FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
+            element = processor.getEventLoop().getInstanceSnapshot(modelId, instanceId).getDocumentElement();
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             DOMUtil.prettyPrintDOM(element,out);
             LOGGER.debug("xml: " + StringEscapeUtils.escapeXml(out.toString()));
@@ -96,10 +98,14 @@ public class FluxModel {
      * @param sessionKey the key identifying the current XForms Session.
      */
     public void rebuild(String modelId,String sessionKey) throws FluxException {
+        FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
+        processor.getEventLoop().beginUpdate();
         try {
-            FluxUtil.getProcessor(sessionKey).getXFormsModel(modelId).rebuild();
+            processor.getXFormsModel(modelId).rebuild();
         } catch (XFormsException e) {
             throw new FluxException(e);
+        } finally {
+            processor.getEventLoop().endUpdate();
         }
     }
 
@@ -114,10 +120,14 @@ public class FluxModel {
      * @param sessionKey the key identifying the current XForms Session.
      */
     public void recalculate(String modelId,String sessionKey) throws FluxException {
+        FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
+        processor.getEventLoop().beginUpdate();
         try {
-            FluxUtil.getProcessor(sessionKey).getXFormsModel(modelId).recalculate();
+            processor.getXFormsModel(modelId).recalculate();
         } catch (XFormsException e) {
             throw new FluxException(e);
+        } finally {
+            processor.getEventLoop().endUpdate();
         }
     }
 
@@ -132,10 +142,14 @@ public class FluxModel {
      * @param sessionKey the key identifying the current XForms Session.
      */
     public void revalidate(String modelId,String sessionKey) throws FluxException {
+        FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
+        processor.getEventLoop().beginUpdate();
         try {
-            FluxUtil.getProcessor(sessionKey).getXFormsModel(modelId).revalidate();
+            processor.getXFormsModel(modelId).revalidate();
         } catch (XFormsException e) {
             throw new FluxException(e);
+        } finally {
+            processor.getEventLoop().endUpdate();
         }
     }
 
@@ -150,10 +164,14 @@ public class FluxModel {
      * @param sessionKey the key identifying the current XForms Session.
      */
     public void refresh(String modelId,String sessionKey) throws FluxException {
+        FluxProcessor processor = FluxUtil.getProcessor(sessionKey);
+        processor.getEventLoop().beginUpdate();
         try {
-            FluxUtil.getProcessor(sessionKey).getXFormsModel(modelId).refresh();
+            processor.getXFormsModel(modelId).refresh();
         } catch (XFormsException e) {
             throw new FluxException(e);
+        } finally {
+            processor.getEventLoop().endUpdate();
         }
     }
 }
\ No newline at end of file
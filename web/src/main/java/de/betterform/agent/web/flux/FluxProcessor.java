@@ -17,8 +17,10 @@ import de.betterform.xml.events.BetterFormEventNames;
 import de.betterform.xml.events.DOMEventNames;
 import de.betterform.xml.events.XFormsEventNames;
 import de.betterform.xml.events.XMLEvent;
+import de.betterform.xml.events.impl.XercesXMLEventFactory;
 import de.betterform.xml.ns.NamespaceConstants;
 import de.betterform.xml.xforms.XFormsElement;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
 import de.betterform.xml.xforms.exception.XFormsException;
 import de.betterform.xml.xforms.ui.BindingElement;
 import org.apache.commons.logging.Log;
@@ -30,6 +32,7 @@ import javax.servlet.http.HttpServletRequest;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -58,14 +61,13 @@ public class FluxProcessor extends WebProcessor {
     
 
     /**
-     * initialize the Adapter. This is necessary cause often the using
-     * application will need to configure the Adapter before actually using it.
+     * initialize the processor and register the listeners needed to update the client.
      *
      * @throws de.betterform.xml.xforms.exception.XFormsException
      *
      */
-    public void init() throws XFormsException {
-        super.init();
+    protected void initProcessor() throws XFormsException {
+        super.initProcessor();
 
         // processor has already been shutdown
         if (checkForExitEvent() != null) {
@@ -88,6 +90,22 @@ public class FluxProcessor extends WebProcessor {
     }
 
 
+    /**
+     * returns the events to update the client. While asynchronous submissions are running, the list
+     * ends with a <code>betterform-pending-tasks</code> event telling the client to poll for their results.
+     *
+     * @return the events of the event queue.
+     */
+    public List<XMLEvent> getEventList() {
+        List<XMLEvent> events = this.eventQueue.getEventList();
+        if (hasPendingTasks()) {
+            XMLEvent pendingEvent = new XercesXMLEventFactory().createXMLEvent(BetterFormEventNames.PENDING_TASKS);
+            pendingEvent.initXMLEvent(BetterFormEventNames.PENDING_TASKS, false, false, new HashMap(1));
+            events.add(pendingEvent);
+        }
+        return events;
+    }
+
     public void dispatchEvent(String id) throws XFormsException, FluxException {
         UIEvent uiActivateEvent = new DefaultUIEventImpl();
         uiActivateEvent.initEvent(FLUX_ACTIVATE_EVENT, id, null);
@@ -109,6 +127,53 @@ public class FluxProcessor extends WebProcessor {
 
         this.eventQueue.flush();
 
+        processUIEvent(uiEvent);
+
+        // deliver the results of asynchronous submissions finished meanwhile
+        runPendingTasks();
+    }
+
+    /**
+     * handles a batch of UIEvents in the given order with a single update of the models at the end.
+     * The rebuild, recalculate, revalidate and refresh caused by the single events are deferred
+     * like within an <code>action</code> element, so events in the batch see the instance data but
+     * not the calculated values changed by earlier events in the batch. The events of the whole
+     * batch are collected in the EventQueue.
+     * <p/>
+     * Processing stops at the first event failing, later events may depend on it. The changes of the
+     * preceding events are kept and the models are updated for them before the failure is reported.
+     * Processing also stops if an event ends the session (e.g. a load with show="replace").
+     *
+     * @param uiEvents the events to handle in order
+     * @throws de.betterform.xml.xforms.exception.XFormsException if an event failed, naming the event
+     *
+     */
+    public void handleUIEvents(List<UIEvent> uiEvents) throws XFormsException {
+        this.eventQueue.flush();
+
+        XFormsProcessorImpl processor = (XFormsProcessorImpl) this.xformsProcessor;
+        processor.beginDeferredUpdate();
+        try {
+            for (int index = 0; index < uiEvents.size() && checkForExitEvent() == null; index++) {
+                UIEvent uiEvent = uiEvents.get(index);
+                super.handleUIEvent(uiEvent);
+                try {
+                    processUIEvent(uiEvent);
+                }
+                catch (XFormsException e) {
+                    throw new XFormsException("batch event " + index + " (" + uiEvent.getEventName() + " on '" + uiEvent.getId() + "') failed: " + e.getMessage(), e);
+                }
+            }
+        }
+        finally {
+            processor.endDeferredUpdate();
+        }
+
+        // deliver the results of asynchronous submissions finished meanwhile
+        runPendingTasks();
+    }
+
+    private void processUIEvent(UIEvent uiEvent) throws XFormsException {
         String targetId = uiEvent.getId();
 
         if (uiEvent.getEventName().equalsIgnoreCase(FluxFacade.FLUX_ACTIVATE_EVENT)) {
@@ -127,6 +192,8 @@ public class FluxProcessor extends WebProcessor {
             getHttpRequestHandler().handleUpload(request);
         } else if(uiEvent.getEventName().equalsIgnoreCase("SETLOCALE")){
             setLocale(uiEvent.getContextInfo().toString());
+        } else if (uiEvent.getEventName().equalsIgnoreCase("DISPATCH")) {
+            dispatch(targetId, (String) uiEvent.getContextInfo());
         }else {
             throw new XFormsException("Unknown or illegal uiEvent type");
         }
@@ -5,6 +5,11 @@
 
 package de.betterform.agent.web.servlet;
 
+import de.betterform.agent.web.WebUtil;
+import de.betterform.connector.http.PooledConnectionManager;
+import de.betterform.xml.dom.DOMUtil;
+import de.betterform.xml.xforms.model.constraints.Validator;
+import de.betterform.xml.xforms.model.submission.AsyncSubmissionExecutor;
 import net.sf.ehcache.CacheManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -16,21 +21,42 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 /**
- * ServletListener to shutdown ehCache
+ * ServletListener to shutdown the session store, ehCache, the pool of HTTP connections and the threads of
+ * asynchronous submissions. At the end of each request the processors used by the request are released
+ * to the session store and the DocumentBuilders and validation objects cached by the request thread are
+ * dropped, server threads outlive the web application and must not keep its classes.
  *
  */
 
-public class BfServletContextListener implements ServletContextListener {
+public class BfServletContextListener implements ServletContextListener, ServletRequestListener {
     private static final Log LOGGER = LogFactory.getLog(BfServletContextListener.class);
 
     public void contextDestroyed(ServletContextEvent servletContextEvent) {
         if(LOGGER.isDebugEnabled()){
-            LOGGER.debug("shutting down ehCache");
+            LOGGER.debug("shutting down session store and ehCache");
         }
+        WebUtil.shutdownSessionStore();
         CacheManager.getInstance().shutdown();
+        if(LOGGER.isDebugEnabled()){
+            LOGGER.debug("shutting down HTTP connection pool");
+        }
+        PooledConnectionManager.shutdownInstance();
+        AsyncSubmissionExecutor.shutdownInstance();
     }
 
     public void contextInitialized(ServletContextEvent servletContextEvent) {
         //To change body of implemented methods use File | Settings | File Templates.
     }
+
+    public void requestInitialized(ServletRequestEvent servletRequestEvent) {
+    }
+
+    public void requestDestroyed(ServletRequestEvent servletRequestEvent) {
+        try {
+            WebUtil.endRequest();
+        } finally {
+            DOMUtil.releaseDocumentBuilders();
+            Validator.releaseResources();
+        }
+    }
 }
\ No newline at end of file
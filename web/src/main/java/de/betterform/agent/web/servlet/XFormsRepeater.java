@@ -21,7 +21,6 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -66,6 +65,9 @@ public class XFormsRepeater extends HttpServlet {
             LOGGER.debug("cleanups allocated resources");
         }
 //        webFactory.destroyXFormsSessionManager();
+        if (webFactory != null) {
+            webFactory.destroyTransformerService();
+        }
     }
 
     /**
@@ -195,12 +197,10 @@ public class XFormsRepeater extends HttpServlet {
                     response.setHeader(name, value);
                 }
 
-                // copy body stream
+                // relay body stream
                 InputStream bodyStream = (InputStream) submissionResponse.get("body");
-                OutputStream outputStream = new BufferedOutputStream(response.getOutputStream());
-                for (int b = bodyStream.read(); b > -1; b = bodyStream.read()) {
-                    outputStream.write(b);
-                }
+                OutputStream outputStream = response.getOutputStream();
+                WebUtil.relay(bodyStream, outputStream);
 
                 // close streams
                 bodyStream.close();
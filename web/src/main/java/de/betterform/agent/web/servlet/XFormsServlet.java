@@ -62,6 +62,9 @@ public class XFormsServlet extends HttpServlet {
             LOGGER.debug("cleanups allocated resources");
         }
 //        webFactory.destroyXFormsSessionManager();
+        if (webFactory != null) {
+            webFactory.destroyTransformerService();
+        }
     }
 
     /**
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.agent.web.session;
+
+import de.betterform.agent.web.WebProcessor;
+import de.betterform.xml.xforms.exception.XFormsException;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps the live processors in the ehcache 'xfSessionCache' configured in WEB-INF/classes/ehcache.xml.
+ * This is the default session store.
+ *
+ * @version $Id$
+ */
+public class EhcacheSessionStore implements SessionStore {
+    private static final Log LOGGER = LogFactory.getLog(EhcacheSessionStore.class);
+    public static final String CACHE_NAME = "xfSessionCache";
+
+    public WebProcessor get(String key) {
+        Cache cache = CacheManager.getInstance().getCache(CACHE_NAME);
+        net.sf.ehcache.Element elem = cache != null ? cache.get(key) : null;
+        if (elem == null) {
+            LOGGER.warn("No xformsSession for key " + key + " in Cache");
+            return null;
+        }
+
+        WebProcessor webProcessor = (WebProcessor) elem.getObjectValue();
+        if (webProcessor == null) {
+            LOGGER.warn("Cached WebProcessor for key '" + key + "' is null");
+            return null;
+        }
+        return webProcessor;
+    }
+
+    public void put(WebProcessor processor) throws XFormsException {
+        Cache cache = CacheManager.getInstance().getCache(CACHE_NAME);
+        if (cache == null) {
+            throw new XFormsException("Ehcache Error: '" + CACHE_NAME + "' is missing in WEB-INF/classes/ehcache.xml");
+        }
+        cache.put(new net.sf.ehcache.Element(processor.getKey(), processor));
+    }
+
+    public void release(WebProcessor processor) {
+        // processors are never passivated while in use
+    }
+
+    public boolean remove(String key) {
+        Cache cache = CacheManager.getInstance().getCache(CACHE_NAME);
+        if (cache == null) {
+            return false;
+        }
+        return cache.remove(key);
+    }
+
+    public void shutdown() {
+        // the CacheManager is shut down by BfServletContextListener
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.agent.web.session;
+
+import de.betterform.agent.web.WebProcessor;
+import de.betterform.xml.config.Config;
+import de.betterform.xml.config.XFormsConfigException;
+import de.betterform.xml.xforms.exception.XFormsException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.ServletContext;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Session store holding a limited number of live processors in memory and passivating the others to files
+ * on local disk.
+ * <p/>
+ * A processor is passivated when it has been idle for longer than 'betterform.session.store.passivateAfter'
+ * milliseconds or when more than 'betterform.session.store.maxActive' processors are live (least recently used
+ * first). It is activated again on the next access to its session key, e.g. by the next Flux request. Processors
+ * in use by a request, i.e. returned by get() or added by put() and not yet released, and processors with running
+ * asynchronous submissions are never passivated. Sessions idle for longer than 'betterform.session.store.timeToIdle'
+ * milliseconds are removed once their processor is no longer in use. Passivated sessions are written to a subdirectory of 'betterform.session.store.dir'
+ * (default: 'betterform-sessions' in java.io.tmpdir) owned by the store and deleted on shutdown.
+ * <p/>
+ * See {@link WebProcessor#passivate(java.io.ObjectOutput)} for the state that survives passivation.
+ *
+ * @version $Id$
+ */
+public class PassivatingSessionStore implements SessionStore {
+    private static final Log LOGGER = LogFactory.getLog(PassivatingSessionStore.class);
+
+    public static final String MAX_ACTIVE_PROPERTY = "betterform.session.store.maxActive";
+    public static final String PASSIVATE_AFTER_PROPERTY = "betterform.session.store.passivateAfter";
+    public static final String TIME_TO_IDLE_PROPERTY = "betterform.session.store.timeToIdle";
+    public static final String DIRECTORY_PROPERTY = "betterform.session.store.dir";
+
+    public static final int DEFAULT_MAX_ACTIVE = 200;
+    public static final long DEFAULT_PASSIVATE_AFTER = 300000;
+    public static final long DEFAULT_TIME_TO_IDLE = 1800000;
+
+    /**
+     * source of the current time of the store.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static final String FILE_SUFFIX = ".session";
+    private static final Pattern VALID_KEY = Pattern.compile("[A-Za-z0-9_\\-]+");
+
+    private final int maxActive;
+    private final long passivateAfter;
+    private final long timeToIdle;
+    private final File directory;
+    private final Clock clock;
+
+    /**
+     * live processors in access order
+     */
+    private final LinkedHashMap<String, Entry> active = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * keys of the sessions currently being passivated or activated
+     */
+    private final Set<String> transitions = new HashSet<String>();
+    private ServletContext servletContext;
+    private final ScheduledExecutorService sweeper;
+
+    private long passivations = 0;
+    private long activations = 0;
+
+    public PassivatingSessionStore() throws XFormsConfigException {
+        this(getIntProperty(MAX_ACTIVE_PROPERTY, DEFAULT_MAX_ACTIVE),
+                getLongProperty(PASSIVATE_AFTER_PROPERTY, DEFAULT_PASSIVATE_AFTER),
+                getLongProperty(TIME_TO_IDLE_PROPERTY, DEFAULT_TIME_TO_IDLE),
+                getDirectory());
+    }
+
+    public PassivatingSessionStore(int maxActive, long passivateAfter, long timeToIdle, File directory) {
+        this(maxActive, passivateAfter, timeToIdle, directory, SYSTEM_CLOCK);
+    }
+
+    /**
+     * Creates a store writing passivated sessions to a new subdirectory of the given directory.
+     *
+     * @param maxActive the maximum number of live processors.
+     * @param passivateAfter the idle time in milliseconds after which a processor is passivated, 0 to disable.
+     * @param timeToIdle the idle time in milliseconds after which a session is removed.
+     * @param directory the parent directory of the directory of the store.
+     * @param clock the clock measuring idle times.
+     */
+    public PassivatingSessionStore(int maxActive, long passivateAfter, long timeToIdle, File directory, Clock clock) {
+        this.maxActive = maxActive;
+        this.passivateAfter = passivateAfter;
+        this.timeToIdle = timeToIdle;
+        this.clock = clock;
+        this.directory = createDirectory(directory);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("passivating session store created: maxActive=" + maxActive + ", passivateAfter=" + passivateAfter
+                    + ", timeToIdle=" + timeToIdle + ", directory=" + this.directory);
+        }
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "betterFORM session store sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(Math.min(passivateAfter > 0 ? passivateAfter : timeToIdle, timeToIdle) / 2, 1000);
+        this.sweeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException e) {
+                    LOGGER.error("sweeping session store failed", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public WebProcessor get(String key) {
+        synchronized (this) {
+            if (!awaitTransition(key)) {
+                return null;
+            }
+            Entry entry = this.active.get(key);
+            if (entry != null) {
+                entry.requests++;
+                entry.lastAccess = this.clock.currentTimeMillis();
+                return entry.processor;
+            }
+            File file = getFile(key);
+            if (file == null || !file.exists()) {
+                LOGGER.warn("No xformsSession for key " + key + " in session store");
+                return null;
+            }
+            this.transitions.add(key);
+        }
+
+        WebProcessor processor = null;
+        try {
+            processor = activate(key);
+        } finally {
+            List<Entry> evicted;
+            synchronized (this) {
+                if (processor != null) {
+                    this.active.put(key, new Entry(processor, this.clock.currentTimeMillis()));
+                }
+                this.transitions.remove(key);
+                evicted = evict();
+                notifyAll();
+            }
+            passivate(evicted);
+        }
+        return processor;
+    }
+
+    public void put(WebProcessor processor) throws XFormsException {
+        List<Entry> evicted;
+        synchronized (this) {
+            if (this.servletContext == null) {
+                this.servletContext = processor.getContext();
+            }
+            Entry entry = this.active.get(processor.getKey());
+            if (entry != null && entry.processor == processor) {
+                entry.requests++;
+                entry.lastAccess = this.clock.currentTimeMillis();
+            } else {
+                this.active.put(processor.getKey(), new Entry(processor, this.clock.currentTimeMillis()));
+            }
+            evicted = evict();
+        }
+        passivate(evicted);
+    }
+
+    public void release(WebProcessor processor) {
+        List<Entry> evicted;
+        synchronized (this) {
+            Entry entry = this.active.get(processor.getKey());
+            if (entry == null || entry.processor != processor || entry.requests == 0) {
+                return;
+            }
+            entry.requests--;
+            entry.lastAccess = this.clock.currentTimeMillis();
+            evicted = evict();
+        }
+        passivate(evicted);
+    }
+
+    public boolean remove(String key) {
+        synchronized (this) {
+            if (!awaitTransition(key)) {
+                return false;
+            }
+            if (this.active.remove(key) != null) {
+                return true;
+            }
+        }
+        File file = getFile(key);
+        return file != null && file.delete();
+    }
+
+    public void shutdown() {
+        this.sweeper.shutdownNow();
+        synchronized (this) {
+            this.active.clear();
+        }
+        deleteFiles(this.clock.currentTimeMillis(), 0);
+        if (!this.directory.delete()) {
+            LOGGER.warn("session store directory '" + this.directory + "' could not be deleted");
+        }
+    }
+
+    /**
+     * @return the number of live processors.
+     */
+    public synchronized int getActiveCount() {
+        return this.active.size();
+    }
+
+    /**
+     * @return the number of passivated sessions.
+     */
+    public int getPassivatedCount() {
+        File[] files = this.directory.listFiles();
+        int count = 0;
+        for (int i = 0; files != null && i < files.length; i++) {
+            if (files[i].getName().endsWith(FILE_SUFFIX)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized long getPassivations() {
+        return this.passivations;
+    }
+
+    public synchronized long getActivations() {
+        return this.activations;
+    }
+
+    /**
+     * passivates idle processors and removes expired sessions.
+     */
+    public void sweep() {
+        sweep(this.clock.currentTimeMillis());
+    }
+
+    private void sweep(long now) {
+        List<Entry> expired = new ArrayList<Entry>();
+        List<Entry> idle = new ArrayList<Entry>();
+        synchronized (this) {
+            for (Iterator<Entry> iterator = this.active.values().iterator(); iterator.hasNext();) {
+                Entry entry = iterator.next();
+                long idleTime = now - entry.lastAccess;
+                if (isInUse(entry)) {
+                    // neither expire nor passivate a processor serving a request, updating or waiting for tasks
+                    continue;
+                }
+                if (idleTime > this.timeToIdle) {
+                    iterator.remove();
+                    expired.add(entry);
+                } else if (this.passivateAfter > 0 && idleTime > this.passivateAfter) {
+                    iterator.remove();
+                    this.transitions.add(entry.processor.getKey());
+                    idle.add(entry);
+                }
+            }
+        }
+        for (int i = 0; i < expired.size(); i++) {
+            shutdown(expired.get(i).processor);
+        }
+        passivate(idle);
+        deleteFiles(now, this.timeToIdle);
+    }
+
+    // ********************* passivation ********************************
+
+    /**
+     * removes the least recently used processors exceeding maxActive from memory, skipping processors in use.
+     * Must be called with the lock held, the returned entries must be passivated after releasing it.
+     */
+    private List<Entry> evict() {
+        List<Entry> evicted = new ArrayList<Entry>();
+        Iterator<Entry> iterator = this.active.values().iterator();
+        while (this.active.size() > this.maxActive && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (isInUse(entry)) {
+                continue;
+            }
+            iterator.remove();
+            this.transitions.add(entry.processor.getKey());
+            evicted.add(entry);
+        }
+        return evicted;
+    }
+
+    private void passivate(List<Entry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            WebProcessor processor = entries.get(i).processor;
+            String key = processor.getKey();
+            try {
+                passivate(processor);
+            } finally {
+                synchronized (this) {
+                    this.transitions.remove(key);
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void passivate(WebProcessor processor) {
+        String key = processor.getKey();
+        File file = getFile(key);
+        if (file == null) {
+            LOGGER.warn("session key '" + key + "' can not be used as file name - session is discarded");
+            shutdown(processor);
+            return;
+        }
+
+        File temp = new File(this.directory, key + ".tmp");
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeUTF(processor.getClass().getName());
+                // wait for running requests of the session
+                processor.getEventLoop().beginUpdate();
+                try {
+                    processor.passivate(out);
+                } finally {
+                    processor.getEventLoop().endUpdate();
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("renaming " + temp + " to " + file + " failed");
+            }
+            synchronized (this) {
+                this.passivations++;
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("passivated session '" + key + "' to " + file);
+            }
+        } catch (Exception e) {
+            // the processor has been reset during serialization and can not be used any more
+            LOGGER.error("passivation of session '" + key + "' failed - session is discarded", e);
+            temp.delete();
+        }
+    }
+
+    private WebProcessor activate(String key) {
+        File file = getFile(key);
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                String className = in.readUTF();
+                Class clazz = Class.forName(className, true, PassivatingSessionStore.class.getClassLoader());
+                WebProcessor processor = (WebProcessor) clazz.newInstance();
+                processor.activate(in, this.servletContext);
+
+                synchronized (this) {
+                    this.activations++;
+                }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("activated session '" + key + "' from " + file);
+                }
+                return processor;
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            LOGGER.error("activation of session '" + key + "' failed - session is discarded", e);
+            return null;
+        } finally {
+            file.delete();
+        }
+    }
+
+    // ********************* helper ***************************************
+
+    /**
+     * @return true if the processor is used by a request or runs asynchronous submissions. Must be called
+     * with the lock held.
+     */
+    private static boolean isInUse(Entry entry) {
+        return entry.requests > 0 || entry.processor.getEventLoop().isUpdating() || entry.processor.hasPendingTasks();
+    }
+
+    /**
+     * waits until a passivation or activation of the session has finished. Must be called with the lock held.
+     *
+     * @return false if interrupted.
+     */
+    private boolean awaitTransition(String key) {
+        while (this.transitions.contains(key)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the file for a passivated session or null if the key is not usable as file name.
+     */
+    private File getFile(String key) {
+        if (key == null || !VALID_KEY.matcher(key).matches()) {
+            return null;
+        }
+        return new File(this.directory, key + FILE_SUFFIX);
+    }
+
+    /**
+     * deletes the files of passivated sessions not modified within the given time.
+     */
+    private void deleteFiles(long now, long maxAge) {
+        File[] files = this.directory.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            File file = files[i];
+            if (!file.getName().endsWith(FILE_SUFFIX) || now - file.lastModified() < maxAge) {
+                continue;
+            }
+            String key = file.getName().substring(0, file.getName().length() - FILE_SUFFIX.length());
+            synchronized (this) {
+                if (!this.transitions.contains(key)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * creates a new directory for the files of this store, so that stores sharing the configured directory
+     * do not delete each other's files.
+     */
+    private static File createDirectory(File parent) {
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IllegalArgumentException("session store directory '" + parent + "' can not be created");
+        }
+        try {
+            File directory = File.createTempFile("store", "", parent);
+            if (directory.delete() && directory.mkdir()) {
+                return directory;
+            }
+        } catch (IOException e) {
+            LOGGER.error("creating a directory in '" + parent + "' failed", e);
+        }
+        throw new IllegalArgumentException("session store directory in '" + parent + "' can not be created");
+    }
+
+    private static void shutdown(WebProcessor processor) {
+        try {
+            processor.shutdown();
+        } catch (XFormsException e) {
+            LOGGER.warn("shutdown of session '" + processor.getKey() + "' failed: " + e.getMessage());
+        }
+    }
+
+    private static File getDirectory() throws XFormsConfigException {
+        String path = Config.getInstance().getProperty(DIRECTORY_PROPERTY);
+        if (path == null || path.trim().equals("")) {
+            return new File(System.getProperty("java.io.tmpdir"), "betterform-sessions");
+        }
+        return new File(path.trim());
+    }
+
+    private static int getIntProperty(String name, int defaultValue) throws XFormsConfigException {
+        return (int) getLongProperty(name, defaultValue);
+    }
+
+    private static long getLongProperty(String name, long defaultValue) throws XFormsConfigException {
+        String value = Config.getInstance().getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn(name + " is not parsable as a number. Check your settings in betterform-config.xml!");
+            return defaultValue;
+        }
+    }
+
+    private static class Entry {
+        private final WebProcessor processor;
+        private long lastAccess;
+
+        /**
+         * number of requests using the processor, guarded by the lock of the store
+         */
+        private int requests = 1;
+
+        Entry(WebProcessor processor, long lastAccess) {
+            this.processor = processor;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.agent.web.session;
+
+import de.betterform.agent.web.WebProcessor;
+import de.betterform.xml.xforms.exception.XFormsException;
+
+/**
+ * Holds the WebProcessors of all running XForms sessions by their session key. The store in use is
+ * configured with the property 'betterform.session.store' of betterform-config and accessed through
+ * {@link de.betterform.agent.web.WebUtil#getSessionStore()}.
+ *
+ * @version $Id$
+ */
+public interface SessionStore {
+
+    /**
+     * Returns the processor for a session key. The processor is in use by the calling request until it is
+     * passed to {@link #release(WebProcessor)}.
+     *
+     * @param key the session key.
+     * @return the processor or null if there is no session for the key.
+     */
+    WebProcessor get(String key);
+
+    /**
+     * Adds a processor under its session key. The processor is in use by the calling request until it is
+     * passed to {@link #release(WebProcessor)}.
+     *
+     * @param processor the initialized processor.
+     * @throws XFormsException if the processor could not be stored.
+     */
+    void put(WebProcessor processor) throws XFormsException;
+
+    /**
+     * Ends the use of a processor by a request, once for every call to get() or put() that returned or added
+     * it. Called by {@link de.betterform.agent.web.WebUtil#endRequest()} at the end of each request.
+     *
+     * @param processor the processor.
+     */
+    void release(WebProcessor processor);
+
+    /**
+     * Removes the session for a key.
+     *
+     * @param key the session key.
+     * @return true if a session has been removed.
+     */
+    boolean remove(String key);
+
+    /**
+     * Releases all resources held by the store. Called when the web application is shut down.
+     */
+    void shutdown();
+}
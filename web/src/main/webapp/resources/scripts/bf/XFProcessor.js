@@ -39,6 +39,8 @@ define(["dojo/_base/declare",
         clientServerEventQueue:[],
         requestPending:false,
         fifoReaderTimer:null,
+        pollTimer:null,
+        pollInterval:1000,
         lastServerClientFocusEvent:null,
         usesDOMFocusIN:dojo.config.bf.useDOMFocusIN,
         usesDOMFocusOUT:dojo.config.bf.useDOMFocusOUT,
@@ -564,6 +566,7 @@ define(["dojo/_base/declare",
                                 case "xforms-ready"                  : /*console.info("xforms-ready");*/fluxProcessor.isReady = true;connect.publish("xforms-ready", []);break; //not perfect - should be on XFormsModelElement
                                 case "xforms-submit"                 : break;
                                 case "xforms-submit-done"            : fluxProcessor._handleSubmitDone(xmlEvent);break;
+                                case "betterform-pending-tasks"      : fluxProcessor._handlePendingTasks(); break;
                                 /* Unknow XMLEvent: */
                                 default                              : console.error("Event " + xmlEvent.type + " unknown [Event:", xmlEvent, "]"); break;
                             }
@@ -1418,6 +1421,28 @@ define(["dojo/_base/declare",
             //        fluxProcessor.closeSession();
         },
 
+        /*
+         asynchronous submissions are running on the server - poll for their results
+         */
+        _handlePendingTasks:function() {
+            clearTimeout(fluxProcessor.pollTimer);
+            fluxProcessor.pollTimer = setTimeout("fluxProcessor.poll()", fluxProcessor.pollInterval);
+        },
+
+        poll:function() {
+            if (fluxProcessor.requestPending || fluxProcessor.clientServerEventQueue.length > 0) {
+                // the response of the pending request carries the results or asks to poll again
+                return;
+            }
+            try {
+                fluxProcessor.requestPending = true;
+                Flux.poll(this.sessionKey, this.applyChanges);
+            }
+            catch(ex) {
+                fluxProcessor._handleExceptions("Failure executing Flux.poll", ex);
+            }
+        },
+
         fetchProgress:function(fetchProgressId, fileName) {
             // console.debug("XFProcessor.fetchProgress id:", fetchProgressId);
             try {
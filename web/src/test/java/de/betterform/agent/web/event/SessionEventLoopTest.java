@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.agent.web.event;
+
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests the ordering of updates and the instance snapshots of a session.
+ *
+ * @version $Id$
+ */
+public class SessionEventLoopTest extends TestCase {
+
+    private XFormsProcessorImpl processor;
+    private SessionEventLoop eventLoop;
+
+    protected void setUp() throws Exception {
+        this.processor = new XFormsProcessorImpl();
+        this.processor.setXForms(getClass().getResourceAsStream("/de/betterform/agent/web/session/PassivatingSessionStoreTest.xhtml"));
+        this.processor.init();
+        this.eventLoop = new SessionEventLoop(this.processor);
+    }
+
+    protected void tearDown() throws Exception {
+        this.processor.shutdown();
+    }
+
+    public void testNestedUpdates() throws Exception {
+        this.eventLoop.beginUpdate();
+        this.eventLoop.beginUpdate();
+        this.eventLoop.endUpdate();
+        assertEquals(0, this.eventLoop.getVersion());
+        assertTrue(this.eventLoop.isUpdating());
+
+        this.eventLoop.endUpdate();
+        assertEquals(1, this.eventLoop.getVersion());
+        assertFalse(this.eventLoop.isUpdating());
+    }
+
+    public void testSnapshotIsShared() throws Exception {
+        Document snapshot = this.eventLoop.getInstanceSnapshot("model-1", "instance-1");
+        assertSame(snapshot, this.eventLoop.getInstanceSnapshot("model-1", "instance-1"));
+        assertNotSame(this.processor.getXFormsModel("model-1").getInstanceDocument("instance-1"), snapshot);
+
+        this.eventLoop.beginUpdate();
+        this.eventLoop.endUpdate();
+        assertNotSame(snapshot, this.eventLoop.getInstanceSnapshot("model-1", "instance-1"));
+    }
+
+    public void testUnreadSnapshotDropped() throws Exception {
+        this.eventLoop.getInstanceSnapshot("model-1", "instance-1");
+
+        // read before the update, copied at its end
+        this.eventLoop.beginUpdate();
+        this.eventLoop.endUpdate();
+        assertEquals(1, this.eventLoop.getSnapshotCount());
+
+        // not read since, dropped instead of copied again
+        this.eventLoop.beginUpdate();
+        this.eventLoop.endUpdate();
+        assertEquals(0, this.eventLoop.getSnapshotCount());
+
+        Document snapshot = this.eventLoop.getInstanceSnapshot("model-1", "instance-1");
+        assertEquals("initial", getNameNode(snapshot).getTextContent());
+        assertEquals(1, this.eventLoop.getSnapshotCount());
+    }
+
+    public void testReadDuringUpdate() throws Exception {
+        this.eventLoop.getInstanceSnapshot("model-1", "instance-1");
+
+        final CountDownLatch updating = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread update = new Thread() {
+            public void run() {
+                eventLoop.beginUpdate();
+                try {
+                    getNameNode(processor.getXFormsModel("model-1").getInstanceDocument("instance-1")).setTextContent("changed");
+                    updating.countDown();
+                    done.await();
+                } catch (Exception e) {
+                    // checked by the assertions below
+                } finally {
+                    eventLoop.endUpdate();
+                }
+            }
+        };
+        update.start();
+        updating.await();
+
+        // served from the snapshot without waiting for the update
+        Document snapshot = this.eventLoop.getInstanceSnapshot("model-1", "instance-1");
+        assertEquals("initial", getNameNode(snapshot).getTextContent());
+
+        done.countDown();
+        update.join();
+        snapshot = this.eventLoop.getInstanceSnapshot("model-1", "instance-1");
+        assertEquals("changed", getNameNode(snapshot).getTextContent());
+    }
+
+    public void testReadDuringUpdateAfterCompletedUpdate() throws Exception {
+        this.eventLoop.getInstanceSnapshot("model-1", "instance-1");
+        this.eventLoop.beginUpdate();
+        getNameNode(this.processor.getXFormsModel("model-1").getInstanceDocument("instance-1")).setTextContent("first");
+        this.eventLoop.endUpdate();
+
+        final CountDownLatch updating = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread update = new Thread() {
+            public void run() {
+                eventLoop.beginUpdate();
+                try {
+                    getNameNode(processor.getXFormsModel("model-1").getInstanceDocument("instance-1")).setTextContent("second");
+                    updating.countDown();
+                    done.await();
+                } catch (Exception e) {
+                    // checked by the assertions below
+                } finally {
+                    eventLoop.endUpdate();
+                }
+            }
+        };
+        update.start();
+        updating.await();
+
+        // the state of the last completed update, not of the first read
+        Document snapshot = this.eventLoop.getInstanceSnapshot("model-1", "instance-1");
+        assertEquals("first", getNameNode(snapshot).getTextContent());
+
+        done.countDown();
+        update.join();
+        assertEquals("second", getNameNode(this.eventLoop.getInstanceSnapshot("model-1", "instance-1")).getTextContent());
+    }
+
+    private static org.w3c.dom.Node getNameNode(Document document) {
+        return document.getDocumentElement().getElementsByTagName("name").item(0);
+    }
+}
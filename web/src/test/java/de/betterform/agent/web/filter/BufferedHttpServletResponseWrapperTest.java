@@ -6,13 +6,20 @@
 package de.betterform.agent.web.filter;
 
 import de.betterform.agent.web.WebUtil;
+import de.betterform.xml.ns.NamespaceConstants;
 import junit.framework.TestCase;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Locale;
 
 public class BufferedHttpServletResponseWrapperTest extends TestCase {
@@ -35,6 +42,84 @@ public class BufferedHttpServletResponseWrapperTest extends TestCase {
 
     }
 
+    public void testWriteDataTo() throws IOException {
+        PrintWriter pw = wrapper.getWriter();
+        pw.write("foo");
+        pw.write("bar");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wrapper.writeDataTo(out);
+        assertEquals("foobar", out.toString("ISO-8859-1"));
+    }
+
+    public void testRelayFile() throws IOException {
+        byte[] data = createData(100000);
+        File file = File.createTempFile("relay", ".bin");
+        try {
+            FileOutputStream fileOut = new FileOutputStream(file);
+            fileOut.write(data);
+            fileOut.close();
+
+            FileInputStream in = new FileInputStream(file);
+            try {
+                // the relay starts at the current position of the stream
+                assertEquals(3, in.read(new byte[3]));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(data.length - 3, WebUtil.relay(in, out));
+                assertTrue(Arrays.equals(copyOfRange(data, 3, data.length), out.toByteArray()));
+                assertEquals(-1, in.read());
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testRelayStream() throws IOException {
+        byte[] data = createData(100000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, WebUtil.relay(new ByteArrayInputStream(data), out));
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+
+        out.reset();
+        assertEquals(0, WebUtil.relay(new ByteArrayInputStream(new byte[0]), out));
+        assertEquals(0, out.size());
+    }
+
+    public void testCorrectInstanceXMLNS() throws IOException {
+        String page = "<html><xforms:model><xforms:instance><a>\u00e4\u20ac</a></xforms:instance>"
+                + "<xforms:instance><b/></xforms:instance></xforms:model></html>";
+        byte[] corrected = XFormsFilter.correctInstanceXMLNS(page.getBytes("UTF-8"));
+        assertEquals(page.replace("<xforms:instance>", "<xforms:instance xmlns=\"\">"), new String(corrected, "UTF-8"));
+
+        // content already declaring the namespace is returned unchanged
+        byte[] declared = "<xforms:instance xmlns=\"\"><a/></xforms:instance><xforms:instance>".getBytes("UTF-8");
+        assertSame(declared, XFormsFilter.correctInstanceXMLNS(declared));
+        byte[] plain = "<html>\u00e4</html>".getBytes("UTF-8");
+        assertSame(plain, XFormsFilter.correctInstanceXMLNS(plain));
+    }
+
+    public void testContainsXFormsMarkup() throws IOException {
+        assertTrue(XFormsFilter.containsXFormsMarkup(("<html xmlns:xf=\"" + NamespaceConstants.XFORMS_NS + "\"><p>\u00e4</p><xf:model/></html>").getBytes("UTF-8")));
+        assertFalse(XFormsFilter.containsXFormsMarkup(("<html xmlns:xf=\"" + NamespaceConstants.XFORMS_NS + "\"><xforms:model/></html>").getBytes("UTF-8")));
+        assertFalse(XFormsFilter.containsXFormsMarkup("<html><xf:model/></html>".getBytes("UTF-8")));
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    private static byte[] copyOfRange(byte[] data, int from, int to) {
+        byte[] copy = new byte[to - from];
+        System.arraycopy(data, from, copy, 0, copy.length);
+        return copy;
+    }
+
     public void testGetWriter() throws Exception {
     	try{
     		DummyHttpResponse dummyResponse2 = new DummyHttpResponse();
@@ -5,8 +5,16 @@
 
 package de.betterform.agent.web.flux;
 
+import de.betterform.agent.web.event.DefaultUIEventImpl;
+import de.betterform.agent.web.event.UIEvent;
 import de.betterform.agent.web.session.SerializableObject;
+import de.betterform.xml.events.BetterFormEventNames;
+import de.betterform.xml.events.XFormsEventNames;
+import de.betterform.xml.events.XMLEvent;
 import de.betterform.xml.xforms.XFormsProcessor;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xforms.exception.XFormsException;
+import de.betterform.xml.xforms.model.Instance;
 import junit.framework.TestCase;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
@@ -14,6 +22,9 @@ import net.sf.ehcache.Element;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class FluxProcessorTest extends TestCase {
 /*
     static {        
@@ -82,4 +93,76 @@ public class FluxProcessorTest extends TestCase {
 //        DOMUtil.prettyPrintDOM(((FluxProcessor)this.fluxProcessor).getEventLog().getLog());
     }
 
+
+    public void testPendingTasksEvent() throws Exception {
+        TestProcessor processor = new TestProcessor();
+        processor.setXForms(getClass().getResourceAsStream("pendingTasks.xhtml"));
+        processor.start("pending");
+        try {
+            processor.getEventQueue().flush();
+            processor.dispatch("s-async", XFormsEventNames.SUBMIT);
+            // the client is asked to poll while the submission is running
+            List<XMLEvent> events = processor.getEventList();
+            assertEquals(BetterFormEventNames.PENDING_TASKS, events.get(events.size() - 1).getType());
+
+            long timeout = System.currentTimeMillis() + 10000;
+            while (processor.hasPendingTasks()) {
+                if (!processor.runPendingTasks()) {
+                    assertTrue("asynchronous submission timed out", System.currentTimeMillis() < timeout);
+                    Thread.sleep(10);
+                }
+            }
+            events = processor.getEventList();
+            for (int i = 0; i < events.size(); i++) {
+                assertFalse(BetterFormEventNames.PENDING_TASKS.equals(events.get(i).getType()));
+            }
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    public void testBatchStopsAtFailure() throws Exception {
+        TestProcessor processor = new TestProcessor();
+        processor.setXForms(getClass().getResourceAsStream("pendingTasks.xhtml"));
+        processor.start("batch");
+        try {
+            List<UIEvent> uiEvents = new ArrayList<UIEvent>();
+            uiEvents.add(createEvent("SETVALUE", "input-result", "first"));
+            uiEvents.add(createEvent("SETVALUE", "unknown", "failed"));
+            uiEvents.add(createEvent("SETVALUE", "input-result", "last"));
+            try {
+                processor.handleUIEvents(uiEvents);
+                fail("failed batch event not reported");
+            } catch (XFormsException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("batch event 1 "));
+            }
+            // the events after the failed one are not applied
+            assertEquals("first", processor.getValue("i-result"));
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    private static UIEvent createEvent(String name, String id, String value) {
+        UIEvent event = new DefaultUIEventImpl();
+        event.initEvent(name, id, value);
+        return event;
+    }
+
+    /**
+     * initializes without a HTTP request.
+     */
+    public static class TestProcessor extends FluxProcessor {
+
+        public void start(String key) throws XFormsException {
+            this.key = key;
+            initProcessor();
+        }
+
+        public String getValue(String instanceId) {
+            XFormsProcessorImpl processor = (XFormsProcessorImpl) this.xformsProcessor;
+            Instance instance = processor.getContainer().getDefaultModel().getInstance(instanceId);
+            return instance.getInstanceDocument().getDocumentElement().getTextContent().trim();
+        }
+    }
 }
\ No newline at end of file
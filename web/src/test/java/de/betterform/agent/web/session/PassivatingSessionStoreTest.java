@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2012. betterFORM Project - http://www.betterform.de
+ * Licensed under the terms of BSD License
+ */
+
+package de.betterform.agent.web.session;
+
+import de.betterform.agent.web.WebProcessor;
+import de.betterform.agent.web.flux.FluxProcessor;
+import de.betterform.xml.dom.DOMUtil;
+import de.betterform.xml.ns.NamespaceConstants;
+import de.betterform.xml.xforms.XFormsProcessorImpl;
+import de.betterform.xml.xforms.exception.XFormsException;
+import de.betterform.xml.xforms.ui.Repeat;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+
+/**
+ * Tests passivation and activation of processors by the PassivatingSessionStore.
+ *
+ * @version $Id$
+ */
+public class PassivatingSessionStoreTest extends TestCase {
+
+    private static final long IDLE = 60000;
+
+    private File directory;
+    private TestClock clock;
+    private PassivatingSessionStore store;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.directory = new File(System.getProperty("java.io.tmpdir"), "betterform-sessions-test");
+        this.clock = new TestClock();
+        // idle processors are passivated by the tests calling sweep()
+        this.store = new PassivatingSessionStore(1, IDLE, 10 * IDLE, this.directory, this.clock);
+    }
+
+    protected void tearDown() throws Exception {
+        this.store.shutdown();
+        this.directory.delete();
+        super.tearDown();
+    }
+
+    public void testPassivateIdle() throws Exception {
+        TestProcessor processor = createProcessor("1");
+        processor.setControlValue("input-1", "changed");
+        putReleased(processor);
+
+        this.clock.advance(2 * IDLE);
+        this.store.sweep();
+
+        assertEquals(0, this.store.getActiveCount());
+        assertEquals(1, this.store.getPassivatedCount());
+        assertEquals(1, this.store.getPassivations());
+
+        WebProcessor activated = this.store.get("1");
+        assertNotNull(activated);
+        assertNotSame(processor, activated);
+        assertTrue(activated instanceof TestProcessor);
+        assertEquals("1", activated.getKey());
+        assertEquals("changed", ((TestProcessor) activated).getValue("name"));
+        assertEquals(1, this.store.getActiveCount());
+        assertEquals(0, this.store.getPassivatedCount());
+        assertEquals(1, this.store.getActivations());
+
+        assertSame(activated, this.store.get("1"));
+    }
+
+    public void testPassivateLeastRecentlyUsed() throws Exception {
+        putReleased(createProcessor("1"));
+        this.clock.advance(1);
+        putReleased(createProcessor("2"));
+
+        assertEquals(1, this.store.getActiveCount());
+        assertEquals(1, this.store.getPassivatedCount());
+        assertNotNull(this.store.get("1"));
+    }
+
+    public void testInUseNotPassivated() throws Exception {
+        TestProcessor first = createProcessor("1");
+        this.store.put(first);
+        putReleased(createProcessor("2"));
+
+        // the first processor is still used by its request
+        assertEquals(1, this.store.getActiveCount());
+        assertEquals(1, this.store.getPassivatedCount());
+        this.clock.advance(2 * IDLE);
+        this.store.sweep();
+        assertEquals(1, this.store.getActiveCount());
+        assertSame(first, this.store.get("1"));
+
+        this.store.release(first);
+        this.store.release(first);
+        this.clock.advance(2 * IDLE);
+        this.store.sweep();
+        assertEquals(0, this.store.getActiveCount());
+        assertEquals(2, this.store.getPassivatedCount());
+    }
+
+    public void testDirectoryNotShared() throws Exception {
+        putReleased(createProcessor("1"));
+        this.clock.advance(2 * IDLE);
+        this.store.sweep();
+
+        PassivatingSessionStore other = new PassivatingSessionStore(1, IDLE, 10 * IDLE, this.directory, this.clock);
+        try {
+            assertEquals(0, other.getPassivatedCount());
+            assertNull(other.get("1"));
+        } finally {
+            other.shutdown();
+        }
+        assertEquals(1, this.store.getPassivatedCount());
+        assertNotNull(this.store.get("1"));
+    }
+
+    public void testEventAfterActivation() throws Exception {
+        TestProcessor processor = createProcessor("1");
+        processor.dispatchEvent("insert-1");
+        processor.dispatchEvent(getTriggerId(processor, 1));
+        // ids of the new repeat item, known to the client
+        String triggerId = getTriggerId(processor, 2);
+        putReleased(processor);
+
+        this.clock.advance(2 * IDLE);
+        this.store.sweep();
+        TestProcessor activated = (TestProcessor) this.store.get("1");
+        assertNotNull(activated);
+        assertEquals(triggerId, getTriggerId(activated, 2));
+
+        activated.dispatchEvent(triggerId);
+        NodeList items = activated.getInstanceDocument().getElementsByTagName("item");
+        assertEquals(1, items.getLength());
+        assertEquals("b", items.item(0).getTextContent());
+        // the xforms-ready handler did not run again
+        assertEquals("1", activated.getValue("ready"));
+    }
+
+    public void testRemove() throws Exception {
+        putReleased(createProcessor("1"));
+        this.clock.advance(2 * IDLE);
+        this.store.sweep();
+
+        assertTrue(this.store.remove("1"));
+        assertEquals(0, this.store.getPassivatedCount());
+        assertNull(this.store.get("1"));
+        assertFalse(this.store.remove("1"));
+    }
+
+    public void testExpire() throws Exception {
+        putReleased(createProcessor("1"));
+        this.clock.advance(2 * IDLE);
+        this.store.sweep();
+        putReleased(createProcessor("2"));
+
+        this.clock.advance(18 * IDLE);
+        this.store.sweep();
+
+        assertEquals(0, this.store.getActiveCount());
+        assertEquals(0, this.store.getPassivatedCount());
+        assertNull(this.store.get("1"));
+    }
+
+    public void testInUseNotExpired() throws Exception {
+        TestProcessor processor = createProcessor("1");
+        this.store.put(processor);
+
+        // the request is still running after the session timed out
+        this.clock.advance(20 * IDLE);
+        this.store.sweep();
+        assertEquals(1, this.store.getActiveCount());
+        assertSame(processor, this.store.get("1"));
+        this.store.release(processor);
+
+        this.store.release(processor);
+        this.clock.advance(20 * IDLE);
+        this.store.sweep();
+        assertEquals(0, this.store.getActiveCount());
+        assertEquals(0, this.store.getPassivatedCount());
+        assertNull(this.store.get("1"));
+    }
+
+    public void testInvalidKey() throws Exception {
+        assertNull(this.store.get("../1"));
+        assertFalse(this.store.remove("../1"));
+    }
+
+    private TestProcessor createProcessor(String key) throws XFormsException {
+        TestProcessor processor = new TestProcessor();
+        processor.setXForms(getClass().getResourceAsStream("PassivatingSessionStoreTest.xhtml"));
+        processor.start(key);
+        return processor;
+    }
+
+    private void putReleased(WebProcessor processor) throws XFormsException {
+        this.store.put(processor);
+        this.store.release(processor);
+    }
+
+    private static String getTriggerId(TestProcessor processor, int position) {
+        Element item = processor.getRepeat("repeat-1").getRepeatItem(position).getElement();
+        Element trigger = DOMUtil.findFirstChildNS(item, NamespaceConstants.XFORMS_NS, "trigger");
+        return trigger.getAttributeNS(null, "id");
+    }
+
+    /**
+     * initializes without a HTTP request.
+     */
+    public static class TestProcessor extends FluxProcessor {
+
+        public void start(String key) throws XFormsException {
+            this.key = key;
+            initProcessor();
+        }
+
+        public Document getInstanceDocument() {
+            XFormsProcessorImpl processor = (XFormsProcessorImpl) this.xformsProcessor;
+            return processor.getContainer().getDefaultModel().getDefaultInstance().getInstanceDocument();
+        }
+
+        public String getValue(String name) {
+            return getInstanceDocument().getDocumentElement().getElementsByTagName(name).item(0).getTextContent();
+        }
+
+        public Repeat getRepeat(String id) {
+            return (Repeat) ((XFormsProcessorImpl) this.xformsProcessor).getContainer().lookup(id);
+        }
+    }
+
+    private static class TestClock implements PassivatingSessionStore.Clock {
+        private long time = System.currentTimeMillis();
+
+        public synchronized long currentTimeMillis() {
+            return this.time;
+        }
+
+        synchronized void advance(long millis) {
+            this.time += millis;
+        }
+    }
+}